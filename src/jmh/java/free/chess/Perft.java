@@ -0,0 +1,381 @@
+/**
+ * The chess framework library. More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * The chess framework library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2 of the License, or (at your option) any later version.
+ *
+ * The chess framework library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the chess
+ * framework library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite
+ * 330, Boston, MA 02111-1307 USA
+ */
+package free.chess;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import free.chess.variants.NoCastlingVariant;
+import free.chess.variants.atomic.Atomic;
+import free.chess.variants.fischerrandom.FischerRandom;
+import free.chess.variants.giveaway.Giveaway;
+import free.chess.variants.shatranj.Shatranj;
+import free.chess.variants.shuffleboth.ShuffleBoth;
+import free.chess.variants.suicide.Suicide;
+
+/**
+ * Counts the leaf nodes of the tree of legal moves to a given depth ("perft"), which verifies move
+ * generation and making moves against known counts. The counts are checked for a set of positions
+ * in all the variants implementing {@link LegalMoveGenerator}. The arguments are:
+ * <OL>
+ * <LI>The maximal depth searched; 4 if omitted. Positions are searched to the smaller of this
+ * depth and the depth of their known counts.
+ * <LI>The amount of threads; 1 if omitted. With more than one thread, the moves at the root are
+ * split between the threads of a fork-join pool.
+ * </OL>
+ * For each position and depth, the node count and the rate at which nodes were counted are
+ * reported. The exit code is 1 if any count doesn't match the expected one.
+ */
+public class Perft {
+
+  /**
+   * The initial position in chess.
+   */
+  private static final String INITIAL = Chess.INITIAL_POSITION_FEN;
+
+  /**
+   * The "Kiwipete" position, which has castling, en-passant and promotions close to the root.
+   */
+  private static final String KIWIPETE =
+      "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+
+  /**
+   * The positions searched, with their expected counts, starting at depth 1. Unless marked
+   * otherwise, the counts are the published reference values (for Suicide and Giveaway, the values
+   * published for antichess, whose rules are the same for the depths counted here). The
+   * "regression" counts of variants with ICC specific rules have no published reference values -
+   * they are the counts of the current implementation, which we have checked by hand at low depths.
+   */
+  private static final TestCase[] TEST_CASES =
+      new TestCase[] {
+        new TestCase(
+            "chess-initial",
+            Chess.getInstance(),
+            INITIAL,
+            new long[] {20, 400, 8902, 197281, 4865609}),
+        new TestCase(
+            "chess-kiwipete", Chess.getInstance(), KIWIPETE, new long[] {48, 2039, 97862, 4085603}),
+        new TestCase(
+            "chess-endgame",
+            Chess.getInstance(),
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            new long[] {14, 191, 2812, 43238, 674624}),
+        new TestCase(
+            "chess-promotions",
+            Chess.getInstance(),
+            "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            new long[] {6, 264, 9467, 422333}),
+        new TestCase(
+            "chess-discovered-checks",
+            Chess.getInstance(),
+            "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+            new long[] {44, 1486, 62379, 2103487}),
+        new TestCase(
+            "nocastling-endgame",
+            new NoCastlingVariant(INITIAL, "No castling"),
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            new long[] {14, 191, 2812, 43238, 674624}),
+        new TestCase(
+            "fischerrandom-1",
+            FischerRandom.getInstance(),
+            "bqnb1rkr/pp3ppp/3ppn2/2p5/5P2/P2P4/NPP1P1PP/BQ1BNRKR w HFhf - 2 9",
+            new long[] {21, 528, 12189, 326672}),
+        new TestCase(
+            "fischerrandom-2",
+            FischerRandom.getInstance(),
+            "2nnrbkr/p1qppppp/8/1ppb4/6PP/3PP3/PPP2P2/BQNNRBKR w HEhe - 1 9",
+            new long[] {21, 807, 18002, 667366}),
+        new TestCase(
+            "fischerrandom-3",
+            FischerRandom.getInstance(),
+            "b1q1rrkb/pppppppp/3nn3/8/P7/1PPP4/4PPPP/BQNNRKRB w GE - 1 9",
+            new long[] {20, 479, 10471, 273318}),
+        new TestCase(
+            "fischerrandom-4",
+            FischerRandom.getInstance(),
+            "qbbnnrkr/2pp2pp/p7/1p2pp2/8/P3PP2/1PPP1KPP/QBBNNR1R w hf - 0 9",
+            new long[] {22, 593, 13440, 382958}),
+        new TestCase(
+            "shuffleboth-kiwipete",
+            ShuffleBoth.getInstance(),
+            KIWIPETE,
+            new long[] {48, 2039, 97862, 4085603}),
+        new TestCase( // Regression
+            "shuffleboth-d-file",
+            ShuffleBoth.getInstance(),
+            "r2k3r/pppppppp/8/8/8/8/PPPPPPPP/R2K3R w KQkq - 0 1",
+            new long[] {25, 625, 15206, 369906}),
+        new TestCase(
+            "suicide-initial",
+            Suicide.getInstance(),
+            INITIAL,
+            new long[] {20, 400, 8067, 153299, 2732672}),
+        new TestCase(
+            "giveaway-initial",
+            Giveaway.getInstance(),
+            INITIAL,
+            new long[] {20, 400, 8067, 153299, 2732672}),
+        new TestCase( // Regression
+            "atomic-initial",
+            Atomic.getInstance(),
+            INITIAL,
+            new long[] {20, 400, 8902, 197779, 4895725}),
+        new TestCase( // Regression
+            "atomic-kiwipete", Atomic.getInstance(), KIWIPETE, new long[] {48, 2022, 93375}),
+        new TestCase( // Regression
+            "shatranj-initial",
+            Shatranj.getInstance(),
+            Shatranj.SHATRANJ_INITIAL_POSITION_FEN,
+            new long[] {16, 256, 4176, 68122, 1164248})
+      };
+
+  /**
+   * Returns the test case with the specified name.
+   *
+   * @throws IllegalArgumentException if there is no test case with the specified name.
+   */
+  static TestCase getTestCase(String name) {
+    for (int i = 0; i < TEST_CASES.length; i++)
+      if (TEST_CASES[i].name.equals(name)) return TEST_CASES[i];
+
+    throw new IllegalArgumentException("No such test case: " + name);
+  }
+
+  /**
+   * Runs the test.
+   */
+  public static void main(String[] args) {
+    int maxDepth = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+    int threadCount = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+    ForkJoinPool pool = threadCount > 1 ? new ForkJoinPool(threadCount) : null;
+
+    boolean passed = true;
+    long totalNodes = 0;
+    long totalTime = 0;
+    for (int i = 0; i < TEST_CASES.length; i++) {
+      TestCase testCase = TEST_CASES[i];
+      Position pos = testCase.createPosition();
+      int depthCount = Math.min(maxDepth, testCase.counts.length);
+      for (int depth = 1; depth <= depthCount; depth++) {
+        long start = System.nanoTime();
+        long nodes = pool == null ? perft(pos, depth) : perft(pos, depth, pool);
+        long time = System.nanoTime() - start;
+
+        long expected = testCase.counts[depth - 1];
+        boolean matches = nodes == expected;
+        passed &= matches;
+        totalNodes += nodes;
+        totalTime += time;
+
+        System.out.println(
+            testCase.name
+                + " depth "
+                + depth
+                + ": "
+                + nodes
+                + (matches ? "" : " (expected " + expected + ")")
+                + " nodes in "
+                + (time / 1000000)
+                + "ms, "
+                + nodesPerSecond(nodes, time)
+                + " nodes/s");
+      }
+    }
+
+    System.out.println(
+        (passed ? "PASSED" : "FAILED")
+            + ": "
+            + totalNodes
+            + " nodes in "
+            + (totalTime / 1000000)
+            + "ms, "
+            + nodesPerSecond(totalNodes, totalTime)
+            + " nodes/s with "
+            + threadCount
+            + " thread(s)");
+
+    if (pool != null) pool.shutdown();
+    System.exit(passed ? 0 : 1);
+  }
+
+  /**
+   * Returns the amount of nodes per second, given the amount of nodes counted in the specified
+   * time, in nanoseconds.
+   */
+  private static long nodesPerSecond(long nodes, long time) {
+    return time == 0 ? 0 : nodes * 1000000000L / time;
+  }
+
+  /**
+   * Returns the amount of leaf nodes at the specified depth (which must be at least 1) of the tree
+   * of legal moves from the specified position, in the current thread.
+   */
+  public static long perft(Position pos, int depth) {
+    return new Searcher(pos, depth).perft(depth);
+  }
+
+  /**
+   * Returns the amount of leaf nodes at the specified depth (which must be at least 1) of the tree
+   * of legal moves from the specified position, searching the subtree of each root move in a
+   * separate task of the specified pool.
+   */
+  public static long perft(Position pos, int depth, ForkJoinPool pool) {
+    if (depth == 1) return perft(pos, depth);
+
+    LegalMoveGenerator generator = (LegalMoveGenerator) pos.getVariant();
+    MoveBuffer moves = new MoveBuffer();
+    int count = generator.generateLegalMoves(pos, moves);
+
+    RootMoveTask[] tasks = new RootMoveTask[count];
+    for (int i = 0; i < count; i++) {
+      Position child = new Position(pos);
+      child.makeMove(generator.createMove(pos, moves.get(i)));
+      tasks[i] = new RootMoveTask(child, depth - 1);
+    }
+
+    long nodes = 0;
+    for (int i = 0; i < count; i++) pool.execute(tasks[i]);
+    for (int i = 0; i < count; i++) nodes += tasks[i].join();
+
+    return nodes;
+  }
+
+  /**
+   * Searches the subtree of a single root move.
+   */
+  private static class RootMoveTask extends RecursiveTask<Long> {
+
+    /**
+     * The position after the root move.
+     */
+    private final Position pos;
+
+    /**
+     * The depth to search to, from the position after the root move.
+     */
+    private final int depth;
+
+    /**
+     * Creates a new <code>RootMoveTask</code> searching the specified position to the specified
+     * depth.
+     */
+    public RootMoveTask(Position pos, int depth) {
+      this.pos = pos;
+      this.depth = depth;
+    }
+
+    /**
+     * Searches the subtree.
+     */
+    @Override
+    protected Long compute() {
+      return Long.valueOf(perft(pos, depth));
+    }
+  }
+
+  /**
+   * Holds the move buffers for each ply of a single search, which makes and unmakes the moves on a
+   * single position, so that the search itself allocates only the moves it makes.
+   */
+  private static class Searcher {
+
+    /**
+     * The move buffer for each ply, indexed by the remaining depth.
+     */
+    private final MoveBuffer[] moves;
+
+    /**
+     * The position searched.
+     */
+    private final Position pos;
+
+    /**
+     * Creates a new <code>Searcher</code> for searching a copy of the specified position to the
+     * specified depth.
+     */
+    public Searcher(Position pos, int depth) {
+      this.pos = new Position(pos);
+      this.moves = new MoveBuffer[depth + 1];
+      for (int i = 0; i <= depth; i++) moves[i] = new MoveBuffer();
+    }
+
+    /**
+     * Counts the leaf nodes. At the last ply, the moves are counted without being made.
+     */
+    public long perft(int depth) {
+      LegalMoveGenerator generator = (LegalMoveGenerator) pos.getVariant();
+      MoveBuffer buffer = moves[depth];
+      buffer.clear();
+      int count = generator.generateLegalMoves(pos, buffer);
+      if (depth == 1) return count;
+
+      long nodes = 0;
+      for (int i = 0; i < count; i++) {
+        Position.Undo undo = pos.makeMove(generator.createMove(pos, buffer.get(i)));
+        nodes += perft(depth - 1);
+        pos.unmakeMove(undo);
+      }
+
+      return nodes;
+    }
+  }
+
+  /**
+   * A position whose leaf node counts are known.
+   */
+  static class TestCase {
+
+    /**
+     * The name of the test case.
+     */
+    public final String name;
+
+    /**
+     * The variant.
+     */
+    public final WildVariant variant;
+
+    /**
+     * The position, in FEN.
+     */
+    public final String fen;
+
+    /**
+     * The leaf node counts, starting at depth 1.
+     */
+    public final long[] counts;
+
+    /**
+     * Creates a new <code>TestCase</code> with the specified name, variant, position and counts.
+     */
+    public TestCase(String name, WildVariant variant, String fen, long[] counts) {
+      this.name = name;
+      this.variant = variant;
+      this.fen = fen;
+      this.counts = counts;
+    }
+
+    /**
+     * Creates the position of this test case.
+     */
+    public Position createPosition() {
+      Position pos = new Position(variant);
+      pos.setFEN(fen);
+      return pos;
+    }
+  }
+}
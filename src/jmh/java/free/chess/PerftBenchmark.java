@@ -0,0 +1,138 @@
+/**
+ * The chess framework library. More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * The chess framework library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2 of the License, or (at your option) any later version.
+ *
+ * The chess framework library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the chess
+ * framework library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite
+ * 330, Boston, MA 02111-1307 USA
+ */
+package free.chess;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures move generation and making moves with perft (see {@link Perft}), on a position of each
+ * variant. Each operation counts the leaf nodes of the position to a fixed depth; the amount of
+ * nodes per second is reported as the secondary "nodes" result, and the bytes allocated per node
+ * are the bytes the GC profiler reports per operation, divided by the count of the position. The
+ * setup verifies the count of the position.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PerftBenchmark {
+
+  /**
+   * The name of the test case (see {@link Perft}) whose position is searched.
+   */
+  @Param({
+    "chess-initial",
+    "chess-kiwipete",
+    "fischerrandom-1",
+    "shuffleboth-d-file",
+    "nocastling-endgame",
+    "suicide-initial",
+    "giveaway-initial",
+    "atomic-initial",
+    "shatranj-initial"
+  })
+  public String testCase;
+
+  /**
+   * The depth searched.
+   */
+  @Param("3")
+  public int depth;
+
+  /**
+   * The position searched.
+   */
+  private Position pos;
+
+  /**
+   * The pool searching the root moves in parallel.
+   */
+  private ForkJoinPool pool;
+
+  /**
+   * Counts the nodes searched, reported as a rate.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Counters {
+
+    /**
+     * The amount of leaf nodes counted.
+     */
+    public long nodes;
+
+    /**
+     * Resets the count before each iteration.
+     */
+    @Setup(Level.Iteration)
+    public void reset() {
+      nodes = 0;
+    }
+  }
+
+  /**
+   * Creates the position and the pool, and verifies the count of the position.
+   */
+  @Setup
+  public void setup() {
+    Perft.TestCase test = Perft.getTestCase(testCase);
+    pos = test.createPosition();
+    pool = new ForkJoinPool();
+
+    if (Perft.perft(pos, depth) != test.counts[depth - 1])
+      throw new IllegalStateException("Bad node count for " + testCase + " at depth " + depth);
+  }
+
+  /**
+   * Shuts down the pool.
+   */
+  @TearDown
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  /**
+   * Counts the leaf nodes in the current thread.
+   */
+  @Benchmark
+  public long perft(Counters counters) {
+    long nodes = Perft.perft(pos, depth);
+    counters.nodes += nodes;
+    return nodes;
+  }
+
+  /**
+   * Counts the leaf nodes, splitting the root moves between the threads of a fork-join pool.
+   */
+  @Benchmark
+  public long parallelPerft(Counters counters) {
+    long nodes = Perft.perft(pos, depth, pool);
+    counters.nodes += nodes;
+    return nodes;
+  }
+}
@@ -0,0 +1,140 @@
+/**
+ * The chessclub.com connection library. More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002-2003 Alexander Maryanovsky. All rights reserved.
+ *
+ * The chessclub.com connection library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * The chessclub.com connection library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the
+ * chessclub.com connection library; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package free.chessclub;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import free.chessclub.level2.Datagram;
+import free.util.FormatException;
+import free.util.LoopingInputStream;
+
+/**
+ * Measures the hot paths of reading and parsing the chessclub.com protocol, on the captured byte
+ * stream in <code>icc-traffic.txt</code> (mostly game and chat datagrams, with seeks, level1
+ * packets and plain lines). Each operation handles a single message (the next one in the stream),
+ * so the results are per message; run with the GC profiler (the default for
+ * <code>./gradlew jmh</code>) to see the bytes allocated per message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ChessclubParsingBenchmark {
+
+  /**
+   * The size of the chunks the data arrives in, as if read from the network.
+   */
+  private static final int CHUNK_SIZE = 1460;
+
+  /**
+   * The connection whose <code>readMessage</code> we benchmark.
+   */
+  private ChessclubConnection conn;
+
+  /**
+   * The stream the connection reads the traffic from, endlessly.
+   */
+  private InputStream in;
+
+  /**
+   * The traffic.
+   */
+  private byte[] data;
+
+  /**
+   * The offsets of the contents of the datagrams in the traffic, without the delimiters.
+   */
+  private int[] datagramOffsets;
+
+  /**
+   * The lengths of the contents of the datagrams in the traffic.
+   */
+  private int[] datagramLengths;
+
+  /**
+   * The index of the next datagram.
+   */
+  private int datagramIndex;
+
+  /**
+   * Loads the traffic and locates the datagrams in it.
+   */
+  @Setup
+  public void setup() throws IOException {
+    data = LoopingInputStream.loadResource(ChessclubParsingBenchmark.class, "icc-traffic.txt");
+
+    int count = 0;
+    for (int i = 0; i < data.length - 1; i++)
+      if ((data[i] == 0x19) && (data[i + 1] == '(')) count++;
+
+    datagramOffsets = new int[count];
+    datagramLengths = new int[count];
+    int index = 0;
+    for (int i = 0; index < count; i++) {
+      if ((data[i] == 0x19) && (data[i + 1] == '(')) {
+        int end = i + 2;
+        while ((data[end] != 0x19) || (data[end + 1] != ')')) end++;
+        datagramOffsets[index] = i + 2;
+        datagramLengths[index] = end - (i + 2);
+        index++;
+        i = end + 1;
+      }
+    }
+
+    conn = new ChessclubConnection(null, null, null);
+    in = conn.createInputStream(new LoopingInputStream(data, CHUNK_SIZE));
+  }
+
+  /**
+   * Reads (frames) the next message of the traffic - a line, packet or datagram - as the reader
+   * thread does.
+   */
+  @Benchmark
+  public Object readMessage() throws IOException {
+    return conn.readMessage(in);
+  }
+
+  /**
+   * Parses the next datagram of the traffic, locating its fields.
+   */
+  @Benchmark
+  public Datagram parseDatagram() throws FormatException {
+    int index = datagramIndex;
+    datagramIndex = (datagramIndex + 1) % datagramOffsets.length;
+    return Datagram.parseDatagram(data, datagramOffsets[index], datagramLengths[index]);
+  }
+
+  /**
+   * Parses the next datagram of the traffic and decodes all of its fields, as handling it
+   * eventually does.
+   */
+  @Benchmark
+  public void parseAndDecodeDatagram(Blackhole blackhole) throws FormatException {
+    Datagram datagram = parseDatagram();
+    int fieldCount = datagram.getFieldCount();
+    for (int i = 0; i < fieldCount; i++) blackhole.consume(datagram.getField(i));
+  }
+}
@@ -0,0 +1,171 @@
+/**
+ * The freechess.org connection library. More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002, 2003 Alexander Maryanovsky. All rights reserved.
+ *
+ * The freechess.org connection library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * The freechess.org connection library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the
+ * freechess.org connection library; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package free.freechess;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import free.util.LoopingInputStream;
+
+/**
+ * Measures the hot paths of reading and parsing the freechess.org protocol, on the realistic mix
+ * of lines in <code>fics-traffic.txt</code> (style 12 and chat dominated, with seeks, offers and
+ * assorted plain lines). Each operation handles a single line (the next one in the mix), so the
+ * results are per line; run with the GC profiler (the default for <code>./gradlew jmh</code>) to
+ * see the bytes allocated per line.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FreechessParsingBenchmark {
+
+  /**
+   * The size of the chunks the data arrives in, as if read from the network.
+   */
+  private static final int CHUNK_SIZE = 1460;
+
+  /**
+   * The connection whose <code>readMessage</code> we benchmark.
+   */
+  private FreechessConnection conn;
+
+  /**
+   * The stream the connection reads the traffic from, endlessly.
+   */
+  private InputStream in;
+
+  /**
+   * All the lines of the traffic.
+   */
+  private String[] lines;
+
+  /**
+   * The style 12 lines of the traffic.
+   */
+  private String[] style12Lines;
+
+  /**
+   * The seek (<code>&lt;s&gt;</code>) lines of the traffic.
+   */
+  private String[] seekLines;
+
+  /**
+   * The game info (<code>&lt;g1&gt;</code>) lines of the traffic.
+   */
+  private String[] gameInfoLines;
+
+  /**
+   * The index of the next line of each kind.
+   */
+  private int lineIndex, style12Index, seekIndex, gameInfoIndex;
+
+  /**
+   * Loads the traffic and prepares the stream and line arrays.
+   */
+  @Setup
+  public void setup() throws IOException {
+    lines = LineClassificationBenchmark.loadLines("fics-traffic.txt");
+    style12Lines = linesStartingWith("<12> ");
+    seekLines = linesStartingWith("<s> ");
+    gameInfoLines = linesStartingWith("<g1> ");
+
+    // FICS terminates lines with "\n\r"
+    StringBuffer buf = new StringBuffer();
+    for (int i = 0; i < lines.length; i++) buf.append(lines[i]).append("\n\r");
+    byte[] data = new byte[buf.length()];
+    for (int i = 0; i < data.length; i++) data[i] = (byte) buf.charAt(i);
+
+    conn = new FreechessConnection(null, null, null);
+    in = conn.createInputStream(new LoopingInputStream(data, CHUNK_SIZE));
+  }
+
+  /**
+   * Returns the lines of the traffic (without any leading prompt) which start with the specified
+   * prefix.
+   */
+  private String[] linesStartingWith(String prefix) {
+    Vector result = new Vector();
+    for (int i = 0; i < lines.length; i++) {
+      String line = lines[i];
+      while (line.startsWith("fics% ")) line = line.substring("fics% ".length());
+      if (line.startsWith(prefix)) result.addElement(line);
+    }
+
+    String[] array = new String[result.size()];
+    result.copyInto(array);
+    return array;
+  }
+
+  /**
+   * Reads (frames and strips the prompt of) the next line of the traffic, as the reader thread
+   * does.
+   */
+  @Benchmark
+  public Object readMessage() throws IOException {
+    return conn.readMessage(in);
+  }
+
+  /**
+   * Classifies the next line of the traffic, parsing it into the object
+   * <code>handleMessage</code> is passed.
+   */
+  @Benchmark
+  public Object classifyLine() {
+    String line = lines[lineIndex];
+    lineIndex = (lineIndex + 1) % lines.length;
+    return FreechessConnection.parseLine(line);
+  }
+
+  /**
+   * Parses the next style 12 line of the traffic.
+   */
+  @Benchmark
+  public Style12Struct parseStyle12() {
+    String line = style12Lines[style12Index];
+    style12Index = (style12Index + 1) % style12Lines.length;
+    return Style12Struct.parseStyle12Line(line);
+  }
+
+  /**
+   * Parses the next seek line of the traffic.
+   */
+  @Benchmark
+  public SeekInfoStruct parseSeekInfo() {
+    String line = seekLines[seekIndex];
+    seekIndex = (seekIndex + 1) % seekLines.length;
+    return SeekInfoStruct.parseSeekInfoLine(line);
+  }
+
+  /**
+   * Parses the next game info line of the traffic.
+   */
+  @Benchmark
+  public GameInfoStruct parseGameInfo() {
+    String line = gameInfoLines[gameInfoIndex];
+    gameInfoIndex = (gameInfoIndex + 1) % gameInfoLines.length;
+    return GameInfoStruct.parseGameInfoLine(line);
+  }
+}
@@ -0,0 +1,250 @@
+/**
+ * The freechess.org connection library. More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * The freechess.org connection library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * The freechess.org connection library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the
+ * freechess.org connection library; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package free.freechess;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the cost of classifying the lines of a FICS session by trying every known type of line
+ * in turn (the way <code>FreechessConnection</code> used to do it) to the cost of classifying them
+ * with {@link FreechessConnection#parseLine(String)}. Both benchmarks replay the session in
+ * <code>fics-session.txt</code> and report the time it takes to classify one line.
+ * <code>LineClassificationTest</code> checks that both classify the lines the same way.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LineClassificationBenchmark {
+
+  /**
+   * The lines of the replayed session.
+   */
+  private String[] lines;
+
+  /**
+   * The regular expressions used by the cascade, taken from <code>FreechessConnection</code>, in
+   * the order they are tried.
+   */
+  private Pattern gameEnd,
+      stoppedObserving,
+      stoppedExamining,
+      illegalMove,
+      channelTell,
+      login,
+      wrongPassword,
+      ivarSet,
+      personalTell,
+      say,
+      ptell,
+      shout,
+      ishout,
+      tshout,
+      cshout,
+      announcement,
+      kibitz,
+      whisper,
+      qtell,
+      offer,
+      offeredDraw,
+      offeredAdjourn,
+      offeredAbort,
+      offeredTakeback,
+      declined,
+      withdrew,
+      counteredTakeback,
+      atBoard,
+      primaryGameChanged;
+
+  /**
+   * Loads the session and the regular expressions.
+   */
+  @Setup
+  public void setup() throws IOException, ReflectiveOperationException {
+    lines = loadLines("fics-session.txt");
+
+    gameEnd = pattern("GAME_END_REGEX");
+    stoppedObserving = pattern("STOPPED_OBSERVING_REGEX");
+    stoppedExamining = pattern("STOPPED_EXAMINING_REGEX");
+    illegalMove = pattern("ILLEGAL_MOVE_REGEX");
+    channelTell = pattern("CHANNEL_TELL_REGEX");
+    login = pattern("LOGIN_REGEX");
+    wrongPassword = pattern("WRONG_PASSWORD_REGEX");
+    ivarSet = pattern("IVAR_SET_REGEX");
+    personalTell = pattern("PERSONAL_TELL_REGEX");
+    say = pattern("SAY_REGEX");
+    ptell = pattern("PTELL_REGEX");
+    shout = pattern("SHOUT_REGEX");
+    ishout = pattern("ISHOUT_REGEX");
+    tshout = pattern("TSHOUT_REGEX");
+    cshout = pattern("CSHOUT_REGEX");
+    announcement = pattern("ANNOUNCEMENT_REGEX");
+    kibitz = pattern("KIBITZ_REGEX");
+    whisper = pattern("WHISPER_REGEX");
+    qtell = pattern("QTELL_REGEX");
+    offer = pattern("OFFER_REGEX");
+    offeredDraw = pattern("PLAYER_OFFERED_DRAW_REGEX");
+    offeredAdjourn = pattern("PLAYER_OFFERED_ADJOURN_REGEX");
+    offeredAbort = pattern("PLAYER_OFFERED_ABORT_REGEX");
+    offeredTakeback = pattern("PLAYER_OFFERED_TAKEBACK_REGEX");
+    declined = pattern("PLAYER_DECLINED_REGEX");
+    withdrew = pattern("PLAYER_WITHDREW_REGEX");
+    counteredTakeback = pattern("PLAYER_COUNTER_TAKEBACK_OFFER_REGEX");
+    atBoard = pattern("AT_BOARD_REGEX");
+    primaryGameChanged = pattern("PRIMARY_GAME_CHANGED_REGEX");
+  }
+
+  /**
+   * Classifies all the lines of the session by trying every known type of line in turn.
+   */
+  @Benchmark
+  public void cascade(Blackhole blackhole) {
+    for (int i = 0; i < lines.length; i++) blackhole.consume(classifyByCascade(lines[i]));
+  }
+
+  /**
+   * Classifies all the lines of the session with <code>FreechessConnection.parseLine</code>.
+   */
+  @Benchmark
+  public void dispatchTable(Blackhole blackhole) {
+    for (int i = 0; i < lines.length; i++)
+      blackhole.consume(FreechessConnection.parseLine(lines[i]));
+  }
+
+  /**
+   * Classifies the specified line the way <code>FreechessConnection</code> used to, returning the
+   * data parsed out of the line, or the line itself if it's a plain line.
+   */
+  private Object classifyByCascade(String line) {
+    Matcher matcher;
+
+    if (line.startsWith("<g1> ")) return GameInfoStruct.parseGameInfoLine(line);
+    if (line.startsWith("<12> ")) return Style12Struct.parseStyle12Line(line);
+    if (line.startsWith("<d1> ")) return DeltaBoardStruct.parseDeltaBoardLine(line);
+    if (line.equals("<sc>")) return line;
+    if (line.startsWith("<s> ") || line.startsWith("<sn> "))
+      return SeekInfoStruct.parseSeekInfoLine(line);
+    if (line.startsWith("<sr> ")) return line.substring("<sr> ".length());
+    if (line.startsWith("<b1> ")) return line;
+    if (line.startsWith("{Game ") && (matcher = gameEnd.matcher(line)).matches()) return matcher;
+    if (line.startsWith("Removing game ") && (matcher = stoppedObserving.matcher(line)).matches())
+      return matcher;
+    if (line.startsWith("You are no longer examining game ")
+        && (matcher = stoppedExamining.matcher(line)).matches()) return matcher;
+    if (line.equals("Entering setup mode.")) return line;
+    if (line.equals("Game is validated - entering examine mode.")) return line;
+    if (line.startsWith("Illegal move ") && (matcher = illegalMove.matcher(line)).matches())
+      return matcher;
+    if (line.equals("It is not your move.")) return line;
+    if (line.equals("The clock is paused, use \"unpause\" to resume.")) return line;
+    if ((line.indexOf("): ") != -1) && (matcher = channelTell.matcher(line)).matches())
+      return matcher;
+    if ((matcher = login.matcher(line)).matches()) return matcher;
+    if ((matcher = wrongPassword.matcher(line)).matches()) return matcher;
+    if ((line.indexOf("set") != -1) && (matcher = ivarSet.matcher(line)).matches()) {
+      // Otherwise it's a notification that something has been set, but not a known ivar
+      if (Ivar.getByName(matcher.group(1)) != null) return matcher;
+    }
+    if ((line.indexOf("tells you: ") != -1) && (matcher = personalTell.matcher(line)).matches())
+      return matcher;
+    if ((line.indexOf("says: ") != -1) && (matcher = say.matcher(line)).matches()) return matcher;
+    if ((line.indexOf("(your partner) tells you: ") != -1)
+        && (matcher = ptell.matcher(line)).matches()) return matcher;
+    if ((line.indexOf("shouts: ") != -1) && (matcher = shout.matcher(line)).matches())
+      return matcher;
+    if (line.startsWith("--> ") && (matcher = ishout.matcher(line)).matches()) return matcher;
+    if ((line.indexOf("t-shouts: ") != -1) && (matcher = tshout.matcher(line)).matches())
+      return matcher;
+    if ((line.indexOf("c-shouts: ") != -1) && (matcher = cshout.matcher(line)).matches())
+      return matcher;
+    if (line.startsWith("    **ANNOUNCEMENT** from ")
+        && (matcher = announcement.matcher(line)).matches()) return matcher;
+    if ((line.indexOf("kibitzes: ") != -1) && (matcher = kibitz.matcher(line)).matches())
+      return matcher;
+    if ((line.indexOf("whispers: ") != -1) && (matcher = whisper.matcher(line)).matches())
+      return matcher;
+    if (line.startsWith(":") && (matcher = qtell.matcher(line)).matches()) return matcher;
+    if ((line.startsWith("<pt> ") || line.startsWith("<pf> "))
+        && (matcher = offer.matcher(line)).matches()) return matcher;
+    if (line.startsWith("<pr> ")) return Integer.valueOf(line.substring("<pr> ".length()));
+
+    if (line.startsWith("Game ")) {
+      if ((matcher = offeredDraw.matcher(line)).matches()) return matcher;
+      if ((matcher = offeredAdjourn.matcher(line)).matches()) return matcher;
+      if ((matcher = offeredAbort.matcher(line)).matches()) return matcher;
+      if ((matcher = offeredTakeback.matcher(line)).matches()) return matcher;
+      if ((line.indexOf("declines the ") != -1) && (matcher = declined.matcher(line)).matches())
+        return matcher;
+      if ((line.indexOf("withdraws the ") != -1) && (matcher = withdrew.matcher(line)).matches())
+        return matcher;
+      if ((line.indexOf("proposes a different number ") != -1)
+          && (matcher = counteredTakeback.matcher(line)).matches()) return matcher;
+    }
+
+    if (line.startsWith("You are now at ") && (matcher = atBoard.matcher(line)).matches())
+      return matcher;
+    if (line.startsWith("Your primary game is now game ")
+        && (matcher = primaryGameChanged.matcher(line)).matches()) return matcher;
+
+    return line;
+  }
+
+  /**
+   * Returns the value of the <code>Pattern</code> constant with the specified name in
+   * <code>FreechessConnection</code>.
+   */
+  private static Pattern pattern(String name) throws ReflectiveOperationException {
+    Field field = FreechessConnection.class.getDeclaredField(name);
+    field.setAccessible(true);
+    return (Pattern) field.get(null);
+  }
+
+  /**
+   * Loads the lines of the specified resource, which is looked up relatively to this class.
+   */
+  static String[] loadLines(String resourceName) throws IOException {
+    BufferedReader reader =
+        new BufferedReader(
+            new InputStreamReader(
+                LineClassificationBenchmark.class.getResourceAsStream(resourceName), "ISO-8859-1"));
+    try {
+      Vector lines = new Vector();
+      String line;
+      while ((line = reader.readLine()) != null) lines.addElement(line);
+
+      String[] result = new String[lines.size()];
+      lines.copyInto(result);
+      return result;
+    } finally {
+      reader.close();
+    }
+  }
+}
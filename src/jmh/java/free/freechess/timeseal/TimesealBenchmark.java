@@ -0,0 +1,164 @@
+/**
+ * The freechess.org connection library. More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002, 2003 Alexander Maryanovsky. All rights reserved.
+ *
+ * The freechess.org connection library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * The freechess.org connection library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the
+ * freechess.org connection library; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package free.freechess.timeseal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the overhead timeseal adds to sending a command (stamping and encrypting it) and to
+ * reading the server's data (filtering the pings out of it). The setup verifies that the encoded
+ * commands decode back into the original command followed by a timestamp.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TimesealBenchmark {
+
+  /**
+   * A typical command - a move.
+   */
+  private static final byte[] COMMAND = bytes("e2e4\n");
+
+  /**
+   * A typical burst of commands sent together.
+   */
+  private static final byte[] COMMANDS = bytes("e2e4\nset style 12\ntell 50 hello everyone\n");
+
+  /**
+   * The server data read in the ping filtering benchmark - about 8K of text with a ping every 1K.
+   */
+  private byte[] serverData;
+
+  /**
+   * The buffer the server data is read into.
+   */
+  private final byte[] readBuffer = new byte[8192];
+
+  /**
+   * The stream the benchmarked commands are written to.
+   */
+  private TimesealOutputStream out;
+
+  /**
+   * Creates the streams and the server data, and verifies that the encoding is correct.
+   */
+  @Setup
+  public void setup() throws IOException {
+    out =
+        new TimesealOutputStream(
+            new OutputStream() {
+              @Override
+              public void write(int b) {}
+
+              @Override
+              public void write(byte[] b, int off, int len) {}
+            });
+
+    ByteArrayOutputStream server = new ByteArrayOutputStream();
+    for (int i = 0; i < 8; i++) {
+      for (int j = 0; j < 16; j++)
+        server.write(bytes("fics% Game 42: GuestABCD moves: Nf3 (0:01)....................\n\r"));
+      server.write(new byte[] {'[', 'G', ']', 0});
+    }
+    serverData = server.toByteArray();
+
+    verify();
+  }
+
+  /**
+   * Checks that a command written to a <code>TimesealOutputStream</code> decodes back into the
+   * command followed by a timestamp.
+   */
+  private static void verify() throws IOException {
+    ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    new TimesealOutputStream(encoded).write(COMMAND, 0, COMMAND.length);
+    byte[] buf = encoded.toByteArray();
+
+    int length = buf.length - 2;
+    if ((length % TimesealOutputStream.BLOCK_SIZE != 0)
+        || (buf[length] != TimesealOutputStream.LINE_END)
+        || (buf[length + 1] != '\n')) throw new IllegalStateException("Bad line framing");
+
+    TimesealOutputStream.decode(buf, 0, length);
+    int commandLength = COMMAND.length - 1;
+    for (int i = 0; i < commandLength; i++)
+      if (buf[i] != COMMAND[i]) throw new IllegalStateException("Bad command encoding");
+    if (buf[commandLength] != TimesealOutputStream.TIMESTAMP_START)
+      throw new IllegalStateException("Missing timestamp");
+    int i = commandLength + 1;
+    while (Character.isDigit((char) buf[i])) i++;
+    if ((i == commandLength + 1) || (buf[i] != TimesealOutputStream.TIMESTAMP_END))
+      throw new IllegalStateException("Bad timestamp");
+  }
+
+  /**
+   * Stamps and encrypts a single move.
+   */
+  @Benchmark
+  public void encodeMove() throws IOException {
+    out.write(COMMAND, 0, COMMAND.length);
+  }
+
+  /**
+   * Stamps and encrypts a burst of three commands, written together.
+   */
+  @Benchmark
+  public void encodeBurst() throws IOException {
+    out.write(COMMANDS, 0, COMMANDS.length);
+  }
+
+  /**
+   * Reads the server data through the ping filter.
+   */
+  @Benchmark
+  public int filterPings() throws IOException {
+    TimesealInputStream in =
+        new TimesealInputStream(
+            new ByteArrayInputStream(serverData),
+            new OutputStream() {
+              @Override
+              public void write(int b) {}
+            });
+
+    int total = 0;
+    int count;
+    while ((count = in.read(readBuffer, 0, readBuffer.length)) != -1) total += count;
+
+    return total;
+  }
+
+  /**
+   * Returns the bytes of the specified ASCII string.
+   */
+  private static byte[] bytes(String s) {
+    byte[] bytes = new byte[s.length()];
+    for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) s.charAt(i);
+
+    return bytes;
+  }
+}
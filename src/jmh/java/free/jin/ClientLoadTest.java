@@ -0,0 +1,267 @@
+/**
+ * Jin - a chess client for internet chess servers. More information is available at
+ * http://www.jinchess.com/. Copyright (C) 2003 Alexander Maryanovsky. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if
+ * not, write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
+ * 02111-1307, USA.
+ */
+package free.jin;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Vector;
+
+import javax.swing.SwingUtilities;
+
+import free.chessclub.ChessclubConnection;
+import free.chessclub.MockChessclubServer;
+import free.freechess.MockFreechessServer;
+import free.jin.chessclub.JinChessclubConnection;
+import free.jin.freechess.JinFreechessConnection;
+import free.util.ChannelSocket;
+import free.util.Connection;
+import free.util.ConnectionStats;
+import free.util.MockServer;
+
+/**
+ * Load tests Jin's entire client pipeline (reading, parsing, dispatching and handling server
+ * messages in the AWT event dispatching thread) against a mock server, without a live server. The
+ * arguments are:
+ * <OL>
+ * <LI>The server - "fics" or "icc".
+ * <LI>The amount of observed games.
+ * <LI>The rate at which moves are made in each game, in moves per second.
+ * <LI>The rate of tells in a channel, in tells per second.
+ * <LI>The rate of new seeks, in seeks per second.
+ * <LI>The duration of the test, in seconds.
+ * <LI>The amount of concurrent sessions, each to a mock server of its own with the above load.
+ * </OL>
+ * For example, "fics 100 1 50 5 60" runs for a minute with 100 games observed at bullet pace, a
+ * busy channel and a moderately busy seek list. At the end, the test reports the throughput of the
+ * connections, how long events had to wait for the event dispatching thread, how much the heap has
+ * grown and how many threads were added for the sessions.
+ */
+public class ClientLoadTest {
+
+  /**
+   * The interval between probes of the event dispatching thread's responsiveness, in milliseconds.
+   */
+  private static final int PROBE_INTERVAL = 10;
+
+  /**
+   * The amount of probes run so far.
+   */
+  private static long probeCount = 0;
+
+  /**
+   * The total time probes waited for the event dispatching thread, in nanoseconds.
+   */
+  private static long probeDelay = 0;
+
+  /**
+   * The longest time a probe waited for the event dispatching thread, in nanoseconds.
+   */
+  private static long maxProbeDelay = 0;
+
+  /**
+   * Runs the test.
+   */
+  public static void main(String[] args) throws Exception {
+    String serverName = args.length > 0 ? args[0] : "fics";
+    int gameCount = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+    double moveRate = args.length > 2 ? Double.parseDouble(args[2]) : 1;
+    double channelRate = args.length > 3 ? Double.parseDouble(args[3]) : 50;
+    double seekRate = args.length > 4 ? Double.parseDouble(args[4]) : 5;
+    int duration = args.length > 5 ? Integer.parseInt(args[5]) : 60;
+
+    // Keep anything the client prints, such as the protocol log if enabled, out of the report
+    PrintStream report = System.out;
+    System.setOut(
+        new PrintStream(
+            new OutputStream() {
+              @Override
+              public void write(int b) {}
+
+              @Override
+              public void write(byte[] b, int off, int len) {}
+            }));
+
+    int sessionCount = args.length > 6 ? Integer.parseInt(args[6]) : 1;
+
+    Vector servers = new Vector();
+    Vector conns = new Vector();
+    for (int i = 0; i < sessionCount; i++) {
+      MockServer server;
+      Connection conn;
+      if ("icc".equals(serverName)) {
+        server = new MockChessclubServer();
+        if (gameCount > 0)
+          server.addFeed(MockChessclubServer.observedGames(1, gameCount), gameCount * moveRate);
+        if (channelRate > 0) server.addFeed(MockChessclubServer.channelTells(50), channelRate);
+        if (seekRate > 0) server.addFeed(MockChessclubServer.seeks(200), seekRate);
+        conn =
+            new JinChessclubConnection("LoadTester", null) {
+              @Override
+              protected Socket connectImpl(String hostname, int port) throws IOException {
+                return new ChannelSocket(hostname, port);
+              }
+            };
+      } else if ("fics".equals(serverName)) {
+        server = new MockFreechessServer();
+        if (gameCount > 0)
+          server.addFeed(MockFreechessServer.observedGames(1, gameCount), gameCount * moveRate);
+        if (channelRate > 0) server.addFeed(MockFreechessServer.channelTells(50), channelRate);
+        if (seekRate > 0) server.addFeed(MockFreechessServer.seeks(200), seekRate);
+        conn =
+            new JinFreechessConnection("LoadTester", null) {
+              @Override
+              protected Socket connectImpl(String hostname, int port) throws IOException {
+                // The mock server doesn't speak timeseal
+                return new ChannelSocket(hostname, port);
+              }
+            };
+      } else throw new IllegalArgumentException("Unknown server: " + serverName);
+
+      server.start();
+      servers.addElement(server);
+      conns.addElement(conn);
+    }
+
+    long usedMemoryBefore = usedMemory();
+    int threadCountBefore = clientThreadCount();
+    long startTime = System.nanoTime();
+    for (int i = 0; i < sessionCount; i++) {
+      Connection conn = (Connection) conns.elementAt(i);
+      conn.initiateConnect("localhost", ((MockServer) servers.elementAt(i)).getPort());
+    }
+
+    long endTime = startTime + duration * 1000000000L;
+    int maxThreadCount = threadCountBefore;
+    while (System.nanoTime() < endTime) {
+      probe();
+      maxThreadCount = Math.max(maxThreadCount, clientThreadCount());
+      Thread.sleep(PROBE_INTERVAL);
+    }
+    int threadCountDuring = clientThreadCount();
+    double seconds = (System.nanoTime() - startTime) / 1000000000.0;
+
+    for (int i = 0; i < sessionCount; i++) {
+      ((Connection) conns.elementAt(i)).close();
+      ((MockServer) servers.elementAt(i)).stop();
+    }
+    long usedMemoryAfter = usedMemory();
+
+    long messageCount = 0;
+    long byteCount = 0;
+    long commandCount = 0;
+    long handledCount = 0;
+    for (int i = 0; i < sessionCount; i++) {
+      MockServer server = (MockServer) servers.elementAt(i);
+      messageCount += server.getMessageCount();
+      byteCount += server.getByteCount();
+      commandCount += server.getCommandCount();
+      handledCount += ((Connection) conns.elementAt(i)).getStats().getHandledCount();
+    }
+
+    report.println(
+        "server: "
+            + messageCount
+            + " messages ("
+            + byteCount
+            + " bytes) sent, "
+            + commandCount
+            + " commands received");
+    report.println(
+        "client: "
+            + (long) (handledCount / seconds)
+            + " messages/s handled by "
+            + sessionCount
+            + " sessions");
+    for (int i = 0; i < sessionCount; i++) {
+      Connection conn = (Connection) conns.elementAt(i);
+      ConnectionStats stats = conn.getStats();
+      report.println(stats);
+      report.println(((free.jin.Connection) conn).getLagMonitor());
+      report.println("messages: " + Arrays.asList(stats.getMessageTypeCounts()));
+      String[] listenerTimes = stats.getListenerTimes();
+      for (int j = 0; j < listenerTimes.length; j++) report.println("  " + listenerTimes[j]);
+      if (conn instanceof ChessclubConnection)
+        report.println(((ChessclubConnection) conn).getDatagramStats());
+    }
+    report.println(
+        "event thread delay: avg="
+            + (probeCount == 0 ? 0 : probeDelay / probeCount / 1000)
+            + "us max="
+            + maxProbeDelay / 1000
+            + "us over "
+            + probeCount
+            + " probes");
+    report.println("heap growth: " + (usedMemoryAfter - usedMemoryBefore) / 1024 + "KB");
+    report.println(
+        "threads: "
+            + threadCountBefore
+            + " before connecting, "
+            + threadCountDuring
+            + " at the end, "
+            + maxThreadCount
+            + " at most");
+
+    System.exit(0);
+  }
+
+  /**
+   * Measures how long it takes the event dispatching thread to get to a runnable posted to it.
+   */
+  private static void probe() {
+    final long postTime = System.nanoTime();
+    SwingUtilities.invokeLater(
+        new Runnable() {
+          @Override
+          public void run() {
+            long delay = System.nanoTime() - postTime;
+            synchronized (ClientLoadTest.class) {
+              probeCount++;
+              probeDelay += delay;
+              maxProbeDelay = Math.max(maxProbeDelay, delay);
+            }
+          }
+        });
+  }
+
+  /**
+   * Returns the amount of live threads, not counting those of the mock servers.
+   */
+  private static int clientThreadCount() {
+    int count = 0;
+    Iterator threads = Thread.getAllStackTraces().keySet().iterator();
+    while (threads.hasNext()) {
+      if (!((Thread) threads.next()).getName().startsWith("MockServer")) count++;
+    }
+    return count;
+  }
+
+  /**
+   * Returns the amount of heap memory in use after garbage collection.
+   */
+  private static long usedMemory() throws InterruptedException {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      Thread.sleep(100);
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
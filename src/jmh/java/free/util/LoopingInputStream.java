@@ -0,0 +1,105 @@
+/**
+ * The utillib library. More information is available at http://www.jinchess.com/. Copyright (C)
+ * 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * The utillib library is free software; you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * The utillib library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with utillib
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+package free.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An <code>InputStream</code> which returns the contents of a byte array over and over again,
+ * endlessly, as if a server kept sending the same session. Each read returns at most a configurable
+ * amount of bytes, simulating the chunks data arrives from the network in.
+ */
+public class LoopingInputStream extends InputStream {
+
+  /**
+   * The data.
+   */
+  private final byte[] data;
+
+  /**
+   * The maximum amount of bytes returned by a single read.
+   */
+  private final int chunkSize;
+
+  /**
+   * The index of the next byte to return.
+   */
+  private int pos = 0;
+
+  /**
+   * Creates a new <code>LoopingInputStream</code> which returns the specified data over and over
+   * again, in reads of at most the specified amount of bytes.
+   */
+  public LoopingInputStream(byte[] data, int chunkSize) {
+    if (data.length == 0) throw new IllegalArgumentException("No data");
+
+    this.data = data;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Returns the next byte.
+   */
+  @Override
+  public int read() {
+    int b = data[pos++] & 0xff;
+    if (pos == data.length) pos = 0;
+    return b;
+  }
+
+  /**
+   * Reads up to the chunk size of bytes, stopping at the end of the data.
+   */
+  @Override
+  public int read(byte[] b, int off, int len) {
+    int count = Math.min(Math.min(len, chunkSize), data.length - pos);
+    System.arraycopy(data, pos, b, off, count);
+    pos += count;
+    if (pos == data.length) pos = 0;
+    return count;
+  }
+
+  /**
+   * Loads the contents of the specified resource, which is looked up relatively to the specified
+   * class.
+   */
+  public static byte[] loadResource(Class c, String resourceName) throws IOException {
+    InputStream in = c.getResourceAsStream(resourceName);
+    if (in == null) throw new IOException("Missing resource: " + resourceName);
+
+    try {
+      byte[] buf = new byte[8192];
+      int length = 0;
+      int count;
+      while ((count = in.read(buf, length, buf.length - length)) != -1) {
+        length += count;
+        if (length == buf.length) {
+          byte[] newBuf = new byte[buf.length * 2];
+          System.arraycopy(buf, 0, newBuf, 0, length);
+          buf = newBuf;
+        }
+      }
+
+      byte[] result = new byte[length];
+      System.arraycopy(buf, 0, result, 0, length);
+      return result;
+    } finally {
+      in.close();
+    }
+  }
+}
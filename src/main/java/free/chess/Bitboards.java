@@ -0,0 +1,360 @@
+/**
+ * The chess framework library. More information is available at http://www.jinchess.com/. Copyright
+ * (C) 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * The chess framework library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2 of the License, or (at your option) any later version.
+ *
+ * The chess framework library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the chess
+ * framework library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite
+ * 330, Boston, MA 02111-1307 USA
+ */
+package free.chess;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Utilities for working with bitboards - sets of squares represented by the bits of a
+ * <code>long</code>, where the square with index {@link Square#getIndex()} is represented by the
+ * bit with the same index. The attack tables of the standard chess pieces are computed once, so
+ * that obtaining the squares attacked by a piece is a table lookup for jumping pieces and a few
+ * word operations for sliding pieces.
+ */
+public final class Bitboards {
+
+  /**
+   * The first rank.
+   */
+  public static final long RANK_1 = 0xffL;
+
+  /**
+   * The eighth rank.
+   */
+  public static final long RANK_8 = RANK_1 << 56;
+
+  /**
+   * The a file.
+   */
+  public static final long FILE_A = 0x0101010101010101L;
+
+  /**
+   * The h file.
+   */
+  public static final long FILE_H = FILE_A << 7;
+
+  /**
+   * The file and rank directions of the rays along which sliding pieces move. The first four
+   * directions increase the square index, the last four decrease it.
+   */
+  private static final int[][] RAY_DIRECTIONS =
+      new int[][] {
+        new int[] {0, 1},
+        new int[] {1, 0},
+        new int[] {1, 1},
+        new int[] {-1, 1},
+        new int[] {0, -1},
+        new int[] {-1, 0},
+        new int[] {-1, -1},
+        new int[] {1, -1}
+      };
+
+  /**
+   * The indices into <code>RAY_DIRECTIONS</code> of the orthogonal directions.
+   */
+  private static final int[] ORTHOGONAL_RAYS = new int[] {0, 1, 4, 5};
+
+  /**
+   * The indices into <code>RAY_DIRECTIONS</code> of the diagonal directions.
+   */
+  private static final int[] DIAGONAL_RAYS = new int[] {2, 3, 6, 7};
+
+  /**
+   * The squares on each ray from each square, up to the edge of the board, indexed by ray direction
+   * and then by square index.
+   */
+  private static final long[][] RAYS = new long[RAY_DIRECTIONS.length][64];
+
+  /**
+   * The squares attacked by a knight on each square.
+   */
+  private static final long[] KNIGHT_ATTACKS = new long[64];
+
+  /**
+   * The squares attacked by a king on each square.
+   */
+  private static final long[] KING_ATTACKS = new long[64];
+
+  /**
+   * The squares attacked by a white pawn on each square.
+   */
+  private static final long[] WHITE_PAWN_ATTACKS = new long[64];
+
+  /**
+   * The squares attacked by a black pawn on each square.
+   */
+  private static final long[] BLACK_PAWN_ATTACKS = new long[64];
+
+  static {
+    int[][] knightOffsets =
+        new int[][] {
+          new int[] {-1, -2},
+          new int[] {1, -2},
+          new int[] {-2, -1},
+          new int[] {2, -1},
+          new int[] {-2, 1},
+          new int[] {2, 1},
+          new int[] {-1, 2},
+          new int[] {1, 2}
+        };
+    int[][] whitePawnOffsets = new int[][] {new int[] {-1, 1}, new int[] {1, 1}};
+    int[][] blackPawnOffsets = new int[][] {new int[] {-1, -1}, new int[] {1, -1}};
+
+    for (int index = 0; index < 64; index++) {
+      KNIGHT_ATTACKS[index] = offsetTargets(index, knightOffsets);
+      KING_ATTACKS[index] = offsetTargets(index, RAY_DIRECTIONS);
+      WHITE_PAWN_ATTACKS[index] = offsetTargets(index, whitePawnOffsets);
+      BLACK_PAWN_ATTACKS[index] = offsetTargets(index, blackPawnOffsets);
+
+      for (int ray = 0; ray < RAY_DIRECTIONS.length; ray++) {
+        int fileDirection = RAY_DIRECTIONS[ray][0];
+        int rankDirection = RAY_DIRECTIONS[ray][1];
+        int file = (index & 7) + fileDirection;
+        int rank = (index >> 3) + rankDirection;
+        while (Square.isValid(file, rank)) {
+          RAYS[ray][index] |= bit(file, rank);
+          file += fileDirection;
+          rank += rankDirection;
+        }
+      }
+    }
+  }
+
+  /**
+   * No instances.
+   */
+  private Bitboards() {}
+
+  /**
+   * Returns the bitboard containing only the square with the specified index.
+   */
+  public static long bit(int index) {
+    return 1L << index;
+  }
+
+  /**
+   * Returns the bitboard containing only the square with the specified file and rank.
+   */
+  public static long bit(int file, int rank) {
+    return 1L << ((rank << 3) | file);
+  }
+
+  /**
+   * Returns the bitboard containing only the specified square.
+   */
+  public static long bit(Square square) {
+    return 1L << square.getIndex();
+  }
+
+  /**
+   * Returns the squares which are at the specified file and rank offsets from the square with the
+   * specified index, ignoring offsets which lead off the board.
+   */
+  public static long offsetTargets(int index, int[][] offsets) {
+    int file = index & 7;
+    int rank = index >> 3;
+
+    long targets = 0;
+    for (int i = 0; i < offsets.length; i++) {
+      int targetFile = file + offsets[i][0];
+      int targetRank = rank + offsets[i][1];
+      if (Square.isValid(targetFile, targetRank)) targets |= bit(targetFile, targetRank);
+    }
+
+    return targets;
+  }
+
+  /**
+   * Returns the squares attacked by a knight on the square with the specified index.
+   */
+  public static long knightAttacks(int index) {
+    return KNIGHT_ATTACKS[index];
+  }
+
+  /**
+   * Returns the squares attacked by a king on the square with the specified index.
+   */
+  public static long kingAttacks(int index) {
+    return KING_ATTACKS[index];
+  }
+
+  /**
+   * Returns the squares attacked by a pawn of the specified color ({@link Piece#WHITE} or
+   * {@link Piece#BLACK}) on the square with the specified index.
+   */
+  public static long pawnAttacks(int color, int index) {
+    return color == Piece.WHITE ? WHITE_PAWN_ATTACKS[index] : BLACK_PAWN_ATTACKS[index];
+  }
+
+  /**
+   * Returns the squares attacked by a rook on the square with the specified index, given the
+   * specified occupied squares. The attacked squares include the first occupied square on each ray,
+   * regardless of the color of the piece occupying it.
+   */
+  public static long rookAttacks(int index, long occupied) {
+    return slidingAttacks(index, occupied, ORTHOGONAL_RAYS);
+  }
+
+  /**
+   * Returns the squares attacked by a bishop on the square with the specified index, given the
+   * specified occupied squares.
+   *
+   * @see #rookAttacks(int, long)
+   */
+  public static long bishopAttacks(int index, long occupied) {
+    return slidingAttacks(index, occupied, DIAGONAL_RAYS);
+  }
+
+  /**
+   * Returns the squares attacked by a queen on the square with the specified index, given the
+   * specified occupied squares.
+   *
+   * @see #rookAttacks(int, long)
+   */
+  public static long queenAttacks(int index, long occupied) {
+    return rookAttacks(index, occupied) | bishopAttacks(index, occupied);
+  }
+
+  /**
+   * Returns the squares attacked along the specified rays from the square with the specified index.
+   */
+  private static long slidingAttacks(int index, long occupied, int[] rays) {
+    long attacks = 0;
+    for (int i = 0; i < rays.length; i++) attacks |= rayAttacks(rays[i], index, occupied);
+
+    return attacks;
+  }
+
+  /**
+   * Returns the squares attacked along the specified ray from the square with the specified index:
+   * the squares of the ray up to, and including, the first occupied one.
+   */
+  private static long rayAttacks(int ray, int index, long occupied) {
+    long attacks = RAYS[ray][index];
+    long blockers = attacks & occupied;
+    if (blockers == 0) return attacks;
+
+    int blocker =
+        ray < 4 ? Long.numberOfTrailingZeros(blockers) : 63 - Long.numberOfLeadingZeros(blockers);
+    return attacks ^ RAYS[ray][blocker];
+  }
+
+  /**
+   * Returns the squares strictly between the two squares with the specified indices, if they lie on
+   * the same rank, file or diagonal. Returns 0 otherwise.
+   */
+  public static long between(int index1, int index2) {
+    for (int ray = 0; ray < RAYS.length; ray++) {
+      if ((RAYS[ray][index1] & bit(index2)) != 0)
+        return RAYS[ray][index1] & ~RAYS[ray][index2] & ~bit(index2);
+    }
+
+    return 0;
+  }
+
+  /**
+   * Returns the squares of the entire line (rank, file or diagonal) passing through the two squares
+   * with the specified indices, if they lie on one. Returns 0 otherwise.
+   */
+  public static long line(int index1, int index2) {
+    for (int ray = 0; ray < RAYS.length; ray++) {
+      if ((RAYS[ray][index1] & bit(index2)) != 0)
+        return RAYS[ray][index1] | RAYS[(ray + 4) % 8][index1] | bit(index1);
+    }
+
+    return 0;
+  }
+
+  /**
+   * Returns a read-only <code>Set</code> view of the squares in the specified bitboard. The set
+   * refers to a copy of the bitboard and so requires no other storage; <code>contains</code> is a
+   * single bit test.
+   */
+  public static Set toSquares(long bitboard) {
+    return new SquareSet(bitboard);
+  }
+
+  /**
+   * A read-only set of squares represented by a bitboard.
+   */
+  private static final class SquareSet extends AbstractSet {
+
+    /**
+     * The squares in the set.
+     */
+    private final long bitboard;
+
+    /**
+     * Creates a new <code>SquareSet</code> with the squares in the specified bitboard.
+     */
+    public SquareSet(long bitboard) {
+      this.bitboard = bitboard;
+    }
+
+    /**
+     * Returns the amount of squares in the set.
+     */
+    @Override
+    public int size() {
+      return Long.bitCount(bitboard);
+    }
+
+    /**
+     * Returns whether the set contains no squares.
+     */
+    @Override
+    public boolean isEmpty() {
+      return bitboard == 0;
+    }
+
+    /**
+     * Returns whether the specified object is a square in this set.
+     */
+    @Override
+    public boolean contains(Object o) {
+      return (o instanceof Square) && ((bitboard & bit((Square) o)) != 0);
+    }
+
+    /**
+     * Returns an iterator over the squares in the set, in the order of their indices.
+     */
+    @Override
+    public Iterator iterator() {
+      return new Iterator() {
+
+        private long remaining = bitboard;
+
+        @Override
+        public boolean hasNext() {
+          return remaining != 0;
+        }
+
+        @Override
+        public Object next() {
+          if (remaining == 0) throw new NoSuchElementException();
+
+          int index = Long.numberOfTrailingZeros(remaining);
+          remaining &= remaining - 1;
+          return Square.getInstance(index);
+        }
+      };
+    }
+  }
+}
@@ -51,4 +51,12 @@ public final class Chess extends ChesslikeGenericVariant {
   private Chess() {
     super(INITIAL_POSITION_FEN, "Chess");
   }
+
+  /**
+   * Returns <code>true</code>, as the rules of chess are implemented in full.
+   */
+  @Override
+  public boolean isLegalityKnown() {
+    return true;
+  }
 }
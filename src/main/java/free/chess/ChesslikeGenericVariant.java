@@ -18,8 +18,6 @@ package free.chess;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
 
 /**
  * <P>
@@ -37,7 +35,7 @@ import java.util.List;
  * {@link #createMove(Position, Square, Square, Piece, String)} method as it already calls the
  * forementioned methods when determining the properties of the created ChessMove.
  */
-public class ChesslikeGenericVariant implements WildVariant {
+public class ChesslikeGenericVariant implements WildVariant, LegalMoveGenerator {
 
   /**
    * An array containing WHITE_QUEEN, WHITE_ROOK, WHITE_BISHOP and WHITE_KNIGHT. These are the
@@ -505,7 +503,7 @@ public class ChesslikeGenericVariant implements WildVariant {
    * .
    */
   @Override
-  public void makeMove(Move move, Position pos, Position.Modifier modifier) {
+  public Position.Undo makeMove(Move move, Position pos, Position.Modifier modifier) {
     checkPosition(pos); // Practically redundant as (almost) nobody can call this
     // method except a method in the Position class, which will
     // be of this wild variant anyway.
@@ -516,6 +514,8 @@ public class ChesslikeGenericVariant implements WildVariant {
     ChessMove cmove = (ChessMove) move;
 
     makeChessMove(cmove, pos, modifier);
+
+    return modifier.getUndo();
   }
 
   /**
@@ -557,6 +557,13 @@ public class ChesslikeGenericVariant implements WildVariant {
       modifier.setPieceAt(rook, rookEndingSquare);
     }
 
+    // Only remember the en-passant file if there is a pawn that may capture en-passant, so that
+    // the position is the same as if there had been no double pawn push, for repetition purposes
+    if ((cmove.getDoublePawnPushFile() != -1)
+        && isEnPassantCapturePossible(
+            pos, cmove.getEndingSquare(), cmove.getPlayer().getOpponent().getPieceColor()))
+      modifier.setEnPassantFile(cmove.getDoublePawnPushFile());
+
     modifier.setCurrentPlayer(cmove.getPlayer().getOpponent());
   }
 
@@ -645,31 +652,39 @@ public class ChesslikeGenericVariant implements WildVariant {
   }
 
   /**
-   * Returns the target squares for a piece which jumps to its destination (king and knight).
+   * Returns whether it's the turn of the player whose piece is at the specified square. Things get
+   * quite complicated when the moved piece does not belong to the player whose turn it currently
+   * is. In such a case, we simply allow all moves by the piece that would be possible on an empty
+   * board.
    */
-  public static Collection getJumpingTargetSquares(Position pos, Square square, int[][] offsets) {
-    List targetSquares = new LinkedList();
-
-    int file = square.getFile();
-    int rank = square.getRank();
-    int color = pos.getPieceAt(square).getColor();
+  private static boolean isMyTurn(Position pos, Square square) {
+    return pos.getCurrentPlayer().getPieceColor() == pos.getPieceAt(square).getColor();
+  }
 
-    // Things get quite complicated when the moved piece does not belong to the
-    // player whose turn it currently is. In such a case, we simply allow all
-    // moves by the piece that would be possible on an empty board.
-    boolean isMyTurn = pos.getCurrentPlayer().getPieceColor() == color;
+  /**
+   * Returns the squares which block the movement of the piece at the specified square - the
+   * occupied squares if it's that piece's turn, and none otherwise.
+   */
+  private static long getObstacles(Position pos, Square square) {
+    return isMyTurn(pos, square) ? pos.getOccupiedBitboard() : 0;
+  }
 
-    for (int i = 0; i < offsets.length; i++) {
-      int[] offset = offsets[i];
-      Square targetSquare = Square.getInstanceNonStrict(file + offset[0], rank + offset[1]);
-      if (targetSquare == null) continue;
+  /**
+   * Removes from the specified target squares of the piece at the specified square those occupied
+   * by pieces of its own color, if it's that piece's turn.
+   */
+  private static long removeOwnPieces(Position pos, Square square, long targetSquares) {
+    if (!isMyTurn(pos, square)) return targetSquares;
 
-      Piece piece = pos.getPieceAt(targetSquare);
-      if ((piece == null) || (piece.getColor() != color) || !isMyTurn)
-        targetSquares.add(targetSquare);
-    }
+    return targetSquares & ~pos.getColorBitboard(pos.getPieceAt(square).getColor());
+  }
 
-    return targetSquares;
+  /**
+   * Returns the target squares for a piece which jumps to its destination (king and knight).
+   */
+  public static Collection getJumpingTargetSquares(Position pos, Square square, int[][] offsets) {
+    long targetSquares = Bitboards.offsetTargets(square.getIndex(), offsets);
+    return Bitboards.toSquares(removeOwnPieces(pos, square, targetSquares));
   }
 
   /**
@@ -677,189 +692,638 @@ public class ChesslikeGenericVariant implements WildVariant {
    */
   public static Collection getSlidingTargetSquares(
       Position pos, Square square, int[][] directions) {
-    List targetSquares = new LinkedList();
-
-    int file = square.getFile();
-    int rank = square.getRank();
-    int color = pos.getPieceAt(square).getColor();
-
-    // Things get quite complicated when the moved piece does not belong to the
-    // player whose turn it currently is. In such a case, we simply allow all
-    // moves by the piece that would be possible on an empty board.
-    boolean isMyTurn = pos.getCurrentPlayer().getPieceColor() == color;
+    long obstacles = getObstacles(pos, square);
 
+    long targetSquares = 0;
     for (int i = 0; i < directions.length; i++) {
-      int[] direction = directions[i];
-      int fileDirection = direction[0];
-      int rankDirection = direction[1];
-
-      Square targetSquare = Square.getInstanceNonStrict(file + fileDirection, rank + rankDirection);
-      while (targetSquare != null) {
-        Piece piece = pos.getPieceAt(targetSquare);
-        if ((piece == null) || (piece.getColor() != color) || !isMyTurn)
-          targetSquares.add(targetSquare);
-
-        if ((piece != null) && isMyTurn) break;
-
-        targetSquare =
-            Square.getInstanceNonStrict(
-                targetSquare.getFile() + fileDirection, targetSquare.getRank() + rankDirection);
+      int fileDirection = directions[i][0];
+      int rankDirection = directions[i][1];
+
+      int file = square.getFile() + fileDirection;
+      int rank = square.getRank() + rankDirection;
+      while (Square.isValid(file, rank)) {
+        long target = Bitboards.bit(file, rank);
+        targetSquares |= target;
+        if ((obstacles & target) != 0) break;
+
+        file += fileDirection;
+        rank += rankDirection;
       }
     }
 
-    return targetSquares;
+    return Bitboards.toSquares(removeOwnPieces(pos, square, targetSquares));
   }
 
-  /**
-   * King move offsets.
-   */
-  private static final int[][] KING_OFFSETS =
-      new int[][] {
-        new int[] {-1, -1},
-        new int[] {0, -1},
-        new int[] {1, -1},
-        new int[] {-1, 0},
-        new int[] {1, 0},
-        new int[] {-1, 1},
-        new int[] {0, 1},
-        new int[] {1, 1}
-      };
-
   /**
    * Returns target squares for a king.
    */
   protected Collection getKingTargetSquares(Position pos, Square square) {
-    Collection targetSquares = getJumpingTargetSquares(pos, square, KING_OFFSETS);
+    long targetSquares = removeOwnPieces(pos, square, Bitboards.kingAttacks(square.getIndex()));
 
     // Attempt castling.
     for (int file = 0; file < 8; file++) {
       Square targetSquare = Square.getInstance(file, square.getRank());
       if (isShortCastling(pos, square, targetSquare, null)
-          || isLongCastling(pos, square, targetSquare, null)) targetSquares.add(targetSquare);
+          || isLongCastling(pos, square, targetSquare, null))
+        targetSquares |= Bitboards.bit(targetSquare);
     }
 
-    return targetSquares;
+    return Bitboards.toSquares(targetSquares);
   }
 
-  /**
-   * Queen move directions.
-   */
-  private static final int[][] QUEEN_DIRECTIONS =
-      new int[][] {
-        new int[] {-1, -1},
-        new int[] {0, -1},
-        new int[] {1, -1},
-        new int[] {-1, 0},
-        new int[] {1, 0},
-        new int[] {-1, 1},
-        new int[] {0, 1},
-        new int[] {1, 1}
-      };
-
   /**
    * Returns target squares for a queen.
    */
   protected Collection getQueenTargetSquares(Position pos, Square square) {
-    return getSlidingTargetSquares(pos, square, QUEEN_DIRECTIONS);
+    long targetSquares = Bitboards.queenAttacks(square.getIndex(), getObstacles(pos, square));
+    return Bitboards.toSquares(removeOwnPieces(pos, square, targetSquares));
   }
 
-  /**
-   * Rook move directions.
-   */
-  private static final int[][] ROOK_DIRECTIONS =
-      new int[][] {new int[] {0, -1}, new int[] {-1, 0}, new int[] {1, 0}, new int[] {0, 1}};
-
   /**
    * Returns target squares for a rook.
    */
   protected Collection getRookTargetSquares(Position pos, Square square) {
-    return getSlidingTargetSquares(pos, square, ROOK_DIRECTIONS);
+    long targetSquares = Bitboards.rookAttacks(square.getIndex(), getObstacles(pos, square));
+    return Bitboards.toSquares(removeOwnPieces(pos, square, targetSquares));
   }
 
-  /**
-   * Bishop move directions.
-   */
-  private static final int[][] BISHOP_DIRECTIONS =
-      new int[][] {new int[] {-1, -1}, new int[] {1, -1}, new int[] {-1, 1}, new int[] {1, 1}};
-
   /**
    * Returns target squares for a bishop.
    */
   protected Collection getBishopTargetSquares(Position pos, Square square) {
-    return getSlidingTargetSquares(pos, square, BISHOP_DIRECTIONS);
+    long targetSquares = Bitboards.bishopAttacks(square.getIndex(), getObstacles(pos, square));
+    return Bitboards.toSquares(removeOwnPieces(pos, square, targetSquares));
   }
 
-  /**
-   * Knight move offsets.
-   */
-  private static final int[][] KNIGHT_OFFSETS =
-      new int[][] {
-        new int[] {-1, -2},
-        new int[] {1, -2},
-        new int[] {-2, -1},
-        new int[] {2, -1},
-        new int[] {-2, 1},
-        new int[] {2, 1},
-        new int[] {-1, 2},
-        new int[] {1, 2},
-      };
-
   /**
    * Returns target squares for a knight.
    */
   protected Collection getKnightTargetSquares(Position pos, Square square) {
-    return getJumpingTargetSquares(pos, square, KNIGHT_OFFSETS);
+    long targetSquares = Bitboards.knightAttacks(square.getIndex());
+    return Bitboards.toSquares(removeOwnPieces(pos, square, targetSquares));
   }
 
   /**
    * Returns target squares for a pawn.
    */
   protected Collection getPawnTargetSquares(Position pos, Square square) {
-    List targetSquares = new LinkedList();
-
-    int file = square.getFile();
+    int index = square.getIndex();
     int rank = square.getRank();
     int color = pos.getPieceAt(square).getColor();
-
-    // Things get quite complicated when the moved piece does not belong to the
-    // player whose turn it currently is. In such a case, we simply allow all
-    // moves by the piece that would be possible on an empty board.
-    boolean isMyTurn = pos.getCurrentPlayer().getPieceColor() == color;
+    boolean isMyTurn = isMyTurn(pos, square);
+    long obstacles = getObstacles(pos, square);
 
     int rankMoveDirection = color == Piece.WHITE ? 1 : -1;
     boolean isInitialRank = (rank == (7 + rankMoveDirection) % 7);
     boolean isEnPassantRank = (rank == (7 + 4 * rankMoveDirection) % 7);
 
-    Square targetSquare;
+    long targetSquares = 0;
+
+    // Move forward
+    if (Square.isValid(0, rank + rankMoveDirection)) {
+      long target = Bitboards.bit(index + 8 * rankMoveDirection);
+      if ((obstacles & target) == 0) {
+        targetSquares |= target;
+
+        // Double pawn push
+        if (isInitialRank) {
+          target = Bitboards.bit(index + 16 * rankMoveDirection);
+          if ((obstacles & target) == 0) targetSquares |= target;
+        }
+      }
+    }
+
+    // Capture or en-passant
+    long captures = Bitboards.pawnAttacks(color, index);
+    if (isMyTurn) {
+      long enPassantCaptures = isEnPassantRank ? captures & ~obstacles : 0;
+      captures &= pos.getColorBitboard(-color);
+      for (; enPassantCaptures != 0; enPassantCaptures &= enPassantCaptures - 1) {
+        Square targetSquare = Square.getInstance(Long.numberOfTrailingZeros(enPassantCaptures));
+        if (isEnPassant(pos, square, targetSquare, null))
+          captures |= Bitboards.bit(targetSquare);
+      }
+    }
+    targetSquares |= captures;
+
+    return Bitboards.toSquares(targetSquares);
+  }
+
+  /**
+   * The standard chess pieces, indexed by color (white first) and then by type.
+   */
+  private static final ChessPiece[][] CHESS_PIECES =
+      new ChessPiece[][] {
+        new ChessPiece[] {
+          null,
+          ChessPiece.WHITE_PAWN,
+          ChessPiece.WHITE_KNIGHT,
+          ChessPiece.WHITE_BISHOP,
+          ChessPiece.WHITE_ROOK,
+          ChessPiece.WHITE_QUEEN,
+          ChessPiece.WHITE_KING
+        },
+        new ChessPiece[] {
+          null,
+          ChessPiece.BLACK_PAWN,
+          ChessPiece.BLACK_KNIGHT,
+          ChessPiece.BLACK_BISHOP,
+          ChessPiece.BLACK_ROOK,
+          ChessPiece.BLACK_QUEEN,
+          ChessPiece.BLACK_KING
+        }
+      };
+
+  /**
+   * Returns the standard chess piece of the specified color and type.
+   */
+  private static ChessPiece getChessPiece(int color, int type) {
+    return CHESS_PIECES[color == Piece.WHITE ? 0 : 1][type];
+  }
+
+  /**
+   * Returns the squares attacked by a piece of the specified type and color at the square with the
+   * specified index, given the specified occupied squares. The legal move generator relies on the
+   * attacks of all pieces, except pawns, being symmetric - a piece at one square attacks another
+   * square iff the same piece at the other square would attack the first one. Variants whose
+   * pieces move differently than in chess override this method.
+   */
+  protected long getAttacks(int type, int color, int index, long occupied) {
+    switch (type) {
+      case ChessPiece.PAWN:
+        return Bitboards.pawnAttacks(color, index);
+      case ChessPiece.KNIGHT:
+        return Bitboards.knightAttacks(index);
+      case ChessPiece.BISHOP:
+        return Bitboards.bishopAttacks(index, occupied);
+      case ChessPiece.ROOK:
+        return Bitboards.rookAttacks(index, occupied);
+      case ChessPiece.QUEEN:
+        return Bitboards.queenAttacks(index, occupied);
+      case ChessPiece.KING:
+        return Bitboards.kingAttacks(index);
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * Returns those of the specified candidate pieces, which must be of the specified color, that
+   * attack the square with the specified index, given the specified occupied squares.
+   */
+  protected long getAttackers(Position pos, int index, int color, long occupied, long candidates) {
+    long attackers = 0;
+    for (int type = ChessPiece.PAWN; type <= ChessPiece.KING; type++) {
+      long pieces = pos.getTypeBitboard(type) & candidates;
+      if (pieces != 0) attackers |= getAttacks(type, -color, index, occupied) & pieces;
+    }
+
+    return attackers;
+  }
+
+  /**
+   * Returns whether the moves generated are known to be exactly the legal moves of this variant.
+   * The default implementation returns <code>false</code>, as an instance of this class created
+   * with just a name and an initial position may stand for any variant the server supports (with
+   * rules we know nothing about). Subclasses whose rules are actually implemented return
+   * <code>true</code>.
+   */
+  @Override
+  public boolean isLegalityKnown() {
+    return false;
+  }
+
+  /**
+   * Returns whether a player may not leave his king in check, and may not castle out of or through
+   * check, in this variant. The default implementation returns <code>true</code>.
+   */
+  protected boolean isCheckRecognized() {
+    return true;
+  }
+
+  /**
+   * Returns the file the king ends up on when castling from the specified file with the rook on the
+   * specified file, or -1 if it can't castle with that rook at all. The rook ends up next to the
+   * king, on the side the king came from. The default implementation allows the usual chess
+   * castling of a king on the e file with a rook on the a or h file.
+   */
+  protected int getCastlingKingDestination(int kingFile, int rookFile) {
+    if (kingFile != 4) return -1;
+    else if (rookFile == 7) return 6;
+    else if (rookFile == 0) return 2;
+    else return -1;
+  }
+
+  /**
+   * Returns whether castling by a king on the specified file with a rook on the specified file is
+   * short castling. The default implementation returns whether the rook is on the king's h file
+   * side.
+   */
+  protected boolean isShortCastlingSide(int kingFile, int rookFile) {
+    return rookFile > kingFile;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int generateLegalMoves(Position pos, MoveBuffer moves) {
+    checkPosition(pos);
+
+    int color = pos.getCurrentPlayer().getPieceColor();
+    return generateLegalMoves(pos, pos.getColorBitboard(color), moves);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int generateLegalMoves(Position pos, Square square, MoveBuffer moves) {
+    checkPosition(pos);
+
+    return generateLegalMoves(pos, Bitboards.bit(square), moves);
+  }
+
+  /**
+   * Adds the legal moves of the current player's pieces at the specified squares to the specified
+   * buffer and returns the amount of moves added. The default implementation generates the pseudo
+   * legal moves and then removes the illegal ones.
+   */
+  protected int generateLegalMoves(Position pos, long movingPieces, MoveBuffer moves) {
+    int start = moves.size();
+    generatePseudoLegalMoves(pos, movingPieces, moves);
+    removeIllegalMoves(pos, moves, start);
+
+    return moves.size() - start;
+  }
+
+  /**
+   * Adds the moves of the current player's pieces at the specified squares to the specified buffer,
+   * without considering whether they leave the king in check (but otherwise following the rules
+   * of the variant).
+   */
+  protected void generatePseudoLegalMoves(Position pos, long movingPieces, MoveBuffer moves) {
+    int color = pos.getCurrentPlayer().getPieceColor();
+    long ownPieces = pos.getColorBitboard(color);
+    long occupied = pos.getOccupiedBitboard();
+
+    for (long pieces = movingPieces & ownPieces; pieces != 0; pieces &= pieces - 1) {
+      int index = Long.numberOfTrailingZeros(pieces);
+      int type = pos.getPieceAt(index & 7, index >> 3).getType();
+
+      if (type == ChessPiece.PAWN) generatePawnMoves(pos, index, color, moves);
+      else {
+        long targets = getAttacks(type, color, index, occupied) & ~ownPieces;
+        for (; targets != 0; targets &= targets - 1)
+          moves.add(MoveBuffer.encode(index, Long.numberOfTrailingZeros(targets), 0, 0));
+
+        if (type == ChessPiece.KING) generateCastlingMoves(pos, index, color, moves);
+      }
+    }
+  }
+
+  /**
+   * Adds the moves of the pawn at the square with the specified index to the specified buffer.
+   */
+  private void generatePawnMoves(Position pos, int index, int color, MoveBuffer moves) {
+    long occupied = pos.getOccupiedBitboard();
+    int direction = color == Piece.WHITE ? 8 : -8;
+    int rank = index >> 3;
 
     // Move forward
-    targetSquare = Square.getInstanceNonStrict(file, rank + rankMoveDirection);
-    if (((targetSquare != null) && (pos.getPieceAt(targetSquare) == null)) || !isMyTurn) {
-      targetSquares.add(targetSquare);
+    int target = index + direction;
+    if ((target >= 0) && (target < 64) && ((occupied & Bitboards.bit(target)) == 0)) {
+      addPawnMoves(pos, index, target, moves);
 
       // Double pawn push
-      if (isInitialRank) {
-        targetSquare = Square.getInstance(file, rank + 2 * rankMoveDirection);
-        if ((pos.getPieceAt(targetSquare) == null) || !isMyTurn) targetSquares.add(targetSquare);
+      int doublePushTarget = target + direction;
+      if ((doublePushTarget >= 0)
+          && (doublePushTarget < 64)
+          && ((occupied & Bitboards.bit(doublePushTarget)) == 0)
+          && (getDoublePawnPushFile(
+                  pos, Square.getInstance(index), Square.getInstance(doublePushTarget))
+              != -1))
+        moves.add(MoveBuffer.encode(index, doublePushTarget, 0, MoveBuffer.DOUBLE_PAWN_PUSH));
+    }
+
+    // Capture
+    long captures = Bitboards.pawnAttacks(color, index) & pos.getColorBitboard(-color);
+    for (; captures != 0; captures &= captures - 1)
+      addPawnMoves(pos, index, Long.numberOfTrailingZeros(captures), moves);
+
+    // En-passant
+    int enPassantFile = pos.getEnPassantFile();
+    if ((enPassantFile != -1)
+        && (rank == (color == Piece.WHITE ? 4 : 3))
+        && (Math.abs((index & 7) - enPassantFile) == 1)) {
+      target = ((rank << 3) | enPassantFile) + direction;
+      if (isEnPassant(pos, Square.getInstance(index), Square.getInstance(target), null))
+        moves.add(MoveBuffer.encode(index, target, 0, MoveBuffer.EN_PASSANT));
+    }
+  }
+
+  /**
+   * Adds the move of the pawn at the square with the specified starting index to the square with
+   * the specified ending index, or, if it's a promotion, a move for each promotion target.
+   */
+  private void addPawnMoves(Position pos, int startingIndex, int endingIndex, MoveBuffer moves) {
+    int endingRank = endingIndex >> 3;
+    Piece[] promotionTargets =
+        (endingRank == 0) || (endingRank == 7)
+            ? getPromotionTargets(
+                pos, Square.getInstance(startingIndex), Square.getInstance(endingIndex))
+            : null;
+
+    if (promotionTargets == null) moves.add(MoveBuffer.encode(startingIndex, endingIndex, 0, 0));
+    else {
+      for (int i = 0; i < promotionTargets.length; i++) {
+        int promotionType = promotionTargets[i].getType();
+        moves.add(MoveBuffer.encode(startingIndex, endingIndex, promotionType, 0));
+      }
+    }
+  }
+
+  /**
+   * Adds the castling moves of the king at the square with the specified index to the specified
+   * buffer. The squares between the king and its destination and between the rook and its
+   * destination must be empty (except for the king and the rook themselves) and, if check is
+   * recognized, the king may not be in check or pass through an attacked square. Whether the
+   * destination square is attacked is left to {@link #removeIllegalMoves(Position, MoveBuffer,
+   * int)}.
+   */
+  private void generateCastlingMoves(Position pos, int kingIndex, int color, MoveBuffer moves) {
+    long backRank = color == Piece.WHITE ? Bitboards.RANK_1 : Bitboards.RANK_8;
+    if ((Bitboards.bit(kingIndex) & backRank) == 0) return;
+
+    long occupied = pos.getOccupiedBitboard();
+    long opponentPieces = pos.getColorBitboard(-color);
+    long rooks = pos.getCastlingRooks() & pos.getBitboard(getChessPiece(color, ChessPiece.ROOK));
+    int kingFile = kingIndex & 7;
+    int rankStart = kingIndex & ~7;
+
+    for (; rooks != 0; rooks &= rooks - 1) {
+      int rookIndex = Long.numberOfTrailingZeros(rooks);
+      int rookFile = rookIndex & 7;
+      int kingDestinationFile = getCastlingKingDestination(kingFile, rookFile);
+      if (kingDestinationFile == -1) continue;
+
+      int kingDestination = rankStart | kingDestinationFile;
+      int rookDestination = kingDestination + (rookFile > kingFile ? -1 : 1);
+
+      long kingPath = span(kingIndex, kingDestination);
+      long rookPath = span(rookIndex, rookDestination);
+      long castlingPieces = Bitboards.bit(kingIndex) | Bitboards.bit(rookIndex);
+      if (((kingPath | rookPath) & occupied & ~castlingPieces) != 0) continue;
+
+      if (isCheckRecognized()) {
+        long passedSquares = kingPath & ~Bitboards.bit(kingDestination);
+        boolean isPathAttacked = false;
+        for (; (passedSquares != 0) && !isPathAttacked; passedSquares &= passedSquares - 1) {
+          int index = Long.numberOfTrailingZeros(passedSquares);
+          isPathAttacked = getAttackers(pos, index, -color, occupied, opponentPieces) != 0;
+        }
+        if (isPathAttacked) continue;
       }
+
+      int flag =
+          isShortCastlingSide(kingFile, rookFile)
+              ? MoveBuffer.SHORT_CASTLING
+              : MoveBuffer.LONG_CASTLING;
+      moves.add(MoveBuffer.encodeCastling(kingIndex, kingDestination, rookIndex, flag));
     }
+  }
 
-    // Capture or en-passant
-    int[] fileMoveDirections = new int[] {-1, 1};
-    for (int i = 0; i < fileMoveDirections.length; i++) {
-      int fileMoveDirection = fileMoveDirections[i];
-      targetSquare =
-          Square.getInstanceNonStrict(file + fileMoveDirection, rank + rankMoveDirection);
-      if (targetSquare != null) {
-        Piece targetPiece = pos.getPieceAt(targetSquare);
-        if (((targetPiece != null) && (targetPiece.getColor() != color)) || !isMyTurn)
-          targetSquares.add(targetSquare);
-        else if (isEnPassantRank && isEnPassant(pos, square, targetSquare, null))
-          targetSquares.add(targetSquare);
+  /**
+   * Returns the squares from the square with the first specified index to the square with the
+   * second specified index, inclusive. The squares must be on the same rank.
+   */
+  private static long span(int index1, int index2) {
+    return Bitboards.between(index1, index2) | Bitboards.bit(index1) | Bitboards.bit(index2);
+  }
+
+  /**
+   * Removes the moves which leave the current player's king in check from the moves in the
+   * specified buffer, starting at the specified index. Only moves by the king, by pinned pieces,
+   * en-passant captures and moves made while in check are actually tried. If check is not
+   * recognized, or the player doesn't have exactly one king, no moves are removed.
+   */
+  protected void removeIllegalMoves(Position pos, MoveBuffer moves, int start) {
+    if (!isCheckRecognized()) return;
+
+    int color = pos.getCurrentPlayer().getPieceColor();
+    long occupied = pos.getOccupiedBitboard();
+    long opponentPieces = pos.getColorBitboard(-color);
+    long kings = pos.getTypeBitboard(ChessPiece.KING) & pos.getColorBitboard(color);
+    if (Long.bitCount(kings) != 1) return;
+
+    int king = Long.numberOfTrailingZeros(kings);
+    long checkers = getAttackers(pos, king, -color, occupied, opponentPieces);
+    long pinned = checkers == 0 ? getPinnedPieces(pos, king, color) : 0;
+    long suspects = kings | pinned | (checkers == 0 ? 0 : -1L);
+
+    int count = start;
+    for (int i = start; i < moves.size(); i++) {
+      int move = moves.get(i);
+      long from = Bitboards.bit(MoveBuffer.getStartingIndex(move));
+      if (((suspects & from) != 0) || MoveBuffer.is(move, MoveBuffer.EN_PASSANT)) {
+        if (!isKingSafeAfter(pos, move, king, color)) continue;
       }
+
+      moves.set(count++, move);
+    }
+
+    moves.setSize(count);
+  }
+
+  /**
+   * Returns the pieces of the specified color which are pinned to their king at the square with
+   * the specified index - the pieces without which the king would be attacked. The king must not be
+   * in check.
+   */
+  private long getPinnedPieces(Position pos, int king, int color) {
+    long occupied = pos.getOccupiedBitboard();
+    long opponentPieces = pos.getColorBitboard(-color);
+
+    // Only the first piece in each direction from the king may be pinned
+    long candidates = Bitboards.queenAttacks(king, occupied) & pos.getColorBitboard(color);
+
+    long pinned = 0;
+    for (; candidates != 0; candidates &= candidates - 1) {
+      long candidate = candidates & -candidates;
+      if (getAttackers(pos, king, -color, occupied & ~candidate, opponentPieces) != 0)
+        pinned |= candidate;
+    }
+
+    return pinned;
+  }
+
+  /**
+   * Returns whether the king of the specified color, at the square with the specified index, is not
+   * attacked after the specified move.
+   */
+  private boolean isKingSafeAfter(Position pos, int move, int king, int color) {
+    int startingIndex = MoveBuffer.getStartingIndex(move);
+    int endingIndex = MoveBuffer.getEndingIndex(move);
+
+    long occupied = pos.getOccupiedBitboard() & ~Bitboards.bit(startingIndex);
+    long opponentPieces = pos.getColorBitboard(-color) & ~Bitboards.bit(endingIndex);
+
+    if (MoveBuffer.isCastling(move)) {
+      int rookIndex = MoveBuffer.getCastlingRookIndex(move);
+      int rookDestination = endingIndex + (rookIndex > startingIndex ? -1 : 1);
+      occupied &= ~Bitboards.bit(rookIndex);
+      occupied |= Bitboards.bit(rookDestination);
+    } else if (MoveBuffer.is(move, MoveBuffer.EN_PASSANT)) {
+      long capturedPawn = Bitboards.bit((startingIndex & ~7) | (endingIndex & 7));
+      occupied &= ~capturedPawn;
+      opponentPieces &= ~capturedPawn;
+    }
+    occupied |= Bitboards.bit(endingIndex);
+
+    if (startingIndex == king) king = endingIndex;
+
+    return getAttackers(pos, king, -color, occupied, opponentPieces) == 0;
+  }
+
+  /**
+   * Returns whether the specified move, as encoded by {@link MoveBuffer}, is a capture in the
+   * specified position.
+   */
+  protected static boolean isCapture(Position pos, int move) {
+    if (MoveBuffer.is(move, MoveBuffer.EN_PASSANT)) return true;
+    else if (MoveBuffer.isCastling(move)) return false;
+
+    long endingSquare = Bitboards.bit(MoveBuffer.getEndingIndex(move));
+    return (pos.getOccupiedBitboard() & endingSquare) != 0;
+  }
+
+  /**
+   * Implements compulsory capturing for variants where a player must capture if possible: adds the
+   * legal moves of the current player's pieces at the specified squares to the specified buffer,
+   * but only the captures, if the player has any capture at all, and returns the amount of moves
+   * added.
+   */
+  protected int generateCompulsoryCaptureMoves(
+      Position pos, long movingPieces, MoveBuffer moves) {
+    int start = moves.size();
+
+    // Whether there are any captures depends on all the pieces, not just the moving ones
+    int color = pos.getCurrentPlayer().getPieceColor();
+    generatePseudoLegalMoves(pos, pos.getColorBitboard(color), moves);
+    removeIllegalMoves(pos, moves, start);
+
+    boolean canCapture = false;
+    for (int i = start; (i < moves.size()) && !canCapture; i++)
+      canCapture = isCapture(pos, moves.get(i));
+
+    int count = start;
+    for (int i = start; i < moves.size(); i++) {
+      int move = moves.get(i);
+      long from = Bitboards.bit(MoveBuffer.getStartingIndex(move));
+      if (((movingPieces & from) != 0) && (!canCapture || isCapture(pos, move)))
+        moves.set(count++, move);
+    }
+    moves.setSize(count);
+
+    return count - start;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean isLegal(Position pos, Move move) {
+    checkPosition(pos);
+
+    if (!(move instanceof ChessMove)) return false;
+
+    ChessMove cmove = (ChessMove) move;
+    Square startingSquare = cmove.getStartingSquare();
+    Piece movingPiece = pos.getPieceAt(startingSquare);
+    if ((movingPiece == null) || (movingPiece.getPlayer() != pos.getCurrentPlayer())) return false;
+
+    int endingIndex = cmove.getEndingSquare().getIndex();
+    int promotionType = cmove.isPromotion() ? cmove.getPromotionTarget().getType() : 0;
+
+    MoveBuffer moves = new MoveBuffer(32);
+    int count = generateLegalMoves(pos, startingSquare, moves);
+    for (int i = 0; i < count; i++) {
+      int legalMove = moves.get(i);
+      if (MoveBuffer.isCastling(legalMove)) {
+        if (cmove.isShortCastling() && MoveBuffer.is(legalMove, MoveBuffer.SHORT_CASTLING))
+          return true;
+        if (cmove.isLongCastling() && MoveBuffer.is(legalMove, MoveBuffer.LONG_CASTLING))
+          return true;
+      } else if (!cmove.isCastling()
+          && (MoveBuffer.getEndingIndex(legalMove) == endingIndex)
+          && (MoveBuffer.getPromotionType(legalMove) == promotionType)) return true;
     }
 
-    return targetSquares;
+    return false;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean isInCheck(Position pos) {
+    checkPosition(pos);
+
+    if (!isCheckRecognized()) return false;
+
+    int color = pos.getCurrentPlayer().getPieceColor();
+    long kings = pos.getTypeBitboard(ChessPiece.KING) & pos.getColorBitboard(color);
+    if (Long.bitCount(kings) != 1) return false;
+
+    int king = Long.numberOfTrailingZeros(kings);
+    long occupied = pos.getOccupiedBitboard();
+    return getAttackers(pos, king, -color, occupied, pos.getColorBitboard(-color)) != 0;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Move createMove(Position pos, int move) {
+    checkPosition(pos);
+
+    Square startingSquare = Square.getInstance(MoveBuffer.getStartingIndex(move));
+    Square endingSquare = Square.getInstance(MoveBuffer.getEndingIndex(move));
+    Player player = pos.getCurrentPlayer();
+    int color = player.getPieceColor();
+
+    boolean isEnPassant = MoveBuffer.is(move, MoveBuffer.EN_PASSANT);
+    ChessPiece capturedPiece;
+    if (isEnPassant) capturedPiece = getChessPiece(-color, ChessPiece.PAWN);
+    else if (MoveBuffer.isCastling(move)) capturedPiece = null;
+    else capturedPiece = (ChessPiece) pos.getPieceAt(endingSquare);
+
+    int promotionType = MoveBuffer.getPromotionType(move);
+
+    return new ChessMove(
+        startingSquare,
+        endingSquare,
+        player,
+        isEnPassant,
+        MoveBuffer.is(move, MoveBuffer.SHORT_CASTLING),
+        MoveBuffer.is(move, MoveBuffer.LONG_CASTLING),
+        capturedPiece,
+        MoveBuffer.is(move, MoveBuffer.DOUBLE_PAWN_PUSH) ? startingSquare.getFile() : -1,
+        promotionType == 0 ? null : getChessPiece(color, promotionType),
+        null);
+  }
+
+  /**
+   * Returns whether there is a pawn of the specified color next to the pawn at the specified
+   * square, which has just made a double pawn push, that may capture it en-passant.
+   */
+  private static boolean isEnPassantCapturePossible(Position pos, Square pawnSquare, int color) {
+    int index = pawnSquare.getIndex();
+    long neighbours = 0;
+    if (pawnSquare.getFile() > 0) neighbours |= Bitboards.bit(index - 1);
+    if (pawnSquare.getFile() < 7) neighbours |= Bitboards.bit(index + 1);
+
+    return (pos.getBitboard(getChessPiece(color, ChessPiece.PAWN)) & neighbours) != 0;
   }
 
   /**
@@ -182,6 +182,12 @@ public class JBoard extends JComponent {
    */
   private boolean isMakingUserMove = false;
 
+  /**
+   * The time, as returned by <code>System.nanoTime()</code>, at which the user made the move
+   * currently being made on this board.
+   */
+  private long userMoveTime;
+
   /**
    * A flag we set when the position was modified because of a move (not just a general change) so
    * we know to ignore the next change event.
@@ -612,6 +618,26 @@ public class JBoard extends JComponent {
     if (paintHooks.size() == 0) paintHooks = null;
   }
 
+  /**
+   * Returns the time, as returned by <code>System.nanoTime()</code>, at which the user made the
+   * move currently being made on this board. This is the time the user dropped the piece, which may
+   * be a bit earlier than the time the move is made in the position. May only be invoked while the
+   * move is being made, from a <code>MoveListener</code> of the position.
+   */
+  public long getUserMoveTime() {
+    if (!isMakingUserMove) throw new IllegalStateException("The user isn't making a move");
+
+    return userMoveTime;
+  }
+
+  /**
+   * Returns whether the user is currently making a move on this board. This is <code>true</code>
+   * while the <code>MoveListener</code>s of the position are notified of a move made by the user.
+   */
+  public boolean isMakingUserMove() {
+    return isMakingUserMove;
+  }
+
   /**
    * Returns the Position on this JBoard.
    */
@@ -1849,6 +1875,10 @@ public class JBoard extends JComponent {
         if (targetSquare == null) { // Moved to a non-target square
 
         } else if (!targetSquare.equals(movedPieceSquare)) {
+          // The time the mouse was released, including the time the event spent in the queue
+          userMoveTime =
+              System.nanoTime() - Math.max(0, System.currentTimeMillis() - evt.getWhen()) * 1000000;
+
           WildVariant variant = position.getVariant();
           Piece[] promotionTargets =
               variant.getPromotionTargets(position, movedPieceSquare, targetSquare);
@@ -1861,6 +1891,7 @@ public class JBoard extends JComponent {
                   PieceChooser.showPieceChooser(
                       this, x, y, promotionTargets, getPiecePainter(), promotionTargets[0]);
               isShowingModalDialog = false;
+              userMoveTime = System.nanoTime(); // The user was choosing until now
             } else promotionTarget = promotionTargets[0];
 
             madeMove =
@@ -0,0 +1,65 @@
+/**
+ * The chess framework library. More information is available at http://www.jinchess.com/. Copyright
+ * (C) 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * The chess framework library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2 of the License, or (at your option) any later version.
+ *
+ * The chess framework library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the chess
+ * framework library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite
+ * 330, Boston, MA 02111-1307 USA
+ */
+package free.chess;
+
+/**
+ * An interface implemented by {@link WildVariant}s which can generate the legal moves in a
+ * position, so that moves can be checked locally, without asking the server. Unlike
+ * {@link WildVariant#getTargetSquares(Position, Square)}, the generated moves are exactly the legal
+ * ones - a move which leaves the player's king in check (in variants where that matters) is not
+ * generated.
+ * <P>
+ * Generating moves doesn't mean the rules of the variant are known in full - a variant which only
+ * knows its name and initial position generates the moves of chess. Moves may only be rejected
+ * locally if {@link #isLegalityKnown()} returns <code>true</code>.
+ */
+public interface LegalMoveGenerator {
+
+  /**
+   * Returns whether the moves generated are known to be exactly the legal moves of the variant, so
+   * that a move which isn't generated may be rejected without asking the server.
+   */
+  boolean isLegalityKnown();
+
+  /**
+   * Adds the legal moves of the current player in the specified position to the specified buffer
+   * and returns the amount of moves added.
+   */
+  int generateLegalMoves(Position pos, MoveBuffer moves);
+
+  /**
+   * Adds the legal moves of the piece at the specified square, which must belong to the current
+   * player, to the specified buffer and returns the amount of moves added.
+   */
+  int generateLegalMoves(Position pos, Square square, MoveBuffer moves);
+
+  /**
+   * Returns whether the specified move is legal in the specified position.
+   */
+  boolean isLegal(Position pos, Move move);
+
+  /**
+   * Returns whether the current player's king is in check in the specified position.
+   */
+  boolean isInCheck(Position pos);
+
+  /**
+   * Creates a <code>Move</code> object from the specified move, as encoded by
+   * {@link MoveBuffer}, in the specified position.
+   */
+  Move createMove(Position pos, int move);
+}
@@ -0,0 +1,222 @@
+/**
+ * The chess framework library. More information is available at http://www.jinchess.com/. Copyright
+ * (C) 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * The chess framework library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2 of the License, or (at your option) any later version.
+ *
+ * The chess framework library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the chess
+ * framework library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite
+ * 330, Boston, MA 02111-1307 USA
+ */
+package free.chess;
+
+/**
+ * A reusable buffer of moves, each encoded as a single <code>int</code>, into which a
+ * {@link LegalMoveGenerator} generates moves. Encoding moves as primitives and reusing the buffer
+ * means that generating moves allocates no objects at all; an actual {@link Move} object is only
+ * created, via {@link LegalMoveGenerator#createMove(Position, int)}, for the moves which are
+ * actually made.
+ * <P>
+ * An encoded move consists of the indices (see {@link Square#getIndex()}) of its starting and
+ * ending squares, the type of the piece a pawn is promoted to (0 if none) and a set of flags.
+ * Castling moves are encoded as a move of the king to its destination square, together with the
+ * index of the square of the rook it castles with.
+ * <P>
+ * <B>IMPORTANT:</B> This class is not thread safe.
+ */
+public final class MoveBuffer {
+
+  /**
+   * The flag of en-passant moves.
+   */
+  public static final int EN_PASSANT = 1 << 16;
+
+  /**
+   * The flag of short castling moves.
+   */
+  public static final int SHORT_CASTLING = 1 << 17;
+
+  /**
+   * The flag of long castling moves.
+   */
+  public static final int LONG_CASTLING = 1 << 18;
+
+  /**
+   * The flag of double pawn pushes.
+   */
+  public static final int DOUBLE_PAWN_PUSH = 1 << 19;
+
+  /**
+   * The moves.
+   */
+  private int[] moves;
+
+  /**
+   * The amount of moves in the buffer.
+   */
+  private int size = 0;
+
+  /**
+   * Creates a new <code>MoveBuffer</code> with room for the moves of any ordinary chess position.
+   */
+  public MoveBuffer() {
+    this(256);
+  }
+
+  /**
+   * Creates a new <code>MoveBuffer</code> with room for the specified amount of moves. The buffer
+   * grows as needed.
+   */
+  public MoveBuffer(int capacity) {
+    this.moves = new int[capacity];
+  }
+
+  /**
+   * Encodes a move from the square with the specified starting index to the square with the
+   * specified ending index, promoting to a piece of the specified type (0 if none), with the
+   * specified flags.
+   */
+  public static int encode(int startingIndex, int endingIndex, int promotionType, int flags) {
+    return startingIndex | (endingIndex << 6) | (promotionType << 12) | flags;
+  }
+
+  /**
+   * Encodes a castling move of the king from the square with the specified starting index to the
+   * square with the specified ending index, with the rook at the square with the specified index.
+   * The flag must be either <code>SHORT_CASTLING</code> or <code>LONG_CASTLING</code>.
+   */
+  public static int encodeCastling(int startingIndex, int endingIndex, int rookIndex, int flag) {
+    return encode(startingIndex, endingIndex, 0, flag) | (rookIndex << 20);
+  }
+
+  /**
+   * Returns the index of the starting square of the specified encoded move.
+   */
+  public static int getStartingIndex(int move) {
+    return move & 63;
+  }
+
+  /**
+   * Returns the index of the ending square of the specified encoded move.
+   */
+  public static int getEndingIndex(int move) {
+    return (move >> 6) & 63;
+  }
+
+  /**
+   * Returns the type of the piece the specified encoded move promotes a pawn to, or 0 if it is not
+   * a promotion.
+   */
+  public static int getPromotionType(int move) {
+    return (move >> 12) & 15;
+  }
+
+  /**
+   * Returns the index of the square of the rook the specified encoded castling move castles with.
+   */
+  public static int getCastlingRookIndex(int move) {
+    return (move >> 20) & 63;
+  }
+
+  /**
+   * Returns whether the specified encoded move has the specified flag.
+   */
+  public static boolean is(int move, int flag) {
+    return (move & flag) != 0;
+  }
+
+  /**
+   * Returns whether the specified encoded move is a castling move.
+   */
+  public static boolean isCastling(int move) {
+    return (move & (SHORT_CASTLING | LONG_CASTLING)) != 0;
+  }
+
+  /**
+   * Adds the specified encoded move to the buffer.
+   */
+  public void add(int move) {
+    if (size == moves.length) {
+      int[] newMoves = new int[moves.length * 2];
+      System.arraycopy(moves, 0, newMoves, 0, size);
+      moves = newMoves;
+    }
+
+    moves[size++] = move;
+  }
+
+  /**
+   * Returns the encoded move at the specified index.
+   */
+  public int get(int index) {
+    if (index >= size) throw new IndexOutOfBoundsException(index + " >= " + size);
+
+    return moves[index];
+  }
+
+  /**
+   * Replaces the encoded move at the specified index.
+   */
+  public void set(int index, int move) {
+    if (index >= size) throw new IndexOutOfBoundsException(index + " >= " + size);
+
+    moves[index] = move;
+  }
+
+  /**
+   * Returns the amount of moves in the buffer.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Truncates the buffer to the specified amount of moves.
+   */
+  public void setSize(int size) {
+    if ((size < 0) || (size > this.size))
+      throw new IllegalArgumentException(
+          "Bad size: " + size + " (current size: " + this.size + ")");
+
+    this.size = size;
+  }
+
+  /**
+   * Removes all the moves from the buffer.
+   */
+  public void clear() {
+    size = 0;
+  }
+
+  /**
+   * Returns a textual representation of the specified encoded move, such as <code>e7e8q</code>.
+   */
+  public static String toString(int move) {
+    String s =
+        Square.getInstance(getStartingIndex(move)).toString()
+            + Square.getInstance(getEndingIndex(move));
+    int promotionType = getPromotionType(move);
+    if (promotionType != 0) s += "pnbrqk".charAt(promotionType - 1);
+
+    return s;
+  }
+
+  /**
+   * Returns a textual representation of the moves in the buffer.
+   */
+  @Override
+  public String toString() {
+    StringBuffer buf = new StringBuffer("[");
+    for (int i = 0; i < size; i++) {
+      if (i != 0) buf.append(", ");
+      buf.append(toString(moves[i]));
+    }
+    return buf.append("]").toString();
+  }
+}
@@ -16,6 +16,7 @@
  */
 package free.chess;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.StringTokenizer;
 
@@ -31,6 +32,20 @@ import free.util.Utilities;
  * Represents a position in one of the chess wild variants. The Position class itself is generally
  * variant independent, but it does make some assumptions, such as the board being a 8x8 container
  * of pieces, there being two players and other things common to most chess variants.
+ * <P>
+ * The board is kept as a set of bitboards (see {@link Bitboards}) - one per color and one per
+ * chess piece type - so that copying and comparing positions and computing the squares a piece may
+ * move to take a few word operations. Pieces which are not one of the standard {@link ChessPiece}s
+ * are supported too, but are only told apart by comparing them to each other.
+ * <P>
+ * A 64-bit Zobrist key of the position (see {@link #getZobristKey()}) is maintained incrementally
+ * as the position changes. Together with the keys of the positions preceding it since the last
+ * irreversible move, it tells how many times the position has occurred, for detecting threefold
+ * repetition.
+ * <P>
+ * Moves made via {@link #makeMove(Move)} can be taken back, last move first, with
+ * {@link #unmakeMove(Undo)}, so that the position can be walked back and forth (for example when
+ * navigating a game or analyzing) without rebuilding it from the initial position.
  * <B>IMPORTANT:</B> This class is not thread safe.
  */
 public final class Position {
@@ -41,9 +56,117 @@ public final class Position {
   private final WildVariant variant;
 
   /**
-   * A matrix to keep references to the pieces.
+   * The pieces on the board, indexed by square index (see {@link Square#getIndex()}). This is just
+   * a view of the bitboards which lets us return the actual <code>Piece</code> object at a square
+   * without searching for it.
    */
-  private final Piece[][] pieces = new Piece[8][8];
+  private final Piece[] pieces = new Piece[64];
+
+  /**
+   * The squares occupied by the white pieces and by the black pieces, in that order.
+   */
+  private final long[] colorBitboards = new long[2];
+
+  /**
+   * The squares occupied by each type of standard chess piece, indexed by the piece type (see
+   * {@link ChessPiece#PAWN} etc.). The bitboard at index 0 holds the squares occupied by pieces
+   * which are not standard chess pieces.
+   */
+  private final long[] typeBitboards = new long[ChessPiece.KING + 1];
+
+  /**
+   * The squares of the rooks which may still castle. A rook loses its castling right when it leaves
+   * (or is removed from) its square, and all the rooks of a player lose it when the player's king
+   * leaves its square on the back rank.
+   */
+  private long castlingRooks;
+
+  /**
+   * The file on which a pawn has just made a double pawn push, and so may be captured en-passant,
+   * or -1 if none.
+   */
+  private int enPassantFile = -1;
+
+  /**
+   * The Zobrist keys of the pieces, indexed by the piece's color index, type index (see
+   * {@link #typeIndex(Piece)}) and square index. Pieces which are not standard chess pieces don't
+   * use this table (see {@link #getPieceKey(Piece, int)}).
+   */
+  private static final long[][][] PIECE_KEYS = new long[2][ChessPiece.KING + 1][64];
+
+  /**
+   * The Zobrist keys of the rooks which may still castle, indexed by square index.
+   */
+  private static final long[] CASTLING_KEYS = new long[64];
+
+  /**
+   * The Zobrist keys of the en-passant file, indexed by file.
+   */
+  private static final long[] EN_PASSANT_KEYS = new long[8];
+
+  /**
+   * The Zobrist key of black being the player to move.
+   */
+  private static final long BLACK_TO_MOVE_KEY;
+
+  static {
+    // The keys are fixed (rather than random) so that they're the same on every run
+    long seed = 0;
+    for (int color = 0; color < 2; color++)
+      for (int type = 0; type <= ChessPiece.KING; type++)
+        for (int index = 0; index < 64; index++) PIECE_KEYS[color][type][index] = mix(++seed);
+    for (int index = 0; index < 64; index++) CASTLING_KEYS[index] = mix(++seed);
+    for (int file = 0; file < 8; file++) EN_PASSANT_KEYS[file] = mix(++seed);
+    BLACK_TO_MOVE_KEY = mix(++seed);
+  }
+
+  /**
+   * The Zobrist key of the pieces on the board and the player to move.
+   */
+  private long boardKey = 0;
+
+  /**
+   * The Zobrist key of the castling rights and the en-passant file.
+   */
+  private long rightsKey = 0;
+
+  /**
+   * The amount of moves (by either player) made since the last capture or pawn move.
+   */
+  private int halfmoveClock = 0;
+
+  /**
+   * The Zobrist keys of the positions preceding this one, oldest first, since the position was last
+   * set directly.
+   */
+  private long[] keyHistory = new long[16];
+
+  /**
+   * The amount of keys in <code>keyHistory</code>.
+   */
+  private int historySize = 0;
+
+  /**
+   * The index in <code>keyHistory</code> of the first position following the last irreversible move
+   * (a capture or pawn move). Positions preceding it can't be repeated.
+   */
+  private int historyStart = 0;
+
+  /**
+   * The amount of times this position has occurred, according to <code>keyHistory</code>.
+   */
+  private int repetitionCount = 1;
+
+  /**
+   * The undo records of the moves made since the position was last set directly, the last move
+   * last. The records are reused by later moves once their moves are unmade.
+   */
+  private Undo[] undoStack = new Undo[16];
+
+  /**
+   * The amount of moves in <code>undoStack</code>.
+   */
+  private int undoCount = 0;
 
   /**
    * The Modifier of this Position.
@@ -118,7 +241,10 @@ public final class Position {
    * Returns the piece at the square with the given file and rank.
    */
   public Piece getPieceAt(int file, int rank) {
-    return pieces[file][rank];
+    if (!Square.isValid(file, rank))
+      throw new IllegalArgumentException("Bad square (file:" + file + " rank:" + rank + ")");
+
+    return pieces[(rank << 3) | file];
   }
 
   /**
@@ -137,6 +263,7 @@ public final class Position {
    */
   public void setPieceAt(Piece piece, Square square) {
     setPieceAtImpl(piece, square);
+    resetHistory();
     fireStateChanged();
   }
 
@@ -150,6 +277,97 @@ public final class Position {
     setPieceAt(piece, Square.parseSquare(square));
   }
 
+  /**
+   * Returns the bitboard of the squares occupied by the specified piece.
+   */
+  public long getBitboard(Piece piece) {
+    long bitboard = typeBitboards[typeIndex(piece)] & colorBitboards[colorIndex(piece.getColor())];
+    if (isStandardPiece(piece)) return bitboard;
+
+    for (long squares = bitboard; squares != 0; squares &= squares - 1) {
+      int index = Long.numberOfTrailingZeros(squares);
+      if (!piece.equals(pieces[index])) bitboard &= ~Bitboards.bit(index);
+    }
+
+    return bitboard;
+  }
+
+  /**
+   * Returns the bitboard of the squares occupied by standard chess pieces, of either color, of the
+   * specified type, such as {@link ChessPiece#PAWN}.
+   */
+  public long getTypeBitboard(int type) {
+    return typeBitboards[type];
+  }
+
+  /**
+   * Returns the bitboard of the squares occupied by the pieces of the specified color, either
+   * {@link Piece#WHITE} or {@link Piece#BLACK}.
+   */
+  public long getColorBitboard(int color) {
+    return colorBitboards[colorIndex(color)];
+  }
+
+  /**
+   * Returns the bitboard of the occupied squares.
+   */
+  public long getOccupiedBitboard() {
+    return colorBitboards[0] | colorBitboards[1];
+  }
+
+  /**
+   * Returns the bitboard of the squares of the rooks which may still castle. Whether a castling is
+   * actually possible is still up to the wild variant.
+   */
+  public long getCastlingRooks() {
+    return castlingRooks;
+  }
+
+  /**
+   * Returns the file on which a pawn has just made a double pawn push, or -1 if the last move was
+   * not a double pawn push (or is unknown).
+   */
+  public int getEnPassantFile() {
+    return enPassantFile;
+  }
+
+  /**
+   * Returns the 64-bit Zobrist key of this position. The key covers the pieces on the board, the
+   * player to move, the castling rights and the en-passant file, so positions with the same key are
+   * the same position for the purpose of repetition (with overwhelming probability). It's
+   * maintained as the position changes, so this method is cheap enough for keying caches by
+   * positions.
+   */
+  public long getZobristKey() {
+    return boardKey ^ rightsKey;
+  }
+
+  /**
+   * Returns the amount of moves (by either player) made since the last capture or pawn move, as
+   * needed for the 50 move rule. This starts at the value in the FEN the position was set from, or
+   * at 0.
+   */
+  public int getHalfmoveClock() {
+    return halfmoveClock;
+  }
+
+  /**
+   * Returns the amount of times this position has occurred, counting only the positions reached
+   * by making moves since the position was last set directly (via {@link #setFEN(String)} etc.).
+   * This takes constant time - the count is computed when a move is made.
+   */
+  public int getRepetitionCount() {
+    return repetitionCount;
+  }
+
+  /**
+   * Returns whether this position has occurred at least three times (see
+   * {@link #getRepetitionCount()}).
+   */
+  public boolean isThreefoldRepetition() {
+    return repetitionCount >= 3;
+  }
+
   /**
    * Returns the player whose turn it is in this position, the "current" player.
    */
@@ -164,6 +382,7 @@ public final class Position {
    */
   public void setCurrentPlayer(Player player) {
     setCurrentPlayerImpl(player);
+    resetHistory();
     fireStateChanged();
   }
 
@@ -171,7 +390,8 @@ public final class Position {
    * Sets this Position to represent the position represented by the given string. The string should
    * represent a position by specifying 64 characters indicating what occupies (-PNBRQKpnbrqk) each
    * square, in lexigraphic order (a8, b8, ..., h1). The player to move will be the player with the
-   * white pieces.
+   * white pieces. Since the string doesn't specify castling rights, every rook on its player's back
+   * rank, together with its king, is assumed to be able to castle.
    *
    * @param pos The string representing the position.
    *
@@ -193,10 +413,32 @@ public final class Position {
     }
 
     setCurrentPlayerImpl(Player.WHITE_PLAYER);
+    setCastlingRooksImpl(getBackRankRooks());
+    setEnPassantFileImpl(-1);
+    halfmoveClock = 0;
+    resetHistory();
 
     fireStateChanged();
   }
 
+  /**
+   * Returns the rooks standing on their player's back rank together with their king.
+   */
+  private long getBackRankRooks() {
+    long rooks = typeBitboards[ChessPiece.ROOK];
+    long kings = typeBitboards[ChessPiece.KING];
+    long whitePieces = colorBitboards[0];
+    long blackPieces = colorBitboards[1];
+
+    long result = 0;
+    if ((kings & whitePieces & Bitboards.RANK_1) != 0)
+      result |= rooks & whitePieces & Bitboards.RANK_1;
+    if ((kings & blackPieces & Bitboards.RANK_8) != 0)
+      result |= rooks & blackPieces & Bitboards.RANK_8;
+
+    return result;
+  }
+
   /**
    * Returns a string representing the position by 64 characters indicating what occupies (obtained
    * by calling toShortColorString() on each piece, '-' for no piece) each square, in lexigraphic
@@ -266,9 +508,79 @@ public final class Position {
     else if (colorToMove.equals("b")) setCurrentPlayerImpl(Player.BLACK_PLAYER);
     else throw new PositionFormatException("Wrong active color indicator: " + colorToMove);
 
+    setCastlingRooksImpl(parseCastlingRooks(fenTokenizer.nextToken()));
+
+    String enPassantSquare = fenTokenizer.nextToken();
+    if (enPassantSquare.equals("-")) setEnPassantFileImpl(-1);
+    else {
+      try {
+        setEnPassantFileImpl(Square.parseSquare(enPassantSquare).getFile());
+      } catch (IllegalArgumentException e) {
+        throw new PositionFormatException(e);
+      }
+    }
+
+    String halfmoveClock = fenTokenizer.nextToken();
+    try {
+      this.halfmoveClock = Integer.parseInt(halfmoveClock);
+    } catch (NumberFormatException e) {
+      throw new PositionFormatException("Wrong halfmove clock: " + halfmoveClock);
+    }
+    resetHistory();
+
     this.positionFEN = fen;
   }
 
+  /**
+   * Parses the castling availability field of a FEN string, and returns the squares of the rooks
+   * which may castle. Besides the standard <code>KQkq</code> letters, which refer to the outermost
+   * rook on the king's short and long castling side respectively (as determined by the variant -
+   * a king on the d file, for example, may castle short with the rook on the a file), the file
+   * letters used by Shredder-FEN for Fischer Random are accepted as well.
+   */
+  private long parseCastlingRooks(String castling) throws PositionFormatException {
+    if (castling.equals("-")) return 0;
+
+    long result = 0;
+    for (int i = 0; i < castling.length(); i++) {
+      char c = castling.charAt(i);
+      boolean isWhite = Character.isUpperCase(c);
+      int rank = isWhite ? 0 : 7;
+      Piece rook = isWhite ? ChessPiece.WHITE_ROOK : ChessPiece.BLACK_ROOK;
+      Piece king = isWhite ? ChessPiece.WHITE_KING : ChessPiece.BLACK_KING;
+
+      int kingFile = 0;
+      while ((kingFile < 8) && !king.equals(pieces[(rank << 3) | kingFile])) kingFile++;
+
+      int rookFile = -1;
+      c = Character.toLowerCase(c);
+      if ((c >= 'a') && (c <= 'h')) rookFile = c - 'a';
+      else if (((c == 'k') || (c == 'q')) && (kingFile < 8)) {
+        // Whether the letter refers to the king's h file side; file 8 stands for that side
+        boolean isHSide = isShortCastlingSide(kingFile, 8) == (c == 'k');
+        int step = isHSide ? -1 : 1;
+        for (int file = isHSide ? 7 : 0; (file != kingFile) && (rookFile == -1); file += step)
+          if (rook.equals(pieces[(rank << 3) | file])) rookFile = file;
+      } else if ((c != 'k') && (c != 'q'))
+        throw new PositionFormatException("Wrong castling availability: " + castling);
+
+      if ((rookFile != -1) && rook.equals(pieces[(rank << 3) | rookFile]))
+        result |= Bitboards.bit(rookFile, rank);
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns whether castling by a king on the specified file with a rook on the specified file is
+   * short castling in the variant of this position.
+   */
+  private boolean isShortCastlingSide(int kingFile, int rookFile) {
+    if (variant instanceof ChesslikeGenericVariant)
+      return ((ChesslikeGenericVariant) variant).isShortCastlingSide(kingFile, rookFile);
+    else return rookFile > kingFile;
+  }
+
   /**
    * Returns the FEN representation of this Position. May return <code>null</code> if the current
    * position wasn't set via the setFEN method. Note that as soon as the position is changed after
@@ -290,26 +602,102 @@ public final class Position {
    * pieces.
    */
   public void clear() {
-    for (int file = 0; file < 8; file++)
-      for (int rank = 0; rank < 8; rank++) setPieceAtImpl(null, Square.getInstance(file, rank));
-    setCurrentPlayerImpl(Player.WHITE_PLAYER);
+    Arrays.fill(pieces, null);
+    Arrays.fill(colorBitboards, 0);
+    Arrays.fill(typeBitboards, 0);
+    castlingRooks = 0;
+    enPassantFile = -1;
+    currentPlayer = Player.WHITE_PLAYER;
+    positionFEN = null;
+    boardKey = 0;
+    rightsKey = 0;
+    halfmoveClock = 0;
+    resetHistory();
 
     fireStateChanged();
   }
 
   /**
    * Makes the given Move on this position. This method first fires a MoveEvent and then a
-   * ChangeEvent.
+   * ChangeEvent. A move which captures a piece (reduces the amount of pieces on the board) or moves
+   * a pawn is irreversible - it resets the halfmove clock and no position preceding it can be
+   * repeated.
    *
    * @param move The move to make.
+   * @return The undo record of the move, which can be passed to {@link #unmakeMove(Undo)} to take
+   * the move back. The record is only valid until the move is unmade or the position is set
+   * directly.
    *
    * @throws IllegalArgumentException if the given Move is incompatible with the wild variant of
    * this Position.
    */
-  public void makeMove(Move move) {
-    variant.makeMove(move, this, modifier);
+  public Undo makeMove(Move move) {
+    if (undoCount == undoStack.length) {
+      Undo[] newUndoStack = new Undo[undoStack.length * 2];
+      System.arraycopy(undoStack, 0, newUndoStack, 0, undoCount);
+      undoStack = newUndoStack;
+    }
+    if (undoStack[undoCount] == null) undoStack[undoCount] = new Undo();
+    Undo undo = undoStack[undoCount];
+    undo.save(this, move);
+
+    long key = getZobristKey();
+    long pawns = typeBitboards[ChessPiece.PAWN];
+    int pieceCount = Long.bitCount(getOccupiedBitboard());
+
+    setEnPassantFileImpl(-1);
+    modifier.undo = undo;
+    try {
+      variant.makeMove(move, this, modifier);
+    } finally {
+      modifier.undo = null;
+    }
+    undoCount++;
+
+    boolean isIrreversible =
+        (typeBitboards[ChessPiece.PAWN] != pawns)
+            || (Long.bitCount(getOccupiedBitboard()) < pieceCount);
+    halfmoveClock = isIrreversible ? 0 : halfmoveClock + 1;
+    addToHistory(key, isIrreversible);
+
     fireMoveMade(move);
     fireStateChanged();
+
+    return undo;
+  }
+
+  /**
+   * Takes back the move with the specified undo record, which must be the record of the last move
+   * made (and not yet unmade) on this position, restoring the position to its exact state before
+   * the move. This method fires a ChangeEvent, but no MoveEvent.
+   *
+   * @throws IllegalArgumentException if the specified record is not that of the last move made on
+   * this position.
+   */
+  public void unmakeMove(Undo undo) {
+    if ((undoCount == 0) || (undoStack[undoCount - 1] != undo))
+      throw new IllegalArgumentException("Not the undo record of the last move made: " + undo);
+
+    undo.restore(this);
+    undoCount--;
+
+    fireStateChanged();
+  }
+
+  /**
+   * Returns the amount of moves made on this position which can be unmade - the moves made since
+   * the position was last set directly.
+   */
+  public int getUndoCount() {
+    return undoCount;
+  }
+
+  /**
+   * Returns the undo record of the last move made on this position, or <code>null</code> if there
+   * are no moves that can be unmade.
+   */
+  public Undo getLastUndo() {
+    return undoCount == 0 ? null : undoStack[undoCount - 1];
   }
 
   /**
@@ -322,15 +710,25 @@ public final class Position {
     if (!variant.equals(position.variant))
       throw new IllegalArgumentException("The WildVariants of the positions don't match");
 
-    for (int file = 0; file < pieces.length; file++) {
-      for (int rank = 0; rank < pieces[file].length; rank++) {
-        pieces[file][rank] = position.pieces[file][rank];
-      }
-    }
-
-    setCurrentPlayerImpl(position.getCurrentPlayer());
-
+    System.arraycopy(position.pieces, 0, pieces, 0, pieces.length);
+    System.arraycopy(position.colorBitboards, 0, colorBitboards, 0, colorBitboards.length);
+    System.arraycopy(position.typeBitboards, 0, typeBitboards, 0, typeBitboards.length);
+    this.castlingRooks = position.castlingRooks;
+    this.enPassantFile = position.enPassantFile;
+    this.currentPlayer = position.currentPlayer;
     this.positionFEN = position.positionFEN;
+    this.boardKey = position.boardKey;
+    this.rightsKey = position.rightsKey;
+    this.halfmoveClock = position.halfmoveClock;
+
+    // Only the positions which may still be repeated are copied; the moves can't be unmade
+    int historySize = position.historySize - position.historyStart;
+    if (keyHistory.length < historySize) keyHistory = new long[position.keyHistory.length];
+    System.arraycopy(position.keyHistory, position.historyStart, keyHistory, 0, historySize);
+    this.historySize = historySize;
+    this.historyStart = 0;
+    this.repetitionCount = position.repetitionCount;
+    this.undoCount = 0;
 
     fireStateChanged();
   }
@@ -347,10 +745,56 @@ public final class Position {
    * @see #setPieceAt(Piece, Square);
    */
   private void setPieceAtImpl(Piece piece, Square square) {
-    pieces[square.getFile()][square.getRank()] = piece;
+    int index = square.getIndex();
+    long bit = Bitboards.bit(index);
+
+    Piece oldPiece = pieces[index];
+    if (oldPiece != null) {
+      int color = oldPiece.getColor();
+      int type = typeIndex(oldPiece);
+      colorBitboards[colorIndex(color)] &= ~bit;
+      typeBitboards[type] &= ~bit;
+      boardKey ^= getPieceKey(oldPiece, index);
+
+      long lostCastlingRooks = bit;
+      if (type == ChessPiece.KING)
+        lostCastlingRooks |= color == Piece.WHITE ? Bitboards.RANK_1 : Bitboards.RANK_8;
+      if ((castlingRooks & lostCastlingRooks) != 0)
+        setCastlingRooksImpl(castlingRooks & ~lostCastlingRooks);
+    }
+
+    pieces[index] = piece;
+    if (piece != null) {
+      colorBitboards[colorIndex(piece.getColor())] |= bit;
+      typeBitboards[typeIndex(piece)] |= bit;
+      boardKey ^= getPieceKey(piece, index);
+    }
+
     positionFEN = null;
   }
 
+  /**
+   * Returns whether the specified piece is one of the standard chess pieces, which are told apart
+   * by their bitboards alone.
+   */
+  private static boolean isStandardPiece(Piece piece) {
+    return piece.getClass() == ChessPiece.class;
+  }
+
+  /**
+   * Returns the index of the type bitboard holding the specified piece.
+   */
+  private static int typeIndex(Piece piece) {
+    return isStandardPiece(piece) ? piece.getType() : 0;
+  }
+
+  /**
+   * Returns the index of the color bitboard for the specified color.
+   */
+  private static int colorIndex(int color) {
+    return color == Piece.WHITE ? 0 : 1;
+  }
+
   /**
    * Sets the current player in this position to be the given player. The difference between this
    * and the setCurrentPlayer(Player) method is that this method does not fire a ChangeEvent. It's
@@ -359,10 +803,94 @@ public final class Position {
    * @param player The player whose turn it is next.
    */
   private void setCurrentPlayerImpl(Player player) {
+    if ((currentPlayer != null) && currentPlayer.isBlack()) boardKey ^= BLACK_TO_MOVE_KEY;
+    if (player.isBlack()) boardKey ^= BLACK_TO_MOVE_KEY;
+
     this.currentPlayer = player;
     positionFEN = null;
   }
 
+  /**
+   * Sets the squares of the rooks which may still castle, updating the Zobrist key.
+   */
+  private void setCastlingRooksImpl(long rooks) {
+    for (long changed = castlingRooks ^ rooks; changed != 0; changed &= changed - 1)
+      rightsKey ^= CASTLING_KEYS[Long.numberOfTrailingZeros(changed)];
+
+    castlingRooks = rooks;
+  }
+
+  /**
+   * Sets the en-passant file, updating the Zobrist key.
+   */
+  private void setEnPassantFileImpl(int file) {
+    if (enPassantFile != -1) rightsKey ^= EN_PASSANT_KEYS[enPassantFile];
+    if (file != -1) rightsKey ^= EN_PASSANT_KEYS[file];
+
+    enPassantFile = file;
+  }
+
+  /**
+   * Returns the Zobrist key of the specified piece at the square with the specified index. The
+   * keys of pieces which are not standard chess pieces are derived from their class and value, so
+   * that equal pieces have the same key.
+   */
+  private static long getPieceKey(Piece piece, int index) {
+    int colorIndex = colorIndex(piece.getColor());
+    if (isStandardPiece(piece)) return PIECE_KEYS[colorIndex][piece.getType()][index];
+
+    long pieceHash =
+        ((long) piece.getClass().getName().hashCode() << 32) | (piece.hashCode() & 0xffffffffL);
+    return mix(PIECE_KEYS[colorIndex][0][index] ^ pieceHash);
+  }
+
+  /**
+   * Scrambles the bits of the specified value (this is the finalizer of the SplitMix64 generator).
+   */
+  private static long mix(long value) {
+    value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+    value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+    return value ^ (value >>> 31);
+  }
+
+  /**
+   * Forgets the positions preceding this one and the moves made on it, since the position has been
+   * set directly; this position is then considered to have occurred once.
+   */
+  private void resetHistory() {
+    historySize = 0;
+    historyStart = 0;
+    repetitionCount = 1;
+    undoCount = 0;
+  }
+
+  /**
+   * Adds the position with the specified key, which has just been left by a move, to the history,
+   * and counts the occurrences of the current position. Only positions since the last irreversible
+   * move, with the same player to move - every other position in the history - can be the same
+   * position.
+   */
+  private void addToHistory(long key, boolean isIrreversible) {
+    if (historySize == keyHistory.length) {
+      long[] newHistory = new long[keyHistory.length * 2];
+      System.arraycopy(keyHistory, 0, newHistory, 0, historySize);
+      keyHistory = newHistory;
+    }
+    keyHistory[historySize++] = key;
+
+    if (isIrreversible) {
+      historyStart = historySize;
+      repetitionCount = 1;
+      return;
+    }
+
+    long currentKey = getZobristKey();
+    int count = 1;
+    for (int i = historySize - 2; i >= historyStart; i -= 2)
+      if (keyHistory[i] == currentKey) count++;
+    repetitionCount = count;
+  }
+
   /**
    * Adds a ChangeListener. The change listeners are run each time the Position changes.
    *
@@ -454,16 +982,23 @@ public final class Position {
   }
 
   /**
-   * Returns true iff the specified <code>Position</code> is the same as this one.
+   * Returns true iff the specified <code>Position</code> is the same as this one. Only the pieces
+   * on the board and the current player are compared; castling rights and en-passant state are not.
    */
   public boolean equals(Position pos) {
     if (!variant.equals(pos.variant)) return false;
 
     if (!currentPlayer.equals(pos.currentPlayer)) return false;
 
-    for (int file = 0; file < pieces.length; file++)
-      for (int rank = 0; rank < pieces[file].length; rank++)
-        if (!Utilities.areEqual(pieces[file][rank], pos.pieces[file][rank])) return false;
+    if (!Arrays.equals(colorBitboards, pos.colorBitboards)) return false;
+
+    if (!Arrays.equals(typeBitboards, pos.typeBitboards)) return false;
+
+    // Non-standard pieces have to be compared one by one
+    for (long squares = typeBitboards[0]; squares != 0; squares &= squares - 1) {
+      int index = Long.numberOfTrailingZeros(squares);
+      if (!Utilities.areEqual(pieces[index], pos.pieces[index])) return false;
+    }
 
     return true;
   }
@@ -480,19 +1015,15 @@ public final class Position {
   }
 
   /**
-   * Returns the hashcode of this position.
+   * Returns the hashcode of this position. It's computed from the Zobrist key of the pieces and the
+   * player to move, without the castling rights and en-passant file, which aren't compared by
+   * {@link #equals(Position)}.
    */
   @Override
   public int hashCode() {
     int result = 17;
     result = 37 * result + variant.hashCode();
-    result = 37 * result + currentPlayer.hashCode();
-    for (int file = 0; file < pieces.length; file++)
-      for (int rank = 0; rank < pieces[file].length; rank++) {
-        Piece piece = pieces[file][rank];
-        int c = (piece == null) ? 0 : piece.hashCode();
-        result = 37 * result + c;
-      }
+    result = 37 * result + (int) (boardKey ^ (boardKey >>> 32));
 
     return result;
   }
@@ -512,6 +1043,11 @@ public final class Position {
      */
     private final Position position;
 
+    /**
+     * The undo record of the move being made, into which the changes are recorded.
+     */
+    private Undo undo = null;
+
     /**
      * Creates a new PositionModifier with the given Position.
      */
@@ -519,10 +1055,25 @@ public final class Position {
       this.position = position;
     }
 
+    /**
+     * Returns the undo record of the move being made. The record holds all the changes made via
+     * this modifier during the move, so it's all that's needed to unmake the move.
+     *
+     * @throws IllegalStateException if no move is being made.
+     */
+    public Undo getUndo() {
+      if (undo == null) throw new IllegalStateException("No move is being made");
+
+      return undo;
+    }
+
     /**
      * Puts the given piece at the given Square.
      */
     public void setPieceAt(Piece piece, Square square) {
+      int index = square.getIndex();
+      if (undo != null) undo.addChange(index, position.pieces[index]);
+
       position.setPieceAtImpl(piece, square);
     }
 
@@ -532,5 +1083,193 @@ public final class Position {
     public void setCurrentPlayer(Player player) {
       position.setCurrentPlayerImpl(player);
     }
+
+    /**
+     * Sets the file on which a pawn has just made a double pawn push, or -1 if none. The file is
+     * reset to -1 before each move is made, so this only needs to be called for double pawn pushes.
+     */
+    public void setEnPassantFile(int file) {
+      position.setEnPassantFileImpl(file);
+    }
+  }
+
+  /**
+   * The undo record of a move made on a position: the state of the position before the move and
+   * the pieces the move replaced, in the order they were replaced. Since the record holds every
+   * change made via the position's {@link Modifier}, moves of any variant can be unmade, whatever
+   * they capture, explode or hide.
+   * <P>
+   * Undo records are reused by the position they were created by, so they are only valid until
+   * their move is unmade or the position is set directly.
+   */
+  public static final class Undo {
+
+    /**
+     * The move.
+     */
+    private Move move;
+
+    /**
+     * The indices of the squares whose pieces have been replaced, in the order they were replaced.
+     */
+    private int[] squares = new int[4];
+
+    /**
+     * The pieces which have been replaced, at the corresponding squares in <code>squares</code>.
+     */
+    private Piece[] pieces = new Piece[4];
+
+    /**
+     * The amount of pieces replaced.
+     */
+    private int changeCount;
+
+    /**
+     * The player to move before the move.
+     */
+    private Player currentPlayer;
+
+    /**
+     * The squares of the rooks which could castle before the move.
+     */
+    private long castlingRooks;
+
+    /**
+     * The en-passant file before the move.
+     */
+    private int enPassantFile;
+
+    /**
+     * The Zobrist keys before the move.
+     */
+    private long boardKey, rightsKey;
+
+    /**
+     * The halfmove clock before the move.
+     */
+    private int halfmoveClock;
+
+    /**
+     * The state of the history of positions before the move.
+     */
+    private int historySize, historyStart, repetitionCount;
+
+    /**
+     * The FEN of the position before the move, if known.
+     */
+    private String positionFEN;
+
+    /**
+     * Creates a new, empty, <code>Undo</code>.
+     */
+    private Undo() {}
+
+    /**
+     * Returns the move this is the undo record of.
+     */
+    public Move getMove() {
+      return move;
+    }
+
+    /**
+     * Returns the amount of squares whose pieces the move replaced (including squares it merely
+     * left).
+     */
+    public int getChangeCount() {
+      return changeCount;
+    }
+
+    /**
+     * Returns the piece which was at the square with the specified index before the move, if the
+     * move replaced it, or <code>null</code> otherwise (or if the square was empty). This includes
+     * the pieces the move captured.
+     */
+    public Piece getReplacedPiece(Square square) {
+      int index = square.getIndex();
+      for (int i = 0; i < changeCount; i++) if (squares[i] == index) return pieces[i];
+
+      return null;
+    }
+
+    /**
+     * Returns the squares of the rooks which could castle before the move.
+     */
+    public long getCastlingRooks() {
+      return castlingRooks;
+    }
+
+    /**
+     * Returns the en-passant file before the move.
+     */
+    public int getEnPassantFile() {
+      return enPassantFile;
+    }
+
+    /**
+     * Saves the state of the specified position, before the specified move is made on it.
+     */
+    private void save(Position pos, Move move) {
+      this.move = move;
+      this.changeCount = 0;
+      this.currentPlayer = pos.currentPlayer;
+      this.castlingRooks = pos.castlingRooks;
+      this.enPassantFile = pos.enPassantFile;
+      this.boardKey = pos.boardKey;
+      this.rightsKey = pos.rightsKey;
+      this.halfmoveClock = pos.halfmoveClock;
+      this.historySize = pos.historySize;
+      this.historyStart = pos.historyStart;
+      this.repetitionCount = pos.repetitionCount;
+      this.positionFEN = pos.positionFEN;
+    }
+
+    /**
+     * Records that the piece at the square with the specified index, which may be
+     * <code>null</code>, is being replaced.
+     */
+    private void addChange(int index, Piece piece) {
+      if (changeCount == squares.length) {
+        int[] newSquares = new int[squares.length * 2];
+        Piece[] newPieces = new Piece[pieces.length * 2];
+        System.arraycopy(squares, 0, newSquares, 0, changeCount);
+        System.arraycopy(pieces, 0, newPieces, 0, changeCount);
+        squares = newSquares;
+        pieces = newPieces;
+      }
+
+      squares[changeCount] = index;
+      pieces[changeCount] = piece;
+      changeCount++;
+    }
+
+    /**
+     * Restores the specified position to its state before the move.
+     */
+    private void restore(Position pos) {
+      for (int i = changeCount - 1; i >= 0; i--) {
+        pos.setPieceAtImpl(pieces[i], Square.getInstance(squares[i]));
+        pieces[i] = null;
+      }
+
+      pos.currentPlayer = currentPlayer;
+      pos.castlingRooks = castlingRooks;
+      pos.enPassantFile = enPassantFile;
+      pos.boardKey = boardKey;
+      pos.rightsKey = rightsKey;
+      pos.halfmoveClock = halfmoveClock;
+      pos.historySize = historySize;
+      pos.historyStart = historyStart;
+      pos.repetitionCount = repetitionCount;
+      pos.positionFEN = positionFEN;
+      move = null;
+    }
+
+    /**
+     * Returns a textual representation of this record.
+     */
+    @Override
+    public String toString() {
+      return "Undo[" + move + ", " + changeCount + " changes]";
+    }
   }
 }
@@ -22,9 +22,15 @@ package free.chess;
 public class Square {
 
   /**
-   * The pool of unique immutable instances of Square.
+   * The pool of unique immutable instances of Square, indexed by {@link #getIndex()}. The pool is
+   * filled up front, so that obtaining a square requires no synchronization.
    */
-  private static final Square[][] POOL = new Square[8][8];
+  private static final Square[] POOL = new Square[64];
+
+  static {
+    for (int index = 0; index < POOL.length; index++)
+      POOL[index] = new Square(index & 7, index >> 3);
+  }
 
   /**
    * The file of the square.
@@ -76,12 +82,22 @@ public class Square {
    * Same as {@link #getInstance(int, int)}, but instead of throwing an exception for illegal
    * values, simply returns <code>null</code>.
    */
-  public static synchronized Square getInstanceNonStrict(int file, int rank) {
+  public static Square getInstanceNonStrict(int file, int rank) {
     if (!isValid(file, rank)) return null;
 
-    if (POOL[file][rank] == null) POOL[file][rank] = new Square(file, rank);
+    return POOL[(rank << 3) | file];
+  }
+
+  /**
+   * Returns the square with the specified index, as returned by {@link #getIndex()}.
+   *
+   * @throws IllegalArgumentException if the index is not in the range [0-63].
+   */
+  public static Square getInstance(int index) throws IllegalArgumentException {
+    if ((index < 0) || (index >= POOL.length))
+      throw new IllegalArgumentException("index must be in the range [0-63] (index:" + index + ")");
 
-    return POOL[file][rank];
+    return POOL[index];
   }
 
   /**
@@ -104,6 +120,15 @@ public class Square {
     }
   }
 
+  /**
+   * Returns the index of this Square, a value in the range [0-63]: <code>rank * 8 + file</code>.
+   * This is also the index of the bit representing the square in the bitboards of a
+   * {@link Position}.
+   */
+  public int getIndex() {
+    return (rank << 3) | file;
+  }
+
   /**
    * Returns the file of this Square, a value in the range [0-7].
    */
@@ -79,9 +79,12 @@ public interface WildVariant {
    * notified in the middle of a move procedure where the position isn't "stable". There is no need
    * to trigger the listeners to be called after the move procedure is done -
    * <code>Position.makeMove(Move)</code> triggers them as needed by itself (and since this method
-   * can't be called directly, that's the only way to make a move).
+   * can't be called directly, that's the only way to make a move). Implementations return the
+   * undo record of the move, as returned by {@link Position.Modifier#getUndo()} once the move has
+   * been made; since the modifier records all the changes made through it, that's all that
+   * {@link Position#unmakeMove(Position.Undo)} needs to take the move back.
    */
-  void makeMove(Move move, Position pos, Position.Modifier modifier);
+  Position.Undo makeMove(Move move, Position pos, Position.Modifier modifier);
 
   /**
    * Returns the piece represented by the given String.
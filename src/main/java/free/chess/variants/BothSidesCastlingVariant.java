@@ -130,11 +130,41 @@ public class BothSidesCastlingVariant extends ChesslikeGenericVariant {
     } else return false;
   }
 
+  /**
+   * Returns <code>true</code>, as the rules of this variant are those of chess, with castling
+   * allowed for a king on the d file as well.
+   */
+  @Override
+  public boolean isLegalityKnown() {
+    return true;
+  }
+
+  /**
+   * Allows, in addition to the usual castling, castling by a king on the d file with the rook on
+   * the a file to the b file, and with the rook on the h file to the f file.
+   */
+  @Override
+  protected int getCastlingKingDestination(int kingFile, int rookFile) {
+    if (kingFile != 3) return super.getCastlingKingDestination(kingFile, rookFile);
+    else if (rookFile == 0) return 1;
+    else if (rookFile == 7) return 5;
+    else return -1;
+  }
+
+  /**
+   * Returns whether castling by a king on the specified file with a rook on the specified file is
+   * short castling. A king on the d file castles short with the rook on the a file.
+   */
+  @Override
+  protected boolean isShortCastlingSide(int kingFile, int rookFile) {
+    return (rookFile > kingFile) != (kingFile == 3);
+  }
+
   /**
    * Makes the given ChessMove on the given position.
    */
   @Override
-  public void makeMove(Move move, Position pos, Position.Modifier modifier) {
+  public Position.Undo makeMove(Move move, Position pos, Position.Modifier modifier) {
     checkPosition(pos);
 
     if (!(move instanceof ChessMove))
@@ -162,7 +192,9 @@ public class BothSidesCastlingVariant extends ChesslikeGenericVariant {
       modifier.setPieceAt(rook, rookEndSquare);
 
       modifier.setCurrentPlayer(pos.getCurrentPlayer().getOpponent());
-    } else super.makeMove(move, pos, modifier);
+
+      return modifier.getUndo();
+    } else return super.makeMove(move, pos, modifier);
   }
 
   /**
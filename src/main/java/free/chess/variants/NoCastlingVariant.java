@@ -36,6 +36,14 @@ public class NoCastlingVariant extends ChesslikeGenericVariant {
     super(initialPositionFEN, variantName);
   }
 
+  /**
+   * Returns <code>true</code>, as the rules of this variant are those of chess, without castling.
+   */
+  @Override
+  public boolean isLegalityKnown() {
+    return true;
+  }
+
   /**
    * Returns false, as this is a variant which disallows castling.
    */
@@ -56,6 +64,14 @@ public class NoCastlingVariant extends ChesslikeGenericVariant {
     return false;
   }
 
+  /**
+   * Returns -1, as this is a variant which disallows castling.
+   */
+  @Override
+  protected int getCastlingKingDestination(int kingFile, int rookFile) {
+    return -1;
+  }
+
   /**
    * Always throws <code>UnsupportedOperationException</code>.
    */
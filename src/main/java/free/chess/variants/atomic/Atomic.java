@@ -16,11 +16,13 @@
  */
 package free.chess.variants.atomic;
 
+import free.chess.Bitboards;
 import free.chess.Chess;
 import free.chess.ChessMove;
 import free.chess.ChessPiece;
 import free.chess.ChesslikeGenericVariant;
 import free.chess.Move;
+import free.chess.MoveBuffer;
 import free.chess.Position;
 import free.chess.Square;
 
@@ -64,6 +66,43 @@ public class Atomic extends ChesslikeGenericVariant {
     super(Chess.INITIAL_POSITION_FEN, "Atomic");
   }
 
+  /**
+   * Returns <code>false</code>, as check is not recognized in Atomic.
+   */
+  @Override
+  protected boolean isCheckRecognized() {
+    return false;
+  }
+
+  /**
+   * Removes the captures which destroy the current player's own king - captures by the king and
+   * captures next to it.
+   */
+  @Override
+  protected void removeIllegalMoves(Position pos, MoveBuffer moves, int start) {
+    super.removeIllegalMoves(pos, moves, start);
+
+    int color = pos.getCurrentPlayer().getPieceColor();
+    long kings = pos.getTypeBitboard(ChessPiece.KING) & pos.getColorBitboard(color);
+    long pawns = pos.getTypeBitboard(ChessPiece.PAWN);
+
+    int count = start;
+    for (int i = start; i < moves.size(); i++) {
+      int move = moves.get(i);
+      if (isCapture(pos, move)) {
+        int endingIndex = MoveBuffer.getEndingIndex(move);
+        long explosion = (Bitboards.kingAttacks(endingIndex) & ~pawns) | Bitboards.bit(endingIndex);
+        long kingsAfterMove = kings & ~Bitboards.bit(MoveBuffer.getStartingIndex(move));
+        boolean isKingCapture = kingsAfterMove != kings;
+        if (isKingCapture || ((explosion & kingsAfterMove) != 0)) continue;
+      }
+
+      moves.set(count++, move);
+    }
+
+    moves.setSize(count);
+  }
+
   /**
    * <P>
    * Makes the given ChessMove in the given Position. <B>This method shoudln't (and can't) be called
@@ -73,7 +112,7 @@ public class Atomic extends ChesslikeGenericVariant {
    * .
    */
   @Override
-  public void makeMove(Move move, Position pos, Position.Modifier modifier) {
+  public Position.Undo makeMove(Move move, Position pos, Position.Modifier modifier) {
     checkPosition(pos);
 
     if (!(move instanceof ChessMove))
@@ -96,6 +135,8 @@ public class Atomic extends ChesslikeGenericVariant {
 
       modifier.setPieceAt(null, endingSquare);
     }
+
+    return modifier.getUndo();
   }
 
   /**
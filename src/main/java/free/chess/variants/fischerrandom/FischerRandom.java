@@ -198,6 +198,24 @@ public class FischerRandom extends ChesslikeGenericVariant {
     return false;
   }
 
+  /**
+   * Returns <code>true</code>, as the rules of Fischer random chess are implemented in full.
+   */
+  @Override
+  public boolean isLegalityKnown() {
+    return true;
+  }
+
+  /**
+   * Returns the file the king ends up on when castling with the rook on the specified file. The
+   * king ends up on the g file when castling with the rook on its h file side, and on the c file
+   * otherwise.
+   */
+  @Override
+  protected int getCastlingKingDestination(int kingFile, int rookFile) {
+    return rookFile > kingFile ? 6 : 2;
+  }
+
   /**
    * Creates a short castling move for the current player in the specified position. Short castling
    * must be legal in the specified position.
@@ -404,7 +422,7 @@ public class FischerRandom extends ChesslikeGenericVariant {
    * Makes the given ChessMove on the given position.
    */
   @Override
-  public void makeMove(Move move, Position pos, Position.Modifier modifier) {
+  public Position.Undo makeMove(Move move, Position pos, Position.Modifier modifier) {
     checkPosition(pos);
 
     if (!(move instanceof ChessMove))
@@ -445,6 +463,8 @@ public class FischerRandom extends ChesslikeGenericVariant {
       modifier.setPieceAt(rook, rookEndingSquare);
 
       modifier.setCurrentPlayer(pos.getCurrentPlayer().getOpponent());
-    } else super.makeMove(move, pos, modifier);
+
+      return modifier.getUndo();
+    } else return super.makeMove(move, pos, modifier);
   }
 }
@@ -19,6 +19,7 @@ package free.chess.variants.giveaway;
 import free.chess.Chess;
 import free.chess.ChessPiece;
 import free.chess.ChesslikeGenericVariant;
+import free.chess.MoveBuffer;
 import free.chess.Piece;
 import free.chess.Position;
 import free.chess.Square;
@@ -80,6 +81,22 @@ public class Giveaway extends ChesslikeGenericVariant {
     super(Chess.INITIAL_POSITION_FEN, "Giveaway");
   }
 
+  /**
+   * Returns <code>false</code>, as the king plays no special role in Giveaway.
+   */
+  @Override
+  protected boolean isCheckRecognized() {
+    return false;
+  }
+
+  /**
+   * Generates only captures, if the current player can capture, as capturing is compulsory.
+   */
+  @Override
+  protected int generateLegalMoves(Position pos, long movingPieces, MoveBuffer moves) {
+    return generateCompulsoryCaptureMoves(pos, movingPieces, moves);
+  }
+
   /**
    * <P>
    * If the a move created by the given starting square and ending square in the given position is a
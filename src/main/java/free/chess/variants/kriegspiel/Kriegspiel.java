@@ -174,7 +174,7 @@ public class Kriegspiel implements WildVariant {
    * Makes the given KriegspielMove on the given position.
    */
   @Override
-  public void makeMove(Move move, Position pos, Position.Modifier modifier) {
+  public Position.Undo makeMove(Move move, Position pos, Position.Modifier modifier) {
     checkPosition(pos);
 
     if ((!(move instanceof KriegspielMove)) && (!(move instanceof ChessMove)))
@@ -196,6 +196,8 @@ public class Kriegspiel implements WildVariant {
     } else { // Completely visible
       Chess.getInstance().makeChessMove((ChessMove) move, pos, modifier);
     }
+
+    return modifier.getUndo();
   }
 
   /**
@@ -5,6 +5,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
+import free.chess.Bitboards;
 import free.chess.Chess;
 import free.chess.ChessPiece;
 import free.chess.Piece;
@@ -135,6 +136,46 @@ public class Shatranj extends NoCastlingVariant {
     return getElephantTargetSquares(pos, square);
   }
 
+  /**
+   * The squares attacked by a fers (queen) at each square.
+   */
+  private static final long[] FERS_ATTACKS = new long[64];
+
+  /**
+   * The squares attacked by an elephant (bishop) at each square.
+   */
+  private static final long[] ELEPHANT_ATTACKS = new long[64];
+
+  static {
+    for (int i = 0; i < 64; i++) {
+      FERS_ATTACKS[i] = Bitboards.offsetTargets(i, FERS_DIRECTIONS);
+      ELEPHANT_ATTACKS[i] = Bitboards.offsetTargets(i, ELEPHANT_DIRECTIONS);
+    }
+  }
+
+  /**
+   * Overrides to return the squares attacked by the shatranj queen (fers) and bishop (elephant).
+   */
+  @Override
+  protected long getAttacks(int type, int color, int index, long occupied) {
+    switch (type) {
+      case ChessPiece.QUEEN:
+        return FERS_ATTACKS[index];
+      case ChessPiece.BISHOP:
+        return ELEPHANT_ATTACKS[index];
+      default:
+        return super.getAttacks(type, color, index, occupied);
+    }
+  }
+
+  /**
+   * Since there is no double pawn push in Shatranj, this method always returns -1.
+   */
+  @Override
+  public int getDoublePawnPushFile(Position pos, Square startingSquare, Square endingSquare) {
+    return -1;
+  }
+
   /**
    * Returns target squares for a pawn. In shatranj there is no double pawn push and no en-passant.
    */
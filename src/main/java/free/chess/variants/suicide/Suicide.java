@@ -18,6 +18,7 @@ package free.chess.variants.suicide;
 
 import free.chess.Chess;
 import free.chess.ChessPiece;
+import free.chess.MoveBuffer;
 import free.chess.Piece;
 import free.chess.Position;
 import free.chess.Square;
@@ -76,6 +77,31 @@ public class Suicide extends NoCastlingVariant {
     super(Chess.INITIAL_POSITION_FEN, "Suicide");
   }
 
+  /**
+   * Returns <code>false</code>, as the rules of Suicide (those of the server) aren't all
+   * implemented here; the moves generated are only those of antichess.
+   */
+  @Override
+  public boolean isLegalityKnown() {
+    return false;
+  }
+
+  /**
+   * Returns <code>false</code>, as the king plays no special role in Suicide.
+   */
+  @Override
+  protected boolean isCheckRecognized() {
+    return false;
+  }
+
+  /**
+   * Generates only captures, if the current player can capture, as capturing is compulsory.
+   */
+  @Override
+  protected int generateLegalMoves(Position pos, long movingPieces, MoveBuffer moves) {
+    return generateCompulsoryCaptureMoves(pos, movingPieces, moves);
+  }
+
   /**
    * <P>
    * If the a move created by the given starting square and ending square in the given position is a
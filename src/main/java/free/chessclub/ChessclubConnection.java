@@ -16,19 +16,13 @@
  */
 package free.chessclub;
 
-import java.io.BufferedInputStream;
-import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.PrintStream;
-import java.io.PushbackInputStream;
 import java.util.BitSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.List;
-import java.util.StringTokenizer;
+import java.util.Vector;
 
 import free.chessclub.level1.Packet;
 import free.chessclub.level2.Datagram;
@@ -36,7 +30,7 @@ import free.chessclub.level2.DatagramEvent;
 import free.chessclub.level2.DatagramListener;
 import free.util.Connection;
 import free.util.EventListenerList;
-import free.util.FormatException;
+import free.util.ProtocolLog;
 
 /**
  * This class is responsible for connecting to the chessclub.com server, logging on and further
@@ -48,31 +42,6 @@ import free.util.FormatException;
  */
 public class ChessclubConnection extends free.util.Connection {
 
-  /**
-   * The standard delimiter, used to delimit both level1 and level2.
-   */
-  private static final char STANDARD_DELIMITER = '\u0019';
-
-  /**
-   * The start-of-level1-packet delimiter.
-   */
-  private static final char PACKET_START_DELIMITER = '[';
-
-  /**
-   * The end-of-level1-packet delimiter.
-   */
-  private static final char PACKET_END_DELIMITER = ']';
-
-  /**
-   * The start-of-level2-datagram delimiter.
-   */
-  private static final char DATAGRAM_START_DELIMITER = '(';
-
-  /**
-   * The end-of-datagram delimiter.
-   */
-  private static final char DATAGRAM_END_DELIMITER = ')';
-
   /**
    * Maps rating keys to their english names.
    */
@@ -84,11 +53,11 @@ public class ChessclubConnection extends free.util.Connection {
   private final Hashtable variantNames = new Hashtable();
 
   /**
-   * The PrintStream where this <code>ChessclubConnection</code> logs the commands we send to the
-   * server and information we receive from it. May be <code>null</code> if we're not logging the
-   * above information.
+   * The log where this <code>ChessclubConnection</code> logs the commands we send to the server and
+   * information we receive from it. May be <code>null</code> if we're not logging the above
+   * information.
    */
-  private final PrintStream logStream;
+  private final ProtocolLog protocolLog;
 
   /**
    * The level2 settings requested by the client. The bit at each index specifies whether the
@@ -125,6 +94,31 @@ public class ChessclubConnection extends free.util.Connection {
    */
   private boolean level2SettingsSent = false;
 
+  /**
+   * The nesting depth of {@link #beginDGStateChanges()} invocations; while it's positive,
+   * <code>set-2</code> commands are held back in <code>pendingLevel2Changes</code>.
+   */
+  private int dgStateChangesDepth = 0;
+
+  /**
+   * The numbers (as <code>Integer</code>s) of the datagrams whose state changed while logged in,
+   * but for which no <code>set-2</code> command has been sent yet, in the order of the changes.
+   * The order matters because the <code>DG_SET2</code> echoing the last change of a group is
+   * sometimes used to tell that the whole group has taken effect.
+   */
+  private final Vector pendingLevel2Changes = new Vector();
+
+  /**
+   * The maximum amount of <code>set-2</code> commands we combine into a single <code>multi</code>
+   * command.
+   */
+  private static final int MAX_SET2_PER_COMMAND = 20;
+
+  /**
+   * The statistics of the datagrams we receive.
+   */
+  private final DatagramStats datagramStats = new DatagramStats();
+
   /**
    * The queue of commands we are to send on-login.
    */
@@ -144,16 +138,16 @@ public class ChessclubConnection extends free.util.Connection {
    * @param requestedUsername The requested username, note that the actual username is unknown until
    * after the login.
    * @param password The password of the account.
-   * @param logStream The PrintStream where this ChessclubConnection will log all information sent
-   * by the server and commands sent by this <code>ChessclubConnection</code>. Pass
-   * <code>null</code> if you don't want logging.
+   * @param protocolLog The log where this ChessclubConnection will log all information sent by the
+   * server and commands sent by this <code>ChessclubConnection</code>. Pass <code>null</code> if
+   * you don't want logging.
    *
    * @see #setDGState(int, boolean)
    */
-  public ChessclubConnection(String requestedUsername, String password, PrintStream logStream) {
+  public ChessclubConnection(String requestedUsername, String password, ProtocolLog protocolLog) {
     super(requestedUsername, password);
 
-    this.logStream = logStream;
+    this.protocolLog = protocolLog;
 
     // We need this to get the real username
     setDGState(Datagram.DG_WHO_AM_I, true);
@@ -280,8 +274,10 @@ public class ChessclubConnection extends free.util.Connection {
     else requestedLevel2Settings.clear(dgNumber);
 
     if (level2SettingsSent) {
-      if (isLoggedIn())
-        sendCommand("set-2 " + dgNumber + " " + (state ? "1" : "0"), false, true, null);
+      if (isLoggedIn()) {
+        addPendingLevel2Change(dgNumber);
+        if (dgStateChangesDepth == 0) sendLevel2Changes();
+      }
       // Otherwise, we will fix it in onLogin(). We don't do it here because it's
       // not a good idea to send anything in the middle of the login procedure.
     } else {
@@ -292,6 +288,60 @@ public class ChessclubConnection extends free.util.Connection {
     return true;
   }
 
+  /**
+   * Starts a group of changes to the state of datagrams (typically, adding or removing several
+   * <code>DatagramListener</code>s). Until the matching {@link #endDGStateChanges()}, the
+   * <code>set-2</code> commands resulting from the changes are held back, and are then sent
+   * together, combined into as few <code>multi</code> commands as possible. Groups may be nested.
+   */
+  public final synchronized void beginDGStateChanges() {
+    dgStateChangesDepth++;
+  }
+
+  /**
+   * Ends a group of changes to the state of datagrams started with {@link #beginDGStateChanges()},
+   * sending the held back <code>set-2</code> commands if this is the outermost group.
+   */
+  public final synchronized void endDGStateChanges() {
+    if (dgStateChangesDepth == 0) throw new IllegalStateException("No group of changes to end");
+
+    if ((--dgStateChangesDepth == 0) && isLoggedIn()) sendLevel2Changes();
+  }
+
+  /**
+   * Adds the specified datagram to the end of <code>pendingLevel2Changes</code>, moving it there if
+   * it's already pending.
+   */
+  private void addPendingLevel2Change(int dgNumber) {
+    Integer key = new Integer(dgNumber);
+    pendingLevel2Changes.removeElement(key);
+    pendingLevel2Changes.addElement(key);
+  }
+
+  /**
+   * Sends <code>set-2</code> commands for the datagrams in <code>pendingLevel2Changes</code>,
+   * setting each to its requested state. Several <code>set-2</code> commands are combined into a
+   * single <code>multi</code> command.
+   */
+  private synchronized void sendLevel2Changes() {
+    StringBuffer buf = new StringBuffer();
+    int count = 0;
+    for (int i = 0; i < pendingLevel2Changes.size(); i++) {
+      int dgNumber = ((Integer) pendingLevel2Changes.elementAt(i)).intValue();
+      buf.append(count == 0 ? "multi " : ";");
+      buf.append("set-2 ").append(dgNumber);
+      buf.append(requestedLevel2Settings.get(dgNumber) ? " 1" : " 0");
+      if (++count == MAX_SET2_PER_COMMAND) {
+        sendCommand(buf.toString(), false, true, null);
+        buf.setLength(0);
+        count = 0;
+      }
+    }
+    if (count != 0) sendCommand(buf.toString(), false, true, null);
+
+    pendingLevel2Changes.removeAllElements();
+  }
+
   /**
    * Sets the given datagram on again. This is needed because some datagrams won't correctly keep
    * you up-to-date with the current state of events, and you need (sigh, this is definitely not
@@ -426,10 +476,9 @@ public class ChessclubConnection extends free.util.Connection {
       // Apply any level2 changes which might have occurred when we were waiting
       // for login.
       for (int i = 0; i < requestedLevel2Settings.size(); i++) {
-        boolean state = requestedLevel2Settings.get(i);
-        if (state != level2Settings.get(i))
-          sendCommand("set-2 " + i + " " + (state ? "1" : "0"), false, true, null);
+        if (requestedLevel2Settings.get(i) != level2Settings.get(i)) addPendingLevel2Change(i);
       }
+      sendLevel2Changes();
 
       sendCommand("set-quietly prompt 0", false, true, null);
       sendCommand("set-quietly highlight 0", false, true, null);
@@ -456,12 +505,20 @@ public class ChessclubConnection extends free.util.Connection {
 
   /**
    * Overrides {@link Connection#createInputStream(InputStream)} to wrap the specified
-   * <code>InputStream</code> in a <code>BufferedInputStream</code> and a
-   * <code>PushbackInputStream</code>.
+   * <code>InputStream</code> in a <code>ChessclubInputStream</code>, which splits the server's
+   * output into lines, packets and datagrams.
    */
   @Override
   protected InputStream createInputStream(InputStream in) {
-    return new PushbackInputStream(new BufferedInputStream(in), 2);
+    return new ChessclubInputStream(in, datagramStats);
+  }
+
+  /**
+   * Returns the statistics of the datagrams received from the server, which tell how much of the
+   * traffic each type of datagram takes.
+   */
+  public DatagramStats getDatagramStats() {
+    return datagramStats;
   }
 
   /**
@@ -469,171 +526,153 @@ public class ChessclubConnection extends free.util.Connection {
    */
   @Override
   protected Object readMessage(InputStream in) throws IOException {
-    PushbackInputStream pin = (PushbackInputStream) in;
-
-    while (true) {
-      int b = pin.read();
-
-      if (b < 0) // Clean disconnection
-      return null;
-
-      if (b
-          == STANDARD_DELIMITER) { // May be a level1 packet or datagram (but may also be just a line with this character
-        int next = pin.read();
-        if (next < 0) throw new EOFException("EOF after STANDARD_DELIMITER");
-
-        pin.unread(next);
-        pin.unread(b);
-
-        if (next == PACKET_START_DELIMITER) return readPacket(pin);
-        else if (next == DATAGRAM_START_DELIMITER) return readDatagram(pin);
-        else if (next == PACKET_END_DELIMITER) // This means a clean logout
-        return null;
-      } else {
-        pin.unread(b);
-        String line = readLine(pin);
-        return filterLine(line);
-      }
-    }
+    return ((ChessclubInputStream) in).readMessage();
   }
 
   /**
-   * Reads and parses a level1 packet from the specified input stream.
-   *
-   * @throws IOException if an I/O error occurs while reading the datagram
+   * The names of the types of datagrams, indexed by datagram ID, which the statistics of the
+   * connection count messages by (see {@link #getMessageType(Object)}).
    */
-  private Packet readPacket(PushbackInputStream in) throws IOException {
-    StringBuffer header = new StringBuffer();
+  private static final String[] DATAGRAM_TYPE_NAMES = new String[Datagram.MAX_DG_ID + 1];
 
-    // Read until the newline
-    while (true) {
-      int b = in.read();
-      if (b < 0) throw new EOFException("EOF in a packet");
+  static {
+    for (int i = 0; i < DATAGRAM_TYPE_NAMES.length; i++) DATAGRAM_TYPE_NAMES[i] = "DG" + i;
+  }
 
-      if (b == '\n') break;
+  /**
+   * Returns "DG" followed by the ID for datagrams, "packet" for level1 packets and "line" for
+   * lines of plain text. The datagrams inside level1 packets are counted by the
+   * {@link DatagramStats}, which also count the bytes taken by each type of datagram.
+   */
+  @Override
+  protected String getMessageType(Object message) {
+    if (message instanceof Datagram) {
+      int id = ((Datagram) message).getId();
+      return (id >= 0) && (id < DATAGRAM_TYPE_NAMES.length) ? DATAGRAM_TYPE_NAMES[id] : "DG?";
+    } else if (message instanceof Packet) return "packet";
+    else return "line";
+  }
+
+  /**
+   * The datagrams concerning a single game, whose first field is the game number.
+   */
+  private static final BitSet GAME_DATAGRAMS = new BitSet();
+
+  static {
+    int[] gameDatagrams = {
+      Datagram.DG_EXAMINED_GAME_IS_GONE, Datagram.DG_MY_GAME_STARTED, Datagram.DG_MY_GAME_RESULT,
+      Datagram.DG_MY_GAME_ENDED, Datagram.DG_STARTED_OBSERVING, Datagram.DG_STOP_OBSERVING,
+      Datagram.DG_PLAYERS_IN_MY_GAME, Datagram.DG_OFFERS_IN_MY_GAME, Datagram.DG_TAKEBACK,
+      Datagram.DG_BACKWARD, Datagram.DG_SEND_MOVES, Datagram.DG_MOVE_LIST,
+      Datagram.DG_BUGHOUSE_HOLDINGS, Datagram.DG_SET_CLOCK, Datagram.DG_FLIP, Datagram.DG_REFRESH,
+      Datagram.DG_ILLEGAL_MOVE, Datagram.DG_MY_RELATION_TO_GAME, Datagram.DG_MSEC,
+      Datagram.DG_BUGHOUSE_PASS, Datagram.DG_CIRCLE, Datagram.DG_ARROW, Datagram.DG_MORETIME,
+      Datagram.DG_GAME_MESSAGE, Datagram.DG_SET_BOARD, Datagram.DG_UNCIRCLE, Datagram.DG_UNARROW,
+      Datagram.DG_MY_GAME_CHANGE, Datagram.DG_POSITION_BEGIN, Datagram.DG_POSITION_BEGIN2,
+      Datagram.DG_PAST_MOVE, Datagram.DG_PGN_TAG, Datagram.DG_IS_VARIATION
+    };
+    for (int i = 0; i < gameDatagrams.length; i++) GAME_DATAGRAMS.set(gameDatagrams[i]);
+  }
+
+  /**
+   * Puts datagrams concerning games into {@link #URGENT_LANE} if the game is the user's own and
+   * into {@link #HIGH_LANE} if it's observed, seek and match offer datagrams into
+   * {@link #NORMAL_LANE} and chat datagrams, plain text and everything else into
+   * {@link #LOW_LANE}. Whether a game is the user's own is known from the datagram that starts it,
+   * which is sent before any other datagram concerning the game. The datagrams which carry
+   * information needed to interpret other datagrams (such as DG_RATING_TYPE_KEY) go into the urgent
+   * lane, and a DG_SET2 goes into the lowest lane datagrams of the type it turns on or off may go
+   * into, so that neither is handled after the datagrams following it. A level1 packet goes into
+   * the highest lane any of its items would.
+   */
+  @Override
+  protected int getLane(Object message) {
+    if (message instanceof Datagram) return getDatagramLane((Datagram) message);
+    else if (message instanceof Packet) {
+      Packet packet = (Packet) message;
+      int lane = LOW_LANE;
+      for (int i = 0; i < packet.getItemCount(); i++)
+        lane = Math.min(lane, getLane(packet.getItem(i)));
+      return lane;
+    } else return LOW_LANE;
+  }
 
-      header.append((char) b);
+  /**
+   * Returns the lane for the specified datagram.
+   */
+  private int getDatagramLane(Datagram datagram) {
+    int id = datagram.getId();
+    if (GAME_DATAGRAMS.get(id)) {
+      Integer gameNumber = new Integer(datagram.getInteger(0));
+      if (id == Datagram.DG_MY_GAME_STARTED) return assignLane(gameNumber, URGENT_LANE);
+      else if (id == Datagram.DG_STARTED_OBSERVING) return assignLane(gameNumber, HIGH_LANE);
+      else return assignLane(gameNumber, getAssignedLane(gameNumber, URGENT_LANE));
     }
 
-    // In contradiction to formats.txt, the servers seems to end the header line with \r\n
-    int len = header.length();
-    if (header.charAt(len - 1) == '\r') header.setLength(len - 1);
-
-    StringTokenizer tokenizer = new StringTokenizer(header.substring(2), " ");
-    int commandCode = Integer.parseInt(tokenizer.nextToken());
-    String playerName = tokenizer.nextToken();
-    String clientTag = tokenizer.hasMoreTokens() ? tokenizer.nextToken() : null;
-
-    List items = new LinkedList();
-    // Read until the matching ^Y]
-    while (true) {
-      int first = in.read();
-      if (first < 0) throw new EOFException("EOF in a packet");
-
-      int second = in.read();
-      if (second < 0) throw new EOFException("EOF in a packet");
-
-      if ((first == STANDARD_DELIMITER) && (second == PACKET_END_DELIMITER)) break;
-
-      in.unread(second);
-      in.unread(first);
-
-      items.add(readMessage(in));
+    switch (id) {
+      case Datagram.DG_WHO_AM_I:
+      case Datagram.DG_LOGIN_FAILED:
+      case Datagram.DG_RATING_TYPE_KEY:
+      case Datagram.DG_WILD_KEY:
+        return URGENT_LANE;
+      case Datagram.DG_SEEK:
+      case Datagram.DG_SEEK_REMOVED:
+      case Datagram.DG_MATCH:
+      case Datagram.DG_MATCH_REMOVED:
+        return NORMAL_LANE;
+      case Datagram.DG_SET2:
+        int dgType = datagram.getInteger(0);
+        if (GAME_DATAGRAMS.get(dgType)) return HIGH_LANE;
+        else if ((dgType == Datagram.DG_SEEK)
+            || (dgType == Datagram.DG_SEEK_REMOVED)
+            || (dgType == Datagram.DG_MATCH)
+            || (dgType == Datagram.DG_MATCH_REMOVED)) return NORMAL_LANE;
+        else return LOW_LANE;
+      default:
+        return LOW_LANE;
     }
-
-    return new Packet(commandCode, playerName, clientTag, items.toArray(new Object[items.size()]));
   }
 
   /**
-   * Reads and parses a level2 datagram from the specified input stream.
-   *
-   * @throws IOException if an I/O error occurs while reading the datagram
-   * @throws FormatException if the data read from the input stream can't be parsed as a datagram.
+   * Returns whether the specified message may be dropped when the server sends chat faster than we
+   * can handle it. These are shouts, channel tells (including qtells) and kibitzes.
    */
-  private Datagram readDatagram(InputStream in) throws IOException {
-    StringBuffer buf = new StringBuffer();
-
-    int lastChar = -1;
-
-    // Read until ^Y) is encountered
-    while (true) {
-      int b = in.read();
-      if (b < 0) throw new EOFException("EOF in a datagram");
-
-      buf.append((char) b);
-
-      if ((lastChar == STANDARD_DELIMITER) && (b == DATAGRAM_END_DELIMITER))
-        return Datagram.parseDatagram(
-            buf.substring(2, buf.length() - 2)); // Strip off the delimiters
-
-      lastChar = b;
+  @Override
+  protected boolean isSheddable(Object message) {
+    if (!(message instanceof Datagram)) return false;
+
+    switch (((Datagram) message).getId()) {
+      case Datagram.DG_SHOUT:
+      case Datagram.DG_CHANNEL_TELL:
+      case Datagram.DG_CHANNEL_QTELL:
+      case Datagram.DG_KIBITZ:
+        return true;
+      default:
+        return false;
     }
   }
 
   /**
-   * Read a line of plain text from the server.
+   * Returns whether the specified message makes pending messages obsolete - it does if it's a
+   * DG_SEEK_REMOVED.
    */
-  private String readLine(PushbackInputStream in) throws IOException {
-    StringBuffer buf = new StringBuffer();
-
-    while (true) {
-      int b = in.read();
-
-      if (b < 0) break;
-
-      // End of line
-      if (b == '\n') break;
-
-      // '\r' is also a line delimiter
-      if (b == '\r') {
-        b = in.read(); // Eat the following '\n', if any
-        if ((b > 0) && (b != '\n')) in.unread(b);
-        break;
-      }
-
-      // Don't read any datagrams
-      if (b == STANDARD_DELIMITER) {
-        in.unread(b);
-        break;
-      }
-
-      buf.append((char) b);
-    }
-
-    return buf.toString();
+  @Override
+  protected boolean isSuperseding(Object message) {
+    return (message instanceof Datagram)
+        && (((Datagram) message).getId() == Datagram.DG_SEEK_REMOVED);
   }
 
   /**
-   * Filters certain characters and character sequences (such as BEL and the prompt) from plain
-   * lines of text. Returns the string after filter, or <code>null</code> if the line should be
-   * completely ignored.
+   * Returns whether the specified message makes the specified pending message obsolete - a
+   * DG_SEEK_REMOVED makes a pending DG_SEEK of the same seek obsolete.
    */
-  private String filterLine(String line) {
-    int len = line.length();
-
-    // Keep initially empty lines.
-    if (len == 0) return "";
-
-    StringBuffer buf = new StringBuffer();
-
-    int i = 0;
-
-    // Skip leading prompt
-    while (line.startsWith("aics% ", i)) i += "aics% ".length();
-
-    for (; i < len; i++) {
-      char c = line.charAt(i);
-
-      // Ignore BEL
-      if (c == 7) continue;
-
-      buf.append(c);
-    }
-
-    // Ignore lines which have been completely filtered out
-    if (buf.length() == 0) return null;
+  @Override
+  protected boolean supersedes(Object message, Object pendingMessage) {
+    if (!(pendingMessage instanceof Datagram)) return false;
 
-    return buf.toString();
+    Datagram pendingDatagram = (Datagram) pendingMessage;
+    return (pendingDatagram.getId() == Datagram.DG_SEEK)
+        && (pendingDatagram.getInteger(0) == ((Datagram) message).getInteger(0));
   }
 
   /**
@@ -653,11 +692,28 @@ public class ChessclubConnection extends free.util.Connection {
    * @param tag The client tag ("arbitrary-string" in formats.txt) with which we tag the command;
    * <code>null</code> if none.
    */
-  public synchronized void sendCommand(
+  public void sendCommand(
       String command, boolean whenLoggedIn, boolean avoidAliasing, String tag) {
+    sendCommand(command, whenLoggedIn, avoidAliasing, tag, false);
+  }
+
+  /**
+   * Sends a command to the server with the specified options.
+   *
+   * @param command The command.
+   * @param whenLoggedIn If set and we are not yet logged in, wait until login and then send the
+   * command. If unset, the command is sent immediately.
+   * @param avoidAliasing Avoid triggering any aliases with the command.
+   * @param tag The client tag ("arbitrary-string" in formats.txt) with which we tag the command;
+   * <code>null</code> if none.
+   * @param isUrgent Whether the command (a move, for example) should be written to the server
+   * without any delay, rather than possibly batched with the commands following it.
+   */
+  public synchronized void sendCommand(
+      String command, boolean whenLoggedIn, boolean avoidAliasing, String tag, boolean isUrgent) {
     command = makeCommand(command, avoidAliasing, tag);
 
-    if (isLoggedIn() || !whenLoggedIn) sendCommandImpl(command, true);
+    if (isLoggedIn() || !whenLoggedIn) sendCommandImpl(command, true, isUrgent);
     else onLoginCommandQueue.addLast(command);
   }
 
@@ -680,21 +736,22 @@ public class ChessclubConnection extends free.util.Connection {
   }
 
   /**
-   * Sends the given command to the server, optionally logging it to the log stream.
+   * Sends the given command to the server, optionally logging it to the protocol log.
+   */
+  private void sendCommandImpl(String command, boolean log) {
+    sendCommandImpl(command, log, false);
+  }
+
+  /**
+   * Sends the given command to the server, optionally logging it to the protocol log. The command
+   * is written asynchronously, see {@link #sendCommandAsync(String, boolean)}.
    */
-  private synchronized void sendCommandImpl(String command, boolean log) {
+  private synchronized void sendCommandImpl(String command, boolean log, boolean isUrgent) {
     if (!isConnected()) throw new IllegalStateException("Not connected");
 
-    if (log && (logStream != null)) logStream.println("SENDING COMMAND: " + command);
+    if (log && (protocolLog != null) && protocolLog.isEnabled()) protocolLog.sent(command);
 
-    try {
-      OutputStream out = getOutputStream();
-      out.write(command.getBytes("ISO8859_1"));
-      out.write('\n');
-      out.flush();
-    } catch (IOException e) {
-      connectionInterrupted(e);
-    }
+    sendCommandAsync(command, isUrgent);
   }
 
   /**
@@ -760,7 +817,7 @@ public class ChessclubConnection extends free.util.Connection {
    * @see #processDatagram(Datagram)
    */
   private final void handleDatagram(Datagram datagram, String clientTag) {
-    if (logStream != null) logStream.println(datagram);
+    if ((protocolLog != null) && protocolLog.isEnabled()) protocolLog.received(datagram);
 
     int id = datagram.getId();
     if ((id == Datagram.DG_WHO_AM_I) && !isLoggedIn()) loginSucceeded(datagram.getString(0));
@@ -792,7 +849,7 @@ public class ChessclubConnection extends free.util.Connection {
    * @see #processLine(String)
    */
   private final void handleLine(String line, String clientTag) {
-    if (logStream != null) logStream.println(line);
+    if ((protocolLog != null) && protocolLog.isEnabled()) protocolLog.received(line);
 
     processLine(line, clientTag);
   }
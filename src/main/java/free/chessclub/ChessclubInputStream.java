@@ -0,0 +1,309 @@
+/**
+ * The chessclub.com connection library. More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * The chessclub.com connection library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * The chessclub.com connection library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the
+ * chessclub.com connection library; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package free.chessclub;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.StringTokenizer;
+import java.util.Vector;
+
+import free.chessclub.level1.Packet;
+import free.chessclub.level2.Datagram;
+import free.util.FramingInputStream;
+
+/**
+ * Splits the data sent by the chessclub.com server into plain lines of text, level1 packets and
+ * level2 datagrams. The data is read in bulk and the delimiters are located directly in the buffer.
+ * Datagrams are not copied out of the buffer at all - they refer to the part of the buffer they
+ * were read from and decode their fields lazily.
+ */
+class ChessclubInputStream extends FramingInputStream {
+
+  /**
+   * The standard delimiter, used to delimit both level1 and level2.
+   */
+  private static final byte STANDARD_DELIMITER = '\u0019';
+
+  /**
+   * The start-of-level1-packet delimiter.
+   */
+  private static final byte PACKET_START_DELIMITER = '[';
+
+  /**
+   * The end-of-level1-packet delimiter.
+   */
+  private static final byte PACKET_END_DELIMITER = ']';
+
+  /**
+   * The start-of-level2-datagram delimiter.
+   */
+  private static final byte DATAGRAM_START_DELIMITER = '(';
+
+  /**
+   * The end-of-level2-datagram delimiter.
+   */
+  private static final byte DATAGRAM_END_DELIMITER = ')';
+
+  /**
+   * The prompt, which we strip from the beginning of lines.
+   */
+  private static final String PROMPT = "aics% ";
+
+  /**
+   * Whether the last line read was terminated by a '\r' which was the last byte available at the
+   * time, in which case a '\n' immediately following it is part of the terminator. We don't wait
+   * for the byte following the '\r' to arrive before returning the line, so the '\n' is skipped
+   * when the next message is read.
+   */
+  private boolean skipLineFeed = false;
+
+  /**
+   * The statistics we record the datagrams we read into; <code>null</code> if none.
+   */
+  private final DatagramStats stats;
+
+  /**
+   * Creates a new <code>ChessclubInputStream</code> which reads from the specified
+   * <code>InputStream</code>.
+   */
+  public ChessclubInputStream(InputStream in) {
+    this(in, null);
+  }
+
+  /**
+   * Creates a new <code>ChessclubInputStream</code> which reads from the specified
+   * <code>InputStream</code> and records the datagrams it reads into the specified
+   * <code>DatagramStats</code>, unless it's <code>null</code>.
+   */
+  public ChessclubInputStream(InputStream in, DatagramStats stats) {
+    super(in);
+
+    this.stats = stats;
+  }
+
+  /**
+   * Reads either a line of plain text, a level1 packet or a level2 datagram. Lines which are
+   * completely filtered out (see {@link #readLine()}) are skipped. Returns <code>null</code> on a
+   * clean disconnection or logout. If the underlying stream runs out of data in the middle of a
+   * message, throwing an <code>InterruptedIOException</code>, the message is read again from its
+   * beginning on the next invocation.
+   */
+  public Object readMessage() throws IOException {
+    boolean skipLineFeed = this.skipLineFeed;
+    beginMessage();
+    try {
+      Object message = readMessageImpl();
+      endMessage();
+      return message;
+    } catch (InterruptedIOException e) {
+      rollbackMessage();
+      this.skipLineFeed = skipLineFeed;
+      throw e;
+    }
+  }
+
+  /**
+   * Implements {@link #readMessage()}.
+   */
+  private Object readMessageImpl() throws IOException {
+    while (true) {
+      if (!request(1)) // Clean disconnection
+      return null;
+
+      if (skipLineFeed()) continue;
+
+      if (buf[pos] == STANDARD_DELIMITER) {
+        if (!request(2)) throw new EOFException("EOF after STANDARD_DELIMITER");
+
+        if (buf[pos + 1] == PACKET_END_DELIMITER) // This means a clean logout
+        return null;
+      }
+
+      Object message = readItem();
+      if (message != null) return message;
+    }
+  }
+
+  /**
+   * Reads a single line, packet or datagram. There must be at least one unconsumed byte in the
+   * buffer. Returns <code>null</code> if a line was read, but was completely filtered out.
+   */
+  private Object readItem() throws IOException {
+    // May be a level1 packet or datagram (but may also be just a line with this character)
+    if (buf[pos] == STANDARD_DELIMITER) {
+      if (!request(2)) throw new EOFException("EOF after STANDARD_DELIMITER");
+
+      byte next = buf[pos + 1];
+      if (next == PACKET_START_DELIMITER) return readPacket();
+      else if (next == DATAGRAM_START_DELIMITER) return readDatagram();
+    }
+
+    return readLine();
+  }
+
+  /**
+   * Skips the '\n' following a '\r' terminating the last line, if there is one. There must be at
+   * least one unconsumed byte in the buffer. Returns whether a byte has been skipped.
+   */
+  private boolean skipLineFeed() {
+    if (!skipLineFeed) return false;
+
+    skipLineFeed = false;
+    if (buf[pos] != '\n') return false;
+
+    pos++;
+    return true;
+  }
+
+  /**
+   * Reads and parses a level1 packet.
+   *
+   * @throws IOException if an I/O error occurs while reading the packet
+   */
+  private Packet readPacket() throws IOException {
+    // Read until the newline
+    int headerEnd;
+    int scanned = 2;
+    while ((headerEnd = indexOf('\n', pos + scanned)) == -1) {
+      scanned = limit - pos;
+      if (!fill()) throw new EOFException("EOF in a packet");
+    }
+
+    // In contradiction to formats.txt, the servers seems to end the header line with \r\n
+    int headerLineEnd = headerEnd;
+    if (buf[headerLineEnd - 1] == '\r') headerLineEnd--;
+
+    StringTokenizer tokenizer = new StringTokenizer(decode(pos + 2, headerLineEnd), " ");
+    int commandCode = Integer.parseInt(tokenizer.nextToken());
+    String playerName = tokenizer.nextToken();
+    String clientTag = tokenizer.hasMoreTokens() ? tokenizer.nextToken() : null;
+
+    pos = headerEnd + 1;
+
+    Vector items = new Vector();
+    // Read until the matching ^Y]
+    while (true) {
+      if (!request(1)) throw new EOFException("EOF in a packet");
+
+      if (skipLineFeed()) continue;
+
+      if (!request(2)) throw new EOFException("EOF in a packet");
+
+      if ((buf[pos] == STANDARD_DELIMITER) && (buf[pos + 1] == PACKET_END_DELIMITER)) {
+        pos += 2;
+        break;
+      }
+
+      Object item = readItem();
+      if (item != null) items.addElement(item);
+    }
+
+    Object[] itemsArray = new Object[items.size()];
+    items.copyInto(itemsArray);
+    return new Packet(commandCode, playerName, clientTag, itemsArray);
+  }
+
+  /**
+   * Reads and parses a level2 datagram. The datagram refers to the buffer it has been read from.
+   *
+   * @throws IOException if an I/O error occurs while reading the datagram
+   * @throws free.util.FormatException if the data can't be parsed as a datagram.
+   */
+  private Datagram readDatagram() throws IOException {
+    // Find the ^Y)
+    int end;
+    int scanned = 2;
+    while (true) {
+      end = indexOf(STANDARD_DELIMITER, pos + scanned);
+      if (end == -1) scanned = limit - pos;
+      else if (end + 1 == limit) scanned = end - pos;
+      else if (buf[end + 1] == DATAGRAM_END_DELIMITER) break;
+      else {
+        scanned = end + 1 - pos;
+        continue;
+      }
+
+      if (!fill()) throw new EOFException("EOF in a datagram");
+    }
+
+    int start = pos + 2;
+    pos = end + 2;
+    shareBuffer();
+    Datagram datagram = Datagram.parseDatagram(buf, start, end - start);
+    if (stats != null) stats.datagramReceived(datagram.getId(), end - start + 4);
+
+    return datagram;
+  }
+
+  /**
+   * Reads a line of plain text and filters certain characters and character sequences (such as
+   * BEL and the prompt) from it. Returns the line after filtering, or <code>null</code> if the line
+   * should be completely ignored.
+   */
+  private String readLine() throws IOException {
+    // Don't read any datagrams, but a lone leading delimiter is part of the line
+    int scanned = buf[pos] == STANDARD_DELIMITER ? 1 : 0;
+    int end;
+    while (true) {
+      for (end = pos + scanned; end < limit; end++) {
+        byte b = buf[end];
+        if ((b == '\n') || (b == '\r') || (b == STANDARD_DELIMITER)) break;
+      }
+      if (end < limit) break;
+
+      scanned = end - pos;
+      if (!fill()) { // EOF terminates the line
+        end = limit;
+        break;
+      }
+    }
+
+    int start = pos;
+    pos = end;
+    if (end < limit) {
+      byte b = buf[end];
+      if (b == '\n') pos++;
+      else if (b == '\r') { // '\r' is also a line delimiter; eat the following '\n', if any
+        pos++;
+        if (pos == limit) skipLineFeed = true;
+        else if (buf[pos] == '\n') pos++;
+      }
+    }
+
+    // Keep initially empty lines.
+    if (start == end) return "";
+
+    // Skip leading prompt
+    while (startsWith(PROMPT, start) && (start + PROMPT.length() <= end))
+      start += PROMPT.length();
+
+    // Ignore BEL
+    int belCount = 0;
+    for (int i = start; i < end; i++) if (buf[i] == 7) belCount++;
+
+    // Ignore lines which have been completely filtered out
+    if (end - start == belCount) return null;
+
+    if (belCount == 0) return decode(start, end);
+
+    char[] chars = new char[end - start - belCount];
+    for (int i = start, j = 0; i < end; i++) if (buf[i] != 7) chars[j++] = (char) (buf[i] & 0xff);
+    return new String(chars);
+  }
+}
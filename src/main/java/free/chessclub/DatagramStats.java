@@ -0,0 +1,96 @@
+/**
+ * The chessclub.com connection library. More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * The chessclub.com connection library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * The chessclub.com connection library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the
+ * chessclub.com connection library; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package free.chessclub;
+
+import free.chessclub.level2.Datagram;
+
+/**
+ * Keeps track of how many datagrams of each type the server sent and how many bytes they took,
+ * so that it's possible to see which datagrams the traffic is actually spent on.
+ * <P>
+ * <B>NOTE:</B> This class is thread safe.
+ */
+public class DatagramStats {
+
+  /**
+   * The amount of datagrams received, indexed by datagram ID.
+   */
+  private final long[] counts = new long[Datagram.MAX_DG_ID + 1];
+
+  /**
+   * The amount of bytes taken by the datagrams received, indexed by datagram ID.
+   */
+  private final long[] bytes = new long[Datagram.MAX_DG_ID + 1];
+
+  /**
+   * Records the receipt of a datagram with the specified ID which took the specified amount of
+   * bytes, including delimiters. Datagrams with unknown IDs are ignored.
+   */
+  public synchronized void datagramReceived(int id, int length) {
+    if ((id < 0) || (id >= counts.length)) return;
+
+    counts[id]++;
+    bytes[id] += length;
+  }
+
+  /**
+   * Returns the amount of datagrams with the specified ID received.
+   */
+  public synchronized long getCount(int id) {
+    return counts[id];
+  }
+
+  /**
+   * Returns the amount of bytes taken by the datagrams with the specified ID received.
+   */
+  public synchronized long getBytes(int id) {
+    return bytes[id];
+  }
+
+  /**
+   * Returns the total amount of bytes taken by all the datagrams received.
+   */
+  public synchronized long getTotalBytes() {
+    long total = 0;
+    for (int i = 0; i < bytes.length; i++) total += bytes[i];
+
+    return total;
+  }
+
+  /**
+   * Returns a textual summary of the statistics: the ID, count and bytes of each type of datagram
+   * received, the types taking the most bytes first.
+   */
+  @Override
+  public synchronized String toString() {
+    boolean[] listed = new boolean[bytes.length];
+    StringBuffer buf = new StringBuffer("datagram bytes=").append(getTotalBytes());
+    while (true) {
+      int max = -1;
+      for (int i = 0; i < bytes.length; i++)
+        if (!listed[i] && (counts[i] != 0) && ((max == -1) || (bytes[i] > bytes[max]))) max = i;
+
+      if (max == -1) break;
+
+      listed[max] = true;
+      buf.append(' ').append(max).append(':');
+      buf.append(counts[max]).append('/').append(bytes[max]).append('B');
+    }
+
+    return buf.toString();
+  }
+}
@@ -16,17 +16,19 @@
  */
 package free.chessclub.level2;
 
-import java.util.LinkedList;
-import java.util.List;
-
 import free.util.FormatException;
+import free.util.FramingInputStream;
+import free.util.ProtocolLog;
 
 /**
  * Represents a datagram sent by the chessclub.com server in the format described at
  * <code>ftp://ftp.chessclub.com/pub/icc/formats/formats.txt</code>. This class defines methods
  * useful for parsing a datagram and retrieving arguments from it.
+ * <P>
+ * Datagrams parsed from a byte buffer keep only the boundaries of their fields and decode a field
+ * when it is first retrieved, so that the fields which are never looked at cost nothing.
  */
-public class Datagram {
+public class Datagram implements ProtocolLog.Loggable {
 
   /**
    * The start of a special string delimiter.
@@ -164,9 +166,26 @@ public class Datagram {
   private final int id;
 
   /**
-   * An array holding the datagram fields.
+   * The number of fields in the datagram.
+   */
+  private final int fieldCount;
+
+  /**
+   * The buffer holding the undecoded fields of the datagram; <code>null</code> if the datagram was
+   * created from already decoded fields. The buffer may be shared with other datagrams.
+   */
+  private final byte[] data;
+
+  /**
+   * The start (at even indices) and end (at odd indices) offsets of the fields in
+   * <code>data</code>.
+   */
+  private final int[] bounds;
+
+  /**
+   * The fields which have been decoded so far, created lazily.
    */
-  private final String[] fields;
+  private String[] fields;
 
   /**
    * Creates a new <code>Datagram</code> with the specified datagram id and fields.
@@ -175,9 +194,23 @@ public class Datagram {
     if (fields == null) throw new IllegalArgumentException("Datagram fields may not be null");
 
     this.id = id;
+    this.fieldCount = fields.length;
+    this.data = null;
+    this.bounds = null;
     this.fields = fields;
   }
 
+  /**
+   * Creates a new <code>Datagram</code> with the specified datagram id whose fields are the
+   * specified ranges of the specified buffer.
+   */
+  private Datagram(int id, byte[] data, int[] bounds, int fieldCount) {
+    this.id = id;
+    this.fieldCount = fieldCount;
+    this.data = data;
+    this.bounds = bounds;
+  }
+
   /**
    * Returns the ID of the datagram.
    */
@@ -189,14 +222,25 @@ public class Datagram {
    * Returns the number of fields in this Datagram.
    */
   public int getFieldCount() {
-    return fields.length;
+    return fieldCount;
   }
 
   /**
    * Returns the specified field, unparsed.
    */
   public String getField(int fieldIndex) {
-    return fields[fieldIndex];
+    if ((fieldIndex < 0) || (fieldIndex >= fieldCount))
+      throw new ArrayIndexOutOfBoundsException(fieldIndex);
+
+    if (fields == null) fields = new String[fieldCount];
+
+    String field = fields[fieldIndex];
+    if (field == null)
+      fields[fieldIndex] =
+          field =
+              FramingInputStream.decode(data, bounds[2 * fieldIndex], bounds[2 * fieldIndex + 1]);
+
+    return field;
   }
 
   /**
@@ -210,6 +254,11 @@ public class Datagram {
    * Returns the specified field parsed as an integer.
    */
   public int getInteger(int fieldIndex) {
+    if (data != null) {
+      long value = parseDecimal(fieldIndex);
+      if ((value >= Integer.MIN_VALUE) && (value <= Integer.MAX_VALUE)) return (int) value;
+    }
+
     return Integer.parseInt(getField(fieldIndex));
   }
 
@@ -217,6 +266,11 @@ public class Datagram {
    * Returns the specified field parsed as a long.
    */
   public long getLong(int fieldIndex) {
+    if (data != null) {
+      long value = parseDecimal(fieldIndex);
+      if (value != Long.MIN_VALUE) return value;
+    }
+
     return Long.parseLong(getField(fieldIndex));
   }
 
@@ -225,9 +279,41 @@ public class Datagram {
    * <code>true</code> is returned, otherwise <code>false</code> is returned.
    */
   public boolean getBoolean(int fieldIndex) {
+    if ((data != null) && (fieldIndex >= 0) && (fieldIndex < fieldCount)) {
+      int start = bounds[2 * fieldIndex];
+      return (bounds[2 * fieldIndex + 1] == start + 1) && (data[start] == '1');
+    }
+
     return getField(fieldIndex).equals("1");
   }
 
+  /**
+   * Parses the specified field, which must not have been created from an already decoded string,
+   * as a decimal number directly from the buffer. Returns <code>Long.MIN_VALUE</code> if the field
+   * isn't a plain decimal number of at most 18 digits, in which case the caller should fall back to
+   * parsing the decoded field (which will also produce the proper exception for malformed fields).
+   */
+  private long parseDecimal(int fieldIndex) {
+    if ((fieldIndex < 0) || (fieldIndex >= fieldCount)) return Long.MIN_VALUE;
+
+    int start = bounds[2 * fieldIndex];
+    int end = bounds[2 * fieldIndex + 1];
+
+    boolean negative = (start < end) && (data[start] == '-');
+    if (negative) start++;
+
+    if ((start == end) || (end - start > 18)) return Long.MIN_VALUE;
+
+    long value = 0;
+    for (int i = start; i < end; i++) {
+      int digit = data[i] - '0';
+      if ((digit < 0) || (digit > 9)) return Long.MIN_VALUE;
+      value = value * 10 + digit;
+    }
+
+    return negative ? -value : value;
+  }
+
   /**
    * Parses the specified string and returns a <code>Datagram</code> object corresponding to the
    * datagram represented by that string. The string should be the contents of the datagram, without
@@ -237,49 +323,84 @@ public class Datagram {
    * not in the proper format.
    */
   public static Datagram parseDatagram(String dgString) throws FormatException {
-    try {
-      int index = dgString.indexOf(' ');
-      if (index == -1) // No arguments in the datagram
-      index = dgString.length();
-      int id = Integer.parseInt(dgString.substring(0, index));
+    int length = dgString.length();
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) bytes[i] = (byte) dgString.charAt(i);
+
+    return parseDatagram(bytes, 0, length);
+  }
+
+  /**
+   * Parses the specified range of the specified buffer and returns a <code>Datagram</code> object
+   * corresponding to the datagram represented by it. The range should hold the contents of the
+   * datagram, without the surrounding delimiters. Only the boundaries of the fields are located;
+   * the fields themselves are decoded from the buffer when they are first retrieved, so the
+   * contents of the buffer in the specified range must not be modified afterwards.
+   *
+   * @throws FormatException if the specified range cannot be parsed as a datagram because it is
+   * not in the proper format.
+   */
+  public static Datagram parseDatagram(byte[] buf, int offset, int length) throws FormatException {
+    int end = offset + length;
 
-      dgString += " "; // So that each field is suffixed with a space
+    int index = offset;
+    int id = 0;
+    while ((index < end) && (buf[index] != ' ')) {
+      int digit = buf[index++] - '0';
+      if ((digit < 0) || (digit > 9) || (index - offset > 9))
+        throw new FormatException(
+            "Bad datagram ID in: " + FramingInputStream.decode(buf, offset, end));
+      id = id * 10 + digit;
+    }
+    if (index == offset) throw new FormatException("Missing datagram ID");
 
-      List fields = new LinkedList();
+    int[] bounds = new int[16];
+    int fieldCount = 0;
 
+    while (true) {
+      while ((index < end) && (buf[index] == ' ')) // Skip the separating spaces
       index++;
-      int dgLength = dgString.length();
-      while (index < dgLength) {
-        int startIndex, endIndex;
-        char firstChar = dgString.charAt(index);
-        if (firstChar == '{') { // The delimiters are { and }
-          startIndex = index + 1;
-          endIndex = dgString.indexOf('}', startIndex);
-          index = endIndex + 2; // "} "
-        } else if (firstChar == SPECIAL_STRING_DELIM_START) { // The delimiters are ^Y{ and ^Y}
-          startIndex = index + 2;
-          endIndex = dgString.indexOf(SPECIAL_STRING_DELIM_START, startIndex);
-          index = endIndex + 3; // "^Y} "
-        } else {
-          while (firstChar == ' ') { // Skip any extra spaces just in case
-            index++;
-            firstChar = dgString.charAt(index);
-          }
-
-          startIndex = index;
-          endIndex = dgString.indexOf(' ', startIndex);
-          index = endIndex + 1;
-        }
-
-        fields.add(dgString.substring(startIndex, endIndex));
+      if (index == end) break;
+
+      int startIndex, endIndex;
+      if (buf[index] == '{') { // The delimiters are { and }
+        startIndex = index + 1;
+        endIndex = indexOf(buf, '}', startIndex, end);
+        index = endIndex + 1;
+      } else if (buf[index] == SPECIAL_STRING_DELIM_START) { // The delimiters are ^Y{ and ^Y}
+        startIndex = index + 2;
+        endIndex = indexOf(buf, SPECIAL_STRING_DELIM_START, startIndex, end);
+        index = endIndex + 2;
+      } else {
+        startIndex = index;
+        endIndex = startIndex;
+        while ((endIndex < end) && (buf[endIndex] != ' ')) endIndex++;
+        index = endIndex;
       }
 
-      return new Datagram(id, (String[]) fields.toArray(new String[fields.size()]));
-    } catch (NumberFormatException e) {
-      throw new FormatException(e);
-    } catch (StringIndexOutOfBoundsException e) {
-      throw new FormatException(e);
+      if (2 * fieldCount == bounds.length) {
+        int[] newBounds = new int[2 * bounds.length];
+        System.arraycopy(bounds, 0, newBounds, 0, bounds.length);
+        bounds = newBounds;
+      }
+      bounds[2 * fieldCount] = startIndex;
+      bounds[2 * fieldCount + 1] = endIndex;
+      fieldCount++;
     }
+
+    return new Datagram(id, buf, bounds, fieldCount);
+  }
+
+  /**
+   * Returns the index of the first occurrence of the specified byte in the specified range of the
+   * specified buffer.
+   *
+   * @throws FormatException if there is no such byte.
+   */
+  private static int indexOf(byte[] buf, int b, int fromIndex, int end) throws FormatException {
+    for (int i = fromIndex; i < end; i++) if (buf[i] == b) return i;
+
+    throw new FormatException("Unterminated datagram field");
   }
 
   /**
@@ -287,17 +408,48 @@ public class Datagram {
    */
   @Override
   public String toString() {
-    StringBuffer buf = new StringBuffer("[Datagram ID=" + getId());
-    int fieldCount = getFieldCount();
+    StringBuffer buf = new StringBuffer("[Datagram ID=").append(id);
     if (fieldCount != 0) {
       buf.append(" Fields: ");
       for (int i = 0; i < fieldCount; i++) {
-        buf.append("{" + getField(i) + "}");
-        if (i != fieldCount - 1) buf.append(",");
+        if (i != 0) buf.append(',');
+        buf.append('{');
+        appendField(buf, i);
+        buf.append('}');
       }
     }
-    buf.append("]");
+    buf.append(']');
 
     return buf.toString();
   }
+
+  /**
+   * Appends the datagram to the specified buffer, for the protocol log: the ID followed by the
+   * fields if <code>full</code> is <code>true</code>, or by the amount of fields otherwise. Doesn't
+   * modify the datagram, so it's safe to invoke while the datagram is being used in another thread.
+   */
+  @Override
+  public void appendTo(StringBuffer buf, boolean full) {
+    buf.append("DG ").append(id);
+    if (!full) buf.append(", ").append(fieldCount).append(" fields");
+    else {
+      for (int i = 0; i < fieldCount; i++) {
+        buf.append(" {");
+        appendField(buf, i);
+        buf.append('}');
+      }
+    }
+  }
+
+  /**
+   * Appends the specified field, unparsed, to the specified buffer, decoding it directly from the
+   * data if it hasn't been decoded yet, without caching it.
+   */
+  private void appendField(StringBuffer buf, int fieldIndex) {
+    if (data == null) buf.append(fields[fieldIndex]);
+    else {
+      int end = bounds[2 * fieldIndex + 1];
+      for (int i = bounds[2 * fieldIndex]; i < end; i++) buf.append((char) (data[i] & 0xff));
+    }
+  }
 }
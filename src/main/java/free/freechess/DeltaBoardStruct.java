@@ -16,15 +16,41 @@
  */
 package free.freechess;
 
-import java.util.StringTokenizer;
-
-import free.util.Struct;
-
 /**
  * A container for delta board information. More information is available by issuing
  * "help iv_compressmoves" on freechess.org
  */
-public class DeltaBoardStruct extends Struct {
+public class DeltaBoardStruct {
+
+  /**
+   * The game number.
+   */
+  private final int gameNumber;
+
+  /**
+   * The amount of half-moves (plies) already played.
+   */
+  private final int pliesPlayedCount;
+
+  /**
+   * The move in algebraic format.
+   */
+  private final String moveAlgebraic;
+
+  /**
+   * The move in smith-warren format.
+   */
+  private final String moveSmith;
+
+  /**
+   * The amount of time taken to make the move, in milliseconds.
+   */
+  private final int takenTime;
+
+  /**
+   * The amount of time remaining, in milliseconds.
+   */
+  private final int remainingTime;
 
   /**
    * Creates a new DeltaBoardStruct with the specified arguments.
@@ -58,77 +84,77 @@ public class DeltaBoardStruct extends Struct {
       throw new IllegalArgumentException(
           "The time taken to make the move (" + takenTime + ") may not be negative");
 
-    setIntegerProperty("GameNumber", gameNumber);
-    setIntegerProperty("PliesPlayedCount", pliesPlayedCount);
-    setStringProperty("MoveAlgebraic", moveAlgebraic);
-    setStringProperty("MoveSmith", moveSmith);
-    setIntegerProperty("TakenTime", takenTime);
-    setIntegerProperty("RemainingTime", remainingTime);
+    this.gameNumber = gameNumber;
+    this.pliesPlayedCount = pliesPlayedCount;
+    this.moveAlgebraic = moveAlgebraic;
+    this.moveSmith = moveSmith;
+    this.takenTime = takenTime;
+    this.remainingTime = remainingTime;
   }
 
   /**
    * Parses the specified delta board line and returns a corresponding DeltaBoardStruct board.
    */
   public static DeltaBoardStruct parseDeltaBoardLine(String line) {
-    StringTokenizer tokens = new StringTokenizer(line, " ");
+    LineScanner scanner = new LineScanner(line, " ");
 
-    if (!tokens.nextToken().equals("<d1>")) // Skip the <d1> identifier
+    if (!scanner.nextEquals("<d1>")) // Skip the <d1> identifier
     throw new IllegalArgumentException("Missing \"<d1>\" identifier");
 
-    int gameNumber = Integer.parseInt(tokens.nextToken()); // The game number.
+    int gameNumber = scanner.nextInt(); // The game number.
 
-    int pliesPlayedCount = Integer.parseInt(tokens.nextToken()); // The amount of plies played
+    int pliesPlayedCount = scanner.nextInt(); // The amount of plies played
 
-    String moveAlgebraic = tokens.nextToken(); // The move in algebraic format
-    String moveSmith = tokens.nextToken(); // The move in smith-warren format
+    String moveAlgebraic = scanner.nextString(); // The move in algebraic format
+    String moveSmith = scanner.nextString(); // The move in smith-warren format
 
-    int takenTime =
-        Integer.parseInt(tokens.nextToken()); // The amount of time taken to make the move
-    int remainingTime = Integer.parseInt(tokens.nextToken()); // The amount of time remaining
+    int takenTime = scanner.nextInt(); // The amount of time taken to make the move
+    int remainingTime = scanner.nextInt(); // The amount of time remaining
 
     return new DeltaBoardStruct(
         gameNumber, pliesPlayedCount, moveAlgebraic, moveSmith, takenTime, remainingTime);
   }
 
+
   /**
    * Returns the game number.
    */
   public int getGameNumber() {
-    return getIntegerProperty("GameNumber");
+    return gameNumber;
   }
 
   /**
    * Returns the amount of half-moves played in the game.
    */
   public int getPliesPlayedCount() {
-    return getIntegerProperty("PliesPlayedCount");
+    return pliesPlayedCount;
   }
 
   /**
    * Returns the move in algebraic format.
    */
   public String getMoveAlgebraic() {
-    return getStringProperty("MoveAlgebraic");
+    return moveAlgebraic;
   }
 
   /**
    * Returns the move in Smith-Warren format.
    */
   public String getMoveSmith() {
-    return getStringProperty("MoveSmith");
+    return moveSmith;
   }
 
   /**
    * Returns the amount of time taken to make the move, in milliseconds.
    */
   public int getTakenTime() {
-    return getIntegerProperty("TakenTime");
+    return takenTime;
   }
 
   /**
    * Returns the amount of time remaining, in milliseconds.
    */
   public int getRemainingTime() {
-    return getIntegerProperty("RemainingTime");
+    return remainingTime;
   }
 }
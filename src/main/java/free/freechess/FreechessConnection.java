@@ -16,21 +16,19 @@
  */
 package free.freechess;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.PrintStream;
-import java.io.PushbackInputStream;
 import java.util.BitSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.StringTokenizer;
+import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import free.util.Connection;
+import free.util.ProtocolLog;
 
 /**
  * <P>
@@ -62,9 +60,10 @@ public class FreechessConnection extends Connection {
   protected static final String TITLES_REGEX = "\\([A-Z\\*\\(\\)]*\\)";
 
   /**
-   * The stream where we log the commands sent to the server and data arriving from the server.
+   * The log of the commands sent to the server and data arriving from the server; may be
+   * <code>null</code>.
    */
-  private final PrintStream logStream;
+  private final ProtocolLog protocolLog;
 
   /**
    * A BitSet keeping the requested state of ivariables. This may be inconsistent with the server's
@@ -98,14 +97,14 @@ public class FreechessConnection extends Connection {
 
   /**
    * Creates a new <code>FreechessConnection</code> with the given requested username, password and
-   * optional log stream. Note that the actual username is assigned by the server and is not known
-   * until after the login. The echo stream, if not <code>null</code> is used to log any commands we
-   * send to the server and information we receive from it.
+   * optional protocol log. Note that the actual username is assigned by the server and is not known
+   * until after the login. The log, if not <code>null</code> is used to log any commands we send
+   * to the server and information we receive from it.
    */
-  public FreechessConnection(String requestedUsername, String password, PrintStream logStream) {
+  public FreechessConnection(String requestedUsername, String password, ProtocolLog protocolLog) {
     super(requestedUsername, password);
 
-    this.logStream = logStream;
+    this.protocolLog = protocolLog;
 
     setIvarState(Ivar.NOWRAP, true);
     setIvarState(Ivar.DEFPROMPT, true); // Sets it to the default, which we filter out.
@@ -289,11 +288,31 @@ public class FreechessConnection extends Connection {
    * @param avoidAliasing Avoid triggering any aliases with the command.
    * @param avoidUnidling Avoid resetting the user's idle time counter with the command.
    */
-  public synchronized void sendCommand(
+  public void sendCommand(
       String command, boolean whenLoggedIn, boolean avoidAliasing, boolean avoidUnidling) {
+    sendCommand(command, whenLoggedIn, avoidAliasing, avoidUnidling, false);
+  }
+
+  /**
+   * Sends a command to the server with the specified options.
+   *
+   * @param command The command.
+   * @param whenLoggedIn If set and we are not yet logged in, wait until login and then send the
+   * command. If unset, the command is sent immediately.
+   * @param avoidAliasing Avoid triggering any aliases with the command.
+   * @param avoidUnidling Avoid resetting the user's idle time counter with the command.
+   * @param isUrgent Whether the command (a move, for example) should be written to the server
+   * without any delay, rather than possibly batched with the commands following it.
+   */
+  public synchronized void sendCommand(
+      String command,
+      boolean whenLoggedIn,
+      boolean avoidAliasing,
+      boolean avoidUnidling,
+      boolean isUrgent) {
     command = makeCommand(command, avoidAliasing, avoidUnidling);
 
-    if (isLoggedIn() || !whenLoggedIn) sendCommandImpl(command, true);
+    if (isLoggedIn() || !whenLoggedIn) sendCommandImpl(command, true, isUrgent);
     else onLoginCommandQueue.addLast(command);
   }
 
@@ -310,21 +329,30 @@ public class FreechessConnection extends Connection {
   }
 
   /**
-   * Sends the given command to the server, optionally echoing it to System.out.
+   * Sends the given command to the server, optionally logging it.
    */
-  private synchronized void sendCommandImpl(String command, boolean echo) {
+  private void sendCommandImpl(String command, boolean echo) {
+    sendCommandImpl(command, echo, false);
+  }
+
+  /**
+   * Sends the given command to the server, optionally logging it. The command is
+   * written asynchronously, see {@link #sendCommandAsync(String, boolean)}.
+   */
+  private synchronized void sendCommandImpl(String command, boolean echo, boolean isUrgent) {
     if (!isConnected()) throw new IllegalStateException("Not connected");
 
-    if (echo) System.out.println("SENDING COMMAND: " + command);
+    if (echo && (protocolLog != null) && protocolLog.isEnabled()) protocolLog.sent(command);
 
-    try {
-      OutputStream out = getOutputStream();
-      out.write(command.getBytes("ASCII"));
-      out.write('\n');
-      out.flush();
-    } catch (IOException e) {
-      connectionInterrupted(e);
-    }
+    sendCommandAsync(command, isUrgent);
+  }
+
+  /**
+   * Returns "US-ASCII", the charset the server expects commands in.
+   */
+  @Override
+  protected String getCommandCharset() {
+    return "US-ASCII";
   }
 
   /**
@@ -340,12 +368,12 @@ public class FreechessConnection extends Connection {
 
   /**
    * Overrides {@link Connection#createInputStream(InputStream)} to wrap the specified
-   * <code>InputStream</code> in a <code>BufferedInputStream</code> and a
-   * <code>PushbackInputStream</code>.
+   * <code>InputStream</code> in a <code>FreechessInputStream</code>, which splits the server's
+   * output into lines.
    */
   @Override
   protected InputStream createInputStream(InputStream in) {
-    return new PushbackInputStream(new BufferedInputStream(in));
+    return new FreechessInputStream(in);
   }
 
   /**
@@ -353,94 +381,534 @@ public class FreechessConnection extends Connection {
    */
   @Override
   protected Object readMessage(InputStream inputStream) throws IOException {
-    PushbackInputStream pin = (PushbackInputStream) inputStream;
-    StringBuffer buf = new StringBuffer();
+    return ((FreechessInputStream) inputStream).readLine();
+  }
+
+
+  /**
+   * The types of lines we recognize. A line's type determines the type of the data parsed out of
+   * it, which is kept in {@link ParsedLine#data}.
+   */
+  private static final int PLAIN_LINE = 0;
+  private static final int GAME_INFO_LINE = 1;
+  private static final int STYLE12_LINE = 2;
+  private static final int DELTA_BOARD_LINE = 3;
+  private static final int SEEKS_CLEARED_LINE = 4;
+  private static final int SEEK_ADDED_LINE = 5;
+  private static final int SEEKS_REMOVED_LINE = 6;
+  private static final int BUGHOUSE_HOLDINGS_LINE = 7;
+  private static final int GAME_END_LINE = 8;
+  private static final int STOPPED_OBSERVING_LINE = 9;
+  private static final int STOPPED_EXAMINING_LINE = 10;
+  private static final int ENTERED_BSETUP_LINE = 11;
+  private static final int EXITED_BSETUP_LINE = 12;
+  private static final int ILLEGAL_MOVE_LINE = 13;
+  private static final int NOT_YOUR_TURN_LINE = 14;
+  private static final int MOVED_WHEN_GAME_PAUSED_LINE = 15;
+  private static final int CHANNEL_TELL_LINE = 16;
+  private static final int LOGIN_LINE = 17;
+  private static final int WRONG_PASSWORD_LINE = 18;
+  private static final int IVAR_STATE_CHANGED_LINE = 19;
+  private static final int PERSONAL_TELL_LINE = 20;
+  private static final int SAY_TELL_LINE = 21;
+  private static final int PTELL_LINE = 22;
+  private static final int SHOUT_LINE = 23;
+  private static final int ISHOUT_LINE = 24;
+  private static final int TSHOUT_LINE = 25;
+  private static final int CSHOUT_LINE = 26;
+  private static final int ANNOUNCEMENT_LINE = 27;
+  private static final int KIBITZ_LINE = 28;
+  private static final int WHISPER_LINE = 29;
+  private static final int QTELL_LINE = 30;
+  private static final int OFFER_LINE = 31;
+  private static final int OFFER_REMOVED_LINE = 32;
+  private static final int PLAYER_OFFERED_DRAW_LINE = 33;
+  private static final int PLAYER_OFFERED_ADJOURN_LINE = 34;
+  private static final int PLAYER_OFFERED_ABORT_LINE = 35;
+  private static final int PLAYER_OFFERED_TAKEBACK_LINE = 36;
+  private static final int PLAYER_DECLINED_LINE = 37;
+  private static final int PLAYER_WITHDREW_LINE = 38;
+  private static final int PLAYER_COUNTERED_TAKEBACK_LINE = 39;
+  private static final int SIMUL_BOARD_CHANGED_LINE = 40;
+  private static final int PRIMARY_GAME_CHANGED_LINE = 41;
+
+  /**
+   * The names of the types of lines, indexed by type, which the statistics of the connection count
+   * lines by (see {@link #getMessageType(Object)}).
+   */
+  private static final String[] LINE_TYPE_NAMES = {
+    "plain", "game-info", "style12", "delta-board", "seeks-cleared", "seek-added", "seeks-removed",
+    "bughouse-holdings", "game-end", "stopped-observing", "stopped-examining", "entered-bsetup",
+    "exited-bsetup", "illegal-move", "not-your-turn", "moved-when-game-paused", "channel-tell",
+    "login", "wrong-password", "ivar-state-changed", "personal-tell", "say-tell", "ptell", "shout",
+    "ishout", "tshout", "cshout", "announcement", "kibitz", "whisper", "qtell", "offer",
+    "offer-removed", "player-offered-draw", "player-offered-adjourn", "player-offered-abort",
+    "player-offered-takeback", "player-declined", "player-withdrew", "player-countered-takeback",
+    "simul-board-changed", "primary-game-changed"
+  };
+
+  /**
+   * Classifies the specified line in the reader thread and parses any data it carries, so that
+   * only the handling of the parsed data is left for the client thread.
+   */
+  @Override
+  protected Object parseMessage(Object line) {
+    return parseLine((String) line);
+  }
 
-    boolean lineStartsWithPrompt = false;
-    while (true) {
-      int b = pin.read();
+  /**
+   * Returns the name of the type the specified line has been classified as by
+   * {@link #parseMessage(Object)}.
+   */
+  @Override
+  protected String getMessageType(Object message) {
+    return message instanceof ParsedLine ? LINE_TYPE_NAMES[((ParsedLine) message).type] : null;
+  }
 
-      if (b < 0) {
-        if (buf.length() == 0) // Clean disconnection
-        return null;
+  /**
+   * Puts lines concerning games into {@link #URGENT_LANE} if the game is the user's own and into
+   * {@link #HIGH_LANE} if it's observed, seek lines into {@link #NORMAL_LANE} and chat and plain
+   * text into {@link #LOW_LANE}. Whether a game is the user's own is only known once its first
+   * style12 line arrives, so until then lines concerning the game go into the urgent lane. Lines
+   * which affect the state of the connection (login, ivar changes and the like) go into the urgent
+   * lane as well, so that they are never handled after the lines following them.
+   */
+  @Override
+  protected int getLane(Object message) {
+    ParsedLine parsedLine = (ParsedLine) message;
+    Object data = parsedLine.data;
+    switch (parsedLine.type) {
+      case STYLE12_LINE:
+        Style12Struct style12 = (Style12Struct) data;
+        int lane = style12.getGameType() == Style12Struct.MY_GAME ? URGENT_LANE : HIGH_LANE;
+        return assignLane(new Integer(style12.getGameNumber()), lane);
+      case GAME_INFO_LINE:
+        return getGameLane(((GameInfoStruct) data).getGameNumber());
+      case DELTA_BOARD_LINE:
+        return getGameLane(((DeltaBoardStruct) data).getGameNumber());
+      case GAME_END_LINE:
+      case STOPPED_OBSERVING_LINE:
+      case STOPPED_EXAMINING_LINE:
+      case PLAYER_OFFERED_DRAW_LINE:
+      case PLAYER_OFFERED_ADJOURN_LINE:
+      case PLAYER_OFFERED_ABORT_LINE:
+      case PLAYER_OFFERED_TAKEBACK_LINE:
+      case PLAYER_DECLINED_LINE:
+      case PLAYER_WITHDREW_LINE:
+      case PLAYER_COUNTERED_TAKEBACK_LINE:
+        return getGameLane(Integer.parseInt(((MatchResult) data).group(1)));
+      case SEEKS_CLEARED_LINE:
+      case SEEK_ADDED_LINE:
+      case SEEKS_REMOVED_LINE:
+        return NORMAL_LANE;
+      case PLAIN_LINE:
+      case CHANNEL_TELL_LINE:
+      case PERSONAL_TELL_LINE:
+      case SAY_TELL_LINE:
+      case PTELL_LINE:
+      case SHOUT_LINE:
+      case ISHOUT_LINE:
+      case TSHOUT_LINE:
+      case CSHOUT_LINE:
+      case ANNOUNCEMENT_LINE:
+      case KIBITZ_LINE:
+      case WHISPER_LINE:
+      case QTELL_LINE:
+        return LOW_LANE;
+      default:
+        return URGENT_LANE;
+    }
+  }
+
+  /**
+   * Returns the lane for a line concerning the specified game, which doesn't by itself tell
+   * whether the game is the user's own.
+   */
+  private int getGameLane(int gameNumber) {
+    Integer key = new Integer(gameNumber);
+    return assignLane(key, getAssignedLane(key, URGENT_LANE));
+  }
+
+  /**
+   * Returns whether the specified line may be dropped when the server sends chat faster than we can
+   * handle it. These are the various kinds of shouts, channel tells, kibitzes and whispers.
+   */
+  @Override
+  protected boolean isSheddable(Object message) {
+    switch (((ParsedLine) message).type) {
+      case CHANNEL_TELL_LINE:
+      case SHOUT_LINE:
+      case ISHOUT_LINE:
+      case TSHOUT_LINE:
+      case CSHOUT_LINE:
+      case KIBITZ_LINE:
+      case WHISPER_LINE:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Returns whether the specified line makes pending seek lines obsolete - it does if it clears or
+   * removes seeks.
+   */
+  @Override
+  protected boolean isSuperseding(Object message) {
+    int type = ((ParsedLine) message).type;
+    return (type == SEEKS_CLEARED_LINE) || (type == SEEKS_REMOVED_LINE);
+  }
+
+  /**
+   * Returns whether the specified line makes the specified pending line obsolete. Clearing the
+   * seeks makes all pending seek lines obsolete, and removing a seek makes pending lines adding it
+   * obsolete.
+   */
+  @Override
+  protected boolean supersedes(Object message, Object pendingMessage) {
+    ParsedLine parsedLine = (ParsedLine) message;
+    ParsedLine pendingLine = (ParsedLine) pendingMessage;
+    if (parsedLine.type == SEEKS_CLEARED_LINE) return true; // Only seek lines share the lane
+
+    if (pendingLine.type != SEEK_ADDED_LINE) return false;
+
+    int seekIndex = ((SeekInfoStruct) pendingLine.data).getSeekIndex();
+    int[] removedSeeks = (int[]) parsedLine.data;
+    for (int i = 0; i < removedSeeks.length; i++) if (removedSeeks[i] == seekIndex) return true;
+
+    return false;
+  }
+
+  /**
+   * Determines the type of the specified line and parses the information it carries. This method
+   * must not depend on the state of the connection, as it's invoked in the reader thread, possibly
+   * well before the client thread handles lines which preceded the specified one.
+   * <P>
+   * Rather than trying every known type of line in turn, the line is classified by its first
+   * character (and, for chat lines, by the text preceding the first <code>": "</code>), so that at
+   * most a few regular expressions are tried. The classification is the same as trying, in order,
+   * all the types in the order they are listed in {@link #handleMessage(Object)}.
+   */
+  static ParsedLine parseLine(String line) {
+    ParsedLine parsedLine = null;
+
+    if (line.length() != 0) {
+      char firstChar = line.charAt(0);
+      if (firstChar == '<') parsedLine = parseTagLine(line);
+      else if (firstChar == '{') {
+        if (line.startsWith("{Game ")) parsedLine = matchLine(line, GAME_END_LINE, GAME_END_REGEX);
+      } else if (firstChar == '*') {
+        parsedLine = matchLine(line, LOGIN_LINE, LOGIN_REGEX);
+        if (parsedLine == null)
+          parsedLine = matchLine(line, WRONG_PASSWORD_LINE, WRONG_PASSWORD_REGEX);
+      } else if (firstChar == ':') {
+        if (line.indexOf("t-shouts: ") != -1)
+          parsedLine = matchLine(line, TSHOUT_LINE, TSHOUT_REGEX);
+        if (parsedLine == null) parsedLine = matchLine(line, QTELL_LINE, QTELL_REGEX);
+      } else if (firstChar == '-') {
+        if (line.startsWith("--> ")) parsedLine = matchLine(line, ISHOUT_LINE, ISHOUT_REGEX);
+      } else if (firstChar == ' ') {
+        if (line.startsWith("    **ANNOUNCEMENT** from "))
+          parsedLine = matchLine(line, ANNOUNCEMENT_LINE, ANNOUNCEMENT_REGEX);
+      } else if ((firstChar >= 'A') && (firstChar <= 'z')) parsedLine = parseWordLine(line);
+    }
+
+    return parsedLine == null ? new ParsedLine(line, PLAIN_LINE, null) : parsedLine;
+  }
+
+  /**
+   * Parses lines starting with <code>'&lt;'</code> - the lines whose format is specified by the
+   * various ivars. Returns <code>null</code> if the line is not of a known type.
+   */
+  private static ParsedLine parseTagLine(String line) {
+    if (line.length() < 4) return null;
+
+    switch (line.charAt(1)) {
+      case 'g':
+        if (line.startsWith("<g1> "))
+          return new ParsedLine(line, GAME_INFO_LINE, GameInfoStruct.parseGameInfoLine(line));
         break;
-      }
+      case '1':
+        if (line.startsWith("<12> "))
+          return new ParsedLine(line, STYLE12_LINE, Style12Struct.parseStyle12Line(line));
+        break;
+      case 'd':
+        if (line.startsWith("<d1> "))
+          return new ParsedLine(line, DELTA_BOARD_LINE, DeltaBoardStruct.parseDeltaBoardLine(line));
+        break;
+      case 's':
+        if (line.equals("<sc>")) return new ParsedLine(line, SEEKS_CLEARED_LINE, null);
+        if (line.startsWith("<s> ") || line.startsWith("<sn> "))
+          return new ParsedLine(line, SEEK_ADDED_LINE, SeekInfoStruct.parseSeekInfoLine(line));
+        if (line.startsWith("<sr> "))
+          return new ParsedLine(line, SEEKS_REMOVED_LINE, parseSeeksRemoved(line));
+        break;
+      case 'b':
+        if (line.startsWith("<b1> ")) return new ParsedLine(line, BUGHOUSE_HOLDINGS_LINE, null);
+        break;
+      case 'p':
+        if (line.startsWith("<pt> ") || line.startsWith("<pf> "))
+          return matchLine(line, OFFER_LINE, OFFER_REGEX);
+        if (line.startsWith("<pr> "))
+          return new ParsedLine(
+              line, OFFER_REMOVED_LINE, Integer.valueOf(line.substring("<pr> ".length())));
+        break;
+    }
 
-      // End of line
-      if (b == '\n') {
-        // FICS uses \n\r for an end-of-line marker!?
-        // Eat the following '\r', if there is one
-        b = pin.read();
-        if ((b > 0) && (b != '\r')) pin.unread(b);
-
-        // Ignore all-prompt lines
-        if (lineStartsWithPrompt && (buf.length() == 0)) {
-          lineStartsWithPrompt = false;
-          continue;
-        } else break;
-      }
+    return null;
+  }
 
-      buf.append((char) b);
+  /**
+   * Parses lines starting with a character which may start a username. These are either one of the
+   * fixed server messages, an ivar state change notification or a chat line. Returns
+   * <code>null</code> if the line is not of a known type.
+   */
+  private static ParsedLine parseWordLine(String line) {
+    ParsedLine parsedLine = null;
 
-      // Filter out the prompt
-      if (buf.toString().equals("fics% ")) {
-        buf.setLength(0);
-        lineStartsWithPrompt = true;
+    switch (line.charAt(0)) {
+      case 'R':
+        if (line.startsWith("Removing game "))
+          parsedLine = matchLine(line, STOPPED_OBSERVING_LINE, STOPPED_OBSERVING_REGEX);
+        break;
+      case 'Y':
+        if (line.startsWith("You are no longer examining game "))
+          parsedLine = matchLine(line, STOPPED_EXAMINING_LINE, STOPPED_EXAMINING_REGEX);
+        else if (line.startsWith("You are now at "))
+          parsedLine = matchLine(line, SIMUL_BOARD_CHANGED_LINE, AT_BOARD_REGEX);
+        else if (line.startsWith("Your primary game is now game "))
+          parsedLine = matchLine(line, PRIMARY_GAME_CHANGED_LINE, PRIMARY_GAME_CHANGED_REGEX);
+        break;
+      case 'E':
+        if (line.equals("Entering setup mode."))
+          parsedLine = new ParsedLine(line, ENTERED_BSETUP_LINE, null);
+        break;
+      case 'G':
+        if (line.equals("Game is validated - entering examine mode."))
+          parsedLine = new ParsedLine(line, EXITED_BSETUP_LINE, null);
+        else if (line.startsWith("Game ")) parsedLine = parseObservedGameOfferLine(line);
+        break;
+      case 'I':
+        if (line.startsWith("Illegal move "))
+          parsedLine = matchLine(line, ILLEGAL_MOVE_LINE, ILLEGAL_MOVE_REGEX);
+        else if (line.equals("It is not your move."))
+          parsedLine = matchLine(line, NOT_YOUR_TURN_LINE, NOT_YOUR_TURN_REGEX);
+        break;
+      case 'T':
+        if (line.equals("The clock is paused, use \"unpause\" to resume."))
+          parsedLine = matchLine(line, MOVED_WHEN_GAME_PAUSED_LINE, MOVED_WHEN_GAME_PAUSED);
+        break;
+    }
+    if (parsedLine != null) return parsedLine;
+
+    // None of the chat lines contain ": " before the one following the text which identifies the
+    // type of the chat line, so the text preceding the first ": " determines the type.
+    int index = line.indexOf(": ");
+    if (index == -1) {
+      if (line.startsWith("set", line.length() - 4)) {
+        MatchResult match = match(IVAR_SET_REGEX, line);
+        // Otherwise it's a notification that something has been set, but not a known ivar
+        if ((match != null) && (Ivar.getByName(match.group(1)) != null))
+          return new ParsedLine(line, IVAR_STATE_CHANGED_LINE, match);
       }
+      return null;
     }
 
-    return buf.toString();
+    if (line.charAt(index - 1) == ')')
+      return matchLine(line, CHANNEL_TELL_LINE, CHANNEL_TELL_REGEX);
+    if (line.startsWith(" (your partner) tells you", index - 25))
+      return matchLine(line, PTELL_LINE, PTELL_REGEX);
+    if (line.startsWith(" tells you", index - 10))
+      return matchLine(line, PERSONAL_TELL_LINE, PERSONAL_TELL_REGEX);
+    if (line.startsWith(" says", index - 5)) return matchLine(line, SAY_TELL_LINE, SAY_REGEX);
+    if (line.startsWith(" c-shouts", index - 9)) return matchLine(line, CSHOUT_LINE, CSHOUT_REGEX);
+    if (line.startsWith(" shouts", index - 7)) return matchLine(line, SHOUT_LINE, SHOUT_REGEX);
+    if (line.startsWith(" kibitzes", index - 9)) return matchLine(line, KIBITZ_LINE, KIBITZ_REGEX);
+    if (line.startsWith(" whispers", index - 9))
+      return matchLine(line, WHISPER_LINE, WHISPER_REGEX);
+
+    return null;
   }
 
   /**
-   * The method is responsible for determining the type of the information, parsing it and sending
-   * it for further processing.
+   * Parses lines starting with <code>"Game "</code> which notify us of offers made in a game we're
+   * observing. We have to handle these "manually", since the server currently does not inform us of
+   * offers in games we're observing. Returns <code>null</code> if the line is not of a known type.
+   */
+  private static ParsedLine parseObservedGameOfferLine(String line) {
+    ParsedLine parsedLine;
+    if ((parsedLine = matchLine(line, PLAYER_OFFERED_DRAW_LINE, PLAYER_OFFERED_DRAW_REGEX)) != null)
+      return parsedLine;
+    if ((parsedLine = matchLine(line, PLAYER_OFFERED_ADJOURN_LINE, PLAYER_OFFERED_ADJOURN_REGEX))
+        != null) return parsedLine;
+    if ((parsedLine = matchLine(line, PLAYER_OFFERED_ABORT_LINE, PLAYER_OFFERED_ABORT_REGEX))
+        != null) return parsedLine;
+    if ((parsedLine = matchLine(line, PLAYER_OFFERED_TAKEBACK_LINE, PLAYER_OFFERED_TAKEBACK_REGEX))
+        != null) return parsedLine;
+    if (line.indexOf("declines the ") != -1)
+      return matchLine(line, PLAYER_DECLINED_LINE, PLAYER_DECLINED_REGEX);
+    if (line.indexOf("withdraws the ") != -1)
+      return matchLine(line, PLAYER_WITHDREW_LINE, PLAYER_WITHDREW_REGEX);
+    if (line.indexOf("proposes a different number ") != -1)
+      return matchLine(
+          line, PLAYER_COUNTERED_TAKEBACK_LINE, PLAYER_COUNTER_TAKEBACK_OFFER_REGEX);
+
+    return null;
+  }
+
+  /**
+   * Matches the specified line against the specified regular expression and returns a
+   * <code>ParsedLine</code> of the specified type with the match result as its data, or
+   * <code>null</code> if the line doesn't match.
+   */
+  private static ParsedLine matchLine(String line, int lineType, Pattern regex) {
+    MatchResult match = match(regex, line);
+    return match == null ? null : new ParsedLine(line, lineType, match);
+  }
+
+  /**
+   * Matches the specified line against the specified regular expression and returns the result,
+   * or <code>null</code> if the line doesn't match.
+   */
+  private static MatchResult match(Pattern regex, String line) {
+    Matcher matcher = regex.matcher(line);
+    return matcher.matches() ? matcher.toMatchResult() : null;
+  }
+
+  /**
+   * Sends the specified line, already parsed by {@link #parseMessage(Object)}, for further
+   * processing. For convenience, an unparsed line (a <code>String</code>) is accepted too.
    */
   @Override
-  protected void handleMessage(Object lineObj) {
-    String line = (String) lineObj;
-
-    if (logStream != null) logStream.println(line);
-
-    if (handleGameInfo(line)) return;
-    if (handleStyle12(line)) return;
-    if (handleDeltaBoard(line)) return;
-    if (handleSeeksCleared(line)) return;
-    if (handleSeekAdded(line)) return;
-    if (handleSeeksRemoved(line)) return;
-    if (handleBughouseHoldings(line)) return;
-    if (handleGameEnd(line)) return;
-    if (handleStoppedObserving(line)) return;
-    if (handleStoppedExamining(line)) return;
-    if (handleEnteredBSetupMode(line)) return;
-    if (handleExitedBSetupMode(line)) return;
-    if (handleIllegalMove(line)) return;
-    if (handleChannelTell(line)) return;
-    if (handleLogin(line)) return;
-    if (handleIvarStateChanged(line)) return;
-    if (handlePersonalTell(line)) return;
-    if (handleSayTell(line)) return;
-    if (handlePTell(line)) return;
-    if (handleShout(line)) return;
-    if (handleIShout(line)) return;
-    if (handleTShout(line)) return;
-    if (handleCShout(line)) return;
-    if (handleAnnouncement(line)) return;
-    if (handleKibitz(line)) return;
-    if (handleWhisper(line)) return;
-    if (handleQTell(line)) return;
-    if (handleOffer(line)) return;
-    if (handleOfferRemoved(line)) return;
-    if (handlePlayerOffered(line)) //
-    return; // We have to handle these
-    if (handlePlayerDeclined(line)) // "manually", since the
-    return; // server currently does
-    if (handlePlayerWithdrew(line)) // not inform us of offers
-    return; // in games we're
-    if (handlePlayerCounteredTakebackOffer(line)) // observing.
-    return; //
-    if (handleSimulCurrentBoardChanged(line)) return;
-    if (handlePrimaryGameChanged(line)) return;
+  protected void handleMessage(Object message) {
+    ParsedLine parsedLine =
+        message instanceof ParsedLine ? (ParsedLine) message : parseLine((String) message);
+    String line = parsedLine.line;
+    Object data = parsedLine.data;
+
+    if ((protocolLog != null) && protocolLog.isEnabled()) protocolLog.received(line);
+
+    switch (parsedLine.type) {
+      case GAME_INFO_LINE:
+        if (!processGameInfo((GameInfoStruct) data)) processLine(line);
+        return;
+      case STYLE12_LINE:
+        if (!processStyle12((Style12Struct) data)) processLine(line);
+        return;
+      case DELTA_BOARD_LINE:
+        if (!processDeltaBoard((DeltaBoardStruct) data)) processLine(line);
+        return;
+      case SEEKS_CLEARED_LINE:
+        if (!processSeeksCleared()) processLine(line);
+        return;
+      case SEEK_ADDED_LINE:
+        if (!processSeekAdded((SeekInfoStruct) data)) processLine(line);
+        return;
+      case SEEKS_REMOVED_LINE:
+        if (!processSeeksRemoved((int[]) data)) processLine(line);
+        return;
+      case BUGHOUSE_HOLDINGS_LINE:
+        // Implement real handling.
+        return;
+      case GAME_END_LINE:
+        handleGameEnd(line, (MatchResult) data);
+        return;
+      case STOPPED_OBSERVING_LINE:
+        handleStoppedObserving(line, (MatchResult) data);
+        return;
+      case STOPPED_EXAMINING_LINE:
+        handleStoppedExamining(line, (MatchResult) data);
+        return;
+      case ENTERED_BSETUP_LINE:
+        if (!processBSetupMode(true)) processLine(line);
+        return;
+      case EXITED_BSETUP_LINE:
+        if (!processBSetupMode(false)) processLine(line);
+        return;
+      case ILLEGAL_MOVE_LINE:
+      case NOT_YOUR_TURN_LINE:
+      case MOVED_WHEN_GAME_PAUSED_LINE:
+        handleIllegalMove(line, parsedLine.type, (MatchResult) data);
+        return;
+      case CHANNEL_TELL_LINE:
+        handleChannelTell(line, (MatchResult) data);
+        return;
+      case LOGIN_LINE:
+        if (handleLogin(line, (MatchResult) data)) return;
+        break;
+      case WRONG_PASSWORD_LINE:
+        if (!isLoggedIn()) loginFailed("Invalid password");
+        break;
+      case IVAR_STATE_CHANGED_LINE:
+        if (handleIvarStateChanged(line, (MatchResult) data)) return;
+        break;
+      case PERSONAL_TELL_LINE:
+        handlePersonalTell(line, (MatchResult) data);
+        return;
+      case SAY_TELL_LINE:
+        handleSayTell(line, (MatchResult) data);
+        return;
+      case PTELL_LINE:
+        handlePTell(line, (MatchResult) data);
+        return;
+      case SHOUT_LINE:
+        handleShout(line, (MatchResult) data);
+        return;
+      case ISHOUT_LINE:
+        handleIShout(line, (MatchResult) data);
+        return;
+      case TSHOUT_LINE:
+        handleTShout(line, (MatchResult) data);
+        return;
+      case CSHOUT_LINE:
+        handleCShout(line, (MatchResult) data);
+        return;
+      case ANNOUNCEMENT_LINE:
+        handleAnnouncement(line, (MatchResult) data);
+        return;
+      case KIBITZ_LINE:
+        handleKibitz(line, (MatchResult) data);
+        return;
+      case WHISPER_LINE:
+        handleWhisper(line, (MatchResult) data);
+        return;
+      case QTELL_LINE:
+        handleQTell(line, (MatchResult) data);
+        return;
+      case OFFER_LINE:
+        handleOffer(line, (MatchResult) data);
+        return;
+      case OFFER_REMOVED_LINE:
+        if (!processOfferRemoved(((Integer) data).intValue())) processLine(line);
+        return;
+      case PLAYER_OFFERED_DRAW_LINE:
+        handlePlayerOffered(line, "draw", (MatchResult) data);
+        return;
+      case PLAYER_OFFERED_ADJOURN_LINE:
+        handlePlayerOffered(line, "adjourn", (MatchResult) data);
+        return;
+      case PLAYER_OFFERED_ABORT_LINE:
+        handlePlayerOffered(line, "abort", (MatchResult) data);
+        return;
+      case PLAYER_OFFERED_TAKEBACK_LINE:
+        handlePlayerOffered(line, "takeback", (MatchResult) data);
+        return;
+      case PLAYER_DECLINED_LINE:
+        handlePlayerDeclined(line, (MatchResult) data);
+        return;
+      case PLAYER_WITHDREW_LINE:
+        handlePlayerWithdrew(line, (MatchResult) data);
+        return;
+      case PLAYER_COUNTERED_TAKEBACK_LINE:
+        handlePlayerCounteredTakebackOffer(line, (MatchResult) data);
+        return;
+      case SIMUL_BOARD_CHANGED_LINE:
+        handleSimulCurrentBoardChanged(line, (MatchResult) data);
+        return;
+      case PRIMARY_GAME_CHANGED_LINE:
+        handlePrimaryGameChanged(line, (MatchResult) data);
+        return;
+    }
 
     Integer filterCount = (Integer) linesToFilter.get(line);
     if (filterCount == null) processLine(line);
@@ -455,21 +923,14 @@ public class FreechessConnection extends Connection {
   private static final Pattern IVAR_SET_REGEX = Pattern.compile("^(\\w+) (un)?set.$");
 
   /**
-   * Called to determine whether the specified line is a notification that the state of some ivar
-   * has changed.
+   * Handles a notification that the state of some ivar has changed. Returns whether the line has
+   * been processed completely.
    */
-  private boolean handleIvarStateChanged(String line) {
-    if (line.indexOf("set") == -1) return false;
-
-    Matcher matcher = IVAR_SET_REGEX.matcher(line);
-    if (!matcher.matches()) return false;
-
+  private boolean handleIvarStateChanged(String line, MatchResult matcher) {
     String ivarName = matcher.group(1);
     boolean state = (matcher.group(2) == null) || "".equals(matcher.group(2));
 
     Ivar ivar = Ivar.getByName(ivarName);
-    if (ivar == null) // It's a notification that something has been set, but not a known ivar
-    return false;
 
     ivarStates.set(ivar.getIndex());
 
@@ -502,22 +963,17 @@ public class FreechessConnection extends Connection {
       Pattern.compile("^\\*\\*\\*\\* Invalid password! \\*\\*\\*\\*");
 
   /**
-   * Called to determine if the given line of text is a login confirming line and to handle that
-   * information if it is. Returns <code>true</code> if the given line is a login confirming line,
-   * otherwise, returns <code>false</code>.
+   * Handles a login confirming line. Returns <code>true</code> if the line has been handled,
+   * <code>false</code> if it should be processed as a plain line (because we're already logged in).
    */
-  private boolean handleLogin(String line) {
-    Matcher matcher = LOGIN_REGEX.matcher(line);
-    if ((!isLoggedIn()) && matcher.matches()) {
-      loginSucceeded(matcher.group(1));
+  private boolean handleLogin(String line, MatchResult matcher) {
+    if (isLoggedIn()) return false;
 
-      processLine(line);
+    loginSucceeded(matcher.group(1));
 
-      return true;
-    } else if ((!isLoggedIn()) && WRONG_PASSWORD_REGEX.matcher(line).matches())
-      loginFailed("Invalid password");
+    processLine(line);
 
-    return false;
+    return true;
   }
 
   /**
@@ -527,22 +983,14 @@ public class FreechessConnection extends Connection {
       Pattern.compile("^(" + USERNAME_REGEX + ")(" + TITLES_REGEX + ")? tells you: (.*)");
 
   /**
-   * Called to determine whether the given line of text is a personal tell and to further process it
-   * if it is.
+   * Handles a personal tell.
    */
-  private boolean handlePersonalTell(String line) {
-    if (line.indexOf("tells you: ") == -1) return false;
-
-    Matcher matcher = PERSONAL_TELL_REGEX.matcher(line);
-    if (!matcher.matches()) return false;
-
+  private void handlePersonalTell(String line, MatchResult matcher) {
     String username = matcher.group(1);
     String titles = matcher.group(2);
     String message = matcher.group(3);
 
     if (!processPersonalTell(username, titles, message)) processLine(line);
-
-    return true;
   }
 
   /**
@@ -559,15 +1007,9 @@ public class FreechessConnection extends Connection {
       Pattern.compile("^(" + USERNAME_REGEX + ")(" + TITLES_REGEX + ")?(\\[(\\d+)\\])? says: (.*)");
 
   /**
-   * Called to determine whether the given line of text is a "say" tell and to further process it if
-   * it is.
+   * Handles a "say" tell.
    */
-  private boolean handleSayTell(String line) {
-    if (line.indexOf("says: ") == -1) return false;
-
-    Matcher matcher = SAY_REGEX.matcher(line);
-    if (!matcher.matches()) return false;
-
+  private void handleSayTell(String line, MatchResult matcher) {
     String username = matcher.group(1);
     String titles = matcher.group(2);
     String gameNumberString = matcher.group(4);
@@ -576,8 +1018,6 @@ public class FreechessConnection extends Connection {
     int gameNumber = gameNumberString == null ? -1 : Integer.parseInt(gameNumberString);
 
     if (!processSayTell(username, titles, gameNumber, message)) processLine(line);
-
-    return true;
   }
 
   /**
@@ -596,22 +1036,14 @@ public class FreechessConnection extends Connection {
           "^(" + USERNAME_REGEX + ")(" + TITLES_REGEX + ")? \\(your partner\\) tells you: (.*)");
 
   /**
-   * Called to determine whether the given line of text is a "ptell" tell and to further process it
-   * if it is.
+   * Handles a "ptell" tell.
    */
-  private boolean handlePTell(String line) {
-    if (line.indexOf("(your partner) tells you: ") == -1) return false;
-
-    Matcher matcher = PTELL_REGEX.matcher(line);
-    if (!matcher.matches()) return false;
-
+  private void handlePTell(String line, MatchResult matcher) {
     String username = matcher.group(1);
     String titles = matcher.group(2);
     String message = matcher.group(3);
 
     if (!processPTell(username, titles, message)) processLine(line);
-
-    return true;
   }
 
   /**
@@ -628,15 +1060,9 @@ public class FreechessConnection extends Connection {
       Pattern.compile("^(" + USERNAME_REGEX + ")(" + TITLES_REGEX + ")?\\((\\d+)\\): (.*)");
 
   /**
-   * Called to determine whether the given line of text is a channel tell and to further process it
-   * if it is.
+   * Handles a channel tell.
    */
-  private boolean handleChannelTell(String line) {
-    if (line.indexOf("): ") == -1) return false;
-
-    Matcher matcher = CHANNEL_TELL_REGEX.matcher(line);
-    if (!matcher.matches()) return false;
-
+  private void handleChannelTell(String line, MatchResult matcher) {
     String username = matcher.group(1);
     String titles = matcher.group(2);
     String channelNumberString = matcher.group(3);
@@ -645,8 +1071,6 @@ public class FreechessConnection extends Connection {
     int channelNumber = Integer.parseInt(channelNumberString);
 
     if (!processChannelTell(username, titles, channelNumber, message)) processLine(line);
-
-    return true;
   }
 
   /**
@@ -669,15 +1093,9 @@ public class FreechessConnection extends Connection {
               + ")?\\( {0,3}([\\-0-9]+)\\)\\[(\\d+)\\] kibitzes: (.*)");
 
   /**
-   * Called to determine whether the given line of text is a kibitz and to further process it if it
-   * is.
+   * Handles a kibitz.
    */
-  private boolean handleKibitz(String line) {
-    if (line.indexOf("kibitzes: ") == -1) return false;
-
-    Matcher matcher = KIBITZ_REGEX.matcher(line);
-    if (!matcher.matches()) return false;
-
+  private void handleKibitz(String line, MatchResult matcher) {
     String username = matcher.group(1);
     String titles = matcher.group(2);
     String ratingString = matcher.group(3);
@@ -691,8 +1109,6 @@ public class FreechessConnection extends Connection {
     int gameNumber = Integer.parseInt(gameNumberString);
 
     if (!processKibitz(username, titles, rating, gameNumber, message)) processLine(line);
-
-    return true;
   }
 
   /**
@@ -716,15 +1132,9 @@ public class FreechessConnection extends Connection {
               + ")?\\( {0,3}([\\-0-9]+)\\)\\[(\\d+)\\] whispers: (.*)");
 
   /**
-   * Called to determine whether the given line of text is a whisper and to further process it if it
-   * is.
+   * Handles a whisper.
    */
-  private boolean handleWhisper(String line) {
-    if (line.indexOf("whispers: ") == -1) return false;
-
-    Matcher matcher = WHISPER_REGEX.matcher(line);
-    if (!matcher.matches()) return false;
-
+  private void handleWhisper(String line, MatchResult matcher) {
     String username = matcher.group(1);
     String titles = matcher.group(2);
     String ratingString = matcher.group(3);
@@ -738,8 +1148,6 @@ public class FreechessConnection extends Connection {
     int gameNumber = Integer.parseInt(gameNumberString);
 
     if (!processWhisper(username, titles, rating, gameNumber, message)) processLine(line);
-
-    return true;
   }
 
   /**
@@ -757,20 +1165,12 @@ public class FreechessConnection extends Connection {
   private static final Pattern QTELL_REGEX = Pattern.compile("^:(.*)");
 
   /**
-   * Called to determine whether the given line of text is a qtell and to further process it if it
-   * is.
+   * Handles a qtell.
    */
-  private boolean handleQTell(String line) {
-    if (!line.startsWith(":")) return false;
-
-    Matcher matcher = QTELL_REGEX.matcher(line);
-    if (!matcher.matches()) return false;
-
+  private void handleQTell(String line, MatchResult matcher) {
     String message = matcher.group(1);
 
     if (!processQTell(message)) processLine(line);
-
-    return true;
   }
 
   /**
@@ -787,22 +1187,14 @@ public class FreechessConnection extends Connection {
       Pattern.compile("^(" + USERNAME_REGEX + ")(" + TITLES_REGEX + ")? shouts: (.*)");
 
   /**
-   * Called to determine whether the given line of text is a shout and to further process it if it
-   * is.
+   * Handles a shout.
    */
-  private boolean handleShout(String line) {
-    if (line.indexOf("shouts: ") == -1) return false;
-
-    Matcher matcher = SHOUT_REGEX.matcher(line);
-    if (!matcher.matches()) return false;
-
+  private void handleShout(String line, MatchResult matcher) {
     String username = matcher.group(1);
     String titles = matcher.group(2);
     String message = matcher.group(3);
 
     if (!processShout(username, titles, message)) processLine(line);
-
-    return true;
   }
 
   /**
@@ -819,22 +1211,14 @@ public class FreechessConnection extends Connection {
       Pattern.compile("^--> (" + USERNAME_REGEX + ")(" + TITLES_REGEX + ")? ?(.*)");
 
   /**
-   * Called to determine whether the given line of text is an "ishout" and to further process it if
-   * it is.
+   * Handles an "ishout".
    */
-  private boolean handleIShout(String line) {
-    if (!line.startsWith("--> ")) return false;
-
-    Matcher matcher = ISHOUT_REGEX.matcher(line);
-    if (!matcher.matches()) return false;
-
+  private void handleIShout(String line, MatchResult matcher) {
     String username = matcher.group(1);
     String titles = matcher.group(2);
     String message = matcher.group(3);
 
     if (!processIShout(username, titles, message)) processLine(line);
-
-    return true;
   }
 
   /**
@@ -851,22 +1235,14 @@ public class FreechessConnection extends Connection {
       Pattern.compile("^:(" + USERNAME_REGEX + ")(" + TITLES_REGEX + ")? t-shouts: (.*)");
 
   /**
-   * Called to determine whether the given line of text is a "tshout" and to further process it if
-   * it is.
+   * Handles a "tshout".
    */
-  private boolean handleTShout(String line) {
-    if (line.indexOf("t-shouts: ") == -1) return false;
-
-    Matcher matcher = TSHOUT_REGEX.matcher(line);
-    if (!matcher.matches()) return false;
-
+  private void handleTShout(String line, MatchResult matcher) {
     String username = matcher.group(1);
     String titles = matcher.group(2);
     String message = matcher.group(3);
 
     if (!processTShout(username, titles, message)) processLine(line);
-
-    return true;
   }
 
   /**
@@ -883,22 +1259,14 @@ public class FreechessConnection extends Connection {
       Pattern.compile("^(" + USERNAME_REGEX + ")(" + TITLES_REGEX + ")? c-shouts: (.*)");
 
   /**
-   * Called to determine whether the given line of text is a "cshout" and to further process it if
-   * it is.
+   * Handles a "cshout".
    */
-  private boolean handleCShout(String line) {
-    if (line.indexOf("c-shouts: ") == -1) return false;
-
-    Matcher matcher = CSHOUT_REGEX.matcher(line);
-    if (!matcher.matches()) return false;
-
+  private void handleCShout(String line, MatchResult matcher) {
     String username = matcher.group(1);
     String titles = matcher.group(2);
     String message = matcher.group(3);
 
     if (!processCShout(username, titles, message)) processLine(line);
-
-    return true;
   }
 
   /**
@@ -915,21 +1283,13 @@ public class FreechessConnection extends Connection {
       Pattern.compile("^    \\*\\*ANNOUNCEMENT\\*\\* from (" + USERNAME_REGEX + "): (.*)");
 
   /**
-   * Called to determine whether the given line of text is an announcement and to further process it
-   * if it is.
+   * Handles an announcement.
    */
-  private boolean handleAnnouncement(String line) {
-    if (!line.startsWith("    **ANNOUNCEMENT** from ")) return false;
-
-    Matcher matcher = ANNOUNCEMENT_REGEX.matcher(line);
-    if (!matcher.matches()) return false;
-
+  private void handleAnnouncement(String line, MatchResult matcher) {
     String username = matcher.group(1);
     String message = matcher.group(2);
 
     if (!processAnnouncement(username, message)) processLine(line);
-
-    return true;
   }
 
   /**
@@ -939,20 +1299,6 @@ public class FreechessConnection extends Connection {
     return false;
   }
 
-  /**
-   * Called to determine whether the given line of text is a gameinfo line and to further process it
-   * if it is.
-   */
-  private boolean handleGameInfo(String line) {
-    if (!line.startsWith("<g1> ")) return false;
-
-    GameInfoStruct data = GameInfoStruct.parseGameInfoLine(line);
-
-    if (!processGameInfo(data)) processLine(line);
-
-    return true;
-  }
-
   /**
    * This method is called when a gameinfo line is received. To turn gameinfo lines on, send
    * <code>iset gameinfo 1</code>
@@ -961,20 +1307,6 @@ public class FreechessConnection extends Connection {
     return false;
   }
 
-  /**
-   * Called to determine whether the given line of text is a style12 line and to further process it
-   * if it is.
-   */
-  private boolean handleStyle12(String line) {
-    if (!line.startsWith("<12> ")) return false;
-
-    Style12Struct data = Style12Struct.parseStyle12Line(line);
-
-    if (!processStyle12(data)) processLine(line);
-
-    return true;
-  }
-
   /**
    * This method is called when a style12 line is received. To turn on style 12, use
    * <code>setStyle(12)</code>.
@@ -984,40 +1316,15 @@ public class FreechessConnection extends Connection {
   }
 
   /**
-   * Called to determine whether the given line of text is a delta board line and to further process
-   * it if it is.
-   */
-  private boolean handleDeltaBoard(String line) {
-    if (!line.startsWith("<d1> ")) return false;
-
-    DeltaBoardStruct data = DeltaBoardStruct.parseDeltaBoardLine(line);
-
-    if (!processDeltaBoard(data)) processLine(line);
-
-    return true;
-  }
-
-  /**
-   * This method is called when a delta board line is received. To turn delta board on, send
-   * <code>iset compressmove 1</code>. Note, however, that it will disable the sending of a full
-   * board (like a style12 board) in some cases.
+   * This method is called when a delta board line is received. To turn delta board on, set the
+   * <code>compressmove</code> ivar (<code>setIvarState(Ivar.COMPRESSMOVE, true)</code>), before
+   * logging in to have it set on the login line. Note, however, that it will disable the sending of
+   * a full board (like a style12 board) for moves in regular chess games.
    */
   protected boolean processDeltaBoard(DeltaBoardStruct data) {
     return false;
   }
 
-  /**
-   * Called to determine whether the given line of text is a bughouse holdings line and to further
-   * process it if it is.
-   */
-  private boolean handleBughouseHoldings(String line) {
-    if (!line.startsWith("<b1> ")) return false;
-
-    // Implement real handling.
-
-    return true;
-  }
-
   /**
    * The regular expression matching game end lines, like the following:<br>
    * {Game 6 (Strakh vs. Svag) Strakh forfeits on time} 0-1.
@@ -1031,15 +1338,9 @@ public class FreechessConnection extends Connection {
               + ")\\) ([^\\}]+)\\} (.*)");
 
   /**
-   * Called to determine whether the given line of text is a game end line and to further process it
-   * if it is.
+   * Handles a game end line.
    */
-  private boolean handleGameEnd(String line) {
-    if (!line.startsWith("{Game ")) return false;
-
-    Matcher matcher = GAME_END_REGEX.matcher(line);
-    if (!matcher.matches()) return false;
-
+  private void handleGameEnd(String line, MatchResult matcher) {
     int gameNumber = Integer.parseInt(matcher.group(1));
     String whiteName = matcher.group(2);
     String blackName = matcher.group(3);
@@ -1047,8 +1348,6 @@ public class FreechessConnection extends Connection {
     String result = matcher.group(5);
 
     if (!processGameEnd(gameNumber, whiteName, blackName, reason, result)) processLine(line);
-
-    return true;
   }
 
   /**
@@ -1068,20 +1367,12 @@ public class FreechessConnection extends Connection {
       Pattern.compile("^Removing game (\\d+) from observation list\\.$");
 
   /**
-   * Called to determine whether the given line of text is a line specifying that we've stopped
-   * observing a game and to further process it if it is.
+   * Handles a line specifying that we've stopped observing a game.
    */
-  private boolean handleStoppedObserving(String line) {
-    if (!line.startsWith("Removing game ")) return false;
-
-    Matcher matcher = STOPPED_OBSERVING_REGEX.matcher(line);
-    if (!matcher.matches()) return false;
-
+  private void handleStoppedObserving(String line, MatchResult matcher) {
     int gameNumber = Integer.parseInt(matcher.group(1));
 
     if (!processStoppedObserving(gameNumber)) processLine(line);
-
-    return true;
   }
 
   /**
@@ -1100,20 +1391,12 @@ public class FreechessConnection extends Connection {
       Pattern.compile("^You are no longer examining game (\\d+)\\.$");
 
   /**
-   * Called to determine whether the given line of text is a line specifying that we've stopped
-   * examining a game and to further process it if it is.
+   * Handles a line specifying that we've stopped examining a game.
    */
-  private boolean handleStoppedExamining(String line) {
-    if (!line.startsWith("You are no longer examining game ")) return false;
-
-    Matcher matcher = STOPPED_EXAMINING_REGEX.matcher(line);
-    if (!matcher.matches()) return false;
-
+  private void handleStoppedExamining(String line, MatchResult matcher) {
     int gameNumber = Integer.parseInt(matcher.group(1));
 
     if (!processStoppedExamining(gameNumber)) processLine(line);
-
-    return true;
   }
 
   /**
@@ -1123,28 +1406,6 @@ public class FreechessConnection extends Connection {
     return false;
   }
 
-  /**
-   * Called to determine whether the specified line of text specifies entering bsetup mode.
-   */
-  private boolean handleEnteredBSetupMode(String line) {
-    if (!line.equals("Entering setup mode.")) return false;
-
-    if (!processBSetupMode(true)) processLine(line);
-
-    return true;
-  }
-
-  /**
-   * Called to determine whether the specified line of text specifies exiting bsetup mode.
-   */
-  private boolean handleExitedBSetupMode(String line) {
-    if (!line.equals("Game is validated - entering examine mode.")) return false;
-
-    if (!processBSetupMode(false)) processLine(line);
-
-    return true;
-  }
-
   /**
    * This method is called whenever the user enters or exits bsetup mode. The boolean argument is
    * <code>true</code> if we've entered bsetup mode, <code>false</code> when exited.
@@ -1191,39 +1452,28 @@ public class FreechessConnection extends Connection {
   public static final int MOVE_REJECTED_GAME_PAUSED = 3;
 
   /**
-   * Called to determine whether the given line of text is a line specifying that an illegal move
-   * has been attempted and to further process it if it is.
+   * Handles a line specifying that an illegal move has been attempted.
    */
-  private boolean handleIllegalMove(String line) {
-    if (!(line.startsWith("Illegal move ")
-        || line.equals("It is not your move.")
-        || line.equals("The clock is paused, use \"unpause\" to resume."))) return false;
-
-    Matcher illegalMoveMatcher = ILLEGAL_MOVE_REGEX.matcher(line);
-    Matcher notYourTurnMatcher = NOT_YOUR_TURN_REGEX.matcher(line);
-    Matcher movedWhenGamePausedMatcher = MOVED_WHEN_GAME_PAUSED.matcher(line);
-
+  private void handleIllegalMove(String line, int lineType, MatchResult matcher) {
     String moveString;
     int reasonCode;
     String reason;
 
-    if (illegalMoveMatcher.matches()) {
-      moveString = illegalMoveMatcher.group(1);
+    if (lineType == ILLEGAL_MOVE_LINE) {
+      moveString = matcher.group(1);
       reasonCode = MOVE_REJECTED_ILLEGAL_MOVE;
-      reason = illegalMoveMatcher.group(2);
-    } else if (notYourTurnMatcher.matches()) {
+      reason = matcher.group(2);
+    } else if (lineType == NOT_YOUR_TURN_LINE) {
       moveString = null; // sigh
       reasonCode = MOVE_REJECTED_NOT_YOUR_TURN;
-      reason = notYourTurnMatcher.group(1);
-    } else if (movedWhenGamePausedMatcher.matches()) {
+      reason = matcher.group(1);
+    } else {
       moveString = null;
       reasonCode = MOVE_REJECTED_GAME_PAUSED;
-      reason = movedWhenGamePausedMatcher.group(1);
-    } else return false;
+      reason = matcher.group(1);
+    }
 
     if (!processIllegalMove(moveString, reasonCode, reason)) processLine(line);
-
-    return true;
   }
 
   /**
@@ -1239,18 +1489,6 @@ public class FreechessConnection extends Connection {
     return false;
   }
 
-  /**
-   * Called to determine whether the given line of text is a line specifying that all seeks have
-   * been cleared.
-   */
-  private boolean handleSeeksCleared(String line) {
-    if (!line.equals("<sc>")) return false;
-
-    if (!processSeeksCleared()) processLine(line);
-
-    return true;
-  }
-
   /**
    * This method is called when a line specifying that all seeks have been cleared is received.
    */
@@ -1258,20 +1496,6 @@ public class FreechessConnection extends Connection {
     return false;
   }
 
-  /**
-   * Called to determine whether the given line of text is a line specifying that a new seek has
-   * been added.
-   */
-  private boolean handleSeekAdded(String line) {
-    if (!(line.startsWith("<s> ") || line.startsWith("<sn> "))) return false;
-
-    SeekInfoStruct seekInfo = SeekInfoStruct.parseSeekInfoLine(line);
-
-    if (!processSeekAdded(seekInfo)) processLine(line);
-
-    return true;
-  }
-
   /**
    * This method is called when a line specifying that a new seek has been added is received.
    */
@@ -1280,12 +1504,9 @@ public class FreechessConnection extends Connection {
   }
 
   /**
-   * Called to determine whether the given line of text is a line specifying that seeks have been
-   * removed.
+   * Parses the numbers of the removed seeks out of a line specifying that seeks have been removed.
    */
-  private boolean handleSeeksRemoved(String line) {
-    if (!line.startsWith("<sr> ")) return false;
-
+  private static int[] parseSeeksRemoved(String line) {
     StringTokenizer tokenizer = new StringTokenizer(line, " ");
     tokenizer.nextToken(); // Skip the "<sr>"
 
@@ -1293,9 +1514,7 @@ public class FreechessConnection extends Connection {
     for (int i = 0; i < removedSeeks.length; i++)
       removedSeeks[i] = Integer.parseInt(tokenizer.nextToken());
 
-    if (!processSeeksRemoved(removedSeeks)) processLine(line);
-
-    return true;
+    return removedSeeks;
   }
 
   /**
@@ -1307,41 +1526,23 @@ public class FreechessConnection extends Connection {
   }
 
   /**
-   * The regular expression we use to parse offers as they are specified in <pt> and <pf> lines (see
-   * "help iv_pendinfo").
-   */
-  private static final Pattern OFFER_PARSER =
-      Pattern.compile("^(\\d+) w=(" + USERNAME_REGEX + ") t=(\\S+) p=(.*)");
-
-  /**
-   * The regular expression matching lines specifying that an offer has been made to the user.
+   * The regular expression matching lines specifying that an offer has been made to or by the user,
+   * and parsing the offer as it is specified in <pt> and <pf> lines (see "help iv_pendinfo").
    */
-  private static final Pattern OFFER_REGEX = Pattern.compile("^<p([tf])> (.*)");
+  private static final Pattern OFFER_REGEX =
+      Pattern.compile("^<p([tf])> (\\d+) w=(" + USERNAME_REGEX + ") t=(\\S+) p=(.*)");
 
   /**
-   * Called to determine whether the specified line is a line informing us that an offer has been
-   * made (either to or by the user).
+   * Handles a line informing us that an offer has been made (either to or by the user).
    */
-  private boolean handleOffer(String line) {
-    if (!(line.startsWith("<pt> ") || line.startsWith("<pf> "))) return false;
-
-    Matcher matcher = OFFER_REGEX.matcher(line);
-    if (!matcher.matches()) return false;
-
+  private void handleOffer(String line, MatchResult matcher) {
     boolean toUser = "f".equals(matcher.group(1));
-
-    Matcher parser = OFFER_PARSER.matcher(matcher.group(2));
-    if (!parser.matches()) // Really weird
-    return false;
-
-    int offerIndex = Integer.parseInt(parser.group(1));
-    String username = parser.group(2);
-    String offerType = parser.group(3);
-    String offerParams = parser.group(4);
+    int offerIndex = Integer.parseInt(matcher.group(2));
+    String username = matcher.group(3);
+    String offerType = matcher.group(4);
+    String offerParams = matcher.group(5);
 
     if (!processOffer(toUser, offerType, offerIndex, username, offerParams)) processLine(line);
-
-    return true;
   }
 
   /**
@@ -1415,20 +1616,6 @@ public class FreechessConnection extends Connection {
     return false;
   }
 
-  /**
-   * Gets called to determine whether the specified line is a line informing us that the specified
-   * offer has been removed (accepted, declined, withdrawn, game ended or anything else).
-   */
-  private boolean handleOfferRemoved(String line) {
-    if (!line.startsWith("<pr> ")) return false;
-
-    int offerIndex = Integer.parseInt(line.substring("<pr> ".length()));
-
-    if (!processOfferRemoved(offerIndex)) processLine(line);
-
-    return true;
-  }
-
   /**
    * Gets called when an offer has been removed (accepted, declined, withdrawn, game ended or
    * anything else).
@@ -1466,20 +1653,9 @@ public class FreechessConnection extends Connection {
               + ") requests to take back (\\d+) half move\\(s\\)\\.$");
 
   /**
-   * Handles lines specifying that a player (in a game we're observing) made an offer.
+   * Handles a line specifying that a player (in a game we're observing) made an offer.
    */
-  private boolean handlePlayerOffered(String line) {
-    if (!line.startsWith("Game ")) return false;
-
-    String offer;
-
-    Matcher matcher;
-    if ((matcher = PLAYER_OFFERED_DRAW_REGEX.matcher(line)).matches()) offer = "draw";
-    else if ((matcher = PLAYER_OFFERED_ADJOURN_REGEX.matcher(line)).matches()) offer = "adjourn";
-    else if ((matcher = PLAYER_OFFERED_ABORT_REGEX.matcher(line)).matches()) offer = "abort";
-    else if ((matcher = PLAYER_OFFERED_TAKEBACK_REGEX.matcher(line)).matches()) offer = "takeback";
-    else return false;
-
+  private void handlePlayerOffered(String line, String offer, MatchResult matcher) {
     int gameNum = Integer.parseInt(matcher.group(1));
     String playerName = matcher.group(2);
 
@@ -1487,8 +1663,6 @@ public class FreechessConnection extends Connection {
       int takebackCount = Integer.parseInt(matcher.group(3));
       if (!processPlayerOfferedTakeback(gameNum, playerName, takebackCount)) processLine(line);
     } else if (!processPlayerOffered(gameNum, playerName, offer)) processLine(line);
-
-    return true;
   }
 
   /**
@@ -1516,22 +1690,14 @@ public class FreechessConnection extends Connection {
       Pattern.compile("^Game (\\d+): (" + USERNAME_REGEX + ") declines the (\\w+) request\\.$");
 
   /**
-   * Called to determine whether the given line of text is a line specifying that a player declined
-   * his opponent's offer.
+   * Handles a line specifying that a player declined his opponent's offer.
    */
-  private boolean handlePlayerDeclined(String line) {
-    if ((!line.startsWith("Game ")) || (line.indexOf("declines the ") == -1)) return false;
-
-    Matcher matcher = PLAYER_DECLINED_REGEX.matcher(line);
-    if (!matcher.matches()) return false;
-
+  private void handlePlayerDeclined(String line, MatchResult matcher) {
     int gameNum = Integer.parseInt(matcher.group(1));
     String playerName = matcher.group(2);
     String offer = matcher.group(3);
 
     if (!processPlayerDeclined(gameNum, playerName, offer)) processLine(line);
-
-    return true;
   }
 
   /**
@@ -1550,22 +1716,14 @@ public class FreechessConnection extends Connection {
       Pattern.compile("^Game (\\d+): (" + USERNAME_REGEX + ") withdraws the (\\w+) request\\.$");
 
   /**
-   * Called to determine whether the given line of text is a line specifying that a player declined
-   * his opponent's offer.
+   * Handles a line specifying that a player declined his opponent's offer.
    */
-  private boolean handlePlayerWithdrew(String line) {
-    if ((!line.startsWith("Game ")) || (line.indexOf("withdraws the ") == -1)) return false;
-
-    Matcher matcher = PLAYER_WITHDREW_REGEX.matcher(line);
-    if (!matcher.matches()) return false;
-
+  private void handlePlayerWithdrew(String line, MatchResult matcher) {
     int gameNum = Integer.parseInt(matcher.group(1));
     String playerName = matcher.group(2);
     String offer = matcher.group(3);
 
     if (!processPlayerWithdrew(gameNum, playerName, offer)) processLine(line);
-
-    return true;
   }
 
   /**
@@ -1588,24 +1746,15 @@ public class FreechessConnection extends Connection {
               + ") proposes a different number \\((\\d+)\\) of half-move\\(s\\) to take back\\.$");
 
   /**
-   * Called to determine whether the given line of text is a line specifying that a player (in a
-   * game we're observing) counter-offered a takeback offer by his opponent with a different amount
-   * of plies to take back.
+   * Handles a line specifying that a player (in a game we're observing) counter-offered a takeback
+   * offer by his opponent with a different amount of plies to take back.
    */
-  private boolean handlePlayerCounteredTakebackOffer(String line) {
-    if ((!line.startsWith("Game ")) || (line.indexOf("proposes a different number ") == -1))
-      return false;
-
-    Matcher matcher = PLAYER_COUNTER_TAKEBACK_OFFER_REGEX.matcher(line);
-    if (!matcher.matches()) return false;
-
+  private void handlePlayerCounteredTakebackOffer(String line, MatchResult matcher) {
     int gameNum = Integer.parseInt(matcher.group(1));
     String playerName = matcher.group(2);
     int takebackCount = Integer.parseInt(matcher.group(3));
 
     if (!processPlayerCounteredTakebackOffer(gameNum, playerName, takebackCount)) processLine(line);
-
-    return true;
   }
 
   /**
@@ -1624,20 +1773,13 @@ public class FreechessConnection extends Connection {
       Pattern.compile("^You are now at (" + USERNAME_REGEX + ")'s board \\(game (\\d+)\\)\\.$");
 
   /**
-   * Handles lines notifying us that the board we're at (in a simul) has changed.
+   * Handles a line notifying us that the board we're at (in a simul) has changed.
    */
-  private boolean handleSimulCurrentBoardChanged(String line) {
-    if (!line.startsWith("You are now at ")) return false;
-
-    Matcher matcher = AT_BOARD_REGEX.matcher(line);
-    if (!matcher.matches()) return false;
-
+  private void handleSimulCurrentBoardChanged(String line, MatchResult matcher) {
     String oppName = matcher.group(1);
     int gameNumber = Integer.parseInt(matcher.group(2));
 
     if (!processSimulCurrentBoardChanged(gameNumber, oppName)) processLine(line);
-
-    return true;
   }
 
   /**
@@ -1655,19 +1797,12 @@ public class FreechessConnection extends Connection {
       Pattern.compile("^Your primary game is now game (\\d+)\\.$");
 
   /**
-   * Handles lines notifying us that the primary observed game has changed.
+   * Handles a line notifying us that the primary observed game has changed.
    */
-  private boolean handlePrimaryGameChanged(String line) {
-    if (!line.startsWith("Your primary game is now game ")) return false;
-
-    Matcher matcher = PRIMARY_GAME_CHANGED_REGEX.matcher(line);
-    if (!matcher.matches()) return false;
-
+  private void handlePrimaryGameChanged(String line, MatchResult matcher) {
     int gameNumber = Integer.parseInt(matcher.group(1));
 
     if (!processPrimaryGameChanged(gameNumber)) processLine(line);
-
-    return true;
   }
 
   /**
@@ -1676,4 +1811,36 @@ public class FreechessConnection extends Connection {
   protected boolean processPrimaryGameChanged(int gameNumber) {
     return true;
   }
+
+  /**
+   * A line which has been classified and parsed in the reader thread, ready to be handled in the
+   * client thread.
+   */
+  static final class ParsedLine {
+
+    /**
+     * The line itself.
+     */
+    public final String line;
+
+    /**
+     * The type of the line - one of the <code>XXX_LINE</code> constants.
+     */
+    public final int type;
+
+    /**
+     * The data parsed out of the line; its type depends on the type of the line. May be
+     * <code>null</code> if the line carries no data.
+     */
+    public final Object data;
+
+    /**
+     * Creates a new <code>ParsedLine</code> with the specified line, line type and parsed data.
+     */
+    public ParsedLine(String line, int type, Object data) {
+      this.line = line;
+      this.type = type;
+      this.data = data;
+    }
+  }
 }
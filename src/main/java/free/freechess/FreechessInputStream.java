@@ -0,0 +1,110 @@
+/**
+ * The freechess.org connection library. More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * The freechess.org connection library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * The freechess.org connection library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the
+ * freechess.org connection library; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package free.freechess;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import free.util.FramingInputStream;
+
+/**
+ * Splits the data sent by the freechess.org server into lines. The data is read in bulk and the
+ * line terminators and prompts are located directly in the buffer, so the only object created per
+ * line is the line itself. Lines consisting of nothing but prompts are skipped without creating
+ * anything.
+ */
+class FreechessInputStream extends FramingInputStream {
+
+  /**
+   * The prompt, which we strip from the beginning of lines.
+   */
+  private static final String PROMPT = "fics% ";
+
+  /**
+   * Whether the last line read was terminated by a '\n' which was the last byte available at the
+   * time. FICS terminates lines with "\n\r", but we don't wait for the byte following the '\n' to
+   * arrive before returning the line, so the '\r' is skipped when the next line is read.
+   */
+  private boolean skipCarriageReturn = false;
+
+  /**
+   * Creates a new <code>FreechessInputStream</code> which reads from the specified
+   * <code>InputStream</code>.
+   */
+  public FreechessInputStream(InputStream in) {
+    super(in);
+  }
+
+  /**
+   * Reads a single line, without the terminator and any leading prompts. Returns <code>null</code>
+   * on a clean disconnection. Nothing is consumed until a whole line is available, so if the
+   * underlying stream runs out of data, throwing an <code>InterruptedIOException</code>, the line
+   * is simply read on the next invocation.
+   */
+  public String readLine() throws IOException {
+    while (true) {
+      if (!request(1)) // Clean disconnection
+      return null;
+
+      if (skipCarriageReturn) {
+        skipCarriageReturn = false;
+        if (buf[pos] == '\r') {
+          pos++;
+          continue;
+        }
+      }
+
+      int end;
+      int scanned = 0;
+      while ((end = indexOf('\n', pos + scanned)) == -1) {
+        scanned = limit - pos;
+        if (!fill()) { // EOF terminates the line
+          end = limit;
+          break;
+        }
+      }
+
+      int start = pos;
+      boolean isTerminated = end < limit;
+      pos = end;
+      if (isTerminated) {
+        // FICS uses \n\r for an end-of-line marker!?
+        // Eat the following '\r', if there is one
+        pos++;
+        if (pos == limit) skipCarriageReturn = true;
+        else if (buf[pos] == '\r') pos++;
+      }
+
+      // Filter out the prompt
+      boolean lineStartsWithPrompt = false;
+      while ((start + PROMPT.length() <= end) && startsWith(PROMPT, start)) {
+        start += PROMPT.length();
+        lineStartsWithPrompt = true;
+      }
+
+      if (start == end) {
+        if (!isTerminated) // Clean disconnection
+        return null;
+
+        // Ignore all-prompt lines
+        if (lineStartsWithPrompt) continue;
+      }
+
+      return decode(start, end);
+    }
+  }
+}
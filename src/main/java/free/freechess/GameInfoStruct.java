@@ -16,15 +16,97 @@
  */
 package free.freechess;
 
-import java.util.StringTokenizer;
-
-import free.util.Struct;
-
 /**
  * A structure holding parsed information from a gameinfo line. See the "help iv_gameinfo" helpfile
  * on freechess.org for information about the format.
  */
-public class GameInfoStruct extends Struct {
+public class GameInfoStruct {
+
+  /**
+   * The game number.
+   */
+  private final int gameNumber;
+
+  /**
+   * Whether the game is private.
+   */
+  private final boolean isGamePrivate;
+
+  /**
+   * A string specifying the category of the game. This will contain the rating type if it's a chess
+   * game or the wild variant name if it's a wild game.
+   */
+  private final String gameCategory;
+
+  /**
+   * Whether the game is rated.
+   */
+  private final boolean isGameRated;
+
+  /**
+   * Whether the white player is registered.
+   */
+  private final boolean isWhiteRegistered;
+
+  /**
+   * Whether the black player is registered.
+   */
+  private final boolean isBlackRegistered;
+
+  /**
+   * The initial amount of time on white's clock, in seconds.
+   */
+  private final int whiteTime;
+
+  /**
+   * The amount of time white's clock is incremented by after each move he makes, in seconds.
+   */
+  private final int whiteInc;
+
+  /**
+   * The initial amount of time on black's clock, in seconds.
+   */
+  private final int blackTime;
+
+  /**
+   * The amount of time black's clock is incremented by after each move he makes, in seconds.
+   */
+  private final int blackInc;
+
+  /**
+   * The game number of the bughouse partner, or 0 if it's not a bughouse game.
+   */
+  private final int partnerGameNumber;
+
+  /**
+   * White's rating.
+   */
+  private final int whiteRating;
+
+  /**
+   * White's rating provshow character, 'E' is estimated, 'P' if provisional and ' ' if neither.
+   */
+  private final char whiteProvShow;
+
+  /**
+   * Black's rating.
+   */
+  private final int blackRating;
+
+  /**
+   * Black's rating provshow character, 'E' is estimated, 'P' if provisional and ' ' if neither.
+   */
+  private final char blackProvShow;
+
+  /**
+   * Whether the white player is using timeseal.
+   */
+  private final boolean isWhiteTimesealed;
+
+  /**
+   * Whether the black player is using timeseal.
+   */
+  private final boolean isBlackTimesealed;
 
   /**
    * Creates a new GameInfoStruct with the specified arguments.
@@ -72,8 +154,6 @@ public class GameInfoStruct extends Struct {
       boolean isWhiteTimesealed,
       boolean isBlackTimesealed) {
 
-    super(20);
-
     if (whiteTime < 0)
       throw new IllegalArgumentException(
           "White's initial time (" + whiteTime + ") may not be negative");
@@ -90,23 +170,23 @@ public class GameInfoStruct extends Struct {
       throw new IllegalArgumentException(
           "Black's increment (" + blackInc + ") may not be negative");
 
-    setIntegerProperty("GameNumber", gameNumber);
-    setBooleanProperty("IsGamePrivate", isGamePrivate);
-    setStringProperty("GameCategory", gameCategory);
-    setBooleanProperty("IsGameRated", isGameRated);
-    setBooleanProperty("IsWhiteRegistered", isWhiteRegistered);
-    setBooleanProperty("IsBlackRegistered", isBlackRegistered);
-    setIntegerProperty("WhiteTime", whiteTime);
-    setIntegerProperty("WhiteInc", whiteInc);
-    setIntegerProperty("BlackTime", blackTime);
-    setIntegerProperty("BlackInc", blackInc);
-    setIntegerProperty("PartnerGameNumber", partnerGameNumber);
-    setIntegerProperty("WhiteRating", whiteRating);
-    setCharProperty("WhiteProvShow", whiteProvShow);
-    setIntegerProperty("BlackRating", blackRating);
-    setCharProperty("BlackProvShow", blackProvShow);
-    setBooleanProperty("IsWhiteTimesealed", isWhiteTimesealed);
-    setBooleanProperty("IsBlackTimesealed", isBlackTimesealed);
+    this.gameNumber = gameNumber;
+    this.isGamePrivate = isGamePrivate;
+    this.gameCategory = gameCategory;
+    this.isGameRated = isGameRated;
+    this.isWhiteRegistered = isWhiteRegistered;
+    this.isBlackRegistered = isBlackRegistered;
+    this.whiteTime = whiteTime;
+    this.whiteInc = whiteInc;
+    this.blackTime = blackTime;
+    this.blackInc = blackInc;
+    this.partnerGameNumber = partnerGameNumber;
+    this.whiteRating = whiteRating;
+    this.whiteProvShow = whiteProvShow;
+    this.blackRating = blackRating;
+    this.blackProvShow = blackProvShow;
+    this.isWhiteTimesealed = isWhiteTimesealed;
+    this.isBlackTimesealed = isBlackTimesealed;
   }
 
   /**
@@ -114,56 +194,46 @@ public class GameInfoStruct extends Struct {
    * <g1> 1 p=0 t=blitz r=1 u=1,1 it=5,5 i=8,8 pt=0 rt=1586E,2100 ts=1,0<br>
    */
   public static GameInfoStruct parseGameInfoLine(String line) {
-    StringTokenizer tokens = new StringTokenizer(line, " ,=");
+    LineScanner scanner = new LineScanner(line, " ,=");
 
-    if (!tokens.nextToken().equals("<g1>")) // Skip the <g1> identifier
+    if (!scanner.nextEquals("<g1>")) // Skip the <g1> identifier
     throw new IllegalArgumentException("Missing \"<g1>\" identifier");
 
-    int gameNumber = Integer.parseInt(tokens.nextToken()); // Game number
+    int gameNumber = scanner.nextInt(); // Game number
 
-    assertToken(tokens, "p"); // p=
-    boolean isGamePrivate = parseBoolean(tokens.nextToken()); // Is the game private?
+    scanner.expect("p"); // p=
+    boolean isGamePrivate = scanner.nextBoolean(); // Is the game private?
 
-    assertToken(tokens, "t"); // t=
-    String gameType = tokens.nextToken(); // Game type
+    scanner.expect("t"); // t=
+    String gameType = scanner.nextString(); // Game type
 
-    assertToken(tokens, "r"); // r=
-    boolean isGameRated = parseBoolean(tokens.nextToken()); // Is the game rated?
+    scanner.expect("r"); // r=
+    boolean isGameRated = scanner.nextBoolean(); // Is the game rated?
 
-    assertToken(tokens, "u"); // u=
-    boolean isWhiteRegistered = parseBoolean(tokens.nextToken()); // Is white registered?
-    boolean isBlackRegistered = parseBoolean(tokens.nextToken()); // Is black registered?
+    scanner.expect("u"); // u=
+    boolean isWhiteRegistered = scanner.nextBoolean(); // Is white registered?
+    boolean isBlackRegistered = scanner.nextBoolean(); // Is black registered?
 
-    assertToken(tokens, "it"); // it=
-    int whiteTime = Integer.parseInt(tokens.nextToken()); // White's initial time
-    int whiteInc = Integer.parseInt(tokens.nextToken()); // White's increment
+    scanner.expect("it"); // it=
+    int whiteTime = scanner.nextInt(); // White's initial time
+    int whiteInc = scanner.nextInt(); // White's increment
 
-    assertToken(tokens, "i");
-    int blackTime = Integer.parseInt(tokens.nextToken()); // Black's initial time
-    int blackInc = Integer.parseInt(tokens.nextToken()); // Black's increment
+    scanner.expect("i");
+    int blackTime = scanner.nextInt(); // Black's initial time
+    int blackInc = scanner.nextInt(); // Black's increment
 
-    assertToken(tokens, "pt");
-    int partnerGameNumber = Integer.parseInt(tokens.nextToken()); // The partner's game number
+    scanner.expect("pt");
+    int partnerGameNumber = scanner.nextInt(); // The partner's game number
 
-    assertToken(tokens, "rt");
-    String whiteRatingString = tokens.nextToken(); // White's rating + provshow character
-    String blackRatingString = tokens.nextToken(); // Black's rating + provshow character
-    char whiteProvShow = ' ';
-    char blackProvShow = ' ';
-    if (!Character.isDigit(whiteRatingString.charAt(whiteRatingString.length() - 1))) {
-      whiteProvShow = whiteRatingString.charAt(whiteRatingString.length() - 1);
-      whiteRatingString = whiteRatingString.substring(0, whiteRatingString.length() - 1);
-    }
-    if (!Character.isDigit(blackRatingString.charAt(blackRatingString.length() - 1))) {
-      blackProvShow = blackRatingString.charAt(blackRatingString.length() - 1);
-      blackRatingString = blackRatingString.substring(0, blackRatingString.length() - 1);
-    }
-    int whiteRating = Integer.parseInt(whiteRatingString);
-    int blackRating = Integer.parseInt(blackRatingString);
+    scanner.expect("rt");
+    int whiteRating = scanner.nextRating(); // White's rating + provshow character
+    char whiteProvShow = scanner.getProvShow();
+    int blackRating = scanner.nextRating(); // Black's rating + provshow character
+    char blackProvShow = scanner.getProvShow();
 
-    assertToken(tokens, "ts");
-    boolean isWhiteTimesealed = parseBoolean(tokens.nextToken()); // Is white timesealed?
-    boolean isBlackTimesealed = parseBoolean(tokens.nextToken()); // Is black timesealed?
+    scanner.expect("ts");
+    boolean isWhiteTimesealed = scanner.nextBoolean(); // Is white timesealed?
+    boolean isBlackTimesealed = scanner.nextBoolean(); // Is black timesealed?
 
     return new GameInfoStruct(
         gameNumber,
@@ -185,39 +255,21 @@ public class GameInfoStruct extends Struct {
         isBlackTimesealed);
   }
 
-  /**
-   * If the given string is "1", return <code>true</code>. If it's "0", returns <code>false</code>.
-   * Otherwise throws an IllegalArgumentException.
-   */
-  private static boolean parseBoolean(String val) {
-    if (val.equals("1")) return true;
-    else if (val.equals("0")) return false;
-    else throw new IllegalArgumentException("Bad boolean value: " + val);
-  }
 
-  /**
-   * Checks that the next token for the given StringTokenizer is the specified String. Throws an
-   * IllegalArgumentException if it isn't.
-   */
-  private static void assertToken(StringTokenizer tokenizer, String token) {
-    String realToken = tokenizer.nextToken();
-    if (!realToken.equals(token))
-      throw new IllegalArgumentException(
-          "Bad token \"" + realToken + "\", expected \"" + token + "\" instead");
-  }
+
 
   /**
    * Returns the game number.
    */
   public int getGameNumber() {
-    return getIntegerProperty("GameNumber");
+    return gameNumber;
   }
 
   /**
    * Returns <code>true</code> if the game is private, <code>false</code> otherwise.
    */
   public boolean isGamePrivate() {
-    return getBooleanProperty("IsGamePrivate");
+    return isGamePrivate;
   }
 
   /**
@@ -225,70 +277,70 @@ public class GameInfoStruct extends Struct {
    * variant name in case of a wild game.
    */
   public String getGameCategory() {
-    return getStringProperty("GameCategory");
+    return gameCategory;
   }
 
   /**
    * Returns <code>true</code> if the game is rated, <code>false</code> otherwise.
    */
   public boolean isGameRated() {
-    return getBooleanProperty("IsGameRated");
+    return isGameRated;
   }
 
   /**
    * Returns <code>true</code> if the white player is registered, <code>false</code> otherwise.
    */
   public boolean isWhiteRegistered() {
-    return getBooleanProperty("IsWhiteRegistered");
+    return isWhiteRegistered;
   }
 
   /**
    * Returns <code>true</code> if the black player is registered, <code>false</code> otherwise.
    */
   public boolean isBlackRegistered() {
-    return getBooleanProperty("IsBlackRegistered");
+    return isBlackRegistered;
   }
 
   /**
    * Returns the initial amount of time on white's clock, in seconds.
    */
   public int getWhiteTime() {
-    return getIntegerProperty("WhiteTime");
+    return whiteTime;
   }
 
   /**
    * Returns the initial amount of time on black's clock, in seconds.
    */
   public int getBlackTime() {
-    return getIntegerProperty("BlackTime");
+    return blackTime;
   }
 
   /**
    * Returns the amount of time white's clock increases by after each move he makes, in seconds.
    */
   public int getWhiteInc() {
-    return getIntegerProperty("WhiteInc");
+    return whiteInc;
   }
 
   /**
    * Returns the amount of time black's clock increases by after each move he makes, in seconds.
    */
   public int getBlackInc() {
-    return getIntegerProperty("BlackInc");
+    return blackInc;
   }
 
   /**
    * Returns the number of the partner's game, or 0 if none.
    */
   public int getPartnerGameNumber() {
-    return getIntegerProperty("PartnerGameNumber");
+    return partnerGameNumber;
   }
 
   /**
    * Returns white's rating.
    */
   public int getWhiteRating() {
-    return getIntegerProperty("WhiteRating");
+    return whiteRating;
   }
 
   /**
@@ -296,14 +348,14 @@ public class GameInfoStruct extends Struct {
    * and ' ' if neither.
    */
   public char getWhiteProvShow() {
-    return getCharProperty("WhiteProvShow");
+    return whiteProvShow;
   }
 
   /**
    * Returns black's rating.
    */
   public int getBlackRating() {
-    return getIntegerProperty("BlackRating");
+    return blackRating;
   }
 
   /**
@@ -311,20 +363,20 @@ public class GameInfoStruct extends Struct {
    * and ' ' if neither.
    */
   public char getBlackProvShow() {
-    return getCharProperty("BlackProvShow");
+    return blackProvShow;
   }
 
   /**
    * Returns <code>true</code> if white uses timesealing, <code>false</code> otherwise.
    */
   public boolean isWhiteTimesealed() {
-    return getBooleanProperty("IsWhiteTimesealed");
+    return isWhiteTimesealed;
   }
 
   /**
    * Returns <code>true</code> if black uses timesealing, <code>false</code> otherwise.
    */
   public boolean isBlackTimesealed() {
-    return getBooleanProperty("IsBlackTimesealed");
+    return isBlackTimesealed;
   }
 }
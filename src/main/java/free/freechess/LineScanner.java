@@ -0,0 +1,254 @@
+/**
+ * The freechess.org connection library. More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * The freechess.org connection library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * The freechess.org connection library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the
+ * freechess.org connection library; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package free.freechess;
+
+/**
+ * A single-pass scanner over the tokens of a line, used to parse the various machine-readable
+ * lines sent by the server. Tokens are separated by one or more delimiter characters, as with
+ * <code>StringTokenizer</code>, but numbers, booleans and the like are parsed directly from the
+ * line, without creating a string for each token. All methods throw an
+ * <code>IllegalArgumentException</code> if the line is not in the expected format.
+ */
+final class LineScanner {
+
+  /**
+   * The line we're scanning.
+   */
+  private final String line;
+
+  /**
+   * The delimiter characters.
+   */
+  private final String delimiters;
+
+  /**
+   * The index of the first character we haven't scanned yet.
+   */
+  private int pos = 0;
+
+  /**
+   * The index of the first character of the current token.
+   */
+  private int tokenStart;
+
+  /**
+   * The index one past the last character of the current token.
+   */
+  private int tokenEnd;
+
+  /**
+   * The provshow character of the last rating read with {@link #nextRating()}.
+   */
+  private char provShow;
+
+  /**
+   * Creates a new <code>LineScanner</code> for the specified line with the specified delimiter
+   * characters.
+   */
+  public LineScanner(String line, String delimiters) {
+    this.line = line;
+    this.delimiters = delimiters;
+  }
+
+  /**
+   * Advances to the next token.
+   */
+  private void next() {
+    int length = line.length();
+    while ((pos < length) && (delimiters.indexOf(line.charAt(pos)) != -1)) pos++;
+
+    if (pos == length) throw new IllegalArgumentException("Missing token in: " + line);
+
+    tokenStart = pos;
+    while ((pos < length) && (delimiters.indexOf(line.charAt(pos)) == -1)) pos++;
+    tokenEnd = pos;
+  }
+
+  /**
+   * Returns whether the current token (the last one read) is the specified string.
+   */
+  public boolean tokenEquals(String s) {
+    return (tokenEnd - tokenStart == s.length()) && line.startsWith(s, tokenStart);
+  }
+
+  /**
+   * Returns the current token (the last one read).
+   */
+  public String token() {
+    return line.substring(tokenStart, tokenEnd);
+  }
+
+  /**
+   * Advances to the next token and checks that it is the specified string.
+   */
+  public void expect(String token) {
+    next();
+    if (!tokenEquals(token))
+      throw new IllegalArgumentException(
+          "Bad token \"" + token() + "\", expected \"" + token + "\" instead");
+  }
+
+  /**
+   * Returns the next token.
+   */
+  public String nextString() {
+    next();
+    return token();
+  }
+
+  /**
+   * Returns the next token, or <code>null</code> if it is the specified string.
+   */
+  public String nextString(String nullToken) {
+    next();
+    return tokenEquals(nullToken) ? null : token();
+  }
+
+  /**
+   * Returns whether the next token is the specified string.
+   */
+  public boolean nextEquals(String s) {
+    next();
+    return tokenEquals(s);
+  }
+
+  /**
+   * Returns the first character of the next token.
+   */
+  public char nextChar() {
+    next();
+    return line.charAt(tokenStart);
+  }
+
+  /**
+   * Copies the next token into the specified array, starting at the specified index, and returns
+   * the amount of characters copied.
+   */
+  public int nextChars(char[] dest, int destIndex) {
+    next();
+    int count = tokenEnd - tokenStart;
+    if (destIndex + count > dest.length)
+      throw new IllegalArgumentException("Token too long: " + token());
+
+    line.getChars(tokenStart, tokenEnd, dest, destIndex);
+    return count;
+  }
+
+  /**
+   * Parses the next token as a decimal integer.
+   */
+  public int nextInt() {
+    next();
+    return parseInt(tokenStart, tokenEnd, 10);
+  }
+
+  /**
+   * Parses the next token as a hexadecimal integer.
+   */
+  public int nextHexInt() {
+    next();
+    return parseInt(tokenStart, tokenEnd, 16);
+  }
+
+  /**
+   * Parses the next token as a boolean - "1" for <code>true</code> and "0" for
+   * <code>false</code>.
+   */
+  public boolean nextBoolean() {
+    next();
+    if (tokenEnd - tokenStart == 1) {
+      char c = line.charAt(tokenStart);
+      if (c == '1') return true;
+      else if (c == '0') return false;
+    }
+
+    throw new IllegalArgumentException("Bad boolean value: " + token());
+  }
+
+  /**
+   * Parses the next token as a rating, optionally followed by a provshow character, which is then
+   * available via {@link #getProvShow()}.
+   */
+  public int nextRating() {
+    next();
+    int end = tokenEnd;
+    provShow = ' ';
+    if (!Character.isDigit(line.charAt(end - 1))) provShow = line.charAt(--end);
+
+    return parseInt(tokenStart, end, 10);
+  }
+
+  /**
+   * Returns the provshow character of the last rating read with {@link #nextRating()}: 'E' if the
+   * rating is estimated, 'P' if provisional and ' ' if neither.
+   */
+  public char getProvShow() {
+    return provShow;
+  }
+
+  /**
+   * Parses the next token as a time in the "(minutes:seconds.milliseconds)" format and returns it
+   * in milliseconds.
+   */
+  public int nextParenthesizedTime() {
+    next();
+    int index = tokenStart + 1;
+    int end = tokenEnd - 1;
+    int time = 0;
+    int unit = 60 * 1000;
+    for (int i = 0; i < 3; i++) {
+      while ((index < end) && isTimeDelimiter(line.charAt(index))) index++;
+      int start = index;
+      while ((index < end) && !isTimeDelimiter(line.charAt(index))) index++;
+      if (start == index) throw new IllegalArgumentException("Bad time: " + token());
+
+      time += unit * parseInt(start, index, 10);
+      unit = (i == 0) ? 1000 : 1;
+    }
+
+    return time;
+  }
+
+  /**
+   * Returns whether the specified character separates the components of a time.
+   */
+  private static boolean isTimeDelimiter(char c) {
+    return (c == ':') || (c == '.');
+  }
+
+  /**
+   * Parses the specified range of the line as an integer in the specified radix, the same way
+   * <code>Integer.parseInt</code> does.
+   */
+  private int parseInt(int start, int end, int radix) {
+    boolean negative = (start < end) && (line.charAt(start) == '-');
+    int index = negative ? start + 1 : start;
+
+    // Leave anything unusual to Integer.parseInt, which will also throw the proper exception
+    if ((index == end) || (end - index > 7))
+      return Integer.parseInt(line.substring(start, end), radix);
+
+    int value = 0;
+    for (; index < end; index++) {
+      int digit = Character.digit(line.charAt(index), radix);
+      if (digit < 0) return Integer.parseInt(line.substring(start, end), radix);
+      value = value * radix + digit;
+    }
+
+    return negative ? -value : value;
+  }
+}
@@ -16,16 +16,12 @@
  */
 package free.freechess;
 
-import java.util.StringTokenizer;
-
-import free.util.Struct;
-
 /**
  * A structure holding parsed information from a seekinfo line. More information about the format is
  * available in the "help iv_seekinfo" file on the Free Internet Chess Server
  * (http://www.freechess.org).
  */
-public class SeekInfoStruct extends Struct {
+public class SeekInfoStruct {
 
   /**
    * The bit mask for an unregistered player.
@@ -67,6 +63,82 @@ public class SeekInfoStruct extends Struct {
    */
   public static final int WFM = 0x80;
 
+  /**
+   * <code>true</code> if the user can accept the seek, <code>false</code> otherwise.
+   */
+  private final boolean canAcceptSeek;
+
+  /**
+   * The seek index.
+   */
+  private final int index;
+
+  /**
+   * The handle of the seeking player.
+   */
+  private final String name;
+
+  /**
+   * The titles of the player, ORed into an int.
+   */
+  private final int titles;
+
+  /**
+   * The rating of the player.
+   */
+  private final int rating;
+
+  /**
+   * The seeker's rating provshow character, 'E' is estimated, 'P' if provisional and ' ' if
+   * neither.
+   */
+  private final char provShow;
+
+  /**
+   * The time of the sought game, in minutes.
+   */
+  private final int time;
+
+  /**
+   * The increment of the sought game, in seconds.
+   */
+  private final int inc;
+
+  /**
+   * The ratedness of the sought game.
+   */
+  private final boolean isRated;
+
+  /**
+   * The type of the match (either variant or rating type - "suicide", "lightning", "blitz" etc.).
+   */
+  private final String matchType;
+
+  /**
+   * The requested color. 'W' if white, 'B' if black and '?' if doesn't care.
+   */
+  private final char color;
+
+  /**
+   * The minimum rating of the sought opponent.
+   */
+  private final int minRating;
+
+  /**
+   * The maximum rating of the sought opponent.
+   */
+  private final int maxRating;
+
+  /**
+   * <code>true</code> if the acceptance of the seek is automatic, <code>false</code> if manual.
+   */
+  private final boolean isAutomaticAccept;
+
+  /**
+   * <code>true</code> if the you must pass the seeker's formula to accept the offer.
+   */
+  private final boolean isFormulaUsed;
+
   /**
    * Creates a new SeekInfoStruct with the specified arguments.
    *
@@ -97,7 +169,7 @@ public class SeekInfoStruct extends Struct {
       String name,
       int titles,
       int rating,
-      char provshow,
+      char provShow,
       int time,
       int inc,
       boolean isRated,
@@ -124,21 +196,21 @@ public class SeekInfoStruct extends Struct {
         throw new IllegalArgumentException("Bad color character: " + color);
     }
 
-    setBooleanProperty("CanAcceptSeek", canAcceptSeek);
-    setIntegerProperty("Index", index);
-    setStringProperty("Name", name);
-    setIntegerProperty("Titles", titles);
-    setIntegerProperty("Rating", rating);
-    setCharProperty("ProvShow", provshow);
-    setIntegerProperty("Time", time);
-    setIntegerProperty("Increment", inc);
-    setBooleanProperty("IsRated", isRated);
-    setStringProperty("MatchType", matchType);
-    setCharProperty("RequestedColor", color);
-    setIntegerProperty("MinRating", minRating);
-    setIntegerProperty("MaxRating", maxRating);
-    setBooleanProperty("IsAutomaticAccept", isAutomaticAccept);
-    setBooleanProperty("IsFormulaUsed", isFormulaUsed);
+    this.canAcceptSeek = canAcceptSeek;
+    this.index = index;
+    this.name = name;
+    this.titles = titles;
+    this.rating = rating;
+    this.provShow = provShow;
+    this.time = time;
+    this.inc = inc;
+    this.isRated = isRated;
+    this.matchType = matchType;
+    this.color = color;
+    this.minRating = minRating;
+    this.maxRating = maxRating;
+    this.isAutomaticAccept = isAutomaticAccept;
+    this.isFormulaUsed = isFormulaUsed;
   }
 
   /**
@@ -153,56 +225,50 @@ public class SeekInfoStruct extends Struct {
    * information about the format is available in the FICS iv_seekinfo help file.
    */
   public static SeekInfoStruct parseSeekInfoLine(String line) {
-    StringTokenizer tokens = new StringTokenizer(line, " -=");
+    LineScanner scanner = new LineScanner(line, " -=");
 
     boolean canAcceptSeek;
-    String identifier = tokens.nextToken();
-    if (identifier.equals("<s>")) // Skip the <s> identifier
+    if (scanner.nextEquals("<s>")) // Skip the <s> identifier
     canAcceptSeek = true;
-    else if (identifier.equals("<sn>")) canAcceptSeek = false;
+    else if (scanner.tokenEquals("<sn>")) canAcceptSeek = false;
     else throw new IllegalArgumentException("Missing \"<s>\" or \"<sn>\" identifier");
 
-    int index = Integer.parseInt(tokens.nextToken());
+    int index = scanner.nextInt();
 
-    assertToken(tokens, "w"); // w=
-    String name = tokens.nextToken();
+    scanner.expect("w"); // w=
+    String name = scanner.nextString();
 
-    assertToken(tokens, "ti"); // ti=
-    int titles = Integer.parseInt(tokens.nextToken(), 16);
+    scanner.expect("ti"); // ti=
+    int titles = scanner.nextHexInt();
 
-    assertToken(tokens, "rt"); // rt=
-    String ratingString = tokens.nextToken();
-    char provShow = ' ';
-    if (!Character.isDigit(ratingString.charAt(ratingString.length() - 1))) {
-      provShow = ratingString.charAt(ratingString.length() - 1);
-      ratingString = ratingString.substring(0, ratingString.length() - 1);
-    }
-    int rating = Integer.parseInt(ratingString);
+    scanner.expect("rt"); // rt=
+    int rating = scanner.nextRating();
+    char provShow = scanner.getProvShow();
 
-    assertToken(tokens, "t"); // t=
-    int time = Integer.parseInt(tokens.nextToken());
+    scanner.expect("t"); // t=
+    int time = scanner.nextInt();
 
-    assertToken(tokens, "i"); // i=
-    int inc = Integer.parseInt(tokens.nextToken());
+    scanner.expect("i"); // i=
+    int inc = scanner.nextInt();
 
-    assertToken(tokens, "r"); // r=
-    boolean isRated = tokens.nextToken().equals("r");
+    scanner.expect("r"); // r=
+    boolean isRated = scanner.nextEquals("r");
 
-    assertToken(tokens, "tp"); // tp=
-    String matchType = tokens.nextToken();
+    scanner.expect("tp"); // tp=
+    String matchType = scanner.nextString();
 
-    assertToken(tokens, "c"); // c=
-    char requestedColor = tokens.nextToken().charAt(0);
+    scanner.expect("c"); // c=
+    char requestedColor = scanner.nextChar();
 
-    assertToken(tokens, "rr"); // rr=
-    int minRating = Integer.parseInt(tokens.nextToken());
-    int maxRating = Integer.parseInt(tokens.nextToken());
+    scanner.expect("rr"); // rr=
+    int minRating = scanner.nextInt();
+    int maxRating = scanner.nextInt();
 
-    assertToken(tokens, "a"); // a=
-    boolean isAutomaticAccept = tokens.nextToken().equals("t");
+    scanner.expect("a"); // a=
+    boolean isAutomaticAccept = scanner.nextEquals("t");
 
-    assertToken(tokens, "f"); // f=
-    boolean isFormulaUsed = tokens.nextToken().equals("t");
+    scanner.expect("f"); // f=
+    boolean isFormulaUsed = scanner.nextEquals("t");
 
     return new SeekInfoStruct(
         canAcceptSeek,
@@ -222,37 +288,28 @@ public class SeekInfoStruct extends Struct {
         isFormulaUsed);
   }
 
-  /**
-   * Checks that the next token for the given StringTokenizer is the specified String. Throws an
-   * IllegalArgumentException if it isn't.
-   */
-  private static void assertToken(StringTokenizer tokenizer, String token) {
-    String realToken = tokenizer.nextToken();
-    if (!realToken.equals(token))
-      throw new IllegalArgumentException(
-          "Bad token \"" + realToken + "\", expected \"" + token + "\" instead");
-  }
+
 
   /**
    * Returns <code>true</code> if the user account can accept the seek, returns <code>false</code>
    * otherwise.
    */
   public boolean canAcceptSeek() {
-    return getBooleanProperty("CanAcceptSeek");
+    return canAcceptSeek;
   }
 
   /**
    * Returns the index of the seek.
    */
   public int getSeekIndex() {
-    return getIntegerProperty("Index");
+    return index;
   }
 
   /**
    * Returns the handle of the seeking player.
    */
   public String getSeekerHandle() {
-    return getStringProperty("Name");
+    return name;
   }
 
   /**
@@ -260,14 +317,14 @@ public class SeekInfoStruct extends Struct {
    * for example, use <code>(getSeekerTitles() & SeekInfoStruct.GM) != 0</code>.
    */
   public int getSeekerTitles() {
-    return getIntegerProperty("Titles");
+    return titles;
   }
 
   /**
    * Returns the seeker's rating.
    */
   public int getSeekerRating() {
-    return getIntegerProperty("Rating");
+    return rating;
   }
 
   /**
@@ -275,28 +332,28 @@ public class SeekInfoStruct extends Struct {
    * provisional, and ' ' if neither.
    */
   public char getSeekerProvShow() {
-    return getCharProperty("ProvShow");
+    return provShow;
   }
 
   /**
    * Returns the initial time of the sought match, in minutes.
    */
   public int getMatchTime() {
-    return getIntegerProperty("Time");
+    return time;
   }
 
   /**
    * Returns the increment of the sought match, in seconds.
    */
   public int getMatchIncrement() {
-    return getIntegerProperty("Increment");
+    return inc;
   }
 
   /**
    * Returns <code>true</code> if the sought match is rated, <code>false</code> otherwise.
    */
   public boolean isMatchRated() {
-    return getBooleanProperty("IsRated");
+    return isRated;
   }
 
   /**
@@ -304,7 +361,7 @@ public class SeekInfoStruct extends Struct {
    * variant is chess. For example - "suicide", "lightning", "blitz" etc.
    */
   public String getMatchType() {
-    return getStringProperty("MatchType");
+    return matchType;
   }
 
   /**
@@ -312,21 +369,21 @@ public class SeekInfoStruct extends Struct {
    * and '?' if the seeker doesn't care.
    */
   public char getSeekerColor() {
-    return getCharProperty("RequestedColor");
+    return color;
   }
 
   /**
    * Returns the minimum rating of the desired opponent.
    */
   public int getOpponentMinRating() {
-    return getIntegerProperty("MinRating");
+    return minRating;
   }
 
   /**
    * Returns the maximum rating of the desired opponent.
    */
   public int getOpponentMaxRating() {
-    return getIntegerProperty("MaxRating");
+    return maxRating;
   }
 
   /**
@@ -334,7 +391,7 @@ public class SeekInfoStruct extends Struct {
    * the seeker must confirm it manually.
    */
   public boolean isAutomaticAccept() {
-    return getBooleanProperty("IsAutomaticAccept");
+    return isAutomaticAccept;
   }
 
   /**
@@ -342,6 +399,6 @@ public class SeekInfoStruct extends Struct {
    * seeker. Returns <code>false</code> otherwise.
    */
   public boolean isFormulaUsed() {
-    return getBooleanProperty("IsFormulaUsed");
+    return isFormulaUsed;
   }
 }
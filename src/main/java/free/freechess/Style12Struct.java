@@ -16,17 +16,13 @@
  */
 package free.freechess;
 
-import java.util.StringTokenizer;
-
-import free.util.Struct;
-
 /**
  * A structure holding parsed information from a style12 line. See <A
  * HREF="http://www.freechess.org/WWWhelp/style12.html"
  * >http://www.freechess.org/WWWhelp/style12.html</A> or the "help style12" helpfile on
  * freechess.org for information about the format.
  */
-public class Style12Struct extends Struct {
+public class Style12Struct {
 
   /**
    * The constant for the user's game.
@@ -43,6 +39,147 @@ public class Style12Struct extends Struct {
    */
   public static final int ISOLATED_BOARD = 3;
 
+  /**
+   * The current board, in lexigraphic format.
+   */
+  private final String boardLexigraphic;
+
+  /**
+   * The player to move, either "B" or "W".
+   */
+  private final String currentPlayer;
+
+  /**
+   * The file of the double pawn push on the last move, or -1 if the last move wasn't a double pawn
+   * push.
+   */
+  private final int doublePawnPushFile;
+
+  /**
+   * Whether white can castle kingside.
+   */
+  private final boolean canWhiteCastleKingside;
+
+  /**
+   * Whether white can castle queenside.
+   */
+  private final boolean canWhiteCastleQueenside;
+
+  /**
+   * Whether black can castle kingside.
+   */
+  private final boolean canBlackCastleKingside;
+
+  /**
+   * Whether black can castle queenside.
+   */
+  private final boolean canBlackCastleQueenside;
+
+  /**
+   * The number of half moves made since the last irreversible move (0 if the last move is
+   * irreversible).
+   */
+  private final int pliesSinceIrreversible;
+
+  /**
+   * The game number.
+   */
+  private final int gameNumber;
+
+  /**
+   * The white player's nickname.
+   */
+  private final String whiteName;
+
+  /**
+   * The black player's nickname.
+   */
+  private final String blackName;
+
+  /**
+   * The code for the type of the game. Possible values are <code>MY_GAME</code>,
+   * <code>OBSERVED_GAME</code> and <code>ISOLATED_BOARD</code>.
+   */
+  private final int gameType;
+
+  /**
+   * <code>true</code> if the game is played, <code>false</code> if examined.
+   */
+  private final boolean isPlayedGame;
+
+  /**
+   * Is it my turn or the opponent's? Only relevant if <code>gameType</code> is <code>MY_GAME</code>
+   * and it's a played game. <code>false</code> if it's an examined game.
+   */
+  private final boolean isMyTurn;
+
+  /**
+   * Initial time (in seconds) of the match.
+   */
+  private final int initTime;
+
+  /**
+   * Increment (in seconds) of the match.
+   */
+  private final int increment;
+
+  /**
+   * White's material strength.
+   */
+  private final int whiteMaterialStrength;
+
+  /**
+   * Black's material strength.
+   */
+  private final int blackMaterialStrength;
+
+  /**
+   * White's remaining time, in milliseconds.
+   */
+  private final int whiteTime;
+
+  /**
+   * Black's remaining time, in milliseconds.
+   */
+  private final int blackTime;
+
+  /**
+   * The number of the move about to be made (standard chess numbering -- White's and Black's first
+   * moves are both 1, etc.)
+   */
+  private final int nextMoveNumber;
+
+  /**
+   * A verbose representation of the last move, <code>null</code> if none.
+   */
+  private final String moveVerbose;
+
+  /**
+   * A SAN (Standard Algebraic Notation) representation of the last move, <code>null</code> if none.
+   */
+  private final String moveSAN;
+
+  /**
+   * The amount of time taken to make the last move, in milliseconds.
+   */
+  private final int moveTime;
+
+  /**
+   * <code>true</code> if the board should be flipped (black at bottom), <code>false</code>
+   * otherwise.
+   */
+  private final boolean isBoardFlipped;
+
+  /**
+   * <code>true</code> if the clock of the player to move is running.
+   */
+  private final boolean isClockRunning;
+
+  /**
+   * The lag incurred when making the move, in milliseconds.
+   */
+  private final int lag;
+
   /**
    * Creates a new Style12Struct with the specified arguments. You would usually want to use the
    * <code>parseStyle12Line</code> method and not this constructor to obtain Style12Struct objects.
@@ -74,7 +211,7 @@ public class Style12Struct extends Struct {
    * @param nextMoveNumber The number of the move about to be made (standard chess numbering --
    * White's and Black's first moves are both 1, etc.)
    * @param moveVerbose A verbose representation of the last move, <code>null</code> if none.
-   * @param movePretty A SAN (Standard Algebraic Notation) representation of the last move,
+   * @param moveSAN A SAN (Standard Algebraic Notation) representation of the last move,
    * <code>null</code> if none.
    * @param moveTime The amount of time taken to make the last move, in milliseconds.
    * @param isBoardFlipped <code>true</code> if the board should be flipped (black at bottom),
@@ -168,68 +305,74 @@ public class Style12Struct extends Struct {
       throw new IllegalArgumentException(
           "Lag may not be negative (really, it's against the laws of physics)");
 
-    setStringProperty("BoardLexigraphic", boardLexigraphic);
-    setStringProperty("CurrentPlayer", currentPlayer);
-    setIntegerProperty("DoublePawnPushFile", doublePawnPushFile);
-    setBooleanProperty("CanWhiteCastleKingside", canWhiteCastleKingside);
-    setBooleanProperty("CanWhiteCastleQueenside", canWhiteCastleQueenside);
-    setBooleanProperty("CanBlackCastleKingside", canBlackCastleKingside);
-    setBooleanProperty("CanBlackCastleQueenside", canBlackCastleQueenside);
-    setIntegerProperty("PliesSinceIrreversible", pliesSinceIrreversible);
-    setIntegerProperty("GameNumber", gameNumber);
-    setStringProperty("WhiteName", whiteName);
-    setStringProperty("BlackName", blackName);
-    setIntegerProperty("GameType", gameType);
-    setBooleanProperty("IsPlayedGame", isPlayedGame);
-    setBooleanProperty("IsMyTurn", isMyTurn);
-    setIntegerProperty("InitTime", initTime);
-    setIntegerProperty("Increment", increment);
-    setIntegerProperty("WhiteMaterialStrength", whiteMaterialStrength);
-    setIntegerProperty("BlackMaterialStrength", blackMaterialStrength);
-    setIntegerProperty("WhiteTime", whiteTime);
-    setIntegerProperty("BlackTime", blackTime);
-    setIntegerProperty("NextMoveNumber", nextMoveNumber);
-    setStringProperty("MoveVerbose", moveVerbose);
-    setStringProperty("MoveSAN", moveSAN);
-    setIntegerProperty("MoveTime", moveTime);
-    setBooleanProperty("IsBoardFlipped", isBoardFlipped);
-    setBooleanProperty("IsClockRunning", isClockRunning);
-    setIntegerProperty("Lag", lag);
+    this.boardLexigraphic = boardLexigraphic;
+    this.currentPlayer = currentPlayer;
+    this.doublePawnPushFile = doublePawnPushFile;
+    this.canWhiteCastleKingside = canWhiteCastleKingside;
+    this.canWhiteCastleQueenside = canWhiteCastleQueenside;
+    this.canBlackCastleKingside = canBlackCastleKingside;
+    this.canBlackCastleQueenside = canBlackCastleQueenside;
+    this.pliesSinceIrreversible = pliesSinceIrreversible;
+    this.gameNumber = gameNumber;
+    this.whiteName = whiteName;
+    this.blackName = blackName;
+    this.gameType = gameType;
+    this.isPlayedGame = isPlayedGame;
+    this.isMyTurn = isMyTurn;
+    this.initTime = initTime;
+    this.increment = increment;
+    this.whiteMaterialStrength = whiteMaterialStrength;
+    this.blackMaterialStrength = blackMaterialStrength;
+    this.whiteTime = whiteTime;
+    this.blackTime = blackTime;
+    this.nextMoveNumber = nextMoveNumber;
+    this.moveVerbose = moveVerbose;
+    this.moveSAN = moveSAN;
+    this.moveTime = moveTime;
+    this.isBoardFlipped = isBoardFlipped;
+    this.isClockRunning = isClockRunning;
+    this.lag = lag;
   }
 
   /**
    * Parses a style12 line and returns a corresponding Style12Struct object.
    */
   public static Style12Struct parseStyle12Line(String line) {
-    StringTokenizer tokens = new StringTokenizer(line, " ");
+    LineScanner scanner = new LineScanner(line, " ");
 
-    if (!tokens.nextToken().equals("<12>")) // Skip the "<12>" identifier
+    if (!scanner.nextEquals("<12>")) // Skip the "<12>" identifier
     throw new IllegalArgumentException("Missing \"<12>\" identifier");
 
-    StringBuffer posBuf = new StringBuffer(64);
-    for (int i = 0; i < 8; i++) posBuf.append(tokens.nextToken()); // The board
-    String positionLexigraphic = posBuf.toString();
+    char[] board = new char[64];
+    int boardLength = 0;
+    for (int i = 0; i < 8; i++) boardLength += scanner.nextChars(board, boardLength); // The board
+    if (boardLength != board.length)
+      throw new IllegalArgumentException(
+          "Board string length (" + boardLength + ") must be 64 characters");
+    String positionLexigraphic = new String(board);
 
-    String currentPlayer = tokens.nextToken(); // The color string, either "B" or "W"
+    // The color string, either "B" or "W"
+    String currentPlayer;
+    if (scanner.nextEquals("W")) currentPlayer = "W";
+    else if (scanner.tokenEquals("B")) currentPlayer = "B";
+    else currentPlayer = scanner.token(); // Let the constructor complain
 
-    int doublePawnPushFile = Integer.parseInt(tokens.nextToken()); // The double pawn push file
+    int doublePawnPushFile = scanner.nextInt(); // The double pawn push file
 
-    boolean canWhiteCastleKingside = parseBoolean(tokens.nextToken()); // Can white castle kingside
-    boolean canWhiteCastleQueenside =
-        parseBoolean(tokens.nextToken()); // Can white castle queenside
-    boolean canBlackCastleKingside = parseBoolean(tokens.nextToken()); // Can black castle kingside
-    boolean canBlackCastleQueenside =
-        parseBoolean(tokens.nextToken()); // Can black castle queenside
+    boolean canWhiteCastleKingside = scanner.nextBoolean(); // Can white castle kingside
+    boolean canWhiteCastleQueenside = scanner.nextBoolean(); // Can white castle queenside
+    boolean canBlackCastleKingside = scanner.nextBoolean(); // Can black castle kingside
+    boolean canBlackCastleQueenside = scanner.nextBoolean(); // Can black castle queenside
 
-    int pliesSinceIrreversible =
-        Integer.parseInt(tokens.nextToken()); // Number of plies since an irreversible move
+    // Number of plies since an irreversible move
+    int pliesSinceIrreversible = scanner.nextInt();
 
-    int gameNumber = Integer.parseInt(tokens.nextToken()); // The game number
+    int gameNumber = scanner.nextInt(); // The game number
 
-    String whiteName = tokens.nextToken(); // White's name
-    String blackName = tokens.nextToken(); // Black's name
+    String whiteName = scanner.nextString(); // White's name
+    String blackName = scanner.nextString(); // Black's name
 
-    int myRelation = Integer.parseInt(tokens.nextToken()); // My relation to the game
+    int myRelation = scanner.nextInt(); // My relation to the game
     int gameType;
     boolean isPlayedGame;
     switch (myRelation) {
@@ -260,37 +403,28 @@ public class Style12Struct extends Struct {
 
     boolean isMyTurn = myRelation > 0;
 
-    int initTime = 60 * Integer.parseInt(tokens.nextToken()); // Initial time
-    int increment = Integer.parseInt(tokens.nextToken()); // Increment
+    int initTime = 60 * scanner.nextInt(); // Initial time
+    int increment = scanner.nextInt(); // Increment
 
-    int whiteMaterialStrength = Integer.parseInt(tokens.nextToken()); // White's material strength
-    int blackMaterialStrength = Integer.parseInt(tokens.nextToken()); // Black's material strength
+    int whiteMaterialStrength = scanner.nextInt(); // White's material strength
+    int blackMaterialStrength = scanner.nextInt(); // Black's material strength
 
-    int whiteTime = Integer.parseInt(tokens.nextToken()); // White's remaining time
-    int blackTime = Integer.parseInt(tokens.nextToken()); // Black's remaining time
+    int whiteTime = scanner.nextInt(); // White's remaining time
+    int blackTime = scanner.nextInt(); // Black's remaining time
 
-    int nextMoveNumber = Integer.parseInt(tokens.nextToken()); // The number of the next move
+    int nextMoveNumber = scanner.nextInt(); // The number of the next move
 
-    String moveVerbose = tokens.nextToken(); // The move in verbose notation
-    if (moveVerbose.equals("none")) moveVerbose = null;
+    String moveVerbose = scanner.nextString("none"); // The move in verbose notation
 
-    String moveTimeString = tokens.nextToken(); // The amount of time taken for the last move
-    moveTimeString = moveTimeString.substring(1, moveTimeString.length() - 1);
-    StringTokenizer timeTokens = new StringTokenizer(moveTimeString, ":.");
-    int minutes = Integer.parseInt(timeTokens.nextToken());
-    int seconds = Integer.parseInt(timeTokens.nextToken());
-    int milliseconds = Integer.parseInt(timeTokens.nextToken());
-    int moveTime = 60 * 1000 * minutes + 1000 * seconds + milliseconds;
+    int moveTime = scanner.nextParenthesizedTime(); // The amount of time taken for the last move
 
-    String moveSAN = tokens.nextToken(); // The move in SAN notation
-    if (moveSAN.equals("none")) moveSAN = null;
+    String moveSAN = scanner.nextString("none"); // The move in SAN notation
 
-    boolean isBoardFlipped = parseBoolean(tokens.nextToken()); // Is the board flipped?
+    boolean isBoardFlipped = scanner.nextBoolean(); // Is the board flipped?
 
-    boolean isClockRunning =
-        parseBoolean(tokens.nextToken()); // Is the clock of the player to move running?
+    boolean isClockRunning = scanner.nextBoolean(); // Is the clock of the player to move running?
 
-    int lag = Integer.parseInt(tokens.nextToken()); // The lag, in milliseconds.
+    int lag = scanner.nextInt(); // The lag, in milliseconds.
 
     return new Style12Struct(
         positionLexigraphic,
@@ -322,21 +456,12 @@ public class Style12Struct extends Struct {
         lag);
   }
 
-  /**
-   * If the given string is "1", return <code>true</code>. If it's "0", returns <code>false</code>.
-   * Otherwise throws an IllegalArgumentException.
-   */
-  private static boolean parseBoolean(String val) {
-    if (val.equals("1")) return true;
-    else if (val.equals("0")) return false;
-    else throw new IllegalArgumentException("Bad boolean value: " + val);
-  }
 
   /**
    * Returns the current board in lexigraphic format.
    */
   public String getBoardLexigraphic() {
-    return getStringProperty("BoardLexigraphic");
+    return boardLexigraphic;
   }
 
   /**
@@ -406,7 +531,7 @@ public class Style12Struct extends Struct {
    * Returns a string representing the player whose turn it currently is, either "W" or "B".
    */
   public String getCurrentPlayer() {
-    return getStringProperty("CurrentPlayer");
+    return currentPlayer;
   }
 
   /**
@@ -414,7 +539,7 @@ public class Style12Struct extends Struct {
    * double pawn push.
    */
   public int getDoublePawnPushFile() {
-    return getIntegerProperty("DoublePawnPushFile");
+    return doublePawnPushFile;
   }
 
   /**
@@ -422,7 +547,7 @@ public class Style12Struct extends Struct {
    * otherwise.
    */
   public boolean canWhiteCastleKingside() {
-    return getBooleanProperty("CanWhiteCastleKingside");
+    return canWhiteCastleKingside;
   }
 
   /**
@@ -430,7 +555,7 @@ public class Style12Struct extends Struct {
    * otherwise.
    */
   public boolean canWhiteCastleQueenside() {
-    return getBooleanProperty("CanWhiteCastleQueenside");
+    return canWhiteCastleQueenside;
   }
 
   /**
@@ -438,7 +563,7 @@ public class Style12Struct extends Struct {
    * otherwise.
    */
   public boolean canBlackCastleKingside() {
-    return getBooleanProperty("CanBlackCastleKingside");
+    return canBlackCastleKingside;
   }
 
   /**
@@ -446,7 +571,7 @@ public class Style12Struct extends Struct {
    * otherwise.
    */
   public boolean canBlackCastleQueenside() {
-    return getBooleanProperty("CanBlackCastleQueenside");
+    return canBlackCastleQueenside;
   }
 
   /**
@@ -454,28 +579,28 @@ public class Style12Struct extends Struct {
    * was irreversible.
    */
   public int getPliesSinceIrreversible() {
-    return getIntegerProperty("PliesSinceIrreversible");
+    return pliesSinceIrreversible;
   }
 
   /**
    * Returns the game number.
    */
   public int getGameNumber() {
-    return getIntegerProperty("GameNumber");
+    return gameNumber;
   }
 
   /**
    * Returns the white player's nickname.
    */
   public String getWhiteName() {
-    return getStringProperty("WhiteName");
+    return whiteName;
   }
 
   /**
    * Returns the black player's nickname.
    */
   public String getBlackName() {
-    return getStringProperty("BlackName");
+    return blackName;
   }
 
   /**
@@ -483,14 +608,14 @@ public class Style12Struct extends Struct {
    * <code>ISOLATED_BOARD</code>.
    */
   public int getGameType() {
-    return getIntegerProperty("GameType");
+    return gameType;
   }
 
   /**
    * Returns <code>true</code> if the game is a played game, <code>false</code> if examined.
    */
   public boolean isPlayedGame() {
-    return getBooleanProperty("IsPlayedGame");
+    return isPlayedGame;
   }
 
   /**
@@ -505,49 +630,49 @@ public class Style12Struct extends Struct {
       throw new IllegalStateException(
           "Either the game type is not MY_GAME or it's not a played game.");
 
-    return getBooleanProperty("IsMyTurn");
+    return isMyTurn;
   }
 
   /**
    * Returns the initial time in the match, in seconds.
    */
   public int getInitialTime() {
-    return getIntegerProperty("InitTime");
+    return initTime;
   }
 
   /**
    * Returns the increment in the time, in seconds.
    */
   public int getIncrement() {
-    return getIntegerProperty("Increment");
+    return increment;
   }
 
   /**
    * Returns white's material strength.
    */
   public int getWhiteMaterialStrength() {
-    return getIntegerProperty("WhiteMaterialStrength");
+    return whiteMaterialStrength;
   }
 
   /**
    * Returns black's material strength.
    */
   public int getBlackMaterialStrength() {
-    return getIntegerProperty("BlackMaterialStrength");
+    return blackMaterialStrength;
   }
 
   /**
    * Returns white's remaining time, in seconds.
    */
   public int getWhiteTime() {
-    return getIntegerProperty("WhiteTime");
+    return whiteTime;
   }
 
   /**
    * Returns black's remaining time, in seconds.
    */
   public int getBlackTime() {
-    return getIntegerProperty("BlackTime");
+    return blackTime;
   }
 
   /**
@@ -555,7 +680,7 @@ public class Style12Struct extends Struct {
    * moves are both 1, etc.)
    */
   public int getNextMoveNumber() {
-    return getIntegerProperty("NextMoveNumber");
+    return nextMoveNumber;
   }
 
   /**
@@ -571,7 +696,7 @@ public class Style12Struct extends Struct {
    * either "o-o", "o-o-o" or something like "Q/c7-c5" or for promotions "P/g7-h8=Q".
    */
   public String getMoveVerbose() {
-    return getStringProperty("MoveVerbose");
+    return moveVerbose;
   }
 
   /**
@@ -579,28 +704,28 @@ public class Style12Struct extends Struct {
    * none.
    */
   public String getMoveSAN() {
-    return getStringProperty("MoveSAN");
+    return moveSAN;
   }
 
   /**
    * Returns the amount of time it took to make the last move, in seconds.
    */
   public int getMoveTime() {
-    return getIntegerProperty("MoveTime");
+    return moveTime;
   }
 
   /**
    * Returns <code>true</code> if the board is flipped (black at bottom), false otherwise.
    */
   public boolean isBoardFlipped() {
-    return getBooleanProperty("IsBoardFlipped");
+    return isBoardFlipped;
   }
 
   /**
    * Returns <code>true</code> if the clock of the player to move is running.
    */
   public boolean isClockRunning() {
-    return getBooleanProperty("IsClockRunning");
+    return isClockRunning;
   }
 
   /**
@@ -608,6 +733,6 @@ public class Style12Struct extends Struct {
    * sent.
    */
   public int getLag() {
-    return getIntegerProperty("Lag");
+    return lag;
   }
 }
@@ -0,0 +1,208 @@
+/**
+ * The freechess.org connection library. More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002, 2003 Alexander Maryanovsky. All rights reserved.
+ *
+ * The freechess.org connection library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * The freechess.org connection library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the
+ * freechess.org connection library; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package free.freechess.timeseal;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import free.util.IOExecutor;
+
+/**
+ * An <code>InputStream</code> which filters the timeseal pings out of the data sent by the server,
+ * replying to each one. The server sends a ping periodically to check that the client is still
+ * running timeseal; a ping may be split across several reads, in which case the bytes of the
+ * partial ping are held back until it's known whether they really are a ping.
+ * <P>
+ * The replies are written on the {@link IOExecutor}, one at a time, rather than by the thread
+ * reading from us. That thread is typically the one shared by all connections, and writing may
+ * block - for example, while the writer of commands holds the output stream.
+ */
+class TimesealInputStream extends FilterInputStream {
+
+  /**
+   * The ping sent by the server.
+   */
+  private static final byte[] PING = {'[', 'G', ']', 0};
+
+  /**
+   * The reply we send to a ping, as a line.
+   */
+  private static final byte[] PING_REPLY = {2, '9', '\n'};
+
+  /**
+   * The stream we write ping replies to.
+   */
+  private final OutputStream replyOut;
+
+  /**
+   * Writes the ping replies, one at a time.
+   */
+  private final IOExecutor.Serial replier = new IOExecutor.Serial("TimesealPingReply");
+
+  /**
+   * Writes a single ping reply. If writing fails, closes the underlying stream, so that the
+   * failure is noticed by the thread reading from us.
+   */
+  private final Runnable replyTask =
+      new Runnable() {
+        @Override
+        public void run() {
+          try {
+            replyOut.write(PING_REPLY, 0, PING_REPLY.length);
+            replyOut.flush();
+          } catch (IOException e) {
+            try {
+              in.close();
+            } catch (IOException ex) {
+            }
+          }
+        }
+      };
+
+  /**
+   * The buffer the data read from the underlying stream is filtered in.
+   */
+  private final byte[] buf = new byte[8192];
+
+  /**
+   * The index of the first byte in the buffer which hasn't been read yet.
+   */
+  private int pos = 0;
+
+  /**
+   * The index one past the last filtered byte in the buffer.
+   */
+  private int limit = 0;
+
+  /**
+   * The amount of bytes at the end of the data read so far which are the beginning of a ping. They
+   * have been held back and are not in the buffer.
+   */
+  private int heldCount = 0;
+
+  /**
+   * Creates a new <code>TimesealInputStream</code> which reads from the specified
+   * <code>InputStream</code> and writes ping replies to the specified <code>OutputStream</code>.
+   */
+  public TimesealInputStream(InputStream in, OutputStream replyOut) {
+    super(in);
+
+    this.replyOut = replyOut;
+  }
+
+  /**
+   * Reads and filters more data into the buffer, blocking until at least one byte survives the
+   * filtering. Returns <code>false</code> if the end of the stream has been reached.
+   */
+  private boolean fill() throws IOException {
+    byte[] buf = this.buf;
+    do {
+      // Put the held back bytes in front of the new data and filter them together with it
+      System.arraycopy(PING, 0, buf, 0, heldCount);
+      int count = in.read(buf, heldCount, buf.length - heldCount);
+      if (count < 0) {
+        // EOF in the middle of a ping - it wasn't one after all
+        pos = 0;
+        limit = heldCount;
+        heldCount = 0;
+        return limit > 0;
+      }
+
+      int length = heldCount + count;
+      int matched = 0;
+      int j = 0;
+      for (int i = 0; i < length; i++) {
+        byte b = buf[i];
+        if (b == PING[matched]) {
+          if (++matched == PING.length) {
+            matched = 0;
+            replier.execute(replyTask);
+          }
+        } else {
+          // The matched bytes, which precede b in the buffer, weren't a ping
+          for (int k = 0; k < matched; k++) buf[j++] = PING[k];
+          if (b == PING[0]) matched = 1;
+          else {
+            matched = 0;
+            buf[j++] = b;
+          }
+        }
+      }
+
+      pos = 0;
+      limit = j;
+      heldCount = matched;
+    } while (limit == 0);
+
+    return true;
+  }
+
+  /**
+   * Reads a single byte.
+   */
+  @Override
+  public int read() throws IOException {
+    if ((pos == limit) && !fill()) return -1;
+
+    return buf[pos++] & 0xff;
+  }
+
+  /**
+   * Reads bytes, blocking until at least one is available.
+   */
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) return 0;
+    if ((pos == limit) && !fill()) return -1;
+
+    int count = Math.min(len, limit - pos);
+    System.arraycopy(buf, pos, b, off, count);
+    pos += count;
+    return count;
+  }
+
+  /**
+   * Skips bytes from the buffer, filling it if it's empty.
+   */
+  @Override
+  public long skip(long n) throws IOException {
+    if (n <= 0) return 0;
+    if ((pos == limit) && !fill()) return 0;
+
+    int count = (int) Math.min(n, limit - pos);
+    pos += count;
+    return count;
+  }
+
+  /**
+   * Returns the amount of filtered bytes which can be read without blocking.
+   */
+  @Override
+  public int available() throws IOException {
+    return limit - pos;
+  }
+
+  /**
+   * Returns <code>false</code>, as marking is not supported.
+   */
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+}
@@ -0,0 +1,238 @@
+/**
+ * The freechess.org connection library. More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002, 2003 Alexander Maryanovsky. All rights reserved.
+ *
+ * The freechess.org connection library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * The freechess.org connection library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the
+ * freechess.org connection library; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package free.freechess.timeseal;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An <code>OutputStream</code> which encodes each line written to it according to the timeseal
+ * protocol: the line is stamped with the time it was written at, padded, scrambled and encrypted
+ * with the timeseal key. The timestamps are the amount of milliseconds since the stream was
+ * created, taken from <code>System.nanoTime()</code>, so they are not affected by changes to the
+ * system clock. Lines are encoded into reusable buffers, and everything encoded by a single
+ * <code>write</code> is passed on to the underlying stream in a single write.
+ */
+class TimesealOutputStream extends FilterOutputStream {
+
+  /**
+   * The key lines are encrypted with.
+   */
+  private static final byte[] KEY = toBytes("Timestamp (FICS) v1.0 - programmed by Henrik Gram.");
+
+  /**
+   * The byte separating the line from its timestamp.
+   */
+  static final byte TIMESTAMP_START = 0x18;
+
+  /**
+   * The byte terminating the timestamp.
+   */
+  static final byte TIMESTAMP_END = 0x19;
+
+  /**
+   * The byte terminating an encoded line, before the newline.
+   */
+  static final byte LINE_END = (byte) 0x80;
+
+  /**
+   * The size of the blocks lines are padded to and scrambled in.
+   */
+  static final int BLOCK_SIZE = 12;
+
+  /**
+   * The time, in nanoseconds, when the stream was created; the timestamps are relative to it.
+   */
+  private final long startTime;
+
+  /**
+   * The line being accumulated, followed by room for its timestamp and padding.
+   */
+  private byte[] line = new byte[256];
+
+  /**
+   * The length of the line accumulated so far.
+   */
+  private int lineLength = 0;
+
+  /**
+   * The encoded lines waiting to be written to the underlying stream.
+   */
+  private byte[] encoded = new byte[512];
+
+  /**
+   * The amount of bytes in <code>encoded</code>.
+   */
+  private int encodedLength = 0;
+
+  /**
+   * Creates a new <code>TimesealOutputStream</code> which writes to the specified
+   * <code>OutputStream</code>.
+   */
+  public TimesealOutputStream(OutputStream out) {
+    super(out);
+
+    this.startTime = System.nanoTime();
+  }
+
+  /**
+   * Returns the bytes of the specified ASCII string.
+   */
+  private static byte[] toBytes(String s) {
+    byte[] bytes = new byte[s.length()];
+    for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) s.charAt(i);
+
+    return bytes;
+  }
+
+  /**
+   * Writes a single byte. A newline causes the line to be encoded and written.
+   */
+  @Override
+  public synchronized void write(int b) throws IOException {
+    append((byte) b);
+    writeEncoded();
+  }
+
+  /**
+   * Writes the specified bytes. All the lines completed by them are written to the underlying
+   * stream in a single write.
+   */
+  @Override
+  public synchronized void write(byte[] b, int off, int len) throws IOException {
+    for (int i = 0; i < len; i++) append(b[off + i]);
+    writeEncoded();
+  }
+
+  /**
+   * Flushes the underlying stream. Note that an incomplete line is never written.
+   */
+  @Override
+  public synchronized void flush() throws IOException {
+    writeEncoded();
+    out.flush();
+  }
+
+  /**
+   * Appends the specified byte to the current line, encoding the line if it's a newline.
+   */
+  private void append(byte b) {
+    if (b == '\n') {
+      encodeLine(System.nanoTime());
+      lineLength = 0;
+    } else {
+      if (lineLength == line.length) line = grow(line, lineLength);
+      line[lineLength++] = b;
+    }
+  }
+
+  /**
+   * Encodes the current line, stamped with the specified time, into <code>encoded</code>.
+   */
+  private void encodeLine(long time) {
+    // The timestamp (at most 19 digits), its delimiters and the padding
+    if (line.length < lineLength + 21 + BLOCK_SIZE) line = grow(line, lineLength);
+
+    byte[] line = this.line;
+    int length = lineLength;
+    line[length++] = TIMESTAMP_START;
+    length = appendDecimal(line, length, (time - startTime) / 1000000L);
+    line[length++] = TIMESTAMP_END;
+    while (length % BLOCK_SIZE != 0) line[length++] = '1';
+
+    for (int i = 0; i < length; i += BLOCK_SIZE) {
+      swap(line, i, i + 11);
+      swap(line, i + 2, i + 9);
+      swap(line, i + 4, i + 7);
+    }
+
+    while (encoded.length < encodedLength + length + 2) encoded = grow(encoded, encodedLength);
+
+    byte[] encoded = this.encoded;
+    int offset = encodedLength;
+    for (int i = 0; i < length; i++)
+      encoded[offset + i] = (byte) (((line[i] | 0x80) ^ KEY[i % KEY.length]) - 32);
+    encoded[offset + length] = LINE_END;
+    encoded[offset + length + 1] = '\n';
+    encodedLength += length + 2;
+  }
+
+  /**
+   * Writes the encoded lines, if any, to the underlying stream.
+   */
+  private void writeEncoded() throws IOException {
+    if (encodedLength == 0) return;
+
+    out.write(encoded, 0, encodedLength);
+    encodedLength = 0;
+  }
+
+  /**
+   * Writes the decimal representation of the specified non-negative number into the specified
+   * array at the specified index and returns the index following it.
+   */
+  private static int appendDecimal(byte[] buf, int index, long value) {
+    int digitCount = 1;
+    for (long n = value / 10; n != 0; n /= 10) digitCount++;
+
+    for (int i = index + digitCount - 1; i >= index; i--) {
+      buf[i] = (byte) ('0' + (value % 10));
+      value /= 10;
+    }
+
+    return index + digitCount;
+  }
+
+  /**
+   * Swaps the bytes at the specified indices of the specified array.
+   */
+  private static void swap(byte[] buf, int i, int j) {
+    byte tmp = buf[i];
+    buf[i] = buf[j];
+    buf[j] = tmp;
+  }
+
+  /**
+   * Returns an array twice as large as the specified one, with the same first <code>length</code>
+   * bytes.
+   */
+  private static byte[] grow(byte[] buf, int length) {
+    byte[] newBuf = new byte[buf.length * 2];
+    System.arraycopy(buf, 0, newBuf, 0, length);
+    return newBuf;
+  }
+
+  /**
+   * Decodes the specified timeseal encoded line (without the terminating <code>LINE_END</code> and
+   * newline) in place, returning the length of the decoded data: the original line followed by
+   * <code>TIMESTAMP_START</code>, the timestamp, <code>TIMESTAMP_END</code> and the padding. This
+   * is what the server does with each line it receives, and is used for testing.
+   */
+  static int decode(byte[] buf, int offset, int length) {
+    for (int i = 0; i < length; i++)
+      buf[offset + i] = (byte) (((buf[offset + i] + 32) ^ KEY[i % KEY.length]) & 0x7f);
+
+    for (int i = 0; i + BLOCK_SIZE <= length; i += BLOCK_SIZE) {
+      swap(buf, offset + i, offset + i + 11);
+      swap(buf, offset + i + 2, offset + i + 9);
+      swap(buf, offset + i + 4, offset + i + 7);
+    }
+
+    return length;
+  }
+}
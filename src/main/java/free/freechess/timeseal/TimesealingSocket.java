@@ -0,0 +1,81 @@
+/**
+ * The freechess.org connection library. More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002, 2003 Alexander Maryanovsky. All rights reserved.
+ *
+ * The freechess.org connection library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * The freechess.org connection library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the
+ * freechess.org connection library; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package free.freechess.timeseal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import free.util.ChannelSocket;
+
+/**
+ * A <code>Socket</code> which talks to the freechess.org server using the timeseal protocol.
+ * Everything written to it is sent a line at a time, stamped with the time the line was written
+ * at, which lets the server subtract the network lag from the time a player spends on a move. The
+ * server's pings are answered automatically and never show up in the data read from the socket.
+ * Being a <code>ChannelSocket</code>, it is read by the thread shared by all connections.
+ */
+public class TimesealingSocket extends ChannelSocket {
+
+  /**
+   * The identification line we send when connecting, in the "TIMESEAL2|system|user|" format.
+   */
+  private static final String HELLO = "TIMESEAL2|OpenSeal|OpenSeal|";
+
+  /**
+   * The timesealing output stream.
+   */
+  private final TimesealOutputStream out;
+
+  /**
+   * The ping filtering input stream.
+   */
+  private final TimesealInputStream in;
+
+  /**
+   * Creates a new <code>TimesealingSocket</code> connected to the specified port on the specified
+   * host, and identifies it to the server as a timeseal connection.
+   */
+  public TimesealingSocket(String hostname, int port) throws IOException {
+    super(hostname, port);
+
+    this.out = new TimesealOutputStream(super.getOutputStream());
+    this.in = new TimesealInputStream(super.getInputStream(), out);
+
+    byte[] hello = new byte[HELLO.length() + 1];
+    for (int i = 0; i < HELLO.length(); i++) hello[i] = (byte) HELLO.charAt(i);
+    hello[HELLO.length()] = '\n';
+    out.write(hello, 0, hello.length);
+    out.flush();
+  }
+
+  /**
+   * Returns the input stream of this socket, with the server's pings filtered out.
+   */
+  @Override
+  public InputStream getInputStream() {
+    return in;
+  }
+
+  /**
+   * Returns the output stream of this socket, which timestamps everything written to it.
+   */
+  @Override
+  public OutputStream getOutputStream() {
+    return out;
+  }
+}
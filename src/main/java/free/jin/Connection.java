@@ -113,6 +113,12 @@ public interface Connection {
 	 */
 	ListenerManager getListenerManager();
 
+	/**
+	 * Returns the <code>LagMonitor</code> measuring the lag between us and the
+	 * server while we're logged in.
+	 */
+	LagMonitor getLagMonitor();
+
 	/**
 	 * Initiates a connect-and-login procedure. The actual procedure should be
 	 * performed asynchronously, and this method should return without blocking.
@@ -240,6 +246,14 @@ public interface Connection {
 	 */
 	void makeMove(Game game, Move move);
 
+	/**
+	 * Makes the given move in the given Game, recording the stages the move passes
+	 * through on its way to the server and back into the specified
+	 * <code>MoveTrace</code>. Once the server echoes the move, the trace is
+	 * recorded into the shared <code>MoveLatencyStats</code>.
+	 */
+	void makeMove(Game game, Move move, MoveTrace trace);
+
 	/**
 	 * Resigns the given game. The given game must be a played game and of type
 	 * Game.MY_GAME.
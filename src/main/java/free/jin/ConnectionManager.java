@@ -22,6 +22,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.List;
 import java.util.Set;
+import java.util.Vector;
 
 import javax.swing.Box;
 import javax.swing.JButton;
@@ -44,15 +45,24 @@ import free.util.TextUtilities;
 import free.util.swing.SwingUtils;
 
 /**
- * Manages the creation, initiation and closing of the connection to the server.
+ * Manages the creation, initiation and closing of the connections to the servers. Any amount of
+ * sessions may be open at the same time, to the same server or to different ones. The first session
+ * opened when there is no other is the primary one, which the main user interface (menus, title
+ * etc.) reflects; the rest are additional sessions, such as a guest session used to observe games
+ * on another server.
  */
 public class ConnectionManager {
 
   /**
-   * The current Session. Null when none.
+   * The primary session. Null when none.
    */
   private Session session = null;
 
+  /**
+   * All the open sessions, including the primary one, in the order they were opened in.
+   */
+  private final Vector sessions = new Vector();
+
   /**
    * The model whose state matches whether a session is currently established.
    */
@@ -256,17 +266,24 @@ public class ConnectionManager {
   }
 
   /**
-   * Initiates login with the specified connection details.
+   * Initiates login with the specified connection details, in a new session. The session becomes
+   * the primary one if there is no primary session. Returns the new session, or <code>null</code>
+   * if it could not be started.
    */
-  private void login(ConnectionDetails connDetails) {
+  public Session login(ConnectionDetails connDetails) {
+    boolean isPrimary = (session == null);
     try {
-      fireSessionEvent(new SessionEvent(this, SessionEvent.SESSION_STARTING, null));
-      session = new Session(connDetails);
-      fireSessionEvent(new SessionEvent(this, SessionEvent.SESSION_ESTABLISHED, session));
+      fireSessionEvent(new SessionEvent(this, SessionEvent.SESSION_STARTING, null, isPrimary));
+      Session newSession = new Session(connDetails);
+      sessions.addElement(newSession);
+      if (isPrimary) session = newSession;
+      fireSessionEvent(
+          new SessionEvent(this, SessionEvent.SESSION_ESTABLISHED, newSession, isPrimary));
 
-      new ReconnectDialogPanel(session);
+      new ReconnectDialogPanel(newSession);
 
-      session.initiateLogin();
+      newSession.initiateLogin();
+      return newSession;
     } catch (PluginStartException e) {
       e.printStackTrace();
       Exception reason = e.getReason();
@@ -276,38 +293,56 @@ public class ConnectionManager {
               + "\n"
               + (reason == null ? "" : reason.getClass().getName() + ": " + reason.getMessage());
       OptionPanel.error("Error", errorMessage);
+      return null;
     }
   }
 
   /**
-   * Invoked by Session if login fails.
+   * Invoked by the specified session if login fails.
    *
    * @param message The message with which login failed.
    */
-  void loginFailed(String message) {
+  void loginFailed(Session session, String message) {
     I18n i18n = I18n.get(getClass());
     i18n.error("loginErrorDialog", new Object[] {message});
 
     // Reopen the connection UI
     User user = session.getUser();
-    closeSession();
+    closeSession(session, false);
 
     displayNewConnUI(user);
   }
 
   /**
-   * Closes the current session, if any.
+   * Closes the primary session, if any.
    */
   public void closeSession() {
     closeSession(false);
   }
 
   /**
-   * Closes the current session, if any, and optionally reconnects using the connection details of
-   * the current session.
+   * Closes the primary session, if any, and optionally reconnects using the connection details of
+   * the session.
    */
   public void closeSession(boolean reconnect) {
-    if (session == null) return;
+    if (session != null) closeSession(session, reconnect);
+  }
+
+  /**
+   * Closes all the open sessions.
+   */
+  public void closeAllSessions() {
+    while (!sessions.isEmpty()) closeSession((Session) sessions.lastElement(), false);
+  }
+
+  /**
+   * Closes the specified session, and optionally reconnects using its connection details. A
+   * reconnected primary session remains the primary one.
+   */
+  public void closeSession(Session session, boolean reconnect) {
+    if (!sessions.contains(session)) return;
+
+    boolean isPrimary = (session == this.session);
 
     User user = session.getUser();
     int connPort = session.getPort();
@@ -319,35 +354,54 @@ public class ConnectionManager {
       user.setPreferredConnDetails(connDetails);
 
       // Add the user to the known users list
-      if (!user.isGuest() && !Jin.getInstance().isKnownUser(user)) {
-        Jin.getInstance().addUser(user);
-        saveLastUser(user);
-      } else {
-        user.markDirty();
-        saveLastUser(user);
-      }
+      if (!user.isGuest() && !Jin.getInstance().isKnownUser(user)) Jin.getInstance().addUser(user);
+      else user.markDirty();
+
+      // Only the primary session is the one to log back into next time
+      if (isPrimary) saveLastUser(user);
     }
 
-    fireSessionEvent(new SessionEvent(this, SessionEvent.SESSION_CLOSING, session));
+    fireSessionEvent(new SessionEvent(this, SessionEvent.SESSION_CLOSING, session, isPrimary));
 
     // Close the session
     session.close();
 
-    Session tempSession = session;
-    session = null;
+    sessions.removeElement(session);
+    if (isPrimary) this.session = null;
 
-    fireSessionEvent(new SessionEvent(this, SessionEvent.SESSION_CLOSED, tempSession));
+    fireSessionEvent(new SessionEvent(this, SessionEvent.SESSION_CLOSED, session, isPrimary));
 
-    if (reconnect) login(tempSession.getConnDetails());
+    if (reconnect) login(session.getConnDetails());
   }
 
   /**
-   * Returns the current <code>Session</code>, or <code>null</code> if none.
+   * Returns the primary <code>Session</code>, or <code>null</code> if none.
    */
   public Session getSession() {
     return session;
   }
 
+  /**
+   * Returns the open session using the specified connection, or <code>null</code> if none.
+   */
+  public Session getSession(Connection conn) {
+    for (int i = 0; i < sessions.size(); i++) {
+      Session session = (Session) sessions.elementAt(i);
+      if (session.getConnection() == conn) return session;
+    }
+
+    return null;
+  }
+
+  /**
+   * Returns all the open sessions, the primary one included, in the order they were opened in.
+   */
+  public Session[] getSessions() {
+    Session[] sessionsArr = new Session[sessions.size()];
+    sessions.copyInto(sessionsArr);
+    return sessionsArr;
+  }
+
   /**
    * Adds a session listener.
    */
@@ -452,6 +506,8 @@ public class ConnectionManager {
           new SessionListener() {
             @Override
             public void sessionClosing(SessionEvent evt) {
+              if (evt.getSession() != ReconnectDialogPanel.this.session) return;
+
               removeSessionListener(this);
               if (isShowing()) close(null);
               else sessionClosing = true;
@@ -485,7 +541,7 @@ public class ConnectionManager {
           new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent evt) {
-              closeSession(true);
+              closeSession(session, true);
             }
           });
 
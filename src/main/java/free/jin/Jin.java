@@ -467,7 +467,7 @@ public class Jin {
             : OptionPanel.OK;
 
     if (result == OptionPanel.OK) {
-      connManager.closeSession();
+      connManager.closeAllSessions();
       uiProvider.stop();
 
       User[] usersArr = new User[users.size()];
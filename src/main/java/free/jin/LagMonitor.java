@@ -0,0 +1,580 @@
+/**
+ * Jin - a chess client for internet chess servers. More information is available at
+ * http://www.jinchess.com/. Copyright (C) 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if
+ * not, write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
+ * 02111-1307, USA.
+ */
+package free.jin;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Vector;
+
+import javax.management.ObjectName;
+import javax.swing.Timer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.EventListenerList;
+
+import free.util.ManagementUtilities;
+
+/**
+ * Measures the lag between the client and the server by periodically sending the server a
+ * lightweight probe command and timing its answer. The round-trip time of a probe is measured from
+ * the moment the probe is actually written to the server until its answer is read, so it covers
+ * only the network and the server. The time the answer then waits for the client thread is measured
+ * separately, as the client delay, which allows telling server lag apart from client stalls.
+ * Statistics are kept over a moving window of the most recent probes.
+ * <P>
+ * Implementations (normally inner classes of the connection) send the probes, and the connection
+ * notifies the monitor when commands are written and when answers to probes arrive. Registered
+ * <code>ChangeListener</code>s are notified, in the client thread, whenever a probe is answered.
+ */
+public abstract class LagMonitor implements LagMonitorMBean {
+
+  /**
+   * The default interval between probes, in milliseconds.
+   */
+  public static final int DEFAULT_PROBE_INTERVAL = 10000;
+
+  /**
+   * The delay before the first probe, in milliseconds. This lets the burst of traffic following
+   * the login pass before we measure.
+   */
+  private static final int INITIAL_PROBE_DELAY = 3000;
+
+  /**
+   * The time, in milliseconds, after which we give up on a probe the server didn't answer.
+   */
+  private static final int PROBE_TIMEOUT = 60000;
+
+  /**
+   * The maximum amount of probes waiting for an answer at once. If the server is this slow, there's
+   * no point adding more.
+   */
+  private static final int MAX_PENDING_PROBES = 3;
+
+  /**
+   * The amount of most recent probes the statistics cover.
+   */
+  private static final int WINDOW_SIZE = 16;
+
+  /**
+   * The amount of monitors created so far, used to give each a unique name.
+   */
+  private static int monitorCount = 0;
+
+  /**
+   * The timer sending the probes.
+   */
+  private final Timer probeTimer;
+
+  /**
+   * The probes waiting for an answer, in the order they were sent in.
+   */
+  private final Vector pendingProbes = new Vector(MAX_PENDING_PROBES);
+
+  /**
+   * The amount of probes sent so far.
+   */
+  private int sentProbeCount = 0;
+
+  /**
+   * The amount of probes answered so far.
+   */
+  private long answeredProbeCount = 0;
+
+  /**
+   * The amount of probes the server didn't answer in time.
+   */
+  private long lostProbeCount = 0;
+
+  /**
+   * The round-trip times of the probes in the window, in nanoseconds. The round-trip time of the
+   * <code>n</code>th answered probe is at index <code>n % WINDOW_SIZE</code>.
+   */
+  private final long[] roundTripTimes = new long[WINDOW_SIZE];
+
+  /**
+   * The client delays of the probes in the window, in nanoseconds, indexed like
+   * <code>roundTripTimes</code>.
+   */
+  private final long[] clientDelays = new long[WINDOW_SIZE];
+
+  /**
+   * The name we're registered under with JMX while we're running, or <code>null</code> if we're not
+   * registered.
+   */
+  private ObjectName mbeanName = null;
+
+  /**
+   * Our listeners.
+   */
+  private final EventListenerList listenerList = new EventListenerList();
+
+  /**
+   * Creates a new <code>LagMonitor</code> which sends probes at the specified interval, in
+   * milliseconds.
+   */
+  public LagMonitor(int probeInterval) {
+    probeTimer =
+        new Timer(
+            probeInterval,
+            new ActionListener() {
+              @Override
+              public void actionPerformed(ActionEvent evt) {
+                probe();
+              }
+            });
+    probeTimer.setInitialDelay(INITIAL_PROBE_DELAY);
+  }
+
+  /**
+   * Creates a new <code>LagMonitor</code> which sends probes at the default interval.
+   */
+  public LagMonitor() {
+    this(DEFAULT_PROBE_INTERVAL);
+  }
+
+  /**
+   * Returns whether the connection is connected, so that probes can be sent.
+   */
+  protected abstract boolean isConnected();
+
+  /**
+   * Returns the command probes are sent with (without any prefixes added when writing it).
+   */
+  protected abstract String getProbeCommand();
+
+  /**
+   * Sends a probe with the specified id to the server, with the specified command. The
+   * implementation should later invoke {@link #probeAnswered(String, long)} with the same id, when
+   * the answer arrives. This method is invoked without the lock on this <code>LagMonitor</code>
+   * held, and may throw an <code>IllegalStateException</code> if the connection has been closed.
+   */
+  protected abstract void sendProbe(String id, String command);
+
+  /**
+   * Starts sending probes, and exposes the statistics via JMX under a name based on the specified
+   * one.
+   */
+  public synchronized void start(String name) {
+    if (probeTimer.isRunning()) return;
+
+    int number;
+    synchronized (LagMonitor.class) {
+      number = ++monitorCount;
+    }
+    mbeanName = ManagementUtilities.register(this, "free.jin", "LagMonitor", name + "-" + number);
+    probeTimer.start();
+  }
+
+  /**
+   * Stops sending probes and forgets the probes waiting for an answer.
+   */
+  public synchronized void stop() {
+    probeTimer.stop();
+    pendingProbes.removeAllElements();
+
+    ManagementUtilities.unregister(mbeanName);
+    mbeanName = null;
+  }
+
+  /**
+   * Returns whether we're sending probes.
+   */
+  public synchronized boolean isRunning() {
+    return probeTimer.isRunning();
+  }
+
+  /**
+   * Sends the next probe, unless the server hasn't answered too many of the previous ones yet.
+   */
+  private void probe() {
+    if (!isConnected()) return;
+
+    Probe probe;
+    synchronized (this) {
+      if (!probeTimer.isRunning()) // Stopped after the timer event was posted
+      return;
+
+      long now = System.nanoTime();
+      while (!pendingProbes.isEmpty()) {
+        Probe oldest = (Probe) pendingProbes.elementAt(0);
+        if (now - oldest.sendTime < PROBE_TIMEOUT * 1000000L) break;
+
+        pendingProbes.removeElementAt(0);
+        lostProbeCount++;
+      }
+
+      if (pendingProbes.size() >= MAX_PENDING_PROBES) return;
+
+      // Added before sending, so that it's there when the writer thread reports it written
+      String id = String.valueOf(++sentProbeCount);
+      probe = new Probe(id, getProbeCommand(), now);
+      pendingProbes.addElement(probe);
+    }
+
+    // Sending takes the connection's lock, which may be held while waiting for the writer thread,
+    // and the writer thread takes our lock in commandWritten, so we mustn't hold it here
+    try {
+      sendProbe(probe.id, probe.command);
+    } catch (IllegalStateException e) { // Disconnected in the meantime
+      synchronized (this) {
+        pendingProbes.removeElement(probe);
+      }
+    }
+  }
+
+  /**
+   * Invoked by the connection, in the writer thread, when a command has been written to the server
+   * at the specified time, as returned by <code>System.nanoTime()</code>.
+   */
+  public synchronized void commandWritten(String command, long writeTime) {
+    for (int i = 0; i < pendingProbes.size(); i++) {
+      Probe probe = (Probe) pendingProbes.elementAt(i);
+      if (probe.isWritten) continue;
+
+      // Commands are written in the order they're sent in, and only get prefixed on the way
+      if (command.endsWith(probe.command)) {
+        probe.writeTime = writeTime;
+        probe.isWritten = true;
+      }
+      return;
+    }
+  }
+
+  /**
+   * Returns whether there are probes waiting for an answer.
+   */
+  public synchronized boolean isProbePending() {
+    return !pendingProbes.isEmpty();
+  }
+
+  /**
+   * Invoked by the connection, in the client thread, when the answer to the probe with the
+   * specified id, read from the server at the specified time, as returned by
+   * <code>System.nanoTime()</code>, is handled. If the server doesn't allow telling the answers to
+   * different probes apart, the id should be <code>null</code>, and the answer is taken to be the
+   * answer to the oldest probe. Returns whether the answer was indeed to one of our probes.
+   */
+  public boolean probeAnswered(String id, long receiveTime) {
+    synchronized (this) {
+      int index = 0;
+      if (id != null) {
+        while ((index < pendingProbes.size())
+            && !id.equals(((Probe) pendingProbes.elementAt(index)).id)) index++;
+      }
+      if (index >= pendingProbes.size()) return false;
+
+      // The server answers in order, so any earlier probes are lost
+      Probe probe = (Probe) pendingProbes.elementAt(index);
+      for (int i = 0; i <= index; i++) pendingProbes.removeElementAt(0);
+      lostProbeCount += index;
+
+      long sendTime = probe.isWritten ? probe.writeTime : probe.sendTime;
+      int slot = (int) (answeredProbeCount % WINDOW_SIZE);
+      roundTripTimes[slot] = Math.max(0, receiveTime - sendTime);
+      clientDelays[slot] = Math.max(0, System.nanoTime() - receiveTime);
+      answeredProbeCount++;
+    }
+
+    fireStateChanged();
+    return true;
+  }
+
+  /**
+   * Adds a <code>ChangeListener</code> to be notified whenever a probe is answered.
+   */
+  public void addChangeListener(ChangeListener listener) {
+    listenerList.add(ChangeListener.class, listener);
+  }
+
+  /**
+   * Removes the specified <code>ChangeListener</code>.
+   */
+  public void removeChangeListener(ChangeListener listener) {
+    listenerList.remove(ChangeListener.class, listener);
+  }
+
+  /**
+   * Notifies all the registered <code>ChangeListener</code>s.
+   */
+  protected void fireStateChanged() {
+    ChangeEvent evt = new ChangeEvent(this);
+    Object[] listeners = listenerList.getListenerList();
+    for (int i = 0; i < listeners.length; i += 2) {
+      if (listeners[i] == ChangeListener.class) {
+        ChangeListener listener = (ChangeListener) listeners[i + 1];
+        listener.stateChanged(evt);
+      }
+    }
+  }
+
+  /**
+   * Returns the amount of samples in the window.
+   */
+  private int getSampleCount() {
+    return (int) Math.min(answeredProbeCount, WINDOW_SIZE);
+  }
+
+  /**
+   * Returns whether any probes have been answered yet.
+   */
+  public synchronized boolean hasSamples() {
+    return answeredProbeCount != 0;
+  }
+
+  /**
+   * Returns the round-trip time of the last answered probe, in nanoseconds, or 0 if none.
+   */
+  public synchronized long getLastRoundTripNanos() {
+    if (answeredProbeCount == 0) return 0;
+
+    return roundTripTimes[(int) ((answeredProbeCount - 1) % WINDOW_SIZE)];
+  }
+
+  /**
+   * Returns the average round-trip time of the probes in the window, in nanoseconds, or 0 if none.
+   */
+  public synchronized long getAverageRoundTripNanos() {
+    return average(roundTripTimes);
+  }
+
+  /**
+   * Returns the jitter of the round-trip times of the probes in the window - the average
+   * difference between the round-trip times of consecutive probes, in nanoseconds.
+   */
+  public synchronized long getJitterNanos() {
+    int count = getSampleCount();
+    if (count < 2) return 0;
+
+    long total = 0;
+    long first = answeredProbeCount - count;
+    for (long n = first + 1; n < answeredProbeCount; n++) {
+      long current = roundTripTimes[(int) (n % WINDOW_SIZE)];
+      long previous = roundTripTimes[(int) ((n - 1) % WINDOW_SIZE)];
+      total += Math.abs(current - previous);
+    }
+    return total / (count - 1);
+  }
+
+  /**
+   * Returns the average time, in nanoseconds, the server's answers to the probes in the window
+   * waited for the client thread, or 0 if none.
+   */
+  public synchronized long getAverageClientDelayNanos() {
+    return average(clientDelays);
+  }
+
+  /**
+   * Returns the estimated time, in milliseconds, it takes data sent by the server to reach us. This
+   * is how stale a clock time sent by the server is when it arrives. Returns 0 if no probes have
+   * been answered yet.
+   */
+  public synchronized int getServerDelay() {
+    return (int) (getAverageRoundTripNanos() / 2 / 1000000);
+  }
+
+  /**
+   * Returns the time, in nanoseconds, the oldest unanswered probe has been waiting for an answer,
+   * or 0 if none.
+   */
+  public synchronized long getPendingNanos() {
+    if (pendingProbes.isEmpty()) return 0;
+
+    return System.nanoTime() - ((Probe) pendingProbes.elementAt(0)).sendTime;
+  }
+
+  /**
+   * Returns the average of the samples in the window of the specified array.
+   */
+  private long average(long[] samples) {
+    int count = getSampleCount();
+    if (count == 0) return 0;
+
+    long total = 0;
+    for (int i = 0; i < count; i++) total += samples[i];
+    return total / count;
+  }
+
+  /**
+   * Returns the largest of the samples in the window of the specified array.
+   */
+  private long max(long[] samples) {
+    long max = 0;
+    for (int i = getSampleCount() - 1; i >= 0; i--) max = Math.max(max, samples[i]);
+    return max;
+  }
+
+  /**
+   * Returns the amount of probes answered by the server.
+   */
+  @Override
+  public synchronized long getAnsweredProbeCount() {
+    return answeredProbeCount;
+  }
+
+  /**
+   * Returns the amount of probes the server didn't answer in time.
+   */
+  @Override
+  public synchronized long getLostProbeCount() {
+    return lostProbeCount;
+  }
+
+  /**
+   * Returns the round-trip time of the last answered probe, in microseconds.
+   */
+  @Override
+  public long getLastRoundTripTime() {
+    return getLastRoundTripNanos() / 1000;
+  }
+
+  /**
+   * Returns the average round-trip time of the probes in the window, in microseconds.
+   */
+  @Override
+  public long getAverageRoundTripTime() {
+    return getAverageRoundTripNanos() / 1000;
+  }
+
+  /**
+   * Returns the shortest round-trip time of the probes in the window, in microseconds.
+   */
+  @Override
+  public synchronized long getMinRoundTripTime() {
+    int count = getSampleCount();
+    if (count == 0) return 0;
+
+    long min = Long.MAX_VALUE;
+    for (int i = 0; i < count; i++) min = Math.min(min, roundTripTimes[i]);
+    return min / 1000;
+  }
+
+  /**
+   * Returns the longest round-trip time of the probes in the window, in microseconds.
+   */
+  @Override
+  public synchronized long getMaxRoundTripTime() {
+    return max(roundTripTimes) / 1000;
+  }
+
+  /**
+   * Returns the jitter of the round-trip times of the probes in the window, in microseconds.
+   */
+  @Override
+  public long getJitter() {
+    return getJitterNanos() / 1000;
+  }
+
+  /**
+   * Returns the average time the server's answers waited for the client thread, in microseconds.
+   */
+  @Override
+  public long getAverageClientDelay() {
+    return getAverageClientDelayNanos() / 1000;
+  }
+
+  /**
+   * Returns the longest time a server's answer in the window waited for the client thread, in
+   * microseconds.
+   */
+  @Override
+  public synchronized long getMaxClientDelay() {
+    return max(clientDelays) / 1000;
+  }
+
+  /**
+   * Returns the time the oldest unanswered probe has been waiting for an answer, in microseconds.
+   */
+  @Override
+  public long getPendingTime() {
+    return getPendingNanos() / 1000;
+  }
+
+  /**
+   * Returns a textual summary of all the statistics.
+   */
+  @Override
+  public String getSummary() {
+    return toString();
+  }
+
+  /**
+   * Returns a textual summary of the statistics, in milliseconds.
+   */
+  @Override
+  public synchronized String toString() {
+    return "lag: rtt="
+        + (getLastRoundTripNanos() / 1000000)
+        + "ms avg="
+        + (getAverageRoundTripNanos() / 1000000)
+        + "ms min="
+        + (getMinRoundTripTime() / 1000)
+        + "ms max="
+        + (getMaxRoundTripTime() / 1000)
+        + "ms jitter="
+        + (getJitterNanos() / 1000000)
+        + "ms client delay="
+        + (getAverageClientDelayNanos() / 1000000)
+        + "ms max client delay="
+        + (getMaxClientDelay() / 1000)
+        + "ms answered="
+        + answeredProbeCount
+        + " lost="
+        + lostProbeCount
+        + " pending="
+        + pendingProbes.size();
+  }
+
+  /**
+   * A probe waiting for an answer.
+   */
+  private static class Probe {
+
+    /**
+     * The id of the probe.
+     */
+    public final String id;
+
+    /**
+     * The command the probe was sent with.
+     */
+    public final String command;
+
+    /**
+     * The time the probe was sent at.
+     */
+    public final long sendTime;
+
+    /**
+     * The time the probe was written to the server at, if it has been written.
+     */
+    public long writeTime;
+
+    /**
+     * Whether the probe has been written to the server.
+     */
+    public boolean isWritten = false;
+
+    /**
+     * Creates a new <code>Probe</code> with the specified id, command and send time.
+     */
+    public Probe(String id, String command, long sendTime) {
+      this.id = id;
+      this.command = command;
+      this.sendTime = sendTime;
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/**
+ * Jin - a chess client for internet chess servers. More information is available at
+ * http://www.jinchess.com/. Copyright (C) 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if
+ * not, write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
+ * 02111-1307, USA.
+ */
+package free.jin;
+
+/**
+ * The JMX management interface of {@link LagMonitor}. Times are in microseconds and, unless noted
+ * otherwise, cover the probes in the current window only.
+ */
+public interface LagMonitorMBean {
+
+  /**
+   * Returns the amount of probes answered by the server.
+   */
+  long getAnsweredProbeCount();
+
+  /**
+   * Returns the amount of probes the server didn't answer in time.
+   */
+  long getLostProbeCount();
+
+  /**
+   * Returns the round-trip time of the last answered probe.
+   */
+  long getLastRoundTripTime();
+
+  /**
+   * Returns the average round-trip time.
+   */
+  long getAverageRoundTripTime();
+
+  /**
+   * Returns the shortest round-trip time.
+   */
+  long getMinRoundTripTime();
+
+  /**
+   * Returns the longest round-trip time.
+   */
+  long getMaxRoundTripTime();
+
+  /**
+   * Returns the jitter - the average difference between consecutive round-trip times.
+   */
+  long getJitter();
+
+  /**
+   * Returns the average time the server's answers waited for the client thread.
+   */
+  long getAverageClientDelay();
+
+  /**
+   * Returns the longest time a server's answer waited for the client thread.
+   */
+  long getMaxClientDelay();
+
+  /**
+   * Returns the time the oldest unanswered probe has been waiting for an answer, or 0 if none.
+   */
+  long getPendingTime();
+
+  /**
+   * Returns a textual summary of all the statistics.
+   */
+  String getSummary();
+}
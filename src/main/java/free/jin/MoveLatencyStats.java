@@ -0,0 +1,368 @@
+/**
+ * Jin - a chess client for internet chess servers. More information is available at
+ * http://www.jinchess.com/. Copyright (C) 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if
+ * not, write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
+ * 02111-1307, USA.
+ */
+package free.jin;
+
+import free.util.LatencyHistogram;
+import free.util.ManagementUtilities;
+
+/**
+ * Keeps statistics about the time it takes moves made by the user to get to the server and be
+ * echoed back, broken down by the stages recorded in their {@link MoveTrace}s. The statistics are
+ * rolling - they only cover the moves echoed in the last 5 to 10 minutes, so that a change in
+ * latency shows up quickly rather than being drowned in the whole history. There is a single,
+ * shared, instance of this class, exposed via JMX.
+ * <P>
+ * <B>NOTE:</B> This class is thread safe.
+ */
+public final class MoveLatencyStats implements MoveLatencyStatsMBean {
+
+  /**
+   * The length of time, in nanoseconds, each of the two windows the statistics are made of covers.
+   */
+  private static final long WINDOW_LENGTH = 5 * 60 * 1000000000L;
+
+  /**
+   * The shared instance, created when first needed.
+   */
+  private static MoveLatencyStats instance = null;
+
+  /**
+   * The times from the moment the user made a move until it was fired by the board.
+   */
+  private final RollingHistogram inputTimes = new RollingHistogram();
+
+  /**
+   * The times from the moment a move was fired by the board until it was queued for sending.
+   */
+  private final RollingHistogram dispatchTimes = new RollingHistogram();
+
+  /**
+   * The times from the moment a move was queued for sending until it was written to the server.
+   */
+  private final RollingHistogram writeTimes = new RollingHistogram();
+
+  /**
+   * The times from the moment the echo of a move was read until it was handled.
+   */
+  private final RollingHistogram echoTimes = new RollingHistogram();
+
+  /**
+   * The times moves spent in the client, going to the server and coming back.
+   */
+  private final RollingHistogram clientTimes = new RollingHistogram();
+
+  /**
+   * The times from the moment moves were written to the server until their echo was read.
+   */
+  private final RollingHistogram networkTimes = new RollingHistogram();
+
+  /**
+   * The round-trip times of moves.
+   */
+  private final RollingHistogram roundTripTimes = new RollingHistogram();
+
+  /**
+   * The trace of the last echoed move; <code>null</code> if none yet.
+   */
+  private volatile MoveTrace lastTrace = null;
+
+  /**
+   * Creates a new <code>MoveLatencyStats</code>.
+   */
+  private MoveLatencyStats() {}
+
+  /**
+   * Returns the shared instance of <code>MoveLatencyStats</code>.
+   */
+  public static synchronized MoveLatencyStats getInstance() {
+    if (instance == null) {
+      instance = new MoveLatencyStats();
+      ManagementUtilities.register(instance, "free.jin", "MoveLatency", null);
+    }
+
+    return instance;
+  }
+
+  /**
+   * Records the stages the specified move, which has just been echoed by the server, passed
+   * through.
+   */
+  public void moveEchoed(MoveTrace trace) {
+    record(inputTimes, trace.getDuration(MoveTrace.USER_MOVE, MoveTrace.FIRED));
+    record(dispatchTimes, trace.getDuration(MoveTrace.FIRED, MoveTrace.SENT));
+    record(writeTimes, trace.getDuration(MoveTrace.SENT, MoveTrace.WRITTEN));
+    record(echoTimes, trace.getDuration(MoveTrace.RECEIVED, MoveTrace.ECHOED));
+    record(clientTimes, trace.getClientTime());
+    record(networkTimes, trace.getNetworkTime());
+    record(roundTripTimes, trace.getRoundTripTime());
+
+    lastTrace = trace;
+  }
+
+  /**
+   * Records the specified duration into the specified histogram, unless it's -1, which means the
+   * move didn't pass through the stages the histogram is concerned with.
+   */
+  private static void record(RollingHistogram histogram, long nanos) {
+    if (nanos != -1) histogram.record(nanos);
+  }
+
+  /**
+   * Returns the trace of the last echoed move, or <code>null</code> if none yet.
+   */
+  public MoveTrace getLastTrace() {
+    return lastTrace;
+  }
+
+  /**
+   * Returns the recent times from the moment the user made a move until it was fired by the board.
+   */
+  public LatencyHistogram getInputTimes() {
+    return inputTimes.getRecent();
+  }
+
+  /**
+   * Returns the recent times from the moment a move was fired by the board until it was queued for
+   * sending.
+   */
+  public LatencyHistogram getDispatchTimes() {
+    return dispatchTimes.getRecent();
+  }
+
+  /**
+   * Returns the recent times from the moment a move was queued for sending until it was written to
+   * the server.
+   */
+  public LatencyHistogram getWriteTimes() {
+    return writeTimes.getRecent();
+  }
+
+  /**
+   * Returns the recent times from the moment the echo of a move was read until it was handled.
+   */
+  public LatencyHistogram getEchoTimes() {
+    return echoTimes.getRecent();
+  }
+
+  /**
+   * Returns the recent times moves spent in the client.
+   */
+  public LatencyHistogram getClientTimes() {
+    return clientTimes.getRecent();
+  }
+
+  /**
+   * Returns the recent times from the moment moves were written to the server until their echo was
+   * read.
+   */
+  public LatencyHistogram getNetworkTimes() {
+    return networkTimes.getRecent();
+  }
+
+  /**
+   * Returns the recent round-trip times of moves.
+   */
+  public LatencyHistogram getRoundTripTimes() {
+    return roundTripTimes.getRecent();
+  }
+
+  /**
+   * Returns the amount of recently echoed moves.
+   */
+  @Override
+  public long getMoveCount() {
+    return getRoundTripTimes().getCount();
+  }
+
+  /**
+   * Returns the round-trip time of the last echoed move, in microseconds, or 0 if none yet.
+   */
+  @Override
+  public long getLastRoundTripTime() {
+    MoveTrace trace = lastTrace;
+    return trace == null ? 0 : trace.getRoundTripTime() / 1000;
+  }
+
+  /**
+   * Returns the time the last echoed move spent in the client, in microseconds, or 0 if none yet.
+   */
+  @Override
+  public long getLastClientTime() {
+    MoveTrace trace = lastTrace;
+    return trace == null ? 0 : trace.getClientTime() / 1000;
+  }
+
+  /**
+   * Returns the time from the moment the last echoed move was written to the server until its echo
+   * was read, in microseconds, or 0 if none yet.
+   */
+  @Override
+  public long getLastNetworkTime() {
+    MoveTrace trace = lastTrace;
+    return trace == null ? 0 : trace.getNetworkTime() / 1000;
+  }
+
+  /**
+   * Returns the median recent round-trip time of a move, in microseconds.
+   */
+  @Override
+  public long getRoundTripTimeMedian() {
+    return getRoundTripTimes().getPercentile(50) / 1000;
+  }
+
+  /**
+   * Returns the 99th percentile of the recent round-trip times of moves, in microseconds.
+   */
+  @Override
+  public long getRoundTripTime99thPercentile() {
+    return getRoundTripTimes().getPercentile(99) / 1000;
+  }
+
+  /**
+   * Returns the median recent time a move spent in the client, in microseconds.
+   */
+  @Override
+  public long getClientTimeMedian() {
+    return getClientTimes().getPercentile(50) / 1000;
+  }
+
+  /**
+   * Returns the 99th percentile of the recent times moves spent in the client, in microseconds.
+   */
+  @Override
+  public long getClientTime99thPercentile() {
+    return getClientTimes().getPercentile(99) / 1000;
+  }
+
+  /**
+   * Returns the median recent time from the moment a move was written to the server until its echo
+   * was read, in microseconds.
+   */
+  @Override
+  public long getNetworkTimeMedian() {
+    return getNetworkTimes().getPercentile(50) / 1000;
+  }
+
+  /**
+   * Returns the 99th percentile of the recent times from the moment moves were written to the
+   * server until their echo was read, in microseconds.
+   */
+  @Override
+  public long getNetworkTime99thPercentile() {
+    return getNetworkTimes().getPercentile(99) / 1000;
+  }
+
+  /**
+   * Returns the stages the last echoed move passed through, or <code>null</code> if none yet.
+   */
+  @Override
+  public String getLastMove() {
+    MoveTrace trace = lastTrace;
+    return trace == null ? null : trace.toString();
+  }
+
+  /**
+   * Returns a textual summary of all the statistics.
+   */
+  @Override
+  public String getSummary() {
+    return toString();
+  }
+
+  /**
+   * Returns a textual summary of the statistics, one stage per line.
+   */
+  @Override
+  public String toString() {
+    return "move round trip: "
+        + getRoundTripTimes()
+        + "\n  user->fired: "
+        + getInputTimes()
+        + "\n  fired->sent: "
+        + getDispatchTimes()
+        + "\n  sent->written: "
+        + getWriteTimes()
+        + "\n  received->echoed: "
+        + getEchoTimes()
+        + "\n  client: "
+        + getClientTimes()
+        + "\n  network: "
+        + getNetworkTimes()
+        + "\nlast move: "
+        + getLastMove();
+  }
+
+  /**
+   * A histogram of the values recorded in the current and the previous windows of time.
+   */
+  private static class RollingHistogram {
+
+    /**
+     * The values recorded in the current window.
+     */
+    private LatencyHistogram current = new LatencyHistogram();
+
+    /**
+     * The values recorded in the previous window.
+     */
+    private LatencyHistogram previous = new LatencyHistogram();
+
+    /**
+     * The time the current window started at.
+     */
+    private long windowStart = System.nanoTime();
+
+    /**
+     * Records the specified value, in nanoseconds.
+     */
+    public synchronized void record(long nanos) {
+      roll();
+      current.record(nanos);
+    }
+
+    /**
+     * Returns a histogram of the values recorded in the current and the previous windows.
+     */
+    public synchronized LatencyHistogram getRecent() {
+      roll();
+
+      LatencyHistogram recent = new LatencyHistogram();
+      recent.add(previous);
+      recent.add(current);
+      return recent;
+    }
+
+    /**
+     * Starts a new window, if the current one is over.
+     */
+    private void roll() {
+      long now = System.nanoTime();
+      if (now - windowStart < WINDOW_LENGTH) return;
+
+      if (now - windowStart < 2 * WINDOW_LENGTH) {
+        LatencyHistogram oldest = previous;
+        previous = current;
+        current = oldest;
+        current.reset();
+      } else { // Nothing recorded for more than a whole window
+        previous.reset();
+        current.reset();
+      }
+      windowStart = now;
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/**
+ * Jin - a chess client for internet chess servers. More information is available at
+ * http://www.jinchess.com/. Copyright (C) 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if
+ * not, write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
+ * 02111-1307, USA.
+ */
+package free.jin;
+
+/**
+ * The JMX management interface of {@link MoveLatencyStats}. Times are in microseconds, and cover
+ * the recently echoed moves only.
+ */
+public interface MoveLatencyStatsMBean {
+
+  /**
+   * Returns the amount of recently echoed moves.
+   */
+  long getMoveCount();
+
+  /**
+   * Returns the round-trip time of the last echoed move, from the moment the user made it until
+   * the server echoed it.
+   */
+  long getLastRoundTripTime();
+
+  /**
+   * Returns the time the last echoed move spent in the client, going to the server and coming back.
+   */
+  long getLastClientTime();
+
+  /**
+   * Returns the time from the moment the last echoed move was written to the server until its echo
+   * was read.
+   */
+  long getLastNetworkTime();
+
+  /**
+   * Returns the median round-trip time of a move.
+   */
+  long getRoundTripTimeMedian();
+
+  /**
+   * Returns the 99th percentile of the round-trip times of moves.
+   */
+  long getRoundTripTime99thPercentile();
+
+  /**
+   * Returns the median time a move spent in the client.
+   */
+  long getClientTimeMedian();
+
+  /**
+   * Returns the 99th percentile of the times moves spent in the client.
+   */
+  long getClientTime99thPercentile();
+
+  /**
+   * Returns the median time from the moment a move was written to the server until its echo was
+   * read.
+   */
+  long getNetworkTimeMedian();
+
+  /**
+   * Returns the 99th percentile of the times from the moment moves were written to the server
+   * until their echo was read.
+   */
+  long getNetworkTime99thPercentile();
+
+  /**
+   * Returns the stages the last echoed move passed through.
+   */
+  String getLastMove();
+
+  /**
+   * Returns a textual summary of all the statistics.
+   */
+  String getSummary();
+}
@@ -0,0 +1,222 @@
+/**
+ * Jin - a chess client for internet chess servers. More information is available at
+ * http://www.jinchess.com/. Copyright (C) 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if
+ * not, write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
+ * 02111-1307, USA.
+ */
+package free.jin;
+
+import free.chess.Move;
+
+/**
+ * Records the times at which a move made by the user passed through the various stages on its way
+ * to the server and back, from the moment the user dropped the piece on the board, until the
+ * server echoed the move back to us. This allows telling the time the move spent in the client
+ * apart from the time it spent on the network and in the server. All the times are as returned by
+ * <code>System.nanoTime()</code>.
+ * <P>
+ * <B>NOTE:</B> This class is thread safe - the stages are recorded by different threads.
+ */
+public class MoveTrace {
+
+  /**
+   * The stage at which the user dropped the piece on the board.
+   */
+  public static final int USER_MOVE = 0;
+
+  /**
+   * The stage at which the board panel fired the move to its listeners.
+   */
+  public static final int FIRED = 1;
+
+  /**
+   * The stage at which the connection queued the move for sending to the server.
+   */
+  public static final int SENT = 2;
+
+  /**
+   * The stage at which the move was written to the server's socket.
+   */
+  public static final int WRITTEN = 3;
+
+  /**
+   * The stage at which the server's echo of the move was read.
+   */
+  public static final int RECEIVED = 4;
+
+  /**
+   * The stage at which the connection handled the server's echo of the move, just before notifying
+   * its listeners.
+   */
+  public static final int ECHOED = 5;
+
+  /**
+   * The names of the stages, indexed by stage.
+   */
+  private static final String[] STAGE_NAMES = {
+    "user", "fired", "sent", "written", "received", "echoed"
+  };
+
+  /**
+   * The move being traced.
+   */
+  private final Move move;
+
+  /**
+   * The times at which the move passed through the stages, indexed by stage.
+   */
+  private final long[] times = new long[STAGE_NAMES.length];
+
+  /**
+   * Whether the move passed through the stages, indexed by stage.
+   */
+  private final boolean[] isStamped = new boolean[STAGE_NAMES.length];
+
+  /**
+   * The command the move was sent to the server with; <code>null</code> if it hasn't been sent
+   * yet.
+   */
+  private String command = null;
+
+  /**
+   * Creates a new <code>MoveTrace</code> for the specified move, made by the user right now.
+   */
+  public MoveTrace(Move move) {
+    this(move, System.nanoTime());
+  }
+
+  /**
+   * Creates a new <code>MoveTrace</code> for the specified move, made by the user at the specified
+   * time.
+   */
+  public MoveTrace(Move move, long userMoveTime) {
+    if (move == null) throw new IllegalArgumentException("move may not be null");
+
+    this.move = move;
+    stamp(USER_MOVE, userMoveTime);
+  }
+
+  /**
+   * Returns the move being traced.
+   */
+  public Move getMove() {
+    return move;
+  }
+
+  /**
+   * Records that the move passed through the specified stage right now.
+   */
+  public void stamp(int stage) {
+    stamp(stage, System.nanoTime());
+  }
+
+  /**
+   * Records that the move passed through the specified stage at the specified time.
+   */
+  public synchronized void stamp(int stage, long time) {
+    times[stage] = time;
+    isStamped[stage] = true;
+  }
+
+  /**
+   * Returns whether the move passed through the specified stage.
+   */
+  public synchronized boolean isStamped(int stage) {
+    return isStamped[stage];
+  }
+
+  /**
+   * Returns the time at which the move passed through the specified stage. Throws an
+   * <code>IllegalStateException</code> if it didn't pass through it yet.
+   */
+  public synchronized long getTime(int stage) {
+    if (!isStamped[stage])
+      throw new IllegalStateException("Stage " + STAGE_NAMES[stage] + " not reached yet");
+
+    return times[stage];
+  }
+
+  /**
+   * Returns the time, in nanoseconds, it took the move to get from the first specified stage to
+   * the second one, or -1 if it didn't pass through both.
+   */
+  public synchronized long getDuration(int fromStage, int toStage) {
+    if (!isStamped[fromStage] || !isStamped[toStage]) return -1;
+
+    return times[toStage] - times[fromStage];
+  }
+
+  /**
+   * Returns the time, in nanoseconds, from the moment the user made the move until the server
+   * echoed it, or -1 if it hasn't been echoed yet.
+   */
+  public long getRoundTripTime() {
+    return getDuration(USER_MOVE, ECHOED);
+  }
+
+  /**
+   * Returns the time, in nanoseconds, the move spent in the client - from the moment the user made
+   * it until it was written to the server, plus, once echoed, from the moment the echo was read
+   * until it was handled. Returns -1 if the move hasn't been written yet.
+   */
+  public synchronized long getClientTime() {
+    long outgoingTime = getDuration(USER_MOVE, WRITTEN);
+    if (outgoingTime == -1) return -1;
+
+    long incomingTime = getDuration(RECEIVED, ECHOED);
+    return incomingTime == -1 ? outgoingTime : outgoingTime + incomingTime;
+  }
+
+  /**
+   * Returns the time, in nanoseconds, from the moment the move was written to the server until the
+   * server's echo of it was read, or -1 if it hasn't been echoed yet. This is the time spent on
+   * the network and in the server.
+   */
+  public long getNetworkTime() {
+    return getDuration(WRITTEN, RECEIVED);
+  }
+
+  /**
+   * Sets the command the move is sent to the server with.
+   */
+  public synchronized void setCommand(String command) {
+    this.command = command;
+  }
+
+  /**
+   * Returns the command the move was sent to the server with, or <code>null</code> if it hasn't
+   * been sent yet.
+   */
+  public synchronized String getCommand() {
+    return command;
+  }
+
+  /**
+   * Returns a textual representation of this trace: the move and the time it took to get to each
+   * stage it passed through from the previous one, in microseconds.
+   */
+  @Override
+  public synchronized String toString() {
+    StringBuffer buf = new StringBuffer(move.toString());
+    int lastStage = USER_MOVE;
+    for (int stage = FIRED; stage < STAGE_NAMES.length; stage++) {
+      if (!isStamped[stage]) continue;
+
+      buf.append(' ').append(STAGE_NAMES[lastStage]).append("->").append(STAGE_NAMES[stage]);
+      buf.append('=').append((times[stage] - times[lastStage]) / 1000).append("us");
+      lastStage = stage;
+    }
+
+    return buf.toString();
+  }
+}
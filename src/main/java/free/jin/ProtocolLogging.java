@@ -0,0 +1,76 @@
+/**
+ * Jin - a chess client for internet chess servers. More information is available at
+ * http://www.jinchess.com/. Copyright (C) 2003 Alexander Maryanovsky. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if
+ * not, write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
+ * 02111-1307, USA.
+ */
+package free.jin;
+
+import java.io.File;
+import java.io.IOException;
+
+import free.util.ProtocolLog;
+
+/**
+ * Creates the log of the traffic between the client and the server, as specified by system
+ * properties:
+ * <UL>
+ * <LI><code>free.jin.log.level</code> - "off" (the default), "summary" or "full".
+ * <LI><code>free.jin.log.file</code> - the file to log into; the log is written to
+ * <code>System.out</code> if unspecified.
+ * <LI><code>free.jin.log.maxFileSize</code> - the size, in bytes, beyond which the file is rotated;
+ * 10MB by default.
+ * <LI><code>free.jin.log.fileCount</code> - the amount of log files kept; 5 by default.
+ * </UL>
+ */
+public class ProtocolLogging {
+
+  /**
+   * The shared log, created lazily.
+   */
+  private static ProtocolLog log = null;
+
+  /**
+   * Whether we've already tried to create the log.
+   */
+  private static boolean isInitialized = false;
+
+  /**
+   * Returns the protocol log, or <code>null</code> if logging is off. The log is shared by all
+   * the connections.
+   */
+  public static synchronized ProtocolLog getLog() {
+    if (isInitialized) return log;
+
+    isInitialized = true;
+    try {
+      int level = ProtocolLog.parseLevel(System.getProperty("free.jin.log.level", "off"));
+      if (level == ProtocolLog.OFF) return null;
+
+      String filename = System.getProperty("free.jin.log.file");
+      if (filename == null) log = new ProtocolLog(level, System.out);
+      else {
+        long maxFileSize =
+            Long.parseLong(System.getProperty("free.jin.log.maxFileSize", "10485760"));
+        int fileCount = Integer.parseInt(System.getProperty("free.jin.log.fileCount", "5"));
+        log = new ProtocolLog(level, new File(filename), maxFileSize, fileCount);
+      }
+    } catch (IllegalArgumentException e) {
+      e.printStackTrace(); // Just don't log
+    } catch (IOException e) {
+      e.printStackTrace(); // Just don't log
+    }
+
+    return log;
+  }
+}
@@ -307,7 +307,7 @@ public class Session {
           errorMessage.append("Port " + ports[i] + ": " + errorMessages[i] + "\n");
         errorMessage.setLength(errorMessage.length() - 1);
 
-        Jin.getInstance().getConnManager().loginFailed(errorMessage.toString());
+        Jin.getInstance().getConnManager().loginFailed(Session.this, errorMessage.toString());
       } else {
         portIndex++;
         conn.initiateConnectAndLogin(hostname, ports[portIndex]);
@@ -322,7 +322,7 @@ public class Session {
       // Stop plugins
       for (int i = 0; i < plugins.length; i++) plugins[i].stop();
 
-      Jin.getInstance().getConnManager().loginFailed(reason);
+      Jin.getInstance().getConnManager().loginFailed(Session.this, reason);
     }
 
     /**
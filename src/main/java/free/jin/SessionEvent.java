@@ -54,9 +54,21 @@ public class SessionEvent extends EventObject {
   private final Session session;
 
   /**
-   * Creates a new <code>SessionEvent</code>.
+   * Whether the session is the primary one.
+   */
+  private final boolean isPrimary;
+
+  /**
+   * Creates a new <code>SessionEvent</code> for the primary session.
    */
   public SessionEvent(ConnectionManager connManager, int id, Session session) {
+    this(connManager, id, session, true);
+  }
+
+  /**
+   * Creates a new <code>SessionEvent</code> for either the primary session or an additional one.
+   */
+  public SessionEvent(ConnectionManager connManager, int id, Session session, boolean isPrimary) {
     super(connManager);
 
     switch (id) {
@@ -71,6 +83,7 @@ public class SessionEvent extends EventObject {
 
     this.id = id;
     this.session = session;
+    this.isPrimary = isPrimary;
   }
 
   /**
@@ -95,4 +108,12 @@ public class SessionEvent extends EventObject {
   public Session getSession() {
     return session;
   }
+
+  /**
+   * Returns whether the session is the primary one (see {@link ConnectionManager#getSession()}),
+   * which the main user interface reflects, rather than an additional one.
+   */
+  public boolean isPrimary() {
+    return isPrimary;
+  }
 }
@@ -0,0 +1,67 @@
+/**
+ * Jin - a chess client for internet chess servers. More information is available at
+ * http://www.jinchess.com/. Copyright (C) 2003 Alexander Maryanovsky. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if
+ * not, write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
+ * 02111-1307, USA.
+ */
+package free.jin;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import free.util.SessionRecorder;
+
+/**
+ * Lets a session be recorded into a file, or replayed from one instead of connecting to the
+ * server, as specified by system properties:
+ * <UL>
+ * <LI><code>free.jin.session.record</code> - the file to record the session into.
+ * <LI><code>free.jin.session.replay</code> - the file to replay the session from.
+ * <LI><code>free.jin.session.replaySpeed</code> - the speed of the replay; 1 (the default) for the
+ * original speed, 2 for twice as fast etc., or 0 for as fast as possible.
+ * </UL>
+ * A replayed session goes through the entire client, down to the plugins, which makes it possible
+ * to reproduce problems which only occur with a lot of server traffic without a network.
+ */
+public class SessionRecording {
+
+  /**
+   * Initiates the connection of the specified <code>free.util.Connection</code> to the specified
+   * hostname on the specified port, recording the session or replaying it instead, as specified by
+   * the system properties.
+   */
+  public static void initiateConnect(free.util.Connection conn, String hostname, int port) {
+    String replayFile = System.getProperty("free.jin.session.replay");
+    if (replayFile != null) {
+      try {
+        double speed = Double.parseDouble(System.getProperty("free.jin.session.replaySpeed", "1"));
+        conn.initiateReplay(new FileInputStream(replayFile), speed);
+        return;
+      } catch (IOException e) {
+        e.printStackTrace(); // Connect to the server instead
+      }
+    }
+
+    String recordFile = System.getProperty("free.jin.session.record");
+    if (recordFile != null) {
+      try {
+        conn.setSessionRecorder(new SessionRecorder(new FileOutputStream(recordFile)));
+      } catch (IOException e) {
+        e.printStackTrace(); // Just don't record
+      }
+    }
+
+    conn.initiateConnect(hostname, port);
+  }
+}
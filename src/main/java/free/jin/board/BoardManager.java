@@ -1068,7 +1068,7 @@ public class BoardManager extends Plugin
     if (src instanceof BoardPanel) {
       BoardPanel boardPanel = (BoardPanel) src;
       Game game = boardPanel.getGame();
-      getConn().makeMove(game, evt.getMove());
+      getConn().makeMove(game, evt.getMove(), evt.getTrace());
     }
   }
 
@@ -50,6 +50,7 @@ import javax.swing.ScrollPaneConstants;
 import javax.swing.SwingUtilities;
 import javax.swing.Timer;
 import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.event.TableColumnModelEvent;
@@ -62,6 +63,7 @@ import free.chess.Chess;
 import free.chess.ChessMove;
 import free.chess.JBoard;
 import free.chess.JChessClock;
+import free.chess.LegalMoveGenerator;
 import free.chess.Move;
 import free.chess.Player;
 import free.chess.Position;
@@ -71,6 +73,8 @@ import free.chess.event.MoveListener;
 import free.jin.Connection;
 import free.jin.Game;
 import free.jin.I18n;
+import free.jin.LagMonitor;
+import free.jin.MoveTrace;
 import free.jin.board.event.UserMoveEvent;
 import free.jin.board.event.UserMoveListener;
 import free.jin.event.BoardFlipEvent;
@@ -148,6 +152,13 @@ public class BoardPanel extends FixedJPanel
    */
   protected final Position realPosition;
 
+  /**
+   * The position from which the positions displayed when browsing the move list are taken. It is
+   * brought to the requested move by making and unmaking moves, rather than by replaying the game
+   * from its initial position. <code>null</code> until first needed.
+   */
+  private Position navigationPosition = null;
+
   /**
    * The number of the move after which the position displayed on the board occurs.
    */
@@ -252,6 +263,17 @@ public class BoardPanel extends FixedJPanel
    */
   private Move moveEnRoute = null;
 
+  /**
+   * The trace of the move en route. Null if none.
+   */
+  private MoveTrace moveEnRouteTrace = null;
+
+  /**
+   * The trace of the last move made by the user on the board and echoed by the server. Null if
+   * none.
+   */
+  private MoveTrace lastMoveTrace = null;
+
   /**
    * The queued move - the user may make a move when it's not his turn, and it will then be saved
    * here until his opponent makes a move.
@@ -265,6 +287,28 @@ public class BoardPanel extends FixedJPanel
    */
   private long sentMoveTimestamp = -1;
 
+  /**
+   * Displays the lag between us and the server in the tooltip of the game label whenever it's
+   * measured.
+   */
+  private final ChangeListener lagListener =
+      new ChangeListener() {
+        @Override
+        public void stateChanged(ChangeEvent evt) {
+          LagMonitor lagMonitor = (LagMonitor) evt.getSource();
+          I18n i18n = I18n.get(BoardPanel.class);
+          String tooltip =
+              i18n.getFormattedString(
+                  "lagTooltip",
+                  new Object[] {
+                    new Long(lagMonitor.getAverageRoundTripNanos() / 1000000),
+                    new Long(lagMonitor.getJitterNanos() / 1000000),
+                    new Long(lagMonitor.getAverageClientDelayNanos() / 1000000)
+                  });
+          gameLabel.setToolTipText(tooltip);
+        }
+      };
+
   /**
    * The FullscreenPanel allowing us to maximize the board panel.
    */
@@ -341,6 +385,8 @@ public class BoardPanel extends FixedJPanel
    * Dispatches the given UserMoveEvent to all interested UserMoveListeners of this BoardPanel.
    */
   protected void fireUserMadeMove(UserMoveEvent evt) {
+    evt.getTrace().stamp(MoveTrace.FIRED);
+
     Object[] listenerList = this.listenerList.getListenerList();
     for (int i = 0; i < listenerList.length; i += 2) {
       if (listenerList[i] == UserMoveListener.class) {
@@ -362,6 +408,8 @@ public class BoardPanel extends FixedJPanel
     createComponents(game);
 
     addComponents();
+
+    if (game.isPlayed()) boardManager.getConn().getLagMonitor().addChangeListener(lagListener);
   }
 
   /**
@@ -1462,6 +1510,11 @@ public class BoardPanel extends FixedJPanel
             && Utilities.areEqual(move.getEndingSquare(), moveEnRoute.getEndingSquare())
             && Utilities.areEqual(move.getPlayer(), moveEnRoute.getPlayer());
 
+    if (moveEnRouteEcho && (moveEnRouteTrace != null)) {
+      if (moveEnRouteTrace.isStamped(MoveTrace.ECHOED)) moveRoundTripCompleted(moveEnRouteTrace);
+      moveEnRouteTrace = null;
+    }
+
     boolean shouldUpdateBoard = true;
 
     // The user is looking at a position other than the last one, so we don't
@@ -1524,9 +1577,9 @@ public class BoardPanel extends FixedJPanel
         UserMoveEvent evt2 = new UserMoveEvent(this, premove);
 
         isBoardPositionUpdating = true;
-        Position helpPos = new Position(realPosition);
-        helpPos.makeMove(premove);
-        board.getPosition().copyFrom(helpPos);
+        Position.Undo premoveUndo = realPosition.makeMove(premove);
+        board.getPosition().copyFrom(realPosition);
+        realPosition.unmakeMove(premoveUndo);
         // We do the above instead of the below because if move animation is on,
         // the code below causes the premove to be "replayed" with animation.
         //board.getPosition().copyFrom(realPosition);
@@ -1534,6 +1587,7 @@ public class BoardPanel extends FixedJPanel
         isBoardPositionUpdating = false;
 
         moveEnRoute = premove;
+        moveEnRouteTrace = evt2.getTrace();
         setQueuedMove(null);
         fireUserMadeMove(evt2);
       }
@@ -1545,12 +1599,41 @@ public class BoardPanel extends FixedJPanel
     blackMaterialPanel.updateMaterial(move);
   }
 
+  /**
+   * Invoked when the server echoes a move made by the user on the board, with the trace of the
+   * move. Displays the round-trip time of the move in the tooltip of the user's clock.
+   */
+  protected void moveRoundTripCompleted(MoveTrace trace) {
+    lastMoveTrace = trace;
+
+    I18n i18n = I18n.get(BoardPanel.class);
+    String tooltip =
+        i18n.getFormattedString(
+            "moveRoundTripTooltip",
+            new Object[] {
+              new Long(trace.getRoundTripTime() / 1000000),
+              new Long(trace.getClientTime() / 1000000),
+              new Long(trace.getNetworkTime() / 1000000)
+            });
+    getClockForPlayer(trace.getMove().getPlayer()).setToolTipText(tooltip);
+  }
+
+  /**
+   * Returns the trace of the last move made by the user on the board and echoed by the server, or
+   * <code>null</code> if none. The trace holds the time it took the move to get to the server and
+   * back, broken down by stages.
+   */
+  public MoveTrace getLastMoveTrace() {
+    return lastMoveTrace;
+  }
+
   /**
    * If the specified move is legal in the specified position, this method returns <code>true</code>
-   * . If the specified move is illegal, it may return <code>false</code>. It's not meant as a
-   * complete move legality check, instead, it (currently) only detects some obviously illegal moves
-   * so that they can be rejected immediately, instead of wasting time by sending them to the
-   * server. With time, more complex (and eventually complete) move legality checking will be added.
+   * . If the specified move is illegal, it may return <code>false</code>. Illegal moves are
+   * detected so that they can be rejected immediately, instead of wasting time by sending them to
+   * the server. If the variant of the position implements {@link LegalMoveGenerator} and its rules
+   * are known in full (see {@link LegalMoveGenerator#isLegalityKnown()}), the check is complete;
+   * otherwise only some obviously illegal moves are detected, and the server decides the rest.
    */
   protected boolean checkLegality(Position pos, Move move) {
     if (move instanceof ChessMove) {
@@ -1564,6 +1647,10 @@ public class BoardPanel extends FixedJPanel
         return false;
     }
 
+    WildVariant variant = pos.getVariant();
+    if ((variant instanceof LegalMoveGenerator) && ((LegalMoveGenerator) variant).isLegalityKnown())
+      return ((LegalMoveGenerator) variant).isLegal(pos, move);
+
     return true;
   }
 
@@ -1576,6 +1663,7 @@ public class BoardPanel extends FixedJPanel
 
     madeMoves.removeAllElements();
     realPosition.copyFrom(evt.getPosition());
+    navigationPosition = null;
 
     isBoardPositionUpdating = true;
     board.getPosition().copyFrom(realPosition);
@@ -1585,6 +1673,7 @@ public class BoardPanel extends FixedJPanel
 
     updateMoveHighlighting(false);
 
+    moveEnRouteTrace = null;
     moveEnRoute = null; // We shouldn't keep state between
     setQueuedMove(null); // such drastic position changes
 
@@ -1607,10 +1696,19 @@ public class BoardPanel extends FixedJPanel
     int numMadeMoves = madeMoves.size() - takebackCount;
     for (int i = madeMoves.size() - 1; i >= numMadeMoves; i--) madeMoves.removeElementAt(i);
 
-    realPosition.copyFrom(game.getInitialPosition());
-    for (int i = 0; i < numMadeMoves; i++) realPosition.makeMove((Move) madeMoves.elementAt(i));
+    if (realPosition.getUndoCount() == numMadeMoves + takebackCount) {
+      for (int i = 0; i < takebackCount; i++) realPosition.unmakeMove(realPosition.getLastUndo());
+    } else {
+      realPosition.copyFrom(game.getInitialPosition());
+      for (int i = 0; i < numMadeMoves; i++) realPosition.makeMove((Move) madeMoves.elementAt(i));
+    }
+
+    // The moves taken back may be replaced by different ones
+    if ((navigationPosition != null) && (navigationPosition.getUndoCount() > numMadeMoves))
+      getPositionAfterMove(numMadeMoves);
 
     moveEnRoute = null;
+    moveEnRouteTrace = null;
     setQueuedMove(null);
 
     // Try not to change the board if possible. If, however we were displaying the position
@@ -1638,6 +1736,7 @@ public class BoardPanel extends FixedJPanel
     return; // It could've been sent by one of the other plugins.
 
     moveEnRoute = null;
+    moveEnRouteTrace = null;
     setQueuedMove(null);
 
     isBoardPositionUpdating = true;
@@ -1666,6 +1765,10 @@ public class BoardPanel extends FixedJPanel
     Player player = evt.getPlayer();
     int time = evt.getTime();
     boolean isRunning = evt.isClockRunning();
+
+    // The time was sent by the server a while ago, and the clock has been running since
+    if (isRunning) time -= boardManager.getConn().getLagMonitor().getServerDelay();
+
     AbstractChessClock clock = player.equals(Player.WHITE_PLAYER) ? whiteClock : blackClock;
 
     clock.setTime(time);
@@ -1728,10 +1831,22 @@ public class BoardPanel extends FixedJPanel
       if (game.isPlayed()
           && (moveSendingMode == BoardManager.PREMOVE_MOVE_SENDING_MODE)
           && (isMoveEnRoute() || !isUserTurn())) setQueuedMove(move);
-      else {
-        UserMoveEvent evt2 = new UserMoveEvent(this, move);
+      else if (!isMoveEnRoute()
+          && (move.getPlayer() == realPosition.getCurrentPlayer())
+          && !checkLegality(realPosition, move)) { // Illegal move - don't bother the server
+        isBoardPositionUpdating = true;
+        board.getPosition().copyFrom(realPosition);
+        isBoardPositionUpdating = false;
+        playSound("IllegalMove");
+      } else {
+        MoveTrace trace =
+            board.isMakingUserMove()
+                ? new MoveTrace(move, board.getUserMoveTime())
+                : new MoveTrace(move);
+        UserMoveEvent evt2 = new UserMoveEvent(this, move, trace);
         fireUserMadeMove(evt2);
         moveEnRoute = evt.getMove();
+        moveEnRouteTrace = trace;
 
         // Stop the clock of the player who moved
         getClockForPlayer(move.getPlayer()).setRunning(false);
@@ -1765,6 +1880,21 @@ public class BoardPanel extends FixedJPanel
     }
   }
 
+  /**
+   * Returns the position after the specified amount of made moves. The position is shared between
+   * calls - callers may only make moves on it if they unmake them before returning.
+   */
+  private Position getPositionAfterMove(int moveNum) {
+    if (navigationPosition == null) navigationPosition = game.getInitialPosition();
+
+    while (navigationPosition.getUndoCount() > moveNum)
+      navigationPosition.unmakeMove(navigationPosition.getLastUndo());
+    while (navigationPosition.getUndoCount() < moveNum)
+      navigationPosition.makeMove((Move) madeMoves.elementAt(navigationPosition.getUndoCount()));
+
+    return navigationPosition;
+  }
+
   /**
    * This method is called when either the row or column selection in the moveListTable changes.
    * Changes the board position to the position after the selected move.
@@ -1793,22 +1923,21 @@ public class BoardPanel extends FixedJPanel
       if (moveNum > madeMoves.size()) // Shouldn't happen
       throw new IllegalStateException();
 
-      Position pos = game.getInitialPosition();
-      for (int i = 0; i < moveNum; i++) {
-        Move move = (Move) madeMoves.elementAt(i);
-        pos.makeMove(move);
-      }
+      Position pos = getPositionAfterMove(moveNum);
 
       board.clearShaded();
 
+      Position.Undo queuedMoveUndo = null;
       if ((moveNum == madeMoves.size()) && (queuedMove != null)) {
-        pos.makeMove(queuedMove);
+        queuedMoveUndo = pos.makeMove(queuedMove);
         board.setShaded(queuedMove.getEndingSquare(), true);
       }
 
       isBoardPositionUpdating = true;
       board.getPosition().copyFrom(pos);
       isBoardPositionUpdating = false;
+
+      if (queuedMoveUndo != null) pos.unmakeMove(queuedMoveUndo);
       setDisplayedMove(moveNum);
 
       if (!isPositionScrollBarUpdating)
@@ -1952,6 +2081,7 @@ public class BoardPanel extends FixedJPanel
    */
   public void setInactive() {
     this.isActive = false;
+    boardManager.getConn().getLagMonitor().removeChangeListener(lagListener);
     board.getPosition().removeMoveListener(this);
     board.setMoveInputMode(JBoard.ALL_PIECES_MOVE);
     board.setEditable(true);
@@ -1975,6 +2105,7 @@ public class BoardPanel extends FixedJPanel
    */
   public void done() {
     boardManager.removePropertyChangeListener(this);
+    boardManager.getConn().getLagMonitor().removeChangeListener(lagListener);
   }
 
   /**
@@ -19,6 +19,7 @@ package free.jin.board.event;
 import java.util.EventObject;
 
 import free.chess.Move;
+import free.jin.MoveTrace;
 
 /**
  * The event fired when the user makes a move on the board.
@@ -31,12 +32,26 @@ public class UserMoveEvent extends EventObject {
   private final Move move;
 
   /**
-   * Creates a new UserMoveEvent with the given source object and the move made.
+   * The trace recording the stages the move passes through on its way to the server.
+   */
+  private final MoveTrace trace;
+
+  /**
+   * Creates a new UserMoveEvent with the given source object and the move made, right now.
    */
   public UserMoveEvent(Object source, Move move) {
+    this(source, move, new MoveTrace(move));
+  }
+
+  /**
+   * Creates a new UserMoveEvent with the given source object, the move made and the trace recording
+   * the stages the move passes through.
+   */
+  public UserMoveEvent(Object source, Move move, MoveTrace trace) {
     super(source);
 
     this.move = move;
+    this.trace = trace;
   }
 
   /**
@@ -45,4 +60,11 @@ public class UserMoveEvent extends EventObject {
   public Move getMove() {
     return move;
   }
+
+  /**
+   * Returns the trace recording the stages the move passes through on its way to the server.
+   */
+  public MoveTrace getTrace() {
+    return trace;
+  }
 }
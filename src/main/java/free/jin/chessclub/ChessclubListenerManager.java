@@ -37,6 +37,54 @@ import free.jin.event.SeekListener;
  */
 public class ChessclubListenerManager extends BasicListenerManager {
 
+  /**
+   * The datagrams needed for chat related messages.
+   */
+  private static final int[] CHAT_DATAGRAMS = {
+    Datagram.DG_PERSONAL_TELL,
+    Datagram.DG_PERSONAL_QTELL,
+    Datagram.DG_SHOUT,
+    Datagram.DG_CHANNEL_TELL,
+    Datagram.DG_CHANNEL_QTELL,
+    Datagram.DG_KIBITZ
+  };
+
+  /**
+   * The datagrams needed for seeks.
+   */
+  private static final int[] SEEK_DATAGRAMS = {Datagram.DG_SEEK, Datagram.DG_SEEK_REMOVED};
+
+  /**
+   * The datagrams needed for game lists.
+   */
+  private static final int[] GAME_LIST_DATAGRAMS = {
+    Datagram.DG_GAMELIST_BEGIN,
+    Datagram.DG_GAMELIST_ITEM
+  };
+
+  /**
+   * The datagrams needed for chess events.
+   */
+  private static final int[] CHESS_EVENT_DATAGRAMS = {
+    Datagram.DG_TOURNEY,
+    Datagram.DG_REMOVE_TOURNEY
+  };
+
+  /**
+   * The datagrams needed for the state of friends.
+   */
+  private static final int[] FRIENDS_DATAGRAMS = {
+    Datagram.DG_NOTIFY_ARRIVED,
+    Datagram.DG_NOTIFY_LEFT,
+    Datagram.DG_NOTIFY_STATE,
+    Datagram.DG_MY_NOTIFY_LIST
+  };
+
+  /**
+   * The datagrams needed for match offers.
+   */
+  private static final int[] MATCH_OFFER_DATAGRAMS = {Datagram.DG_MATCH, Datagram.DG_MATCH_REMOVED};
+
   /**
    * The source <code>JinChessclubConnection</code>.
    */
@@ -61,12 +109,7 @@ public class ChessclubListenerManager extends BasicListenerManager {
     super.addChatListener(listener);
 
     if (listenerList.getListenerCount(ChatListener.class) == 1) {
-      source.addDatagramListener(source, Datagram.DG_PERSONAL_TELL);
-      source.addDatagramListener(source, Datagram.DG_PERSONAL_QTELL);
-      source.addDatagramListener(source, Datagram.DG_SHOUT);
-      source.addDatagramListener(source, Datagram.DG_CHANNEL_TELL);
-      source.addDatagramListener(source, Datagram.DG_CHANNEL_QTELL);
-      source.addDatagramListener(source, Datagram.DG_KIBITZ);
+      setDatagramListeners(CHAT_DATAGRAMS, true);
     }
   }
 
@@ -79,12 +122,7 @@ public class ChessclubListenerManager extends BasicListenerManager {
     super.removeChatListener(listener);
 
     if (listenerList.getListenerCount(ChatListener.class) == 0) {
-      source.removeDatagramListener(source, Datagram.DG_PERSONAL_TELL);
-      source.removeDatagramListener(source, Datagram.DG_PERSONAL_QTELL);
-      source.removeDatagramListener(source, Datagram.DG_SHOUT);
-      source.removeDatagramListener(source, Datagram.DG_CHANNEL_TELL);
-      source.removeDatagramListener(source, Datagram.DG_CHANNEL_QTELL);
-      source.removeDatagramListener(source, Datagram.DG_KIBITZ);
+      setDatagramListeners(CHAT_DATAGRAMS, false);
     }
   }
 
@@ -182,6 +220,7 @@ public class ChessclubListenerManager extends BasicListenerManager {
       for (int i = 0; i < listeners.length; i += 2) {
         if (listeners[i] == GameListener.class) {
           GameListener listener = (GameListener) listeners[i + 1];
+          long handleStart = System.nanoTime();
           try {
             if (listener instanceof ChessclubGameListener) {
               ChessclubGameListener chessclubListener = (ChessclubGameListener) listener;
@@ -204,6 +243,7 @@ public class ChessclubListenerManager extends BasicListenerManager {
           } catch (RuntimeException e) {
             e.printStackTrace();
           }
+          listenerHandled(listener, handleStart);
         }
       }
     }
@@ -225,10 +265,9 @@ public class ChessclubListenerManager extends BasicListenerManager {
     super.addSeekListener(listener);
 
     if (listenerList.getListenerCount(SeekListener.class) == 1) {
-      source.addDatagramListener(source, Datagram.DG_SEEK);
-      source.addDatagramListener(source, Datagram.DG_SEEK_REMOVED);
-      // Do not add listeners after this one - it marks the end of the
-      // datagram changes (see JinChessclubConnection.seekDatagramsStateChanged).
+      // The last datagram marks the end of the datagram changes (see
+      // JinChessclubConnection.seekDatagramsStateChanged).
+      setDatagramListeners(SEEK_DATAGRAMS, true);
     }
   }
 
@@ -241,10 +280,9 @@ public class ChessclubListenerManager extends BasicListenerManager {
     super.removeSeekListener(listener);
 
     if (listenerList.getListenerCount(SeekListener.class) == 0) {
-      source.removeDatagramListener(source, Datagram.DG_SEEK);
-      source.removeDatagramListener(source, Datagram.DG_SEEK_REMOVED);
-      // Do not remove listeners after this one - it marks the end of the
-      // datagram changes (see JinChessclubConnection.seekDatagramsStateChanged).
+      // The last datagram marks the end of the datagram changes (see
+      // JinChessclubConnection.seekDatagramsStateChanged).
+      setDatagramListeners(SEEK_DATAGRAMS, false);
     }
   }
 
@@ -257,8 +295,7 @@ public class ChessclubListenerManager extends BasicListenerManager {
     super.addGameListListener(listener);
 
     if (listenerList.getListenerCount(GameListListener.class) == 1) {
-      source.addDatagramListener(source, Datagram.DG_GAMELIST_BEGIN);
-      source.addDatagramListener(source, Datagram.DG_GAMELIST_ITEM);
+      setDatagramListeners(GAME_LIST_DATAGRAMS, true);
     }
   }
 
@@ -271,8 +308,7 @@ public class ChessclubListenerManager extends BasicListenerManager {
     super.removeGameListListener(listener);
 
     if (listenerList.getListenerCount(GameListListener.class) == 0) {
-      source.removeDatagramListener(source, Datagram.DG_GAMELIST_BEGIN);
-      source.removeDatagramListener(source, Datagram.DG_GAMELIST_ITEM);
+      setDatagramListeners(GAME_LIST_DATAGRAMS, false);
     }
   }
 
@@ -284,8 +320,7 @@ public class ChessclubListenerManager extends BasicListenerManager {
     listenerList.add(ChessEventListener.class, listener);
 
     if (listenerList.getListenerCount(ChessEventListener.class) == 1) {
-      source.addDatagramListener(source, Datagram.DG_TOURNEY);
-      source.addDatagramListener(source, Datagram.DG_REMOVE_TOURNEY);
+      setDatagramListeners(CHESS_EVENT_DATAGRAMS, true);
     }
   }
 
@@ -297,8 +332,7 @@ public class ChessclubListenerManager extends BasicListenerManager {
     listenerList.remove(ChessEventListener.class, listener);
 
     if (listenerList.getListenerCount(ChessEventListener.class) == 0) {
-      source.removeDatagramListener(source, Datagram.DG_TOURNEY);
-      source.removeDatagramListener(source, Datagram.DG_REMOVE_TOURNEY);
+      setDatagramListeners(CHESS_EVENT_DATAGRAMS, false);
     }
   }
 
@@ -310,6 +344,7 @@ public class ChessclubListenerManager extends BasicListenerManager {
     for (int i = 0; i < listeners.length; i += 2) {
       if (listeners[i] == ChessEventListener.class) {
         ChessEventListener listener = (ChessEventListener) listeners[i + 1];
+        long handleStart = System.nanoTime();
         try {
           switch (evt.getID()) {
             case ChessEventEvent.EVENT_ADDED:
@@ -322,6 +357,7 @@ public class ChessclubListenerManager extends BasicListenerManager {
         } catch (RuntimeException e) {
           e.printStackTrace();
         }
+        listenerHandled(listener, handleStart);
       }
     }
   }
@@ -335,12 +371,9 @@ public class ChessclubListenerManager extends BasicListenerManager {
     super.addFriendsListener(listener);
 
     if (listenerList.getListenerCount(FriendsListener.class) == 1) {
-      source.addDatagramListener(source, Datagram.DG_NOTIFY_ARRIVED);
-      source.addDatagramListener(source, Datagram.DG_NOTIFY_LEFT);
-      source.addDatagramListener(source, Datagram.DG_NOTIFY_STATE);
-      source.addDatagramListener(source, Datagram.DG_MY_NOTIFY_LIST);
-      // Do not add listeners after this one - it marks the end of the
-      // datagram changes (see JinChessclubConnection.friendsDatagramsStateChanged).
+      // The last datagram marks the end of the datagram changes (see
+      // JinChessclubConnection.friendsDatagramsStateChanged).
+      setDatagramListeners(FRIENDS_DATAGRAMS, true);
     }
   }
 
@@ -353,12 +386,9 @@ public class ChessclubListenerManager extends BasicListenerManager {
     super.removeFriendsListener(listener);
 
     if (listenerList.getListenerCount(FriendsListener.class) == 0) {
-      source.removeDatagramListener(source, Datagram.DG_NOTIFY_ARRIVED);
-      source.removeDatagramListener(source, Datagram.DG_NOTIFY_LEFT);
-      source.removeDatagramListener(source, Datagram.DG_NOTIFY_STATE);
-      source.removeDatagramListener(source, Datagram.DG_MY_NOTIFY_LIST);
-      // Do not remove listeners after this one - it marks the end of the
-      // datagram changes (see JinChessclubConnection.friendsDatagramsStateChanged).
+      // The last datagram marks the end of the datagram changes (see
+      // JinChessclubConnection.friendsDatagramsStateChanged).
+      setDatagramListeners(FRIENDS_DATAGRAMS, false);
     }
   }
 
@@ -371,8 +401,7 @@ public class ChessclubListenerManager extends BasicListenerManager {
     super.addMatchOfferListener(listener);
 
     if (listenerList.getListenerCount(MatchOfferListener.class) == 1) {
-      source.addDatagramListener(source, Datagram.DG_MATCH);
-      source.addDatagramListener(source, Datagram.DG_MATCH_REMOVED);
+      setDatagramListeners(MATCH_OFFER_DATAGRAMS, true);
     }
   }
 
@@ -385,8 +414,24 @@ public class ChessclubListenerManager extends BasicListenerManager {
     super.removeMatchOfferListener(listener);
 
     if (listenerList.getListenerCount(MatchOfferListener.class) == 0) {
-      source.removeDatagramListener(source, Datagram.DG_MATCH);
-      source.removeDatagramListener(source, Datagram.DG_MATCH_REMOVED);
+      setDatagramListeners(MATCH_OFFER_DATAGRAMS, false);
+    }
+  }
+
+  /**
+   * Adds (if <code>add</code> is <code>true</code>) or removes the connection as a
+   * <code>DatagramListener</code> for the specified datagrams, in the specified order, as a single
+   * group of datagram state changes.
+   */
+  private void setDatagramListeners(int[] dgs, boolean add) {
+    source.beginDGStateChanges();
+    try {
+      for (int i = 0; i < dgs.length; i++) {
+        if (add) source.addDatagramListener(source, dgs[i]);
+        else source.removeDatagramListener(source, dgs[i]);
+      }
+    } finally {
+      source.endDGStateChanges();
     }
   }
 }
@@ -66,14 +66,19 @@ import free.jin.GameListItem;
 import free.jin.HistoryListItem;
 import free.jin.I18n;
 import free.jin.Jin;
+import free.jin.LagMonitor;
 import free.jin.LibListItem;
 import free.jin.MatchOffer;
 import free.jin.MatchOfferConnection;
+import free.jin.MoveLatencyStats;
+import free.jin.MoveTrace;
 import free.jin.PGNConnection;
+import free.jin.ProtocolLogging;
 import free.jin.SearchListItem;
 import free.jin.Seek;
 import free.jin.SeekConnection;
 import free.jin.ServerUser;
+import free.jin.SessionRecording;
 import free.jin.StoredListItem;
 import free.jin.UserMatchOffer;
 import free.jin.UserSeek;
@@ -124,11 +129,41 @@ public class JinChessclubConnection extends ChessclubConnection
    */
   private boolean isLoginProcedureEnded = false;
 
+  /**
+   * The monitor of the lag between us and the server.
+   */
+  private final LagMonitor lagMonitor = new ChessclubLagMonitor();
+
+  /**
+   * The maximum amount of server messages delivered to the AWT thread in one batch.
+   */
+  private static final int MAX_EVENT_BATCH_SIZE = 200;
+
+  /**
+   * The maximum amount of time, in milliseconds, a batch of server messages may hold the AWT thread
+   * for.
+   */
+  private static final int MAX_EVENT_BATCH_TIME = 30;
+
+  /**
+   * The amount of pending low priority (chat) messages beyond which shouts, channel tells and the
+   * like are dropped.
+   */
+  private static final int LOW_LANE_CAPACITY = 1000;
+
   /**
    * Creates a new JinChessclubConnection with the specified details.
    */
   public JinChessclubConnection(String username, String password) {
-    super(username, password, System.out);
+    super(username, password, ProtocolLogging.getLog());
+
+    // Deliver bursts of server messages (such as when logging in) to the AWT thread in batches,
+    // without holding it for too long at a time.
+    setEventBatching(MAX_EVENT_BATCH_SIZE, MAX_EVENT_BATCH_TIME);
+
+    // Rather than let a flood of shouts and channel tells pile up without bound, drop them once too
+    // many messages are waiting in the low priority lane.
+    setLaneCapacity(LOW_LANE, LOW_LANE_CAPACITY);
 
     setLevel1(5); // For client tags
 
@@ -189,6 +224,14 @@ public class JinChessclubConnection extends ChessclubConnection
     return getChessclubListenerManager();
   }
 
+  /**
+   * Returns the monitor of the lag between us and the server.
+   */
+  @Override
+  public LagMonitor getLagMonitor() {
+    return lagMonitor;
+  }
+
   /**
    * Sends the specified command to the server.
    */
@@ -214,14 +257,14 @@ public class JinChessclubConnection extends ChessclubConnection
   }
 
   /**
-   * Fires an "attempting" connection event and invokes
-   * {@link free.util.Connection#initiateConnect(String, int)}.
+   * Fires an "attempting" connection event and initiates the connection (or a replay of a
+   * recorded session) via {@link SessionRecording}.
    */
   @Override
   public void initiateConnectAndLogin(String hostname, int port) {
     listenerManager.fireConnectionAttempted(this, hostname, port);
 
-    initiateConnect(hostname, port);
+    SessionRecording.initiateConnect(this, hostname, port);
   }
 
   /**
@@ -266,6 +309,8 @@ public class JinChessclubConnection extends ChessclubConnection
     listenerManager.fireLoginSucceeded(this);
 
     setDGOnAgain(Datagram.DG_DUMMY_RESPONSE, END_OF_LOGIN_PROCEDURE_TAG);
+
+    lagMonitor.start("chessclub.com " + getUsername());
   }
 
   /**
@@ -283,6 +328,7 @@ public class JinChessclubConnection extends ChessclubConnection
    */
   @Override
   protected void handleDisconnection(IOException e) {
+    lagMonitor.stop();
     listenerManager.fireConnectionLost(this);
 
     super.handleDisconnection(e);
@@ -371,7 +417,7 @@ public class JinChessclubConnection extends ChessclubConnection
       else e.printStackTrace(); // Shouldn't happen, I think
     }
 
-    if (result == null) result = new Socket(hostname, port);
+    if (result == null) result = super.connectImpl(hostname, port);
 
     return result;
   }
@@ -781,6 +827,46 @@ public class JinChessclubConnection extends ChessclubConnection
    */
   protected void processDummyResponse(String clientTag) {
     if (END_OF_LOGIN_PROCEDURE_TAG.equals(clientTag)) isLoginProcedureEnded = true;
+    else if ((clientTag != null) && clientTag.startsWith(LAG_PROBE_TAG_PREFIX))
+      lagMonitor.probeAnswered(
+          clientTag.substring(LAG_PROBE_TAG_PREFIX.length()), getMessageReceiveTime());
+  }
+
+  /**
+   * The prefix of the tag we apply to the DG_DUMMY_RESPONSE probes of the lag monitor. The id of
+   * the probe follows it.
+   */
+  private static final String LAG_PROBE_TAG_PREFIX = "LagProbe";
+
+  /**
+   * The lag monitor. Probes the server by turning DG_DUMMY_RESPONSE on again, which the server
+   * answers with a DG_DUMMY_RESPONSE tagged like the command.
+   */
+  private class ChessclubLagMonitor extends LagMonitor {
+
+    /**
+     * Returns whether the connection is connected.
+     */
+    @Override
+    protected boolean isConnected() {
+      return JinChessclubConnection.this.isConnected();
+    }
+
+    /**
+     * Returns a "set-2" command for DG_DUMMY_RESPONSE.
+     */
+    @Override
+    protected String getProbeCommand() {
+      return "set-2 " + Datagram.DG_DUMMY_RESPONSE + " 1";
+    }
+
+    /**
+     * Sends the specified command, tagged with the probe's id.
+     */
+    @Override
+    protected void sendProbe(String id, String command) {
+      sendTaggedCommand(command, LAG_PROBE_TAG_PREFIX + id);
+    }
   }
 
   /**
@@ -1113,6 +1199,18 @@ public class JinChessclubConnection extends ChessclubConnection
    */
   private final Hashtable unechoedMoves = new Hashtable(1);
 
+  /**
+   * A Hashtable mapping the moves in <code>unechoedMoves</code> to the MoveTraces recording the
+   * stages they pass through.
+   */
+  private final Hashtable moveTraces = new Hashtable(1);
+
+  /**
+   * The MoveTraces of the moves we sent which haven't been written to the server yet, in the order
+   * they were sent in.
+   */
+  private final Vector unwrittenMoveTraces = new Vector(2);
+
   /**
    * The amount of user played games.
    */
@@ -2011,7 +2109,7 @@ public class JinChessclubConnection extends ChessclubConnection
       if (gameInfo == null) return;
 
       Game game = gameInfo.game;
-      unechoedMoves.remove(game);
+      discardMoveTraces((Vector) unechoedMoves.remove(game));
 
       // Make sure the game doesn't stay in progress...
       if (game.getResultCode() == Game.GAME_IN_PROGRESS)
@@ -2111,22 +2209,68 @@ public class JinChessclubConnection extends ChessclubConnection
           (variationCode != ChessclubConstants.INITIAL_MOVE)
               && (variationCode != ChessclubConstants.FORWARD_MOVE);
 
-      clearOffers(clientTag, gameInfo, move.getPlayer().getOpponent());
-      fireGameEvent(new MoveMadeEvent(this, clientTag, game, move, isNewMove));
-
+      // Match the echo before firing the event, so that the trace is complete when it's fired
       if (gameInfo.numMovesToFollow > 0) {
         gameInfo.numMovesToFollow--;
       } else {
         Vector unechoedGameMoves = (Vector) unechoedMoves.get(game);
         if ((unechoedGameMoves != null) && (unechoedGameMoves.size() != 0)) { // Might be our move.
           Move madeMove = (Move) unechoedGameMoves.elementAt(0);
-          if (isSameMove(game, move, madeMove)) unechoedGameMoves.removeElementAt(0);
+          if (isSameMove(game, move, madeMove)) {
+            unechoedGameMoves.removeElementAt(0);
+            moveEchoed(madeMove);
+          }
         }
       }
+
+      clearOffers(clientTag, gameInfo, move.getPlayer().getOpponent());
+      fireGameEvent(new MoveMadeEvent(this, clientTag, game, move, isNewMove));
     } catch (NoSuchGameException e) {
     }
   }
 
+  /**
+   * Records the stages the specified move we sent, which the server has just echoed, passed through
+   * into the shared <code>MoveLatencyStats</code>.
+   */
+  private void moveEchoed(Move sentMove) {
+    MoveTrace trace = (MoveTrace) moveTraces.remove(sentMove);
+    if (trace == null) return;
+
+    trace.stamp(MoveTrace.RECEIVED, getMessageReceiveTime());
+    trace.stamp(MoveTrace.ECHOED);
+    MoveLatencyStats.getInstance().moveEchoed(trace);
+  }
+
+  /**
+   * Forgets the traces of the specified moves we sent, which will not be echoed. The specified
+   * <code>Vector</code> may be <code>null</code>.
+   */
+  private void discardMoveTraces(Vector sentMoves) {
+    if (sentMoves == null) return;
+
+    for (int i = 0; i < sentMoves.size(); i++) moveTraces.remove(sentMoves.elementAt(i));
+  }
+
+  /**
+   * Records the time our moves and lag probes are written to the server.
+   */
+  @Override
+  protected void commandWritten(String command, long queueTime, long sendTime) {
+    lagMonitor.commandWritten(command, sendTime);
+
+    synchronized (unwrittenMoveTraces) {
+      if (unwrittenMoveTraces.isEmpty()) return;
+
+      // Commands are written in the order they're sent in, and only get prefixed on the way
+      MoveTrace trace = (MoveTrace) unwrittenMoveTraces.elementAt(0);
+      if (command.endsWith(trace.getCommand())) {
+        unwrittenMoveTraces.removeElementAt(0);
+        trace.stamp(MoveTrace.WRITTEN, sendTime);
+      }
+    }
+  }
+
   /**
    * Returns whether <code>echoedMove</code> (sent to us by the server) is the same move as
    * <code>sentMove</code> (a move we sent to the server).
@@ -2360,6 +2504,7 @@ public class JinChessclubConnection extends ChessclubConnection
 
       Move move = (Move) unechoedGameMoves.elementAt(0);
       if (moveToString(game, move).equals(moveString)) { // Our move
+        discardMoveTraces(unechoedGameMoves);
         unechoedGameMoves.removeAllElements();
         fireGameEvent(new IllegalMoveEvent(this, clientTag, game, move, reasonCode));
       }
@@ -2612,13 +2757,29 @@ public class JinChessclubConnection extends ChessclubConnection
    */
   @Override
   public void makeMove(Game game, Move move) {
+    makeMove(game, move, new MoveTrace(move));
+  }
+
+  /**
+   * Makes the given move in the given game, recording the stages it passes through into the
+   * specified trace.
+   */
+  @Override
+  public void makeMove(Game game, Move move, MoveTrace trace) {
     String moveString = moveToString(game, move);
+    String command;
     if (userGamesCount > 1)
       // It seems that "; goto <gamenum> ; <movestring>" will abort making the
       // move (or whatever other command follows it) if you aren't playing
       // a game with the specified number.
-      sendCommand("multi goto " + game.getID() + " ; chessmove " + moveString, true, true, null);
-    else sendCommand("chessmove " + moveString, true, true, null);
+      command = "multi goto " + game.getID() + " ; chessmove " + moveString;
+    else command = "chessmove " + moveString;
+
+    trace.setCommand(command);
+    trace.stamp(MoveTrace.SENT);
+    moveTraces.put(move, trace);
+    unwrittenMoveTraces.addElement(trace);
+    sendCommand(command, true, true, null, true);
 
     Vector unechoedGameMoves = (Vector) unechoedMoves.get(game);
     if (unechoedGameMoves == null) {
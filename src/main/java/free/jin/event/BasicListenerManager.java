@@ -21,13 +21,16 @@ import free.jin.FriendsConnection;
 import free.jin.GameListConnection;
 import free.jin.MatchOfferConnection;
 import free.jin.SeekConnection;
+import free.util.ConnectionStats;
 import free.util.EventListenerList;
 import free.util.UnsupportedOperationException;
 
 /**
  * A basic implementation of the <code>ListenerManager</code> interface which uses an
  * <code>EventListenerList</code> to hold the listeners. It also provides convenient event firing
- * methods.
+ * methods. The time each listener takes to handle an event is recorded, per listener class, into
+ * the statistics of the source connection, if it has them (see
+ * {@link free.util.Connection#getStats()}).
  */
 public class BasicListenerManager
     implements ListenerManager, SeekListenerManager, GameListListenerManager,
@@ -43,12 +46,29 @@ public class BasicListenerManager
    */
   protected final EventListenerList listenerList = new EventListenerList();
 
+  /**
+   * The statistics we record the time taken by listeners into, or <code>null</code> if the source
+   * connection doesn't keep statistics.
+   */
+  private final ConnectionStats stats;
+
   /**
    * Creates a new <code>BasicListenerManager</code> with the specified source
    * <code>Connection</code>.
    */
   public BasicListenerManager(Connection source) {
     this.source = source;
+    this.stats =
+        source instanceof free.util.Connection ? ((free.util.Connection) source).getStats() : null;
+  }
+
+  /**
+   * Records that the specified listener has finished handling an event, which it started handling
+   * at the specified time, as returned by <code>System.nanoTime()</code>.
+   */
+  protected final void listenerHandled(Object listener, long handleStart) {
+    if (stats != null)
+      stats.listenerHandled(listener.getClass().getName(), System.nanoTime() - handleStart);
   }
 
   /**
@@ -76,11 +96,13 @@ public class BasicListenerManager
     for (int i = 0; i < listeners.length; i += 2) {
       if (listeners[i] == ConnectionListener.class) {
         ConnectionListener listener = (ConnectionListener) listeners[i + 1];
+        long handleStart = System.nanoTime();
         try {
           listener.connectionAttempted(conn, hostname, port);
         } catch (RuntimeException e) {
           e.printStackTrace();
         }
+        listenerHandled(listener, handleStart);
       }
     }
   }
@@ -94,11 +116,13 @@ public class BasicListenerManager
     for (int i = 0; i < listeners.length; i += 2) {
       if (listeners[i] == ConnectionListener.class) {
         ConnectionListener listener = (ConnectionListener) listeners[i + 1];
+        long handleStart = System.nanoTime();
         try {
           listener.connectionEstablished(conn);
         } catch (RuntimeException e) {
           e.printStackTrace();
         }
+        listenerHandled(listener, handleStart);
       }
     }
   }
@@ -111,11 +135,13 @@ public class BasicListenerManager
     for (int i = 0; i < listeners.length; i += 2) {
       if (listeners[i] == ConnectionListener.class) {
         ConnectionListener listener = (ConnectionListener) listeners[i + 1];
+        long handleStart = System.nanoTime();
         try {
           listener.connectingFailed(conn, reason);
         } catch (RuntimeException e) {
           e.printStackTrace();
         }
+        listenerHandled(listener, handleStart);
       }
     }
   }
@@ -128,11 +154,13 @@ public class BasicListenerManager
     for (int i = 0; i < listeners.length; i += 2) {
       if (listeners[i] == ConnectionListener.class) {
         ConnectionListener listener = (ConnectionListener) listeners[i + 1];
+        long handleStart = System.nanoTime();
         try {
           listener.loginSucceeded(conn);
         } catch (RuntimeException e) {
           e.printStackTrace();
         }
+        listenerHandled(listener, handleStart);
       }
     }
   }
@@ -145,11 +173,13 @@ public class BasicListenerManager
     for (int i = 0; i < listeners.length; i += 2) {
       if (listeners[i] == ConnectionListener.class) {
         ConnectionListener listener = (ConnectionListener) listeners[i + 1];
+        long handleStart = System.nanoTime();
         try {
           listener.loginFailed(conn, reason);
         } catch (RuntimeException e) {
           e.printStackTrace();
         }
+        listenerHandled(listener, handleStart);
       }
     }
   }
@@ -163,11 +193,13 @@ public class BasicListenerManager
     for (int i = 0; i < listeners.length; i += 2) {
       if (listeners[i] == ConnectionListener.class) {
         ConnectionListener listener = (ConnectionListener) listeners[i + 1];
+        long handleStart = System.nanoTime();
         try {
           listener.connectionLost(conn);
         } catch (RuntimeException e) {
           e.printStackTrace();
         }
+        listenerHandled(listener, handleStart);
       }
     }
   }
@@ -198,11 +230,13 @@ public class BasicListenerManager
     for (int i = 0; i < listeners.length; i += 2) {
       if (listeners[i] == PlainTextListener.class) {
         PlainTextListener listener = (PlainTextListener) listeners[i + 1];
+        long handleStart = System.nanoTime();
         try {
           listener.plainTextReceived(evt);
         } catch (RuntimeException e) {
           e.printStackTrace();
         }
+        listenerHandled(listener, handleStart);
       }
     }
   }
@@ -233,11 +267,13 @@ public class BasicListenerManager
     for (int i = 0; i < listeners.length; i += 2) {
       if (listeners[i] == ChatListener.class) {
         ChatListener listener = (ChatListener) listeners[i + 1];
+        long handleStart = System.nanoTime();
         try {
           listener.chatMessageReceived(evt);
         } catch (RuntimeException e) {
           e.printStackTrace();
         }
+        listenerHandled(listener, handleStart);
       }
     }
   }
@@ -268,6 +304,7 @@ public class BasicListenerManager
     for (int i = 0; i < listeners.length; i += 2) {
       if (listeners[i] == GameListener.class) {
         GameListener listener = (GameListener) listeners[i + 1];
+        long handleStart = System.nanoTime();
         try {
           if (evt instanceof GameStartEvent) listener.gameStarted((GameStartEvent) evt);
           else if (evt instanceof GameEndEvent) listener.gameEnded((GameEndEvent) evt);
@@ -285,6 +322,7 @@ public class BasicListenerManager
         } catch (RuntimeException e) {
           e.printStackTrace();
         }
+        listenerHandled(listener, handleStart);
       }
     }
   }
@@ -327,6 +365,7 @@ public class BasicListenerManager
     for (int i = 0; i < listeners.length; i += 2) {
       if (listeners[i] == SeekListener.class) {
         SeekListener listener = (SeekListener) listeners[i + 1];
+        long handleStart = System.nanoTime();
         try {
           switch (evt.getID()) {
             case SeekEvent.SEEK_ADDED:
@@ -341,6 +380,7 @@ public class BasicListenerManager
         } catch (RuntimeException e) {
           e.printStackTrace();
         }
+        listenerHandled(listener, handleStart);
       }
     }
   }
@@ -384,11 +424,13 @@ public class BasicListenerManager
     for (int i = 0; i < listeners.length; i += 2) {
       if (listeners[i] == GameListListener.class) {
         GameListListener listener = (GameListListener) listeners[i + 1];
+        long handleStart = System.nanoTime();
         try {
           listener.gameListArrived(evt);
         } catch (RuntimeException e) {
           e.printStackTrace();
         }
+        listenerHandled(listener, handleStart);
       }
     }
   }
@@ -431,6 +473,7 @@ public class BasicListenerManager
     for (int i = 0; i < listenerList.length; i += 2) {
       if (listenerList[i] == FriendsListener.class) {
         FriendsListener listener = (FriendsListener) listenerList[i + 1];
+        long handleStart = System.nanoTime();
         try {
           switch (evt.getID()) {
             case FriendsEvent.FRIEND_CONNECTED:
@@ -452,6 +495,7 @@ public class BasicListenerManager
         } catch (RuntimeException e) {
           e.printStackTrace();
         }
+        listenerHandled(listener, handleStart);
       }
     }
   }
@@ -494,6 +538,7 @@ public class BasicListenerManager
     for (int i = 0; i < listenerList.length; i += 2) {
       if (listenerList[i] == MatchOfferListener.class) {
         MatchOfferListener listener = (MatchOfferListener) listenerList[i + 1];
+        long handleStart = System.nanoTime();
         try {
           switch (evt.getID()) {
             case MatchOfferEvent.MATCH_OFFER_MADE:
@@ -506,6 +551,7 @@ public class BasicListenerManager
         } catch (RuntimeException e) {
           e.printStackTrace();
         }
+        listenerHandled(listener, handleStart);
       }
     }
   }
@@ -60,10 +60,15 @@ import free.jin.Connection;
 import free.jin.Game;
 import free.jin.I18n;
 import free.jin.Jin;
+import free.jin.LagMonitor;
+import free.jin.MoveLatencyStats;
+import free.jin.MoveTrace;
 import free.jin.PGNConnection;
+import free.jin.ProtocolLogging;
 import free.jin.Seek;
 import free.jin.SeekConnection;
 import free.jin.ServerUser;
+import free.jin.SessionRecording;
 import free.jin.UserSeek;
 import free.jin.event.BoardFlipEvent;
 import free.jin.event.ChatEvent;
@@ -94,12 +99,43 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 	 */
 	private final FreechessListenerManager listenerManager = new FreechessListenerManager(this);
 
+	/**
+	 * The monitor of the lag between us and the server.
+	 */
+	private final LagMonitor lagMonitor = new FreechessLagMonitor();
+
+	/**
+	 * The maximum amount of server messages delivered to the AWT thread in one
+	 * batch.
+	 */
+	private static final int MAX_EVENT_BATCH_SIZE = 200;
+
+	/**
+	 * The maximum amount of time, in milliseconds, a batch of server messages may
+	 * hold the AWT thread for.
+	 */
+	private static final int MAX_EVENT_BATCH_TIME = 30;
+
+	/**
+	 * The amount of pending low priority (chat) messages beyond which shouts,
+	 * channel tells and the like are dropped.
+	 */
+	private static final int LOW_LANE_CAPACITY = 1000;
+
 	/**
 	 * Creates a new JinFreechessConnection with the specified hostname, port,
 	 * requested username and password.
 	 */
 	public JinFreechessConnection(String requestedUsername, String password) {
-		super(requestedUsername, password, System.out);
+		super(requestedUsername, password, ProtocolLogging.getLog());
+
+		// Deliver bursts of server messages (such as when logging in) to the AWT
+		// thread in batches, without holding it for too long at a time.
+		setEventBatching(MAX_EVENT_BATCH_SIZE, MAX_EVENT_BATCH_TIME);
+
+		// Rather than let a flood of shouts and channel tells pile up without bound,
+		// drop them once too many messages are waiting in the low priority lane.
+		setLaneCapacity(LOW_LANE, LOW_LANE_CAPACITY);
 
 		setInterface(Jin.getAppName() + " " + Jin.getAppVersion() + " (" + System.getProperty("java.vendor") + " "
 				+ System.getProperty("java.version") + ", " + System.getProperty("os.name") + " " + getSafeOSVersion()
@@ -111,7 +147,13 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 		setIvarState(Ivar.SHOWOWNSEEK, true);
 		setIvarState(Ivar.PENDINFO, true);
 		setIvarState(Ivar.MOVECASE, true);
-		// setIvarState(Ivar.COMPRESSMOVE, true); Pending DAV's bugfixing spree
+
+		// Low bandwidth mode - the server sends a short delta-board instead of a full
+		// style12 board for each move in a regular chess game. Off by default, since
+		// the server has been known to get it wrong.
+		if (Boolean.getBoolean("free.jin.freechess.compressmove"))
+			setIvarState(Ivar.COMPRESSMOVE, true);
+
 		setIvarState(Ivar.LOCK, true);
 	}
 
@@ -158,6 +200,14 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 		return getFreechessListenerManager();
 	}
 
+	/**
+	 * Returns the monitor of the lag between us and the server.
+	 */
+	@Override
+	public LagMonitor getLagMonitor() {
+		return lagMonitor;
+	}
+
 	/**
 	 * Returns out ListenerManager as a reference to FreechessListenerManager.
 	 */
@@ -182,14 +232,14 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 	}
 
 	/**
-	 * Fires an "attempting" connection event and invokes
-	 * {@link free.util.Connection#initiateConnect(String, int)}.
+	 * Fires an "attempting" connection event and initiates the connection (or a replay of a
+	 * recorded session) via {@link SessionRecording}.
 	 */
 	@Override
 	public void initiateConnectAndLogin(String hostname, int port) {
 		listenerManager.fireConnectionAttempted(this, hostname, port);
 
-		initiateConnect(hostname, port);
+		SessionRecording.initiateConnect(this, hostname, port);
 	}
 
 	/**
@@ -223,6 +273,8 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 		filterLine("Bell off.");
 
 		listenerManager.fireLoginSucceeded(this);
+
+		lagMonitor.start("freechess.org " + getUsername());
 	}
 
 	/**
@@ -240,6 +292,7 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 	 */
 	@Override
 	protected void handleDisconnection(IOException e) {
+		lagMonitor.stop();
 		listenerManager.fireConnectionLost(this);
 
 		super.handleDisconnection(e);
@@ -275,7 +328,7 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 		}
 
 		if (result == null)
-			result = new Socket(hostname, port);
+			result = super.connectImpl(hostname, port);
 
 		return result;
 	}
@@ -297,6 +350,8 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 	protected boolean processIvarStateChanged(Ivar ivar, boolean state) {
 		if (ivar == Ivar.SEEKINFO)
 			seekInfoChanged(state);
+		else if ((ivar == Ivar.NOWRAP) && lagMonitor.isProbePending())
+			lagMonitor.probeAnswered(null, getMessageReceiveTime());
 
 		IvarStateChangeEvent evt = new IvarStateChangeEvent(this, ivar, state);
 
@@ -305,6 +360,40 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 		return false;
 	}
 
+	/**
+	 * The lag monitor. Since FICS doesn't support tagged commands, it probes the
+	 * server by setting the (essential, and therefore already set) nowrap ivar,
+	 * which the server answers with a "nowrap set." line. The probe is sent with
+	 * "$$", so that it doesn't reset the user's idle time.
+	 */
+	private class FreechessLagMonitor extends LagMonitor {
+
+		/**
+		 * Returns whether the connection is connected.
+		 */
+		@Override
+		protected boolean isConnected() {
+			return JinFreechessConnection.this.isConnected();
+		}
+
+		/**
+		 * Returns "iset nowrap 1".
+		 */
+		@Override
+		protected String getProbeCommand() {
+			return "iset " + Ivar.NOWRAP.getName() + " 1";
+		}
+
+		/**
+		 * Sends the specified command and filters out the server's answer.
+		 */
+		@Override
+		protected void sendProbe(String id, String command) {
+			filterLine(Ivar.NOWRAP.getName() + " set.");
+			sendCommand(command, false, true, true);
+		}
+	}
+
 	/**
 	 * Simply forwards to <code>sendCommand</code>, since FICS doesn't support
 	 * tagged commands.
@@ -632,6 +721,18 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 	 */
 	private final Hashtable unechoedMoves = new Hashtable(1);
 
+	/**
+	 * A Hashtable mapping the moves in <code>unechoedMoves</code> to the
+	 * MoveTraces recording the stages they pass through.
+	 */
+	private final Hashtable moveTraces = new Hashtable(1);
+
+	/**
+	 * The MoveTraces of the moves we sent which haven't been written to the
+	 * server yet, in the order they were sent in.
+	 */
+	private final Vector unwrittenMoveTraces = new Vector(2);
+
 	/**
 	 * A list of game numbers of ongoing games which we can't support for some
 	 * reason (not a supported variant for example).
@@ -735,6 +836,7 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 		if (unstartedGameInfo != null) // A new game
 			gameData = startGame(unstartedGameInfo, boardData);
 		else if (gameData != null) { // A known game
+			syncBoardData(gameData);
 			Style12Struct oldBoardData = gameData.boardData;
 			int plyDifference = boardData.getPlayedPlyCount() - oldBoardData.getPlayedPlyCount();
 
@@ -783,53 +885,73 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 	}
 
 	/**
-	 * Processes a delta-board. Instead of actually handing the delta-board, this
-	 * method, instead, creates a Style12Struct object and then asks
-	 * <code>processStyle12</code> to handle it.
+	 * Processes a delta-board. The move is applied directly to the game's current
+	 * position (kept in <code>InternalGameData</code> between delta-boards), and the
+	 * appropriate events are fired without going through a
+	 * <code>Style12Struct</code>; one is only synthesized if a real style12 board
+	 * arrives later and needs to be compared with the previous state (see
+	 * {@link #syncBoardData(InternalGameData)}). The server only sends delta-boards
+	 * for regular chess, but if one arrives for a game we can't apply it to, we ask
+	 * for a full style12 board instead.
 	 */
 	@Override
 	protected boolean processDeltaBoard(DeltaBoardStruct data) {
 		Integer gameNumber = new Integer(data.getGameNumber());
 		InternalGameData gameData = (InternalGameData) ongoingGamesData.get(gameNumber);
 
-		Game game = gameData.game;
-		if (game.getVariant() != Chess.getInstance())
-			throw new IllegalStateException("delta-boards should only be sent for regular chess");
-
-		Style12Struct lastBoardData = gameData.boardData;
-		Vector moveList = gameData.moveList;
+		if ((gameData == null) || (gameData.boardData == null)
+				|| (gameData.game.getVariant() != Chess.getInstance())) {
+			if (!unsupportedGames.contains(gameNumber))
+				sendCommand("refresh " + gameNumber, true, true, true);
+			return true;
+		}
 
-		Position pos = game.getInitialPosition();
-		for (int i = 0; i < moveList.size(); i++)
-			pos.makeMove((Move) moveList.elementAt(i));
+		Game game = gameData.game;
+		Position pos = gameData.position;
+		if (pos == null)
+			pos = gameData.startDeltas();
 
 		ChessMove move = (ChessMove) (Move.parseWarrenSmith(data.getMoveSmith(), pos, data.getMoveAlgebraic()));
 
 		Square startSquare = move.getStartingSquare();
 		ChessPiece movingPiece = (ChessPiece) ((startSquare == null) ? null : pos.getPieceAt(startSquare));
+		Player mover = pos.getCurrentPlayer();
 
 		pos.makeMove(move);
 
+		gameData.deltaMoveMade(move, movingPiece, data);
+
+		moveMade(gameData, move);
+
+		// The clock of the player who moved stops, and his opponent's starts
+		int moverTime = data.getRemainingTime();
+		int opponentTime = mover.isWhite() ? gameData.blackTime : gameData.whiteTime;
+		listenerManager.fireGameEvent(new ClockAdjustmentEvent(this, null, game, mover, moverTime, false));
+		listenerManager.fireGameEvent(
+				new ClockAdjustmentEvent(this, null, game, mover.getOpponent(), opponentTime, true));
+
+		return true;
+	}
+
+	/**
+	 * If delta-boards have been applied to the specified game since its last
+	 * style12 board, replaces the board with one synthesized from the game's
+	 * current state, so that it can be compared with a newly arrived style12 board.
+	 */
+	private void syncBoardData(InternalGameData gameData) {
+		if (gameData.position == null)
+			return;
+
+		Game game = gameData.game;
+		Style12Struct lastBoardData = gameData.boardData;
+		Position pos = gameData.position;
+		ChessMove move = gameData.lastMove;
+		DeltaBoardStruct lastDelta = gameData.lastDelta;
+
 		String boardLexigraphic = pos.getLexigraphic();
 		String currentPlayer = pos.getCurrentPlayer().isWhite() ? "W" : "B";
 		int doublePawnPushFile = move.getDoublePawnPushFile();
-		boolean kingMoved = movingPiece.isKing();
-		boolean canWhiteCastleKingside = lastBoardData.canWhiteCastleKingside() && !kingMoved
-				&& !Square.getInstance(7, 0).equals(startSquare);
-		boolean canWhiteCastleQueenside = lastBoardData.canBlackCastleQueenside() && !kingMoved
-				&& !Square.getInstance(0, 0).equals(startSquare);
-		boolean canBlackCastleKingside = lastBoardData.canBlackCastleKingside() && !kingMoved
-				&& !Square.getInstance(7, 7).equals(startSquare);
-		boolean canBlackCastleQueenside = lastBoardData.canBlackCastleQueenside() && !kingMoved
-				&& !Square.getInstance(0, 7).equals(startSquare);
-
-		boolean isIrreversibleMove = movingPiece.isPawn() || move.isCapture()
-				|| (canWhiteCastleKingside != lastBoardData.canWhiteCastleKingside())
-				|| (canWhiteCastleQueenside != lastBoardData.canWhiteCastleQueenside())
-				|| (canBlackCastleKingside != lastBoardData.canBlackCastleKingside())
-				|| (canBlackCastleQueenside != lastBoardData.canBlackCastleQueenside());
-		int pliesSinceIrreversible = isIrreversibleMove ? 0 : lastBoardData.getPliesSinceIrreversible() + 1;
-
+		int gameNumber = lastBoardData.getGameNumber();
 		String whiteName = lastBoardData.getWhiteName();
 		String blackName = lastBoardData.getBlackName();
 		int gameType = lastBoardData.getGameType();
@@ -839,25 +961,21 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 		int inc = lastBoardData.getIncrement();
 		int whiteStrength = calcStrength(pos, Player.WHITE_PLAYER);
 		int blackStrength = calcStrength(pos, Player.BLACK_PLAYER);
-		int whiteTime = pos.getCurrentPlayer().isBlack() ? data.getRemainingTime() : lastBoardData.getWhiteTime();
-		int blackTime = pos.getCurrentPlayer().isWhite() ? data.getRemainingTime() : lastBoardData.getBlackTime();
-		int nextMoveNumber = lastBoardData.getNextMoveNumber() + (pos.getCurrentPlayer().isWhite() ? 1 : 0);
+		int plies = lastBoardData.getPlayedPlyCount() + gameData.deltaCount;
+		int nextMoveNumber = plies / 2 + 1;
 		String moveVerbose = createVerboseMove(pos, move);
-		String moveSAN = data.getMoveAlgebraic();
-		int moveTime = data.getTakenTime();
+		String moveSAN = lastDelta.getMoveAlgebraic();
+		int moveTime = lastDelta.getTakenTime();
 		boolean isBoardFlipped = lastBoardData.isBoardFlipped();
 		boolean isClockRunning = true;
 		int lag = 0; // The server doesn't currently send us this information
 
-		Style12Struct boardData = new Style12Struct(boardLexigraphic, currentPlayer, doublePawnPushFile,
-				canWhiteCastleKingside, canWhiteCastleQueenside, canBlackCastleKingside, canBlackCastleQueenside,
-				pliesSinceIrreversible, gameNumber.intValue(), whiteName, blackName, gameType, isPlayedGame, isMyTurn,
-				initTime, inc, whiteStrength, blackStrength, whiteTime, blackTime, nextMoveNumber, moveVerbose, moveSAN,
-				moveTime, isBoardFlipped, isClockRunning, lag);
-
-		processStyle12(boardData);
-
-		return true;
+		gameData.boardData = new Style12Struct(boardLexigraphic, currentPlayer, doublePawnPushFile,
+				gameData.canWhiteCastleKingside, gameData.canWhiteCastleQueenside, gameData.canBlackCastleKingside,
+				gameData.canBlackCastleQueenside, gameData.pliesSinceIrreversible, gameNumber, whiteName, blackName,
+				gameType, isPlayedGame, isMyTurn, initTime, inc, whiteStrength, blackStrength, gameData.whiteTime,
+				gameData.blackTime, nextMoveNumber, moveVerbose, moveSAN, moveTime, isBoardFlipped, isClockRunning, lag);
+		gameData.position = null;
 	}
 
 	/**
@@ -946,6 +1064,49 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 		 */
 		public boolean isBSetup = false;
 
+		/**
+		 * The current position of the game, if delta-boards have been applied to it
+		 * since <code>boardData</code> arrived; <code>null</code> otherwise.
+		 */
+		public Position position = null;
+
+		/**
+		 * The amount of delta-boards applied since <code>boardData</code> arrived.
+		 */
+		public int deltaCount = 0;
+
+		/**
+		 * The last move applied from a delta-board.
+		 */
+		public ChessMove lastMove = null;
+
+		/**
+		 * The last delta-board applied.
+		 */
+		public DeltaBoardStruct lastDelta = null;
+
+		/**
+		 * The castling rights, as far as delta-boards go.
+		 */
+		public boolean canWhiteCastleKingside, canWhiteCastleQueenside, canBlackCastleKingside,
+				canBlackCastleQueenside;
+
+		/**
+		 * The amount of plies since the last irreversible move, as far as delta-boards
+		 * go.
+		 */
+		public int pliesSinceIrreversible;
+
+		/**
+		 * The last known time on white's clock, in milliseconds.
+		 */
+		public int whiteTime;
+
+		/**
+		 * The last known time on black's clock, in milliseconds.
+		 */
+		public int blackTime;
+
 		/**
 		 * Maps offer indices to offers. Offers are Pairs where the first element is the
 		 * <code>Player</code> who made the offer and the 2nd is the offer id. Takeback
@@ -985,6 +1146,71 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 			this.game = game;
 		}
 
+		/**
+		 * Prepares for applying delta-boards to the game, whose state is currently
+		 * described by <code>boardData</code>, and returns the current position.
+		 */
+		public Position startDeltas() {
+			position = game.getInitialPosition();
+			position.setFEN(boardData.getBoardFEN());
+			deltaCount = 0;
+			canWhiteCastleKingside = boardData.canWhiteCastleKingside();
+			canWhiteCastleQueenside = boardData.canWhiteCastleQueenside();
+			canBlackCastleKingside = boardData.canBlackCastleKingside();
+			canBlackCastleQueenside = boardData.canBlackCastleQueenside();
+			pliesSinceIrreversible = boardData.getPliesSinceIrreversible();
+
+			return position;
+		}
+
+		/**
+		 * Updates the state we keep for delta-boards after the specified move, made by
+		 * the specified piece, has been applied from the specified delta-board.
+		 */
+		public void deltaMoveMade(ChessMove move, ChessPiece movingPiece, DeltaBoardStruct delta) {
+			Square startSquare = move.getStartingSquare();
+			Square endSquare = move.getEndingSquare();
+			boolean kingMoved = (movingPiece != null) && movingPiece.isKing();
+			boolean whiteKingMoved = kingMoved && movingPiece.isWhite();
+			boolean blackKingMoved = kingMoved && movingPiece.isBlack();
+
+			boolean oldWhiteKingside = canWhiteCastleKingside;
+			boolean oldWhiteQueenside = canWhiteCastleQueenside;
+			boolean oldBlackKingside = canBlackCastleKingside;
+			boolean oldBlackQueenside = canBlackCastleQueenside;
+			canWhiteCastleKingside &= !whiteKingMoved && !touchesSquare(7, 0, startSquare, endSquare);
+			canWhiteCastleQueenside &= !whiteKingMoved && !touchesSquare(0, 0, startSquare, endSquare);
+			canBlackCastleKingside &= !blackKingMoved && !touchesSquare(7, 7, startSquare, endSquare);
+			canBlackCastleQueenside &= !blackKingMoved && !touchesSquare(0, 7, startSquare, endSquare);
+
+			// Losing any single castling right is irreversible, just like in the style12 path
+			boolean lostCastlingRights = (oldWhiteKingside != canWhiteCastleKingside)
+					|| (oldWhiteQueenside != canWhiteCastleQueenside) || (oldBlackKingside != canBlackCastleKingside)
+					|| (oldBlackQueenside != canBlackCastleQueenside);
+
+			boolean isIrreversibleMove = ((movingPiece != null) && movingPiece.isPawn()) || move.isCapture()
+					|| lostCastlingRights;
+			pliesSinceIrreversible = isIrreversibleMove ? 0 : pliesSinceIrreversible + 1;
+
+			if (position.getCurrentPlayer().isBlack())
+				whiteTime = delta.getRemainingTime();
+			else
+				blackTime = delta.getRemainingTime();
+
+			deltaCount++;
+			lastMove = move;
+			lastDelta = delta;
+		}
+
+		/**
+		 * Returns whether the square at the specified file and rank is either of the
+		 * specified squares (the starting and ending squares of a move).
+		 */
+		private static boolean touchesSquare(int file, int rank, Square startSquare, Square endSquare) {
+			Square corner = Square.getInstance(file, rank);
+			return corner.equals(startSquare) || corner.equals(endSquare);
+		}
+
 		/**
 		 * Returns the amount of moves made in the game (as far as we counted).
 		 */
@@ -1271,6 +1497,8 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 				boardData.getInitialTime(), boardData.getIncrement()));
 
 		gameData.boardData = boardData;
+		gameData.whiteTime = boardData.getWhiteTime();
+		gameData.blackTime = boardData.getBlackTime();
 	}
 
 	/**
@@ -1310,19 +1538,77 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 			move = variant.createMove(position, fromSquare, toSquare, promotionPiece, moveSAN);
 		}
 
-		listenerManager.fireGameEvent(new MoveMadeEvent(this, null, game, move, true));
-		// (isNew == true) because FICS never sends the entire move history
+		moveMade(gameData, move);
+	}
 
+	/**
+	 * Fires a MoveMadeEvent for the specified move, made in the specified game, and
+	 * adds it to the game's move list.
+	 */
+	private void moveMade(InternalGameData gameData, Move move) {
+		Game game = gameData.game;
+
+		// Match the echo before firing the event, so that the trace is complete when
+		// it's fired
 		Vector unechoedGameMoves = (Vector) unechoedMoves.get(game);
 		if ((unechoedGameMoves != null) && (unechoedGameMoves.size() != 0)) { // Might be our move.
 			Move madeMove = (Move) unechoedGameMoves.elementAt(0);
-			if (isSameMove(game, move, madeMove))
+			if (isSameMove(game, move, madeMove)) {
 				unechoedGameMoves.removeElementAt(0);
+				moveEchoed(madeMove);
+			}
 		}
 
+		listenerManager.fireGameEvent(new MoveMadeEvent(this, null, game, move, true));
+		// (isNew == true) because FICS never sends the entire move history
+
 		gameData.addMove(move);
 	}
 
+	/**
+	 * Records the stages the specified move we sent, which the server has just
+	 * echoed, passed through into the shared <code>MoveLatencyStats</code>.
+	 */
+	private void moveEchoed(Move sentMove) {
+		MoveTrace trace = (MoveTrace) moveTraces.remove(sentMove);
+		if (trace == null)
+			return;
+
+		trace.stamp(MoveTrace.RECEIVED, getMessageReceiveTime());
+		trace.stamp(MoveTrace.ECHOED);
+		MoveLatencyStats.getInstance().moveEchoed(trace);
+	}
+
+	/**
+	 * Forgets the traces of the specified moves we sent, which will not be
+	 * echoed.
+	 */
+	private void discardMoveTraces(Vector sentMoves) {
+		for (int i = 0; i < sentMoves.size(); i++)
+			moveTraces.remove(sentMoves.elementAt(i));
+	}
+
+	/**
+	 * Records the time our moves and lag probes are written to the server.
+	 */
+	@Override
+	protected void commandWritten(String command, long queueTime, long sendTime) {
+		lagMonitor.commandWritten(command, sendTime);
+
+		synchronized (unwrittenMoveTraces) {
+			if (unwrittenMoveTraces.isEmpty())
+				return;
+
+			// Commands are written in the order they're sent in, and only get prefixed
+			// on the way
+			MoveTrace trace = (MoveTrace) unwrittenMoveTraces.elementAt(0);
+			if (command.endsWith(trace.getCommand())) {
+				unwrittenMoveTraces.removeElementAt(0);
+				trace.stamp(MoveTrace.WRITTEN, sendTime);
+			}
+		}
+	}
+
 	/**
 	 * Returns whether <code>echoedMove</code> (sent to us by the server) is the
 	 * same move as <code>sentMove</code> (a move we sent to the server).
@@ -1440,6 +1726,7 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 			if ((moveString == null) || moveToString(game, move).equals(moveString)) {
 				// Our move, probably
 
+				discardMoveTraces(unechoedGameMoves);
 				unechoedGameMoves.removeAllElements();
 				listenerManager.fireGameEvent(new IllegalMoveEvent(this, null, game, move, reasonCode));
 			}
@@ -1514,8 +1801,10 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 		// move events
 		if (gameData.isBSetup) {
 			Vector unechoedGameMoves = (Vector) unechoedMoves.get(game);
-			if ((unechoedGameMoves != null) && (unechoedGameMoves.size() != 0))
+			if ((unechoedGameMoves != null) && (unechoedGameMoves.size() != 0)) {
+				moveTraces.remove(unechoedGameMoves.elementAt(0));
 				unechoedGameMoves.removeElementAt(0);
+			}
 		}
 	}
 
@@ -2086,6 +2375,15 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 	 */
 	@Override
 	public void makeMove(Game game, Move move) {
+		makeMove(game, move, new MoveTrace(move));
+	}
+
+	/**
+	 * Makes the given move in the given game, recording the stages it passes
+	 * through into the specified trace.
+	 */
+	@Override
+	public void makeMove(Game game, Move move, MoveTrace trace) {
 		Enumeration gamesDataEnum = ongoingGamesData.elements();
 		boolean ourGame = false;
 		while (gamesDataEnum.hasMoreElements()) {
@@ -2100,7 +2398,12 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 			throw new IllegalArgumentException(
 					"The specified Game object was not created by this JinConnection or the game has ended.");
 
-		sendCommand(moveToString(game, move), true, true, false);
+		String command = moveToString(game, move);
+		trace.setCommand(command);
+		trace.stamp(MoveTrace.SENT);
+		moveTraces.put(move, trace);
+		unwrittenMoveTraces.addElement(trace);
+		sendCommand(command, true, true, false, true);
 
 		Vector unechoedGameMoves = (Vector) unechoedMoves.get(game);
 		if (unechoedGameMoves == null) {
@@ -24,6 +24,7 @@ import java.awt.Image;
 
 import javax.swing.event.EventListenerList;
 
+import free.jin.ConnectionManager;
 import free.jin.I18n;
 import free.jin.Jin;
 import free.jin.Session;
@@ -217,20 +218,22 @@ public abstract class AbstractPluginUIContainer implements PluginUIContainer {
   }
 
   /**
-   * Asks for user confirmation and then closes the current session, if there is one.
+   * Asks for user confirmation and then closes the session of our plugin, if it's still open.
    * <code>hintParent</code> specifies the hint parent component for the close session confirmation
    * dialog.
    */
   protected void closeSession(Component hintParent) {
+    ConnectionManager connManager = Jin.getInstance().getConnManager();
+    Session session = connManager.getSession(getPlugin().getConn());
+
     Object result = OptionPanel.OK;
-    Session session = Jin.getInstance().getConnManager().getSession();
     if ((session != null) && session.isConnected()) {
       I18n i18n = I18n.get(AbstractPluginUIContainer.class);
       result = i18n.confirm(OptionPanel.OK, "closeSessionDialog", hintParent);
     }
 
     if (result == OptionPanel.OK) {
-      Jin.getInstance().getConnManager().closeSession();
+      if (session != null) connManager.closeSession(session, false);
       Jin.getInstance().quitIfNoUiVisible();
     }
   }
@@ -97,6 +97,8 @@ public class ActionsMenu extends JMenu implements SessionListener, ListDataListe
 
   @Override
   public void sessionEstablished(SessionEvent evt) {
+    if (!evt.isPrimary()) return;
+
     Session session = evt.getSession();
 
     ListModel actions = session.getPluginContext().getActions();
@@ -107,6 +109,8 @@ public class ActionsMenu extends JMenu implements SessionListener, ListDataListe
 
   @Override
   public void sessionClosed(SessionEvent evt) {
+    if (!evt.isPrimary()) return;
+
     Session session = evt.getSession();
 
     ListModel actions = session.getPluginContext().getActions();
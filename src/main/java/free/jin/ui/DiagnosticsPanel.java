@@ -0,0 +1,181 @@
+/**
+ * Jin - a chess client for internet chess servers. More information is available at
+ * http://www.jinchess.com/. Copyright (C) 2003 Alexander Maryanovsky. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if
+ * not, write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
+ * 02111-1307, USA.
+ */
+package free.jin.ui;
+
+import java.awt.BorderLayout;
+import java.awt.Font;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.JButton;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.Timer;
+
+import free.jin.I18n;
+import free.jin.Jin;
+import free.jin.MoveLatencyStats;
+import free.jin.Session;
+import free.util.Connection;
+import free.util.ConnectionStats;
+import free.util.IOExecutor;
+
+/**
+ * A panel displaying the statistics the connections of the open sessions and the I/O executor keep
+ * about their work, the lag to the servers and the latency of the user's moves - the same
+ * statistics that are exposed via JMX. The statistics are refreshed every second while the panel
+ * is displayed. Normally displayed in the "Help->Diagnostics" dialog.
+ */
+public class DiagnosticsPanel extends DialogPanel {
+
+  /**
+   * The interval at which the statistics are refreshed, in milliseconds.
+   */
+  private static final int REFRESH_INTERVAL = 1000;
+
+  /**
+   * The text area displaying the statistics.
+   */
+  private final JTextArea textArea = new JTextArea(30, 100);
+
+  /**
+   * The timer refreshing the statistics while we're displayed.
+   */
+  private final Timer refreshTimer =
+      new Timer(
+          REFRESH_INTERVAL,
+          new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent evt) {
+              refresh();
+            }
+          });
+
+  /**
+   * Creates a new <code>DiagnosticsPanel</code>.
+   */
+  public DiagnosticsPanel() {
+    createUI();
+    refresh();
+  }
+
+  /**
+   * Returns the title of this <code>DialogPanel</code>.
+   */
+  @Override
+  protected String getTitle() {
+    return I18n.get(DiagnosticsPanel.class).getString("title");
+  }
+
+  /**
+   * Displays this panel.
+   */
+  public void display() {
+    super.askResult();
+  }
+
+  /**
+   * Creates the user interface.
+   */
+  private void createUI() {
+    I18n i18n = I18n.get(DiagnosticsPanel.class);
+
+    setLayout(new BorderLayout(5, 5));
+
+    textArea.setEditable(false);
+    textArea.setLineWrap(true);
+    textArea.setWrapStyleWord(true);
+    textArea.setFont(new Font("Monospaced", Font.PLAIN, 12));
+    add(new JScrollPane(textArea), BorderLayout.CENTER);
+
+    JButton closeButton = i18n.createButton("closeButton");
+    closeButton.addActionListener(new ClosingListener(null));
+    JPanel buttonPanel = new JPanel();
+    buttonPanel.add(closeButton);
+    add(buttonPanel, BorderLayout.SOUTH);
+
+    setDefaultButton(closeButton);
+  }
+
+  /**
+   * Starts refreshing the statistics when we're displayed.
+   */
+  @Override
+  public void addNotify() {
+    super.addNotify();
+    refreshTimer.start();
+  }
+
+  /**
+   * Stops refreshing the statistics when we're no longer displayed.
+   */
+  @Override
+  public void removeNotify() {
+    refreshTimer.stop();
+    super.removeNotify();
+  }
+
+  /**
+   * Displays the current statistics.
+   */
+  private void refresh() {
+    int caretPosition = textArea.getCaretPosition();
+    textArea.setText(getReport());
+    textArea.setCaretPosition(Math.min(caretPosition, textArea.getDocument().getLength()));
+  }
+
+  /**
+   * Returns a textual report of the current statistics.
+   */
+  public static String getReport() {
+    StringBuffer buf = new StringBuffer();
+
+    Session[] sessions = Jin.getInstance().getConnManager().getSessions();
+    for (int i = 0; i < sessions.length; i++) {
+      Session session = sessions[i];
+      buf.append(session.getServer().getShortName());
+      buf.append(" - ").append(session.getUser().getUsername()).append('\n');
+      buf.append(session.getConnection().getLagMonitor()).append('\n');
+
+      if (!(session.getConnection() instanceof Connection)) continue;
+
+      ConnectionStats stats = ((Connection) session.getConnection()).getStats();
+      buf.append(stats).append('\n');
+      buf.append("parse times: ").append(stats.getParseTimes()).append('\n');
+      buf.append("queue wait times: ").append(stats.getQueueWaitTimes()).append('\n');
+      buf.append("handle times: ").append(stats.getHandleTimes()).append('\n');
+
+      buf.append("messages:");
+      String[] typeCounts = stats.getMessageTypeCounts();
+      for (int j = 0; j < typeCounts.length; j++) buf.append(' ').append(typeCounts[j]);
+      buf.append('\n');
+
+      buf.append("listeners:\n");
+      String[] listenerTimes = stats.getListenerTimes();
+      for (int j = 0; j < listenerTimes.length; j++)
+        buf.append("  ").append(listenerTimes[j]).append('\n');
+
+      buf.append('\n');
+    }
+
+    buf.append(MoveLatencyStats.getInstance()).append("\n\n");
+    buf.append(IOExecutor.getShared()).append('\n');
+
+    return buf.toString();
+  }
+}
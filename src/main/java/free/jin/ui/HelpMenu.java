@@ -41,6 +41,7 @@ public class HelpMenu extends JMenu {
     add(createCreditsMenuItem());
     add(createBugReportMenuItem());
     add(createFeatureRequestMenuItem());
+    add(createDiagnosticsMenuItem());
     add(createAboutMenuItem());
   }
 
@@ -93,6 +94,21 @@ public class HelpMenu extends JMenu {
     return item;
   }
 
+  /**
+   * Creates the "Diagnostics" menu item.
+   */
+  private JMenuItem createDiagnosticsMenuItem() {
+    JMenuItem item = I18n.get(HelpMenu.class).createMenuItem("diagnosticsMenuItem");
+    item.addActionListener(
+        new ActionListener() {
+          @Override
+          public void actionPerformed(ActionEvent evt) {
+            new DiagnosticsPanel().display();
+          }
+        });
+    return item;
+  }
+
   /**
    * Creates the "About..." menu item.
    */
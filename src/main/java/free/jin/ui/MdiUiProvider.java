@@ -254,6 +254,8 @@ public class MdiUiProvider extends AbstractUiProvider {
   public void sessionEstablished(SessionEvent evt) {
     super.sessionEstablished(evt);
 
+    if (!evt.isPrimary()) return;
+
     Session session = evt.getSession();
 
     String username = session.getUser().getUsername();
@@ -275,6 +277,8 @@ public class MdiUiProvider extends AbstractUiProvider {
   public void sessionClosed(SessionEvent evt) {
     super.sessionClosed(evt);
 
+    if (!evt.isPrimary()) return;
+
     mainFrame.setTitle(Jin.getAppName());
 
     menubar.remove(actionsMenu);
@@ -402,19 +406,21 @@ public class MdiUiProvider extends AbstractUiProvider {
     }
 
     /**
-     * SessionListener implementation. Simply delegates to <code>setConnected</code>.
+     * SessionListener implementation. Delegates to <code>setConnected</code> for the primary
+     * session.
      */
     @Override
     public void sessionEstablished(SessionEvent evt) {
-      setConnected(true, evt.getSession());
+      if (evt.isPrimary()) setConnected(true, evt.getSession());
     }
 
     /**
-     * SessionListener implementation. Simple delegates to <code>setConnected</code>.
+     * SessionListener implementation. Delegates to <code>setConnected</code> for the primary
+     * session.
      */
     @Override
     public void sessionClosed(SessionEvent evt) {
-      setConnected(false, evt.getSession());
+      if (evt.isPrimary()) setConnected(false, evt.getSession());
     }
 
     @Override
@@ -428,7 +434,8 @@ public class MdiUiProvider extends AbstractUiProvider {
      * are currently connected to the server or not.
      */
     public void setConnected(boolean connected, Session session) {
-      newConnection.setEnabled(!connected);
+      // Additional sessions may be opened while connected
+      newConnection.setEnabled(true);
       closeConnection.setEnabled(connected);
 
       if (!connected && (session != null)) {
@@ -125,19 +125,21 @@ public class PrefsMenu extends JMenu implements SessionListener {
   }
 
   /**
-   * SessionListener implementation. Simply delegates to <code>setConnected</code>.
+   * SessionListener implementation. Delegates to <code>setConnected</code> for the primary
+   * session.
    */
   @Override
   public void sessionEstablished(SessionEvent evt) {
-    setConnected(true, evt.getSession());
+    if (evt.isPrimary()) setConnected(true, evt.getSession());
   }
 
   /**
-   * SessionListener implementation. Simply delegates to <code>setConnected</code>.
+   * SessionListener implementation. Delegates to <code>setConnected</code> for the primary
+   * session.
    */
   @Override
   public void sessionClosed(SessionEvent evt) {
-    setConnected(false, evt.getSession());
+    if (evt.isPrimary()) setConnected(false, evt.getSession());
   }
 
   @Override
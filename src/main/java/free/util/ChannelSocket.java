@@ -0,0 +1,289 @@
+/**
+ * The utillib library. More information is available at http://www.jinchess.com/. Copyright (C)
+ * 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * The utillib library is free software; you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * The utillib library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with utillib
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+package free.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A <code>Socket</code> backed by a <code>SocketChannel</code>, which lets a {@link Connection}
+ * hand it over to the single thread shared by all connections for reading, instead of dedicating a
+ * thread of its own to it. The channel starts out in blocking mode, and is put in non-blocking mode
+ * once handed over. The streams of the socket work in both modes; in non-blocking mode, reading
+ * when no data is available throws an <code>InterruptedIOException</code>, like a socket whose
+ * read timeout has expired, and writing waits until the channel can take all the data.
+ */
+public class ChannelSocket extends Socket {
+
+  /**
+   * The channel.
+   */
+  private final SocketChannel channel;
+
+  /**
+   * The input stream.
+   */
+  private final InputStream in;
+
+  /**
+   * The output stream.
+   */
+  private final OutputStream out;
+
+  /**
+   * The selector we wait for the channel to become writable with, created when first needed.
+   */
+  private volatile Selector writeSelector = null;
+
+  /**
+   * Creates a new <code>ChannelSocket</code> connected to the specified port on the specified
+   * host.
+   */
+  public ChannelSocket(String hostname, int port) throws IOException {
+    this(SocketChannel.open(new InetSocketAddress(hostname, port)));
+  }
+
+  /**
+   * Creates a new <code>ChannelSocket</code> backed by the specified connected channel.
+   */
+  public ChannelSocket(SocketChannel channel) {
+    this.channel = channel;
+    this.in = new ChannelInputStream();
+    this.out = new ChannelOutputStream();
+  }
+
+  /**
+   * Returns the channel backing this socket.
+   */
+  @Override
+  public SocketChannel getChannel() {
+    return channel;
+  }
+
+  /**
+   * Returns the stream data is read from the channel with.
+   */
+  @Override
+  public InputStream getInputStream() {
+    return in;
+  }
+
+  /**
+   * Returns the stream data is written to the channel with.
+   */
+  @Override
+  public OutputStream getOutputStream() {
+    return out;
+  }
+
+  /**
+   * Returns the address the channel is connected to.
+   */
+  @Override
+  public InetAddress getInetAddress() {
+    return channel.socket().getInetAddress();
+  }
+
+  /**
+   * Returns the port the channel is connected to.
+   */
+  @Override
+  public int getPort() {
+    return channel.socket().getPort();
+  }
+
+  /**
+   * Returns the local port the channel is bound to.
+   */
+  @Override
+  public int getLocalPort() {
+    return channel.socket().getLocalPort();
+  }
+
+  /**
+   * Enables or disables Nagle's algorithm on the channel.
+   */
+  @Override
+  public void setTcpNoDelay(boolean on) throws SocketException {
+    channel.socket().setTcpNoDelay(on);
+  }
+
+  /**
+   * Returns whether Nagle's algorithm is disabled on the channel.
+   */
+  @Override
+  public boolean getTcpNoDelay() throws SocketException {
+    return channel.socket().getTcpNoDelay();
+  }
+
+  /**
+   * Returns whether the channel is connected.
+   */
+  @Override
+  public boolean isConnected() {
+    return channel.isConnected();
+  }
+
+  /**
+   * Returns whether the channel has been closed.
+   */
+  @Override
+  public boolean isClosed() {
+    return !channel.isOpen();
+  }
+
+  /**
+   * Closes the channel. A thread waiting for the channel to become writable is woken up, and fails
+   * to write.
+   */
+  @Override
+  public void close() throws IOException {
+    channel.close();
+
+    Selector selector = writeSelector;
+    if (selector != null) selector.close();
+  }
+
+  /**
+   * Returns a textual representation of this socket.
+   */
+  @Override
+  public String toString() {
+    return "ChannelSocket[" + channel + "]";
+  }
+
+  /**
+   * Reads from the channel, throwing an <code>InterruptedIOException</code> when the channel is in
+   * non-blocking mode and there is no data available.
+   */
+  private class ChannelInputStream extends InputStream {
+
+    /**
+     * The exception we throw when there is no data available. The same one is thrown every time,
+     * as it is thrown whenever we run out of data, and no one is interested in its stack trace.
+     */
+    private final InterruptedIOException noData =
+        new InterruptedIOException("No data available");
+
+    /**
+     * Reads a single byte.
+     */
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    /**
+     * Reads bytes directly from the channel.
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) return 0;
+
+      int count = channel.read(ByteBuffer.wrap(b, off, len));
+      if (count == 0) throw noData;
+
+      return count;
+    }
+
+    /**
+     * Closes the channel.
+     */
+    @Override
+    public void close() throws IOException {
+      ChannelSocket.this.close();
+    }
+  }
+
+  /**
+   * Writes to the channel, waiting for it to become writable as needed when it's in non-blocking
+   * mode.
+   */
+  private class ChannelOutputStream extends OutputStream {
+
+    /**
+     * Writes a single byte.
+     */
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    /**
+     * Writes the specified bytes to the channel, returning only once all of them have been
+     * written.
+     */
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+      ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+      while (buffer.hasRemaining()) {
+        if (channel.write(buffer) == 0) awaitWritable();
+      }
+    }
+
+    /**
+     * Waits until the channel becomes writable.
+     */
+    private void awaitWritable() throws IOException {
+      Selector selector = writeSelector;
+      if (selector == null) {
+        selector = Selector.open();
+        try {
+          channel.register(selector, SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+          selector.close();
+          throw e;
+        }
+        writeSelector = selector;
+
+        // In case we've been closed before we could be woken up
+        if (!channel.isOpen()) {
+          selector.close();
+          throw new ClosedChannelException();
+        }
+      }
+
+      try {
+        selector.select();
+        selector.selectedKeys().clear();
+      } catch (ClosedSelectorException e) { // The socket has been closed
+        throw new ClosedChannelException();
+      }
+    }
+
+    /**
+     * Closes the channel.
+     */
+    @Override
+    public void close() throws IOException {
+      ChannelSocket.this.close();
+    }
+  }
+}
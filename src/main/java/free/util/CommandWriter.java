@@ -0,0 +1,258 @@
+/**
+ * The utillib library. More information is available at http://www.jinchess.com/. Copyright (C)
+ * 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * The utillib library is free software; you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * The utillib library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with utillib
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+package free.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Vector;
+
+/**
+ * Writes commands to the server in a dedicated thread, so that the thread sending them (typically,
+ * the AWT event dispatching thread) never blocks on the socket. Commands are queued, and the writer
+ * thread encodes them into a single reusable buffer, each followed by a newline. An urgent command
+ * (a move, for example) is written as soon as the writer thread gets to it, together with any
+ * commands queued before it; other commands are held back for up to {@link #BATCHING_DELAY}
+ * milliseconds, so that a burst of commands goes out in a single write. Commands are always written
+ * in the order they were queued in.
+ * <P>
+ * Each <code>CommandWriter</code> has its own thread, even when the connections read from the
+ * server via the shared {@link ConnectionSelector} thread, so that a connection whose socket send
+ * buffer is full doesn't hold up the (possibly urgent) commands of the other connections.
+ */
+class CommandWriter implements Runnable {
+
+  /**
+   * The maximum amount of time, in milliseconds, a non-urgent command is held back waiting for
+   * more commands to write together with it.
+   */
+  static final int BATCHING_DELAY = 2;
+
+  /**
+   * The connection we're writing commands for.
+   */
+  private final Connection connection;
+
+  /**
+   * The stream we write to.
+   */
+  private final OutputStream out;
+
+  /**
+   * The encoder we encode commands with.
+   */
+  private final CharsetEncoder encoder;
+
+  /**
+   * The buffer commands are encoded into. Accessed only by the writer thread.
+   */
+  private ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+  /**
+   * The queued commands, as <code>QueuedCommand</code> objects.
+   */
+  private final Vector queue = new Vector();
+
+  /**
+   * The commands currently being written. Accessed only by the writer thread.
+   */
+  private final Vector batch = new Vector();
+
+  /**
+   * The amount of urgent commands in the queue.
+   */
+  private int urgentCount = 0;
+
+  /**
+   * Whether we've been closed.
+   */
+  private boolean isClosed = false;
+
+  /**
+   * The writer thread.
+   */
+  private final Thread thread;
+
+  /**
+   * Creates a new <code>CommandWriter</code> for the specified connection, which writes commands
+   * encoded in the specified charset to the specified <code>OutputStream</code>. Characters which
+   * can't be encoded in the charset are replaced with '?', as with
+   * <code>String.getBytes(String)</code>.
+   */
+  public CommandWriter(Connection connection, OutputStream out, String charsetName) {
+    this.connection = connection;
+    this.out = out;
+    this.encoder =
+        Charset.forName(charsetName)
+            .newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE)
+            .replaceWith(new byte[] {'?'});
+
+    this.thread = new Thread(this, "CommandWriter");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Queues the specified command for writing.
+   */
+  public synchronized void write(String command, boolean isUrgent) {
+    if (isClosed) throw new IllegalStateException("Closed");
+
+    queue.addElement(new QueuedCommand(command, System.nanoTime()));
+    if (isUrgent) urgentCount++;
+    notify();
+  }
+
+  /**
+   * Closes the writer. If <code>drain</code> is <code>true</code>, waits (but not too long) for
+   * the commands already queued to be written.
+   */
+  public void close(boolean drain) {
+    synchronized (this) {
+      isClosed = true;
+      notify();
+    }
+
+    if (drain && (Thread.currentThread() != thread)) {
+      try {
+        thread.join(1000);
+      } catch (InterruptedException e) {
+      }
+    }
+  }
+
+  /**
+   * The writer thread loop.
+   */
+  @Override
+  public void run() {
+    try {
+      while (takeBatch()) writeBatch();
+    } catch (InterruptedException e) {
+    } catch (IOException e) {
+      synchronized (this) {
+        if (isClosed) return;
+      }
+      connection.connectionInterrupted(e);
+    }
+  }
+
+  /**
+   * Waits until there are commands to write and it's time to write them, and moves them into
+   * <code>batch</code>. Returns <code>false</code> if we've been closed and there is nothing left
+   * to write.
+   */
+  private synchronized boolean takeBatch() throws InterruptedException {
+    while (queue.isEmpty() && !isClosed) wait();
+
+    if (queue.isEmpty()) return false;
+
+    // Hold back non-urgent commands for a little while, to be written with the ones that follow
+    long deadline = ((QueuedCommand) queue.elementAt(0)).queueTime + BATCHING_DELAY * 1000000L;
+    long remaining;
+    while ((urgentCount == 0) && !isClosed && ((remaining = deadline - System.nanoTime()) > 0))
+      wait(remaining / 1000000L, (int) (remaining % 1000000L));
+
+    for (int i = 0; i < queue.size(); i++) batch.addElement(queue.elementAt(i));
+    queue.removeAllElements();
+    urgentCount = 0;
+    return true;
+  }
+
+  /**
+   * Encodes and writes the commands in <code>batch</code>, in a single write.
+   */
+  private void writeBatch() throws IOException {
+    buffer.clear();
+    for (int i = 0; i < batch.size(); i++) encode(((QueuedCommand) batch.elementAt(i)).command);
+
+    out.write(buffer.array(), 0, buffer.position());
+    out.flush();
+
+    SessionRecorder recorder = connection.getSessionRecorder();
+    if (recorder != null) recorder.recordOutbound(buffer.array(), 0, buffer.position());
+
+    long sendTime = System.nanoTime();
+    long totalDelay = 0;
+    long maxDelay = 0;
+    for (int i = 0; i < batch.size(); i++) {
+      QueuedCommand command = (QueuedCommand) batch.elementAt(i);
+      long delay = sendTime - command.queueTime;
+      totalDelay += delay;
+      if (delay > maxDelay) maxDelay = delay;
+
+      connection.commandWritten(command.command, command.queueTime, sendTime);
+    }
+    connection.getStats().commandsWritten(batch.size(), buffer.position(), totalDelay, maxDelay);
+
+    batch.removeAllElements();
+  }
+
+  /**
+   * Encodes the specified command, followed by a newline, into <code>buffer</code>, growing it as
+   * needed.
+   */
+  private void encode(String command) {
+    CharBuffer chars = CharBuffer.wrap(command);
+    encoder.reset();
+    while (encoder.encode(chars, buffer, true).isOverflow()) growBuffer();
+    while (encoder.flush(buffer).isOverflow()) growBuffer();
+
+    if (!buffer.hasRemaining()) growBuffer();
+    buffer.put((byte) '\n');
+  }
+
+  /**
+   * Replaces <code>buffer</code> with one twice as large, with the same contents.
+   */
+  private void growBuffer() {
+    ByteBuffer newBuffer = ByteBuffer.allocate(buffer.capacity() * 2);
+    buffer.flip();
+    newBuffer.put(buffer);
+    buffer = newBuffer;
+  }
+
+  /**
+   * A command waiting to be written.
+   */
+  private static class QueuedCommand {
+
+    /**
+     * The command.
+     */
+    public final String command;
+
+    /**
+     * The time, in nanoseconds, when the command was queued.
+     */
+    public final long queueTime;
+
+    /**
+     * Creates a new <code>QueuedCommand</code> with the specified command and queue time.
+     */
+    public QueuedCommand(String command, long queueTime) {
+      this.command = command;
+      this.queueTime = queueTime;
+    }
+  }
+}
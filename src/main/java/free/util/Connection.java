@@ -17,11 +17,21 @@
 package free.util;
 
 import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.net.SocketException;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import javax.management.ObjectName;
 
 /**
  * An abstract base class for managers of a connection to a TCP/IP, session based server. A
@@ -31,6 +41,39 @@ import java.net.Socket;
  */
 public abstract class Connection {
 
+  /**
+   * The lane for the most urgent events, such as those concerning the user's own game.
+   *
+   * @see #getLane(Object)
+   */
+  public static final int URGENT_LANE = 0;
+
+  /**
+   * The lane for high priority events, such as those concerning observed games.
+   *
+   * @see #getLane(Object)
+   */
+  public static final int HIGH_LANE = 1;
+
+  /**
+   * The lane for normal priority events, such as seeks.
+   *
+   * @see #getLane(Object)
+   */
+  public static final int NORMAL_LANE = 2;
+
+  /**
+   * The lane for low priority events, such as chat and plain text.
+   *
+   * @see #getLane(Object)
+   */
+  public static final int LOW_LANE = 3;
+
+  /**
+   * The amount of lanes.
+   */
+  public static final int LANE_COUNT = 4;
+
   /**
    * The username requested by the user. This may be different from the actual username assigned by
    * the server.
@@ -44,20 +87,116 @@ public abstract class Connection {
 
   /**
    * The thread that connects to the server and then runs the read-loop, <code>null</code> until a
-   * connection attempt is initiated.
+   * connection attempt is initiated. If the socket is a {@link ChannelSocket}, the thread hands it
+   * over to the {@link ConnectionSelector} once connected, and ends.
    */
   private Thread readerThread = null;
 
+  /**
+   * The stream the {@link ConnectionSelector} reads our messages from, if our socket has been
+   * handed over to it.
+   */
+  private volatile InputStream selectedIn = null;
+
   /**
    * The socket to the server, <code>null</code> when not connected.
    */
   private Socket socket;
 
+  /**
+   * The writer of commands to the server, <code>null</code> when not connected.
+   */
+  private CommandWriter writer;
+
   /**
    * The username assigned to us by the server. This is <code>null</code> until we are logged in.
    */
   private String username = null;
 
+  /**
+   * Statistics about the messages passing through this connection.
+   */
+  private final ConnectionStats stats = new ConnectionStats();
+
+  /**
+   * The name the statistics are registered under with JMX while we're connected, or
+   * <code>null</code> if they aren't registered.
+   */
+  private ObjectName statsName = null;
+
+  /**
+   * The amount of connections made so far, used to give the statistics of each a unique name.
+   */
+  private static int connectionCount = 0;
+
+  /**
+   * The recorder of the session, or <code>null</code> if the session isn't being recorded.
+   */
+  private volatile SessionRecorder recorder = null;
+
+  /**
+   * The time at which the message currently being handled was read from the server. Accessed only
+   * by the client thread.
+   */
+  private long messageReceiveTime;
+
+  /**
+   * The maximum amount of events delivered to the client thread in a single batch, or 0 if events
+   * are not batched, but delivered one by one via {@link #execRunnable(Runnable)}.
+   */
+  private volatile int maxBatchSize = 0;
+
+  /**
+   * The maximum amount of time, in nanoseconds, a single batch of events may hold the client thread
+   * for.
+   */
+  private volatile long maxBatchTime = 0;
+
+  /**
+   * The events waiting to be delivered to the client thread, when batching events, one queue per
+   * lane.
+   */
+  private final ConcurrentLinkedQueue[] pendingEvents = new ConcurrentLinkedQueue[LANE_COUNT];
+
+  /**
+   * The amount of events waiting in each lane.
+   */
+  private final AtomicIntegerArray laneSizes = new AtomicIntegerArray(LANE_COUNT);
+
+  /**
+   * The amount of events in each lane beyond which sheddable messages are dropped, or 0 if the lane
+   * is not bounded.
+   */
+  private final int[] laneCapacities = new int[LANE_COUNT];
+
+  /**
+   * Maps keys to the lanes assigned to them by {@link #assignLane(Object, int)}. Accessed only by
+   * the reader thread.
+   */
+  private final Hashtable keyLanes = new Hashtable();
+
+  /**
+   * Whether a batch of events has been scheduled for delivery to the client thread, but hasn't
+   * started yet.
+   */
+  private final AtomicBoolean isBatchScheduled = new AtomicBoolean(false);
+
+  /**
+   * The time, in nanoseconds, when the last batch of events was scheduled.
+   */
+  private volatile long batchScheduleTime;
+
+  /**
+   * The runnable delivering a batch of events in the client thread.
+   */
+  private final Runnable batchDispatcher =
+      new Runnable() {
+        @Override
+        public void run() {
+          dispatchBatch();
+        }
+      };
+
   /**
    * Creates a new <code>Connection</code> with the specified requested username and password. Both
    * the username and the password are kept merely as a convenience for subclasses - this class does
@@ -67,6 +206,8 @@ public abstract class Connection {
   public Connection(String requestedUsername, String password) {
     this.requestedUsername = requestedUsername;
     this.password = password;
+
+    for (int i = 0; i < LANE_COUNT; i++) pendingEvents[i] = new ConcurrentLinkedQueue();
   }
 
   /**
@@ -95,13 +236,37 @@ public abstract class Connection {
    * Initiates a connection to the specified hostname on the specified port. The actual connecting
    * is done asynchronously.
    */
-  public synchronized void initiateConnect(final String hostname, final int port) {
+  public synchronized void initiateConnect(String hostname, int port) {
+    startReaderThread(hostname, port, null);
+  }
+
+  /**
+   * Initiates a replay of the session recorded (see {@link #setSessionRecorder(SessionRecorder)})
+   * in the specified recording, at the specified speed (see {@link ReplaySocket}). The connection
+   * then behaves as if it had connected to the server and received the recorded data, at the times
+   * it was originally received, or faster. Anything sent to the server is discarded.
+   *
+   * @throws IOException if the recording can't be read, or isn't a session recording.
+   */
+  public synchronized void initiateReplay(InputStream recording, double speed) throws IOException {
+    startReaderThread(null, 0, new ReplaySocket(recording, speed));
+  }
+
+  /**
+   * Starts the reader thread, which connects to the specified hostname on the specified port, or
+   * uses the specified replay socket, if it's not <code>null</code>, and then reads data from the
+   * server.
+   */
+  private void startReaderThread(
+      final String hostname, final int port, final ReplaySocket replaySocket) {
     readerThread =
         new Thread("ReaderThread") {
           @Override
           public void run() {
             try {
-              if (connect(hostname, port)) readerLoop();
+              Socket socket = connect(hostname, port, replaySocket);
+              if (socket instanceof ChannelSocket) startSelecting((ChannelSocket) socket);
+              else if (socket != null) readerLoop(socket);
             } finally {
               synchronized (Connection.this) {
                 if (readerThread == Thread.currentThread()) readerThread = null;
@@ -114,17 +279,30 @@ public abstract class Connection {
   }
 
   /**
-   * Connects to the server. Returns whether successful.
+   * Connects to the server, or uses the specified replay socket if it's not <code>null</code>.
+   * Returns the connected socket, or <code>null</code> if unsuccessful.
    */
-  private boolean connect(String hostname, int port) {
+  private Socket connect(String hostname, int port, ReplaySocket replaySocket) {
     try {
-      Socket tmpSocket = connectImpl(hostname, port);
+      Socket tmpSocket = (replaySocket == null) ? connectImpl(hostname, port) : replaySocket;
+
+      // Commands are short and latency sensitive, and we do our own batching in CommandWriter
+      try {
+        tmpSocket.setTcpNoDelay(true);
+      } catch (SocketException e) {
+        // Not supported by this socket implementation; the commands just go out a bit later
+      }
+
+      OutputStream out = tmpSocket.getOutputStream();
 
       synchronized (this) {
         socket = tmpSocket;
+        writer = new CommandWriter(this, out, getCommandCharset());
+        statsName = ManagementUtilities.register(stats, "Connection", getStatsName(hostname, port));
       }
 
-      execRunnable(
+      dispatch(
+          URGENT_LANE,
           new SafeRunnable() {
             @Override
             public void safeRun() {
@@ -132,30 +310,46 @@ public abstract class Connection {
             }
           });
 
-      return true;
+      return tmpSocket;
     } catch (final IOException e) {
       // This may not be true if the connection was closed while we were
       // sitting in connectImpl, connecting to the server
       if (readerThread == Thread.currentThread())
-        execRunnable(
+        dispatch(
+            URGENT_LANE,
             new SafeRunnable() {
               @Override
               public void safeRun() {
                 handleConnectingFailed(e);
               }
             });
-      return false;
+      return null;
     }
   }
 
+  /**
+   * Returns a unique name to register the statistics of a connection to the specified hostname
+   * and port (<code>null</code> when replaying) under with JMX.
+   */
+  private String getStatsName(String hostname, int port) {
+    int number;
+    synchronized (Connection.class) {
+      number = ++connectionCount;
+    }
+
+    String target = (hostname == null) ? "replay" : hostname + ":" + port;
+    return getClass().getName() + "-" + number + " " + target;
+  }
+
   /**
    * Creates and connects a socket to the specified hostname on the specified port. Note that this
    * method is called from the constructor, so an implementation may not depend on the subclass's
-   * constructor having finished. The default implementation returns a plain
-   * <code>java.net.Socket</code>.
+   * constructor having finished. The default implementation returns a {@link ChannelSocket}, which
+   * is read by the thread shared by all connections, instead of a thread of our own. Any other
+   * kind of socket is read by a dedicated thread.
    */
   protected Socket connectImpl(String hostname, int port) throws IOException {
-    return new Socket(hostname, port);
+    return new ChannelSocket(hostname, port);
   }
 
   /**
@@ -167,6 +361,36 @@ public abstract class Connection {
     return socket.getOutputStream();
   }
 
+  /**
+   * Queues the specified command (without the terminating newline) for sending to the server and
+   * returns immediately. Commands are written in the order they are queued in by a dedicated writer
+   * thread; an urgent command, such as a move, is written right away, while other commands may be
+   * held back for a couple of milliseconds, so that a burst of them is written at once. Once the
+   * command is written, {@link #commandWritten(String, long, long)} is invoked.
+   */
+  protected final synchronized void sendCommandAsync(String command, boolean isUrgent) {
+    if (!isConnected()) throw new IllegalStateException("Not connected");
+
+    writer.write(command, isUrgent);
+  }
+
+  /**
+   * Returns the name of the charset commands are encoded in by
+   * {@link #sendCommandAsync(String, boolean)}. The default implementation returns "ISO-8859-1".
+   */
+  protected String getCommandCharset() {
+    return "ISO-8859-1";
+  }
+
+  /**
+   * Invoked, in the writer thread, after the specified command, queued at the specified time, has
+   * been written to the server at the specified time. Both times are as returned by
+   * <code>System.nanoTime()</code>. This allows measuring the latency of commands such as moves,
+   * from the moment they are sent until the server responds to them. The default implementation
+   * does nothing.
+   */
+  protected void commandWritten(String command, long queueTime, long sendTime) {}
+
   /**
    * Returns the host we're connected to.
    */
@@ -186,23 +410,87 @@ public abstract class Connection {
   }
 
   /**
-   * A loop which reads data from the server.
+   * A loop which reads data from the server via the specified socket.
    */
-  private void readerLoop() {
+  private void readerLoop(Socket socket) {
     try {
-      InputStream in = createInputStream(socket.getInputStream());
-      while (true) {
-        Object message = readMessage(in);
+      InputStream in = openInputStream(socket);
+      while (processMessage(in));
+      connectionInterrupted(null);
+    } catch (IOException e) {
+      connectionInterrupted(e);
+    }
+  }
 
-        if (message == null) // Clean exit
-        break;
+  /**
+   * Hands the specified socket over to the {@link ConnectionSelector}, which then reads the data
+   * arriving from the server by invoking {@link #readSelected(int)}.
+   */
+  private void startSelecting(ChannelSocket socket) {
+    try {
+      selectedIn = openInputStream(socket);
+      ConnectionSelector.getInstance().register(socket.getChannel(), this);
+    } catch (IOException e) {
+      connectionInterrupted(e);
+    }
+  }
 
-        execRunnable(new MessageDispatcher(message));
+  /**
+   * Invoked by the {@link ConnectionSelector}, in its thread, to read, parse and dispatch up to the
+   * specified amount of the messages available from the server, without waiting for any more data
+   * to arrive. Returns whether there may be more messages available.
+   */
+  boolean readSelected(int maxMessages) {
+    try {
+      for (int i = 0; i < maxMessages; i++) {
+        if (!processMessage(selectedIn)) {
+          connectionInterrupted(null);
+          return false;
+        }
       }
-      connectionInterrupted(null);
+      return true;
+    } catch (InterruptedIOException e) { // Ran out of data
+      return false;
     } catch (IOException e) {
       connectionInterrupted(e);
+      return false;
+    }
+  }
+
+  /**
+   * Creates the <code>InputStream</code> messages are read from the specified socket with.
+   */
+  private InputStream openInputStream(Socket socket) throws IOException {
+    keyLanes.clear();
+
+    InputStream in = new CountingInputStream(socket.getInputStream());
+    SessionRecorder recorder = getSessionRecorder();
+    if (recorder != null) in = recorder.wrap(in);
+    return createInputStream(in);
+  }
+
+  /**
+   * Reads, parses and dispatches a single message from the specified <code>InputStream</code>.
+   * Returns <code>false</code> if the end of the stream has been reached instead.
+   */
+  private boolean processMessage(InputStream in) throws IOException {
+    Object message = readMessage(in);
+
+    if (message == null) // Clean exit
+    return false;
+
+    long parseStart = System.nanoTime();
+    try {
+      message = parseMessage(message);
+    } catch (RuntimeException e) {
+      // Pass the message on unparsed. handleMessage will then fail on it in the client thread,
+      // where the failure is reported like any other failure in client code.
     }
+    long parseTime = System.nanoTime() - parseStart;
+    stats.messageParsed(getMessageType(message), parseTime);
+
+    dispatchMessage(message);
+    return true;
   }
 
   /**
@@ -220,10 +508,130 @@ public abstract class Connection {
 
   /**
    * Reads and returns a single message from the server. Returns <code>null</code> if an EOF is read
-   * from the server.
+   * from the server. When the socket is read by the {@link ConnectionSelector}, the stream throws
+   * an <code>InterruptedIOException</code> once it runs out of data, in which case the
+   * implementation must rethrow it, leaving the stream so that the message is read again once
+   * more data arrives.
    */
   protected abstract Object readMessage(InputStream inputStream) throws IOException;
 
+  /**
+   * Parses the specified message, as returned by {@link #readMessage(InputStream)}, into the object
+   * which will be passed to {@link #handleMessage(Object)}. Unlike <code>handleMessage</code>, this
+   * method is invoked in the reader thread, which makes it the place to do any expensive parsing
+   * which does not depend on the state of the client, so that it doesn't compete with the client
+   * thread (typically, the AWT event dispatching thread). The default implementation simply returns
+   * the argument.
+   */
+  protected Object parseMessage(Object message) {
+    return message;
+  }
+
+  /**
+   * Returns the type of the specified (parsed) message, which the statistics of the connection
+   * (see {@link #getStats()}) count messages by, or <code>null</code> if it's not known. The types
+   * should be few, and the returned strings should be constants, as this method is invoked for
+   * every message, in the reader thread. The default implementation returns <code>null</code>.
+   */
+  protected String getMessageType(Object message) {
+    return null;
+  }
+
+  /**
+   * Returns the lane of the specified (parsed) message - one of {@link #URGENT_LANE},
+   * {@link #HIGH_LANE}, {@link #NORMAL_LANE} and {@link #LOW_LANE}. When events are batched (see
+   * {@link #setEventBatching(int, int)}), the client thread is always given the pending events of
+   * a higher lane first, so that, for example, the moves of the user's own game don't wait behind
+   * a flood of chat. Events in the same lane are delivered in the order they arrived in, but events
+   * in different lanes are not, so messages which depend on each other must be put in the same
+   * lane, or the earlier one in a higher lane (see {@link #assignLane(Object, int)}). Like
+   * {@link #parseMessage(Object)}, this method is invoked in the reader thread. The default
+   * implementation returns {@link #LOW_LANE}, which keeps all messages in their original order.
+   */
+  protected int getLane(Object message) {
+    return LOW_LANE;
+  }
+
+  /**
+   * Returns whether the specified message may be dropped when its lane is full (see
+   * {@link #setLaneCapacity(int, int)}). Invoked in the reader thread. The default implementation
+   * returns <code>false</code>.
+   */
+  protected boolean isSheddable(Object message) {
+    return false;
+  }
+
+  /**
+   * Returns whether the specified message may make pending messages in its lane obsolete, in which
+   * case those messages for which {@link #supersedes(Object, Object)} returns <code>true</code> are
+   * dropped. Invoked in the reader thread. The default implementation returns <code>false</code>.
+   */
+  protected boolean isSuperseding(Object message) {
+    return false;
+  }
+
+  /**
+   * Returns whether the specified message makes the specified pending message, which is in the same
+   * lane, obsolete. Invoked in the reader thread, only for messages for which
+   * {@link #isSuperseding(Object)} returns <code>true</code>. The default implementation returns
+   * <code>false</code>.
+   */
+  protected boolean supersedes(Object message, Object pendingMessage) {
+    return false;
+  }
+
+  /**
+   * Assigns the specified lane to the specified key (a game number, for example) and returns the
+   * lane a message with that key should go into. This is the specified lane, unless the key is
+   * currently assigned a lower lane which still has pending events, in which case the key keeps
+   * its current lane, so that the message doesn't overtake earlier messages with the same key.
+   * Invoked in the reader thread.
+   */
+  protected final int assignLane(Object key, int lane) {
+    Integer keyLane = (Integer) keyLanes.get(key);
+    if ((keyLane != null) && (keyLane.intValue() > lane) && (laneSizes.get(keyLane.intValue()) > 0))
+      return keyLane.intValue();
+
+    keyLanes.put(key, new Integer(lane));
+    return lane;
+  }
+
+  /**
+   * Returns the lane currently assigned to the specified key by {@link #assignLane(Object, int)},
+   * or the specified default lane if none. Invoked in the reader thread.
+   */
+  protected final int getAssignedLane(Object key, int defaultLane) {
+    Integer keyLane = (Integer) keyLanes.get(key);
+    return keyLane == null ? defaultLane : keyLane.intValue();
+  }
+
+  /**
+   * Makes the connection record the session into the specified <code>SessionRecorder</code>, so
+   * that it can later be replayed with {@link #initiateReplay(InputStream, double)}. The recorder
+   * is closed when the connection is closed. This method may only be invoked before initiating the
+   * connection.
+   */
+  public synchronized void setSessionRecorder(SessionRecorder recorder) {
+    if ((readerThread != null) || isConnected())
+      throw new IllegalStateException("The session recorder may only be set before connecting");
+
+    this.recorder = recorder;
+  }
+
+  /**
+   * Returns the recorder of the session, or <code>null</code> if the session isn't being recorded.
+   */
+  public SessionRecorder getSessionRecorder() {
+    return recorder;
+  }
+
+  /**
+   * Returns the statistics about the messages passing through this connection.
+   */
+  public ConnectionStats getStats() {
+    return stats;
+  }
+
   /**
    * Invoked when an interruption occurs in the communication with the server. The specified
    * exception is the one that was thrown, which may be <code>null</code> if we were disconnected
@@ -231,9 +639,30 @@ public abstract class Connection {
    * invoke this method if, for example, an <code>IOException</code> is thrown while trying to send
    * data to the server.
    */
-  protected final synchronized void connectionInterrupted(final IOException exception) {
-    if (!isConnected()) // Just ignore because we may be called twice. For example, if sending fails, this method is
-    return; // invoked and closes the connection. Then the reader thread fails and invokes it again.
+  protected final void connectionInterrupted(IOException exception) {
+    disconnect(exception, false);
+  }
+
+  /**
+   * Closes the connection and notifies of the disconnection, passing it the specified exception. If
+   * <code>drain</code> is <code>true</code>, the commands already queued are given a chance to be
+   * written first. Draining is pointless (and would hold up the reader, possibly the shared
+   * {@link ConnectionSelector} thread) when the server has closed the connection, so it's only done
+   * when we're the ones closing it.
+   */
+  private synchronized void disconnect(final IOException exception, boolean drain) {
+    // Just ignore because we may be called twice. For example, if sending fails, this method is
+    // invoked and closes the connection. Then the reader thread fails and invokes it again.
+    if (!isConnected()) return;
+
+    // Let any pending commands (such as "quit") go out before closing the socket
+    writer.close(drain);
+    writer = null;
+
+    ManagementUtilities.unregister(statsName);
+    statsName = null;
+
+    if (recorder != null) recorder.close();
 
     try {
       socket
@@ -241,7 +670,9 @@ public abstract class Connection {
       socket = null;
       username = null;
 
-      execRunnable(
+      // The lowest lane, so that it's delivered after any pending messages
+      dispatch(
+          LOW_LANE,
           new SafeRunnable() {
             @Override
             public void safeRun() {
@@ -311,7 +742,7 @@ public abstract class Connection {
    * ignored. The actual disconnection is performed asynchronously.
    */
   public synchronized void close() {
-    if (isConnected()) connectionInterrupted(null);
+    if (isConnected()) disconnect(null, true);
     else if (isConnecting()) {
       readerThread.interrupt();
       readerThread = null;
@@ -360,6 +791,192 @@ public abstract class Connection {
     runnable.run();
   }
 
+  /**
+   * Makes the connection deliver events (server messages, connection and disconnection
+   * notifications) to the client thread in batches, instead of passing each one to
+   * {@link #execRunnable(Runnable)} separately. The reader thread then merely appends events to a
+   * queue, and a single runnable, passed to <code>execRunnable</code> only when the queue goes from
+   * empty to non-empty, drains it in the client thread. A batch ends after the specified amount of
+   * events, or once it has held the client thread for the specified amount of milliseconds, in
+   * which case the rest of the queue is drained by a new batch, giving other work in the client
+   * thread (repainting, for example) a chance to run in between. Events are queued in lanes by
+   * priority (see {@link #getLane(Object)}), and the pending events of higher lanes are always
+   * delivered first. Specifying a maximum batch size of 0 turns batching off. This method may only
+   * be invoked before initiating the connection.
+   */
+  public synchronized void setEventBatching(int maxBatchSize, int maxBatchTime) {
+    if ((readerThread != null) || isConnected())
+      throw new IllegalStateException("Event batching may only be set before connecting");
+    if (maxBatchSize < 0)
+      throw new IllegalArgumentException("Bad maximum batch size: " + maxBatchSize);
+    if (maxBatchTime < 0)
+      throw new IllegalArgumentException("Bad maximum batch time: " + maxBatchTime);
+
+    this.maxBatchSize = maxBatchSize;
+    this.maxBatchTime = maxBatchTime * 1000000L;
+  }
+
+  /**
+   * Returns the maximum amount of events delivered to the client thread in a single batch, or 0 if
+   * events are not batched.
+   *
+   * @see #setEventBatching(int, int)
+   */
+  public int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  /**
+   * Returns the maximum amount of time, in milliseconds, a single batch of events may hold the
+   * client thread for.
+   *
+   * @see #setEventBatching(int, int)
+   */
+  public int getMaxBatchTime() {
+    return (int) (maxBatchTime / 1000000L);
+  }
+
+  /**
+   * Sets the capacity of the specified lane - the amount of pending events beyond which messages
+   * going into the lane are dropped, if they are sheddable (see {@link #isSheddable(Object)}).
+   * Specifying a capacity of 0 makes the lane unbounded, which is also the default. Lanes only have
+   * pending events when batching is on.
+   */
+  public void setLaneCapacity(int lane, int capacity) {
+    if (capacity < 0) throw new IllegalArgumentException("Bad lane capacity: " + capacity);
+
+    laneCapacities[lane] = capacity;
+  }
+
+  /**
+   * Returns the capacity of the specified lane, or 0 if it is unbounded.
+   *
+   * @see #setLaneCapacity(int, int)
+   */
+  public int getLaneCapacity(int lane) {
+    return laneCapacities[lane];
+  }
+
+  /**
+   * Delivers the specified message, just read and parsed, to the client thread, into the lane
+   * returned by {@link #getLane(Object)}, shedding or coalescing messages as necessary.
+   */
+  private void dispatchMessage(Object message) {
+    if (maxBatchSize == 0) {
+      stats.messageQueued(LOW_LANE);
+      execRunnable(new MessageDispatcher(message, LOW_LANE));
+      return;
+    }
+
+    int lane = LOW_LANE;
+    boolean isSheddable = false;
+    boolean isSuperseding = false;
+    try {
+      lane = getLane(message);
+      isSheddable = isSheddable(message);
+      isSuperseding = isSuperseding(message);
+    } catch (RuntimeException e) {
+      // Probably a message which failed to parse; let it fail in the client thread, in order
+      lane = LOW_LANE;
+      isSheddable = false;
+      isSuperseding = false;
+    }
+
+    int capacity = laneCapacities[lane];
+    if (isSheddable && (capacity != 0) && (laneSizes.get(lane) >= capacity)) {
+      stats.messageShed(lane);
+      return;
+    }
+
+    if (isSuperseding) {
+      ConcurrentLinkedQueue queue = pendingEvents[lane];
+      for (Iterator i = queue.iterator(); i.hasNext(); ) {
+        Object event = i.next();
+        if ((event instanceof MessageDispatcher)
+            && supersedes(message, ((MessageDispatcher) event).message)
+            && queue.remove(event)) { // Fails if the client thread got to it first
+          laneSizes.decrementAndGet(lane);
+          stats.messageCoalesced(lane);
+        }
+      }
+    }
+
+    stats.messageQueued(lane);
+    dispatch(lane, new MessageDispatcher(message, lane));
+  }
+
+  /**
+   * Delivers the specified event to the client thread, either directly via
+   * {@link #execRunnable(Runnable)} or, if batching is on, by adding it to the specified lane.
+   */
+  private void dispatch(int lane, Runnable event) {
+    if (maxBatchSize == 0) execRunnable(event);
+    else {
+      laneSizes.incrementAndGet(lane);
+      pendingEvents[lane].add(event);
+      scheduleBatch();
+    }
+  }
+
+  /**
+   * Schedules a batch of events for delivery to the client thread, unless one is already scheduled.
+   */
+  private void scheduleBatch() {
+    if (isBatchScheduled.compareAndSet(false, true)) {
+      batchScheduleTime = System.nanoTime();
+      execRunnable(batchDispatcher);
+    }
+  }
+
+  /**
+   * Removes and returns the next pending event, taking it from the highest lane which has any.
+   * Returns <code>null</code> if there are no pending events.
+   */
+  private Runnable nextEvent() {
+    for (int lane = 0; lane < LANE_COUNT; lane++) {
+      Runnable event = (Runnable) pendingEvents[lane].poll();
+      if (event != null) {
+        laneSizes.decrementAndGet(lane);
+        return event;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Returns whether there are any pending events.
+   */
+  private boolean hasPendingEvents() {
+    for (int lane = 0; lane < LANE_COUNT; lane++) if (!pendingEvents[lane].isEmpty()) return true;
+
+    return false;
+  }
+
+  /**
+   * Delivers a batch of pending events, higher lanes first. Invoked in the client thread.
+   */
+  private void dispatchBatch() {
+    long batchStart = System.nanoTime();
+    long scheduleTime = batchScheduleTime;
+    isBatchScheduled.set(false);
+
+    int count = 0;
+    try {
+      Runnable event;
+      while ((count < maxBatchSize) && ((event = nextEvent()) != null)) {
+        count++;
+        event.run();
+        if (System.nanoTime() - batchStart >= maxBatchTime) break;
+      }
+    } finally {
+      stats.batchDispatched(count, batchStart - scheduleTime, System.nanoTime() - batchStart);
+
+      // Whatever is left (or arrived since we cleared isBatchScheduled) goes in the next batch
+      if (hasPendingEvents()) scheduleBatch();
+    }
+  }
+
   /**
    * Invoked when a connection to the server is established. The default implementation invokes
    * {@link #initiateLogin()}.
@@ -378,13 +995,23 @@ public abstract class Connection {
 
   /**
    * Invoked when a message arrives from the server. The specified message is an object returned by
-   * the {@link #readMessage(InputStream)} method, so an implementation can cast it to the
-   * appropriate type. It is up to this method to recognize when the server acknowledges or denies
+   * the {@link #parseMessage(Object)} method, so an implementation can cast it to the appropriate
+   * type. It is up to this method to recognize when the server acknowledges or denies
    * login and invoke the {@link #loginSucceeded(String)} or {@link #loginFailed(String)} methods
    * accordingly.
    */
   protected abstract void handleMessage(Object message);
 
+  /**
+   * Returns the time, as returned by <code>System.nanoTime()</code>, at which the message currently
+   * being handled by {@link #handleMessage(Object)} was read from the server. This allows measuring
+   * the time it takes the server to respond to a command, such as a move, without the time the
+   * response spent waiting for the client thread. May only be invoked from the client thread.
+   */
+  protected final long getMessageReceiveTime() {
+    return messageReceiveTime;
+  }
+
   /**
    * Invoked when the server acknowledges that we are logged in. The default implementation does
    * nothing.
@@ -416,10 +1043,23 @@ public abstract class Connection {
     private final Object message;
 
     /**
-     * Creates a new <code>MessageDispatcher</code>.
+     * The lane the message was queued in.
      */
-    public MessageDispatcher(Object message) {
+    private final int lane;
+
+    /**
+     * The time, in nanoseconds, when the message was queued for the client thread.
+     */
+    private final long queueTime;
+
+    /**
+     * Creates a new <code>MessageDispatcher</code> for the specified message, queued in the
+     * specified lane.
+     */
+    public MessageDispatcher(Object message, int lane) {
       this.message = message;
+      this.lane = lane;
+      this.queueTime = System.nanoTime();
     }
 
     /**
@@ -427,7 +1067,48 @@ public abstract class Connection {
      */
     @Override
     public void safeRun() {
-      handleMessage(message);
+      long handleStart = System.nanoTime();
+      stats.messageDequeued(lane, handleStart - queueTime);
+      messageReceiveTime = queueTime;
+      try {
+        handleMessage(message);
+      } finally {
+        stats.messageHandled(System.nanoTime() - handleStart);
+      }
     }
   };
+
+  /**
+   * Counts the bytes read from the server into the statistics.
+   */
+  private class CountingInputStream extends FilterInputStream {
+
+    /**
+     * Creates a new <code>CountingInputStream</code> counting the bytes read from the specified
+     * stream.
+     */
+    public CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    /**
+     * Reads and counts a single byte.
+     */
+    @Override
+    public int read() throws IOException {
+      int b = in.read();
+      if (b >= 0) stats.bytesReceived(1);
+      return b;
+    }
+
+    /**
+     * Reads and counts up to the specified amount of bytes.
+     */
+    @Override
+    public int read(byte[] buf, int offset, int length) throws IOException {
+      int count = in.read(buf, offset, length);
+      if (count > 0) stats.bytesReceived(count);
+      return count;
+    }
+  }
 }
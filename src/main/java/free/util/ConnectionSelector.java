@@ -0,0 +1,187 @@
+/**
+ * The utillib library. More information is available at http://www.jinchess.com/. Copyright (C)
+ * 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * The utillib library is free software; you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * The utillib library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with utillib
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+package free.util;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Vector;
+
+/**
+ * Reads the data of all the connections whose socket is a {@link ChannelSocket} in a single
+ * thread, so that the amount of threads doesn't grow with the amount of connections. When data
+ * arrives on a connection's channel, the thread reads, parses and dispatches the messages available
+ * on it, the same way a connection's own reader thread would, until it runs out of data. A
+ * connection which has a lot of data is served a limited amount of messages at a time, taking
+ * turns with the other connections.
+ */
+final class ConnectionSelector implements Runnable {
+
+  /**
+   * The maximum amount of messages read from a single connection before moving on to the next one.
+   */
+  private static final int MAX_MESSAGES_PER_TURN = 64;
+
+  /**
+   * The sole instance, created when first needed.
+   */
+  private static ConnectionSelector instance = null;
+
+  /**
+   * The selector.
+   */
+  private final Selector selector;
+
+  /**
+   * The channels waiting to be registered with the selector, as <code>Registration</code> objects.
+   */
+  private final Vector registrations = new Vector();
+
+  /**
+   * The connections which may have more messages available without any more data arriving, either
+   * because they were left with a full turn's worth, or because their channel has just been
+   * selected. Accessed only by the selector thread.
+   */
+  private final Vector readyConnections = new Vector();
+
+  /**
+   * Creates a new <code>ConnectionSelector</code> and starts its thread.
+   */
+  private ConnectionSelector() throws IOException {
+    this.selector = Selector.open();
+
+    Thread thread = new Thread(this, "ConnectionSelector");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MAX_PRIORITY);
+    thread.start();
+  }
+
+  /**
+   * Returns the sole instance of <code>ConnectionSelector</code>.
+   */
+  public static synchronized ConnectionSelector getInstance() throws IOException {
+    if (instance == null) instance = new ConnectionSelector();
+
+    return instance;
+  }
+
+  /**
+   * Puts the specified channel in non-blocking mode and starts reading the data arriving on it on
+   * behalf of the specified connection (see {@link Connection#readSelected(int)}).
+   */
+  public void register(SocketChannel channel, Connection connection) throws IOException {
+    channel.configureBlocking(false);
+
+    synchronized (registrations) {
+      registrations.addElement(new Registration(channel, connection));
+    }
+    selector.wakeup();
+  }
+
+  /**
+   * The selector thread loop.
+   */
+  @Override
+  public void run() {
+    try {
+      while (true) {
+        registerPending();
+
+        // Don't wait for more data if there are messages left over from the last turn
+        if (readyConnections.isEmpty()) selector.select();
+        else selector.selectNow();
+
+        Iterator keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = (SelectionKey) keys.next();
+          keys.remove();
+
+          Object connection = key.attachment();
+          if (key.isValid() && !readyConnections.contains(connection))
+            readyConnections.addElement(connection);
+        }
+
+        for (int i = 0; i < readyConnections.size(); ) {
+          Connection connection = (Connection) readyConnections.elementAt(i);
+          if (readTurn(connection)) i++;
+          else readyConnections.removeElementAt(i);
+        }
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Registers the channels waiting to be registered with the selector.
+   */
+  private void registerPending() {
+    synchronized (registrations) {
+      for (int i = 0; i < registrations.size(); i++) {
+        Registration registration = (Registration) registrations.elementAt(i);
+        try {
+          registration.channel.register(selector, SelectionKey.OP_READ, registration.connection);
+        } catch (ClosedChannelException e) {
+          // The connection has been closed in the meanwhile
+        }
+      }
+      registrations.removeAllElements();
+    }
+  }
+
+  /**
+   * Gives the specified connection a turn at reading its messages. Returns whether it may have more
+   * messages available.
+   */
+  private boolean readTurn(Connection connection) {
+    try {
+      return connection.readSelected(MAX_MESSAGES_PER_TURN);
+    } catch (RuntimeException e) {
+      // A failure in client code invoked from this thread mustn't take down the other connections
+      e.printStackTrace();
+      connection.close();
+      return false;
+    }
+  }
+
+  /**
+   * A channel waiting to be registered with the selector, and the connection it belongs to.
+   */
+  private static class Registration {
+
+    /**
+     * The channel.
+     */
+    public final SocketChannel channel;
+
+    /**
+     * The connection.
+     */
+    public final Connection connection;
+
+    /**
+     * Creates a new <code>Registration</code> with the specified channel and connection.
+     */
+    public Registration(SocketChannel channel, Connection connection) {
+      this.channel = channel;
+      this.connection = connection;
+    }
+  }
+}
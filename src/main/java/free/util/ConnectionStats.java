@@ -0,0 +1,749 @@
+/**
+ * The utillib library. More information is available at http://www.jinchess.com/. Copyright (C)
+ * 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * The utillib library is free software; you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * The utillib library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with utillib
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+package free.util;
+
+import java.util.Enumeration;
+import java.util.Hashtable;
+
+/**
+ * Keeps statistics about the messages passing through the stages of a {@link Connection}. A message
+ * is read and parsed in the reader thread, then queued for the client thread (via
+ * {@link Connection#execRunnable(Runnable)}) and finally handled there. This class keeps track of
+ * how many messages went through each stage, how long each stage took and how many messages are
+ * currently waiting between the reader and the client thread. When the connection delivers
+ * messages in batches (see {@link Connection#setEventBatching(int, int)}), it also keeps track of
+ * the size of the batches and how long each batch waited for the client thread to wake up, as well
+ * as of the messages queued, dropped and coalesced in each lane, and how long messages in each lane
+ * waited. For the other direction, it keeps track of the commands written to the server, how many
+ * writes that took and how long commands waited to be written.
+ * <P>
+ * Besides totals, the durations of parsing, of waiting for the client thread and of handling are
+ * recorded into {@link LatencyHistogram}s, so that their percentiles are known. Messages are also
+ * counted by type (see {@link Connection#getMessageType(Object)}), and the time taken by the
+ * listeners the client code notifies of the messages is recorded per listener class (see
+ * {@link #listenerHandled(String, long)}). The statistics are exposed via JMX, through
+ * {@link ConnectionStatsMBean}, while the connection is connected.
+ * <P>
+ * <B>NOTE:</B> This class is thread safe.
+ */
+public class ConnectionStats implements ConnectionStatsMBean {
+
+  /**
+   * The amount of messages parsed in the reader thread.
+   */
+  private long parsedCount = 0;
+
+  /**
+   * The total time spent parsing messages, in nanoseconds.
+   */
+  private long parseTime = 0;
+
+  /**
+   * The amount of bytes read from the server.
+   */
+  private long bytesReceived = 0;
+
+  /**
+   * Maps message types to the amount of messages of that type parsed, as <code>long[1]</code>
+   * arrays.
+   */
+  private final Hashtable messageTypeCounts = new Hashtable();
+
+  /**
+   * The histogram of the times spent parsing messages.
+   */
+  private final LatencyHistogram parseTimes = new LatencyHistogram();
+
+  /**
+   * The histogram of the times messages spent waiting for the client thread.
+   */
+  private final LatencyHistogram queueWaitTimes = new LatencyHistogram();
+
+  /**
+   * The histogram of the times spent handling messages in the client thread.
+   */
+  private final LatencyHistogram handleTimes = new LatencyHistogram();
+
+  /**
+   * Maps listener class names to the histograms of the times listeners of that class took to handle
+   * the events they were notified of.
+   */
+  private final Hashtable listenerTimes = new Hashtable();
+
+  /**
+   * The amount of messages handled in the client thread.
+   */
+  private long handledCount = 0;
+
+  /**
+   * The total time messages spent waiting for the client thread, in nanoseconds.
+   */
+  private long queueWaitTime = 0;
+
+  /**
+   * The longest time a message spent waiting for the client thread, in nanoseconds.
+   */
+  private long maxQueueWaitTime = 0;
+
+  /**
+   * The total time spent handling messages in the client thread, in nanoseconds.
+   */
+  private long handleTime = 0;
+
+  /**
+   * The amount of messages queued for, but not yet handled by, the client thread.
+   */
+  private int pendingCount = 0;
+
+  /**
+   * The largest value <code>pendingCount</code> ever had.
+   */
+  private int maxPendingCount = 0;
+
+  /**
+   * The amount of batches of events delivered to the client thread.
+   */
+  private long batchCount = 0;
+
+  /**
+   * The total amount of events delivered in batches.
+   */
+  private long batchedEventCount = 0;
+
+  /**
+   * The largest amount of events delivered in a single batch.
+   */
+  private int largestBatchSize = 0;
+
+  /**
+   * The total time batches spent waiting for the client thread, from being scheduled until they
+   * started running, in nanoseconds.
+   */
+  private long batchWakeupTime = 0;
+
+  /**
+   * The longest time a batch spent waiting for the client thread, in nanoseconds.
+   */
+  private long maxBatchWakeupTime = 0;
+
+  /**
+   * The total time spent delivering batches in the client thread, in nanoseconds.
+   */
+  private long batchTime = 0;
+
+  /**
+   * The amount of messages queued in each lane.
+   */
+  private final long[] laneQueuedCounts = new long[Connection.LANE_COUNT];
+
+  /**
+   * The total time messages in each lane spent waiting for the client thread, in nanoseconds.
+   */
+  private final long[] laneWaitTimes = new long[Connection.LANE_COUNT];
+
+  /**
+   * The longest time a message in each lane spent waiting for the client thread, in nanoseconds.
+   */
+  private final long[] maxLaneWaitTimes = new long[Connection.LANE_COUNT];
+
+  /**
+   * The amount of messages dropped because their lane was full, per lane.
+   */
+  private final long[] laneShedCounts = new long[Connection.LANE_COUNT];
+
+  /**
+   * The amount of pending messages dropped because a later message made them obsolete, per lane.
+   */
+  private final long[] laneCoalescedCounts = new long[Connection.LANE_COUNT];
+
+  /**
+   * The amount of commands written to the server.
+   */
+  private long commandCount = 0;
+
+  /**
+   * The amount of writes the commands were written in.
+   */
+  private long commandWriteCount = 0;
+
+  /**
+   * The total amount of bytes written to the server.
+   */
+  private long commandBytes = 0;
+
+  /**
+   * The total time commands spent waiting to be written, in nanoseconds.
+   */
+  private long commandDelay = 0;
+
+  /**
+   * The longest time a command spent waiting to be written, in nanoseconds.
+   */
+  private long maxCommandDelay = 0;
+
+  /**
+   * Records that a message of the specified type has been parsed in the specified amount of
+   * nanoseconds. The type may be <code>null</code>, if not known.
+   */
+  public void messageParsed(String type, long nanos) {
+    parseTimes.record(nanos);
+
+    synchronized (this) {
+      parsedCount++;
+      parseTime += nanos;
+
+      if (type != null) {
+        long[] count = (long[]) messageTypeCounts.get(type);
+        if (count == null) messageTypeCounts.put(type, count = new long[1]);
+        count[0]++;
+      }
+    }
+  }
+
+  /**
+   * Records that the specified amount of bytes has been read from the server.
+   */
+  public synchronized void bytesReceived(int count) {
+    bytesReceived += count;
+  }
+
+  /**
+   * Records that a message has been queued for the client thread in the specified lane.
+   */
+  public synchronized void messageQueued(int lane) {
+    pendingCount++;
+    if (pendingCount > maxPendingCount) maxPendingCount = pendingCount;
+    laneQueuedCounts[lane]++;
+  }
+
+  /**
+   * Records that a message has been taken off the specified lane by the client thread after
+   * waiting the specified amount of nanoseconds.
+   */
+  public void messageDequeued(int lane, long waitNanos) {
+    queueWaitTimes.record(waitNanos);
+
+    synchronized (this) {
+      pendingCount--;
+      queueWaitTime += waitNanos;
+      if (waitNanos > maxQueueWaitTime) maxQueueWaitTime = waitNanos;
+      laneWaitTimes[lane] += waitNanos;
+      if (waitNanos > maxLaneWaitTimes[lane]) maxLaneWaitTimes[lane] = waitNanos;
+    }
+  }
+
+  /**
+   * Records that a message has been dropped instead of being queued in the specified lane, because
+   * the lane was full.
+   */
+  public synchronized void messageShed(int lane) {
+    laneShedCounts[lane]++;
+  }
+
+  /**
+   * Records that a message pending in the specified lane has been dropped, because a later message
+   * made it obsolete.
+   */
+  public synchronized void messageCoalesced(int lane) {
+    pendingCount--;
+    laneCoalescedCounts[lane]++;
+  }
+
+  /**
+   * Records that the client thread has finished handling a message in the specified amount of
+   * nanoseconds.
+   */
+  public void messageHandled(long nanos) {
+    handleTimes.record(nanos);
+
+    synchronized (this) {
+      handledCount++;
+      handleTime += nanos;
+    }
+  }
+
+  /**
+   * Records that a listener of the specified class took the specified amount of nanoseconds to
+   * handle an event it was notified of, in the client thread.
+   */
+  public void listenerHandled(String listenerClassName, long nanos) {
+    LatencyHistogram histogram;
+    synchronized (listenerTimes) {
+      histogram = (LatencyHistogram) listenerTimes.get(listenerClassName);
+      if (histogram == null)
+        listenerTimes.put(listenerClassName, histogram = new LatencyHistogram());
+    }
+
+    histogram.record(nanos);
+  }
+
+  /**
+   * Records that a batch of the specified amount of events has been delivered to the client thread,
+   * after waiting <code>wakeupNanos</code> nanoseconds for it and then taking
+   * <code>nanos</code> nanoseconds to run.
+   */
+  public synchronized void batchDispatched(int size, long wakeupNanos, long nanos) {
+    batchCount++;
+    batchedEventCount += size;
+    if (size > largestBatchSize) largestBatchSize = size;
+    batchWakeupTime += wakeupNanos;
+    if (wakeupNanos > maxBatchWakeupTime) maxBatchWakeupTime = wakeupNanos;
+    batchTime += nanos;
+  }
+
+  /**
+   * Records that the specified amount of commands, totalling the specified amount of bytes, have
+   * been written to the server in a single write, after waiting the specified total and maximum
+   * amount of nanoseconds.
+   */
+  public synchronized void commandsWritten(int count, int bytes, long totalDelay, long maxDelay) {
+    commandCount += count;
+    commandWriteCount++;
+    commandBytes += bytes;
+    commandDelay += totalDelay;
+    if (maxDelay > maxCommandDelay) maxCommandDelay = maxDelay;
+  }
+
+  /**
+   * Returns the amount of messages parsed so far.
+   */
+  @Override
+  public synchronized long getParsedCount() {
+    return parsedCount;
+  }
+
+  /**
+   * Returns the total time spent parsing messages, in nanoseconds.
+   */
+  public synchronized long getParseTime() {
+    return parseTime;
+  }
+
+  /**
+   * Returns the amount of bytes read from the server so far.
+   */
+  @Override
+  public synchronized long getBytesReceived() {
+    return bytesReceived;
+  }
+
+  /**
+   * Returns the amount of messages of the specified type parsed so far.
+   */
+  public synchronized long getMessageTypeCount(String type) {
+    long[] count = (long[]) messageTypeCounts.get(type);
+    return count == null ? 0 : count[0];
+  }
+
+  /**
+   * Returns the amount of messages parsed so far by type, as "type=count" strings, the most
+   * frequent types first.
+   */
+  @Override
+  public synchronized String[] getMessageTypeCounts() {
+    String[] types = new String[messageTypeCounts.size()];
+    final long[] counts = new long[types.length];
+    int i = 0;
+    for (Enumeration e = messageTypeCounts.keys(); e.hasMoreElements(); i++) {
+      types[i] = (String) e.nextElement();
+      counts[i] = ((long[]) messageTypeCounts.get(types[i]))[0];
+    }
+
+    // Few types, so a simple sort will do
+    String[] result = new String[types.length];
+    for (i = 0; i < result.length; i++) {
+      int max = i;
+      for (int j = i + 1; j < types.length; j++) if (counts[j] > counts[max]) max = j;
+
+      String type = types[max];
+      long count = counts[max];
+      types[max] = types[i];
+      counts[max] = counts[i];
+      types[i] = type;
+      counts[i] = count;
+      result[i] = type + "=" + count;
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the histogram of the times spent parsing messages.
+   */
+  public LatencyHistogram getParseTimes() {
+    return parseTimes;
+  }
+
+  /**
+   * Returns the histogram of the times messages spent waiting for the client thread.
+   */
+  public LatencyHistogram getQueueWaitTimes() {
+    return queueWaitTimes;
+  }
+
+  /**
+   * Returns the histogram of the times spent handling messages in the client thread.
+   */
+  public LatencyHistogram getHandleTimes() {
+    return handleTimes;
+  }
+
+  /**
+   * Returns the histogram of the times listeners of the specified class took to handle events, or
+   * <code>null</code> if no listener of that class has handled any.
+   */
+  public LatencyHistogram getListenerTimes(String listenerClassName) {
+    synchronized (listenerTimes) {
+      return (LatencyHistogram) listenerTimes.get(listenerClassName);
+    }
+  }
+
+  /**
+   * Returns a summary of the times listeners took to handle events, as "class: histogram"
+   * strings, one per listener class, the class whose listeners took the most time in total first.
+   */
+  @Override
+  public String[] getListenerTimes() {
+    String[] names;
+    LatencyHistogram[] histograms;
+    synchronized (listenerTimes) {
+      names = new String[listenerTimes.size()];
+      histograms = new LatencyHistogram[names.length];
+      int i = 0;
+      for (Enumeration e = listenerTimes.keys(); e.hasMoreElements(); i++) {
+        names[i] = (String) e.nextElement();
+        histograms[i] = (LatencyHistogram) listenerTimes.get(names[i]);
+      }
+    }
+
+    long[] totals = new long[names.length];
+    for (int i = 0; i < names.length; i++) totals[i] = histograms[i].getTotal();
+
+    String[] result = new String[names.length];
+    for (int i = 0; i < result.length; i++) {
+      int max = -1;
+      for (int j = 0; j < names.length; j++)
+        if ((names[j] != null) && ((max == -1) || (totals[j] > totals[max]))) max = j;
+
+      result[i] = names[max] + ": " + histograms[max];
+      names[max] = null;
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the median time spent parsing a message, in microseconds.
+   */
+  @Override
+  public long getParseTimeMedian() {
+    return parseTimes.getPercentile(50) / 1000;
+  }
+
+  /**
+   * Returns the 99th percentile of the times spent parsing a message, in microseconds.
+   */
+  @Override
+  public long getParseTime99thPercentile() {
+    return parseTimes.getPercentile(99) / 1000;
+  }
+
+  /**
+   * Returns the median time a message spent waiting for the client thread, in microseconds.
+   */
+  @Override
+  public long getQueueWaitTimeMedian() {
+    return queueWaitTimes.getPercentile(50) / 1000;
+  }
+
+  /**
+   * Returns the 99th percentile of the times messages spent waiting for the client thread, in
+   * microseconds.
+   */
+  @Override
+  public long getQueueWaitTime99thPercentile() {
+    return queueWaitTimes.getPercentile(99) / 1000;
+  }
+
+  /**
+   * Returns the median time spent handling a message in the client thread, in microseconds.
+   */
+  @Override
+  public long getHandleTimeMedian() {
+    return handleTimes.getPercentile(50) / 1000;
+  }
+
+  /**
+   * Returns the 99th percentile of the times spent handling a message in the client thread, in
+   * microseconds.
+   */
+  @Override
+  public long getHandleTime99thPercentile() {
+    return handleTimes.getPercentile(99) / 1000;
+  }
+
+  /**
+   * Returns {@link #toString()}.
+   */
+  @Override
+  public String getSummary() {
+    return toString();
+  }
+
+  /**
+   * Returns the amount of messages handled so far.
+   */
+  @Override
+  public synchronized long getHandledCount() {
+    return handledCount;
+  }
+
+  /**
+   * Returns the total time spent handling messages, in nanoseconds.
+   */
+  public synchronized long getHandleTime() {
+    return handleTime;
+  }
+
+  /**
+   * Returns the total time messages spent waiting for the client thread, in nanoseconds.
+   */
+  public synchronized long getQueueWaitTime() {
+    return queueWaitTime;
+  }
+
+  /**
+   * Returns the longest time a message spent waiting for the client thread, in nanoseconds.
+   */
+  @Override
+  public synchronized long getMaxQueueWaitTime() {
+    return maxQueueWaitTime;
+  }
+
+  /**
+   * Returns the amount of messages currently waiting to be handled by the client thread.
+   */
+  @Override
+  public synchronized int getPendingCount() {
+    return pendingCount;
+  }
+
+  /**
+   * Returns the largest amount of messages that were ever waiting to be handled by the client
+   * thread at the same time.
+   */
+  @Override
+  public synchronized int getMaxPendingCount() {
+    return maxPendingCount;
+  }
+
+  /**
+   * Returns the amount of batches of events delivered to the client thread so far.
+   */
+  public synchronized long getBatchCount() {
+    return batchCount;
+  }
+
+  /**
+   * Returns the total amount of events delivered in batches so far.
+   */
+  public synchronized long getBatchedEventCount() {
+    return batchedEventCount;
+  }
+
+  /**
+   * Returns the largest amount of events delivered in a single batch.
+   */
+  public synchronized int getLargestBatchSize() {
+    return largestBatchSize;
+  }
+
+  /**
+   * Returns the total time batches spent waiting for the client thread, in nanoseconds.
+   */
+  public synchronized long getBatchWakeupTime() {
+    return batchWakeupTime;
+  }
+
+  /**
+   * Returns the longest time a batch spent waiting for the client thread, in nanoseconds.
+   */
+  public synchronized long getMaxBatchWakeupTime() {
+    return maxBatchWakeupTime;
+  }
+
+  /**
+   * Returns the total time spent delivering batches in the client thread, in nanoseconds.
+   */
+  public synchronized long getBatchTime() {
+    return batchTime;
+  }
+
+  /**
+   * Returns the amount of messages queued in the specified lane so far.
+   */
+  public synchronized long getLaneQueuedCount(int lane) {
+    return laneQueuedCounts[lane];
+  }
+
+  /**
+   * Returns the total time messages in the specified lane spent waiting for the client thread, in
+   * nanoseconds.
+   */
+  public synchronized long getLaneWaitTime(int lane) {
+    return laneWaitTimes[lane];
+  }
+
+  /**
+   * Returns the longest time a message in the specified lane spent waiting for the client thread,
+   * in nanoseconds.
+   */
+  public synchronized long getMaxLaneWaitTime(int lane) {
+    return maxLaneWaitTimes[lane];
+  }
+
+  /**
+   * Returns the amount of messages dropped so far because the specified lane was full.
+   */
+  public synchronized long getLaneShedCount(int lane) {
+    return laneShedCounts[lane];
+  }
+
+  /**
+   * Returns the amount of messages pending in the specified lane which were dropped so far because
+   * a later message made them obsolete.
+   */
+  public synchronized long getLaneCoalescedCount(int lane) {
+    return laneCoalescedCounts[lane];
+  }
+
+  /**
+   * Returns the amount of commands written to the server so far.
+   */
+  @Override
+  public synchronized long getCommandCount() {
+    return commandCount;
+  }
+
+  /**
+   * Returns the amount of writes commands were written in so far.
+   */
+  public synchronized long getCommandWriteCount() {
+    return commandWriteCount;
+  }
+
+  /**
+   * Returns the total amount of bytes written to the server so far.
+   */
+  @Override
+  public synchronized long getCommandBytes() {
+    return commandBytes;
+  }
+
+  /**
+   * Returns the total time commands spent waiting to be written, in nanoseconds.
+   */
+  public synchronized long getCommandDelay() {
+    return commandDelay;
+  }
+
+  /**
+   * Returns the longest time a command spent waiting to be written, in nanoseconds.
+   */
+  public synchronized long getMaxCommandDelay() {
+    return maxCommandDelay;
+  }
+
+  /**
+   * Returns a textual summary of the statistics.
+   */
+  @Override
+  public synchronized String toString() {
+    String summary =
+        "received="
+            + bytesReceived
+            + " bytes parsed="
+            + parsedCount
+            + " (avg "
+            + average(parseTime, parsedCount)
+            + "us, p99 "
+            + getParseTime99thPercentile()
+            + "us) handled="
+            + handledCount
+            + " (avg "
+            + average(handleTime, handledCount)
+            + "us, p99 "
+            + getHandleTime99thPercentile()
+            + "us) pending="
+            + pendingCount
+            + " (max "
+            + maxPendingCount
+            + ") queue wait avg="
+            + average(queueWaitTime, handledCount)
+            + "us p99="
+            + getQueueWaitTime99thPercentile()
+            + "us max="
+            + (maxQueueWaitTime / 1000)
+            + "us commands="
+            + commandCount
+            + " (in "
+            + commandWriteCount
+            + " writes, "
+            + commandBytes
+            + " bytes) command delay avg="
+            + average(commandDelay, commandCount)
+            + "us max="
+            + (maxCommandDelay / 1000)
+            + "us";
+
+    if (batchCount == 0) return summary;
+
+    StringBuffer lanes = new StringBuffer();
+    for (int lane = 0; lane < Connection.LANE_COUNT; lane++) {
+      lanes.append(" lane" + lane + "=" + laneQueuedCounts[lane]);
+      long delivered = laneQueuedCounts[lane] - laneCoalescedCounts[lane];
+      lanes.append(" (wait avg " + average(laneWaitTimes[lane], delivered) + "us");
+      lanes.append(" max " + (maxLaneWaitTimes[lane] / 1000) + "us");
+      lanes.append(", shed " + laneShedCounts[lane]);
+      lanes.append(", coalesced " + laneCoalescedCounts[lane] + ")");
+    }
+
+    return summary
+        + " batches="
+        + batchCount
+        + " (avg size "
+        + (batchedEventCount / batchCount)
+        + ", max "
+        + largestBatchSize
+        + ", avg "
+        + average(batchTime, batchCount)
+        + "us) wakeup avg="
+        + average(batchWakeupTime, batchCount)
+        + "us max="
+        + (maxBatchWakeupTime / 1000)
+        + "us"
+        + lanes;
+  }
+
+  /**
+   * Returns the average, in microseconds, of the specified total amount of nanoseconds over the
+   * specified count.
+   */
+  private static long average(long totalNanos, long count) {
+    return count == 0 ? 0 : totalNanos / count / 1000;
+  }
+}
@@ -0,0 +1,109 @@
+/**
+ * The utillib library. More information is available at http://www.jinchess.com/. Copyright (C)
+ * 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * The utillib library is free software; you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * The utillib library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with utillib
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+package free.util;
+
+/**
+ * The JMX management interface of {@link ConnectionStats}. Times are in microseconds, unless noted
+ * otherwise.
+ */
+public interface ConnectionStatsMBean {
+
+  /**
+   * Returns the amount of bytes read from the server.
+   */
+  long getBytesReceived();
+
+  /**
+   * Returns the amount of messages parsed.
+   */
+  long getParsedCount();
+
+  /**
+   * Returns the amount of messages parsed by type, as "type=count" strings.
+   */
+  String[] getMessageTypeCounts();
+
+  /**
+   * Returns the median time spent parsing a message.
+   */
+  long getParseTimeMedian();
+
+  /**
+   * Returns the 99th percentile of the times spent parsing a message.
+   */
+  long getParseTime99thPercentile();
+
+  /**
+   * Returns the amount of messages currently waiting for the client thread.
+   */
+  int getPendingCount();
+
+  /**
+   * Returns the largest amount of messages that were ever waiting for the client thread.
+   */
+  int getMaxPendingCount();
+
+  /**
+   * Returns the median time a message spent waiting for the client thread.
+   */
+  long getQueueWaitTimeMedian();
+
+  /**
+   * Returns the 99th percentile of the times messages spent waiting for the client thread.
+   */
+  long getQueueWaitTime99thPercentile();
+
+  /**
+   * Returns the longest time a message spent waiting for the client thread, in nanoseconds.
+   */
+  long getMaxQueueWaitTime();
+
+  /**
+   * Returns the amount of messages handled in the client thread.
+   */
+  long getHandledCount();
+
+  /**
+   * Returns the median time spent handling a message in the client thread.
+   */
+  long getHandleTimeMedian();
+
+  /**
+   * Returns the 99th percentile of the times spent handling a message in the client thread.
+   */
+  long getHandleTime99thPercentile();
+
+  /**
+   * Returns the times listeners took to handle events, per listener class.
+   */
+  String[] getListenerTimes();
+
+  /**
+   * Returns the amount of commands written to the server.
+   */
+  long getCommandCount();
+
+  /**
+   * Returns the amount of bytes written to the server.
+   */
+  long getCommandBytes();
+
+  /**
+   * Returns a textual summary of all the statistics.
+   */
+  String getSummary();
+}
@@ -0,0 +1,255 @@
+/**
+ * The utillib library. More information is available at http://www.jinchess.com/. Copyright (C)
+ * 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * The utillib library is free software; you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * The utillib library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with utillib
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+package free.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A base class for input streams which split the data read from an underlying stream into messages
+ * (lines, datagrams etc.). The data is read in bulk into a buffer which subclasses scan directly,
+ * locating message boundaries with index arithmetic instead of reading byte by byte.
+ * <P>
+ * Subclasses may hand out objects which keep referring to the part of the buffer holding the
+ * message they were created from, instead of copying it (see {@link #shareBuffer()}). The bytes of
+ * a buffer are never modified once it has been shared - when more room is needed, a new buffer is
+ * allocated instead.
+ * <P>
+ * The bytes which haven't been consumed yet are <code>buf[pos]</code> through
+ * <code>buf[limit - 1]</code>.
+ * <P>
+ * The underlying stream may be non-blocking, throwing an <code>InterruptedIOException</code> when
+ * it has no data available (see {@link ChannelSocket}). A subclass which may be left in the middle
+ * of a message by such an exception brackets the reading of each message with
+ * {@link #beginMessage()} and {@link #endMessage()}, and calls {@link #rollbackMessage()} when the
+ * exception is thrown, so that the message is read again from its beginning once more data is
+ * available.
+ */
+public abstract class FramingInputStream extends FilterInputStream {
+
+  /**
+   * The default size of the buffer.
+   */
+  private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+  /**
+   * The buffer.
+   */
+  protected byte[] buf;
+
+  /**
+   * The index of the first byte in the buffer which hasn't been consumed yet.
+   */
+  protected int pos = 0;
+
+  /**
+   * The index one past the last valid byte in the buffer.
+   */
+  protected int limit = 0;
+
+  /**
+   * Whether objects referring to the current buffer have been handed out, in which case its
+   * contents may not be moved.
+   */
+  private boolean isBufferShared = false;
+
+  /**
+   * The index in the buffer of the beginning of the message currently being read, or -1 if none.
+   * The bytes starting at this index are kept in the buffer until the message has been read.
+   */
+  private int messageStart = -1;
+
+  /**
+   * Creates a new <code>FramingInputStream</code> which reads from the specified
+   * <code>InputStream</code>.
+   */
+  public FramingInputStream(InputStream in) {
+    super(in);
+
+    this.buf = new byte[DEFAULT_BUFFER_SIZE];
+  }
+
+  /**
+   * Makes sure there are at least the specified amount of unconsumed bytes in the buffer, reading
+   * (and blocking) as needed. Returns <code>false</code> if the end of the stream is reached
+   * before that many bytes are available. Note that this may move the unconsumed bytes to a
+   * different position in the buffer, or to a different buffer altogether, so indices into the
+   * buffer should be kept relative to <code>pos</code> across invocations.
+   */
+  protected boolean request(int count) throws IOException {
+    while (limit - pos < count) {
+      if (!fill()) return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Reads more data into the buffer, blocking until at least one byte is available. Returns
+   * <code>false</code> if the end of the stream has been reached.
+   */
+  protected boolean fill() throws IOException {
+    if (limit == buf.length) {
+      int start = (messageStart == -1) ? pos : messageStart;
+      int remaining = limit - start;
+      if (isBufferShared || (remaining > buf.length / 2)) {
+        byte[] newBuf = new byte[remaining > buf.length / 2 ? buf.length * 2 : buf.length];
+        System.arraycopy(buf, start, newBuf, 0, remaining);
+        buf = newBuf;
+        isBufferShared = false;
+      } else System.arraycopy(buf, start, buf, 0, remaining);
+      pos -= start;
+      if (messageStart != -1) messageStart = 0;
+      limit = remaining;
+    }
+
+    int count = in.read(buf, limit, buf.length - limit);
+    if (count < 0) return false;
+
+    limit += count;
+    return true;
+  }
+
+  /**
+   * Marks the current position as the beginning of a message, which can be returned to with
+   * {@link #rollbackMessage()} until {@link #endMessage()} is invoked.
+   */
+  protected void beginMessage() {
+    messageStart = pos;
+  }
+
+  /**
+   * Marks the end of the message whose beginning was marked with {@link #beginMessage()}.
+   */
+  protected void endMessage() {
+    messageStart = -1;
+  }
+
+  /**
+   * Returns to the beginning of the message marked with {@link #beginMessage()}, unconsuming
+   * everything read since.
+   */
+  protected void rollbackMessage() {
+    pos = messageStart;
+    messageStart = -1;
+  }
+
+  /**
+   * Marks the current buffer as referred to by objects handed out to the caller, so that its
+   * contents are never modified from now on.
+   */
+  protected void shareBuffer() {
+    isBufferShared = true;
+  }
+
+  /**
+   * Returns the index of the first occurrence of the specified byte in the buffer, starting at the
+   * specified index and ending at <code>limit</code>, or -1 if there is no such byte.
+   */
+  protected int indexOf(int b, int fromIndex) {
+    byte[] buf = this.buf;
+    for (int i = fromIndex; i < limit; i++) if (buf[i] == b) return i;
+
+    return -1;
+  }
+
+  /**
+   * Returns whether the bytes of the buffer starting at the specified index are the characters of
+   * the specified (ASCII) string. Bytes past <code>limit</code> never match.
+   */
+  protected boolean startsWith(String s, int index) {
+    int length = s.length();
+    if (index + length > limit) return false;
+
+    for (int i = 0; i < length; i++) if (buf[index + i] != s.charAt(i)) return false;
+
+    return true;
+  }
+
+  /**
+   * Decodes the bytes of the buffer in the specified range into a string, mapping each byte to the
+   * character with the same (unsigned) value, as ISO-8859-1 does.
+   */
+  protected String decode(int start, int end) {
+    return decode(buf, start, end);
+  }
+
+  /**
+   * Decodes the bytes of the specified array in the specified range into a string, mapping each
+   * byte to the character with the same (unsigned) value, as ISO-8859-1 does.
+   */
+  public static String decode(byte[] bytes, int start, int end) {
+    char[] chars = new char[end - start];
+    for (int i = 0; i < chars.length; i++) chars[i] = (char) (bytes[start + i] & 0xff);
+
+    return new String(chars);
+  }
+
+  /**
+   * Reads a single byte, from the buffer if there are unconsumed bytes in it.
+   */
+  @Override
+  public int read() throws IOException {
+    if (!request(1)) return -1;
+
+    return buf[pos++] & 0xff;
+  }
+
+  /**
+   * Reads bytes, from the buffer if there are unconsumed bytes in it.
+   */
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) return 0;
+    if (!request(1)) return -1;
+
+    int count = Math.min(len, limit - pos);
+    System.arraycopy(buf, pos, b, off, count);
+    pos += count;
+    return count;
+  }
+
+  /**
+   * Skips bytes, from the buffer if there are unconsumed bytes in it.
+   */
+  @Override
+  public long skip(long n) throws IOException {
+    if (n <= 0) return 0;
+    if (pos == limit) return in.skip(n);
+
+    int count = (int) Math.min(n, limit - pos);
+    pos += count;
+    return count;
+  }
+
+  /**
+   * Returns the amount of bytes which can be read without blocking.
+   */
+  @Override
+  public int available() throws IOException {
+    return (limit - pos) + in.available();
+  }
+
+  /**
+   * Returns <code>false</code>, as marking is not supported.
+   */
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+}
@@ -0,0 +1,553 @@
+/**
+ * The utillib library. More information is available at http://www.jinchess.com/. Copyright (C)
+ * 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * The utillib library is free software; you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * The utillib library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with utillib
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+package free.util;
+
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs blocking I/O tasks (loading resources, playing sounds, pumping streams and the like) in the
+ * background, instead of each such task creating a thread of its own. Where the JDK supports
+ * virtual threads, every task runs in a virtual thread of its own, which costs next to nothing
+ * while blocked. Otherwise, the tasks run in a pool of at most {@link #getMaxPoolSize()} daemon
+ * threads (configurable via the "free.util.io.maxThreads" system property), whose idle threads
+ * die after a while; tasks submitted while all of them are busy wait for one to become available.
+ * Open-ended tasks, such as pumping a stream until it ends, must not be allowed to occupy the pool,
+ * so they are submitted via {@link #executeOpenEnded(String, Runnable)}, which (without virtual
+ * threads) runs each of them in a dedicated daemon thread instead.
+ * <P>
+ * Each task is submitted with a name, which the thread running it carries while it runs, and which
+ * the statistics kept about the tasks are broken down by. The statistics of the shared instance
+ * are exposed via JMX, through {@link IOExecutorMBean}.
+ * <P>
+ * <B>NOTE:</B> This class is thread safe.
+ */
+public final class IOExecutor implements IOExecutorMBean {
+
+  /**
+   * The default maximum amount of threads in the pool, when virtual threads aren't available.
+   */
+  private static final int DEFAULT_MAX_POOL_SIZE = 16;
+
+  /**
+   * The amount of seconds an idle pool thread waits for a task before dying.
+   */
+  private static final int KEEP_ALIVE_TIME = 30;
+
+  /**
+   * The shared instance, created when first needed.
+   */
+  private static IOExecutor shared = null;
+
+  /**
+   * The executor we run tasks with.
+   */
+  private final ExecutorService executor;
+
+  /**
+   * Whether tasks run in virtual threads.
+   */
+  private final boolean isVirtual;
+
+  /**
+   * The maximum amount of threads in the pool, or 0 if tasks run in virtual threads.
+   */
+  private final int maxPoolSize;
+
+  /**
+   * The amount of tasks submitted.
+   */
+  private long submittedCount = 0;
+
+  /**
+   * The amount of tasks which finished running, successfully or not.
+   */
+  private long completedCount = 0;
+
+  /**
+   * The amount of tasks which threw an exception.
+   */
+  private long failedCount = 0;
+
+  /**
+   * The amount of tasks currently running.
+   */
+  private int activeCount = 0;
+
+  /**
+   * The largest value <code>activeCount</code> ever had.
+   */
+  private int maxActiveCount = 0;
+
+  /**
+   * The total time tasks waited to start running, in nanoseconds.
+   */
+  private long queueWaitTime = 0;
+
+  /**
+   * The longest time a task waited to start running, in nanoseconds.
+   */
+  private long maxQueueWaitTime = 0;
+
+  /**
+   * The total time tasks ran for, in nanoseconds.
+   */
+  private long runTime = 0;
+
+  /**
+   * The longest time a task ran for, in nanoseconds.
+   */
+  private long maxRunTime = 0;
+
+  /**
+   * Maps task names to the amount of tasks submitted with that name, as <code>long[1]</code>
+   * arrays.
+   */
+  private final Hashtable namedCounts = new Hashtable();
+
+  /**
+   * Creates a new <code>IOExecutor</code>, using virtual threads if available, and otherwise a
+   * pool of at most the specified amount of threads.
+   */
+  private IOExecutor(int maxPoolSize) {
+    ExecutorService virtualExecutor = createVirtualThreadExecutor();
+    if (virtualExecutor != null) {
+      this.executor = virtualExecutor;
+      this.isVirtual = true;
+      this.maxPoolSize = 0;
+    } else {
+      ThreadPoolExecutor pool =
+          new ThreadPoolExecutor(
+              maxPoolSize,
+              maxPoolSize,
+              KEEP_ALIVE_TIME,
+              TimeUnit.SECONDS,
+              new LinkedBlockingQueue(),
+              new ThreadFactory() {
+                private int threadCount = 0;
+
+                @Override
+                public synchronized Thread newThread(Runnable r) {
+                  Thread thread = new Thread(r, "IO-" + (++threadCount));
+                  thread.setDaemon(true);
+                  return thread;
+                }
+              });
+      pool.allowCoreThreadTimeOut(true);
+
+      this.executor = pool;
+      this.isVirtual = false;
+      this.maxPoolSize = maxPoolSize;
+    }
+  }
+
+  /**
+   * Returns the shared <code>IOExecutor</code>.
+   */
+  public static synchronized IOExecutor getShared() {
+    if (shared == null) {
+      int maxPoolSize = DEFAULT_MAX_POOL_SIZE;
+      try {
+        maxPoolSize = Integer.getInteger("free.util.io.maxThreads", maxPoolSize).intValue();
+      } catch (SecurityException e) {
+      }
+      shared = new IOExecutor(Math.max(1, maxPoolSize));
+      ManagementUtilities.register(shared, "IOExecutor", null);
+    }
+
+    return shared;
+  }
+
+  /**
+   * Creates an executor which runs each task in a new virtual thread, or returns <code>null</code>
+   * if virtual threads aren't supported by the JDK. Reflection is used so that we also compile and
+   * run on JDKs which don't have them.
+   */
+  private static ExecutorService createVirtualThreadExecutor() {
+    try {
+      Class builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder =
+          Thread.class.getMethod("ofVirtual", new Class[0]).invoke(null, new Object[0]);
+      builder =
+          builderClass
+              .getMethod("name", new Class[] {String.class, long.class})
+              .invoke(builder, new Object[] {"IO-", Long.valueOf(1)});
+      ThreadFactory factory =
+          (ThreadFactory)
+              builderClass.getMethod("factory", new Class[0]).invoke(builder, new Object[0]);
+      return (ExecutorService)
+          Executors.class
+              .getMethod("newThreadPerTaskExecutor", new Class[] {ThreadFactory.class})
+              .invoke(null, new Object[] {factory});
+    } catch (Exception e) { // No virtual threads, or we aren't allowed to use them
+      return null;
+    }
+  }
+
+  /**
+   * Runs the specified task in the background. The thread running it is named after the specified
+   * name while it runs. An exception thrown by the task is printed and counted, but otherwise
+   * ignored.
+   */
+  public void execute(final String name, final Runnable task) {
+    final long submitTime = taskSubmitted(name);
+    executor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            runTask(name, task, submitTime);
+          }
+        });
+  }
+
+  /**
+   * Runs the specified open-ended task in the background - a task which may run for as long as the
+   * application does, such as pumping a stream until it ends. With virtual threads, this is the
+   * same as {@link #execute(String, Runnable)}. Otherwise, the task runs in a new daemon thread of
+   * its own, so that it neither waits for a pool thread nor keeps one from the other tasks. The
+   * task is counted in the statistics like any other.
+   */
+  public void executeOpenEnded(final String name, final Runnable task) {
+    if (isVirtual) {
+      execute(name, task);
+      return;
+    }
+
+    final long submitTime = taskSubmitted(name);
+    Thread thread =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                runTask(name, task, submitTime);
+              }
+            },
+            "IO");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Records that a task with the specified name has been submitted, and returns the time it was
+   * submitted at.
+   */
+  private synchronized long taskSubmitted(String name) {
+    submittedCount++;
+    long[] count = (long[]) namedCounts.get(name);
+    if (count == null) namedCounts.put(name, count = new long[1]);
+    count[0]++;
+
+    return System.nanoTime();
+  }
+
+  /**
+   * Runs the specified task, submitted at the specified time, keeping statistics about it.
+   */
+  private void runTask(String name, Runnable task, long submitTime) {
+    long startTime = System.nanoTime();
+    taskStarted(startTime - submitTime);
+
+    Thread thread = Thread.currentThread();
+    String threadName = thread.getName();
+    thread.setName(threadName + "-" + name);
+
+    boolean failed = false;
+    try {
+      task.run();
+    } catch (RuntimeException e) {
+      failed = true;
+      e.printStackTrace();
+    } catch (Error e) {
+      failed = true;
+      e.printStackTrace();
+    } finally {
+      thread.setName(threadName);
+      taskFinished(System.nanoTime() - startTime, failed);
+    }
+  }
+
+  /**
+   * Records that a task has started running, after waiting the specified amount of nanoseconds.
+   */
+  private synchronized void taskStarted(long queueWait) {
+    activeCount++;
+    if (activeCount > maxActiveCount) maxActiveCount = activeCount;
+
+    queueWaitTime += queueWait;
+    if (queueWait > maxQueueWaitTime) maxQueueWaitTime = queueWait;
+  }
+
+  /**
+   * Records that a task has finished running, after running for the specified amount of
+   * nanoseconds.
+   */
+  private synchronized void taskFinished(long time, boolean failed) {
+    activeCount--;
+    completedCount++;
+    if (failed) failedCount++;
+
+    runTime += time;
+    if (time > maxRunTime) maxRunTime = time;
+  }
+
+  /**
+   * Returns whether tasks run in virtual threads, rather than in a pool of threads.
+   */
+  @Override
+  public boolean isUsingVirtualThreads() {
+    return isVirtual;
+  }
+
+  /**
+   * Returns the maximum amount of threads in the pool, or 0 if tasks run in virtual threads.
+   */
+  @Override
+  public int getMaxPoolSize() {
+    return maxPoolSize;
+  }
+
+  /**
+   * Returns the amount of tasks submitted.
+   */
+  @Override
+  public synchronized long getSubmittedCount() {
+    return submittedCount;
+  }
+
+  /**
+   * Returns the amount of tasks which finished running, successfully or not.
+   */
+  @Override
+  public synchronized long getCompletedCount() {
+    return completedCount;
+  }
+
+  /**
+   * Returns the amount of tasks which threw an exception.
+   */
+  @Override
+  public synchronized long getFailedCount() {
+    return failedCount;
+  }
+
+  /**
+   * Returns the amount of tasks currently running.
+   */
+  @Override
+  public synchronized int getActiveCount() {
+    return activeCount;
+  }
+
+  /**
+   * Returns the largest amount of tasks which ran at the same time.
+   */
+  @Override
+  public synchronized int getMaxActiveCount() {
+    return maxActiveCount;
+  }
+
+  /**
+   * Returns the amount of tasks submitted, but not yet running.
+   */
+  @Override
+  public synchronized long getQueuedCount() {
+    return submittedCount - completedCount - activeCount;
+  }
+
+  /**
+   * Returns the average time tasks waited to start running, in nanoseconds.
+   */
+  @Override
+  public synchronized long getAverageQueueWaitTime() {
+    long startedCount = completedCount + activeCount;
+    return startedCount == 0 ? 0 : queueWaitTime / startedCount;
+  }
+
+  /**
+   * Returns the longest time a task waited to start running, in nanoseconds.
+   */
+  @Override
+  public synchronized long getMaxQueueWaitTime() {
+    return maxQueueWaitTime;
+  }
+
+  /**
+   * Returns the average time tasks ran for, in nanoseconds.
+   */
+  @Override
+  public synchronized long getAverageRunTime() {
+    return completedCount == 0 ? 0 : runTime / completedCount;
+  }
+
+  /**
+   * Returns the longest time a task ran for, in nanoseconds.
+   */
+  @Override
+  public synchronized long getMaxRunTime() {
+    return maxRunTime;
+  }
+
+  /**
+   * Returns the amount of tasks submitted with the specified name.
+   */
+  public synchronized long getSubmittedCount(String name) {
+    long[] count = (long[]) namedCounts.get(name);
+    return count == null ? 0 : count[0];
+  }
+
+  /**
+   * Returns {@link #toString()}.
+   */
+  @Override
+  public String getSummary() {
+    return toString();
+  }
+
+  /**
+   * Returns a summary of the statistics, for logging or display. Times are in microseconds.
+   */
+  @Override
+  public synchronized String toString() {
+    StringBuffer buf = new StringBuffer("io tasks=");
+    buf.append(submittedCount)
+        .append(" (active ")
+        .append(activeCount)
+        .append(", max ")
+        .append(maxActiveCount)
+        .append(", queued ")
+        .append(getQueuedCount())
+        .append(", failed ")
+        .append(failedCount)
+        .append(") queue wait avg=")
+        .append(getAverageQueueWaitTime() / 1000)
+        .append("us max=")
+        .append(maxQueueWaitTime / 1000)
+        .append("us run avg=")
+        .append(getAverageRunTime() / 1000)
+        .append("us max=")
+        .append(maxRunTime / 1000)
+        .append("us threads=")
+        .append(isVirtual ? "virtual" : "pool of " + maxPoolSize);
+
+    Enumeration names = namedCounts.keys();
+    while (names.hasMoreElements()) {
+      String name = (String) names.nextElement();
+      buf.append(' ').append(name).append('=').append(((long[]) namedCounts.get(name))[0]);
+    }
+
+    return buf.toString();
+  }
+
+  /**
+   * Runs the tasks given to it one at a time, in the order they were given in, on an
+   * <code>IOExecutor</code>. Unlike a dedicated thread waiting for tasks, it doesn't hold on to a
+   * thread while it has nothing to do. This suits, for example, an audio player playing clips one
+   * after the other.
+   */
+  public static class Serial {
+
+    /**
+     * The executor we run tasks on.
+     */
+    private final IOExecutor executor;
+
+    /**
+     * The name of our tasks.
+     */
+    private final String name;
+
+    /**
+     * The tasks waiting to run.
+     */
+    private final Vector tasks = new Vector();
+
+    /**
+     * Whether we're currently running tasks (or have been submitted to run them).
+     */
+    private boolean isRunning = false;
+
+    /**
+     * The runnable which runs our tasks until there are no more left.
+     */
+    private final Runnable runner =
+        new Runnable() {
+          @Override
+          public void run() {
+            runTasks();
+          }
+        };
+
+    /**
+     * Creates a new <code>Serial</code> which runs tasks, with the specified name, on the shared
+     * <code>IOExecutor</code>.
+     */
+    public Serial(String name) {
+      this(getShared(), name);
+    }
+
+    /**
+     * Creates a new <code>Serial</code> which runs tasks, with the specified name, on the specified
+     * <code>IOExecutor</code>.
+     */
+    public Serial(IOExecutor executor, String name) {
+      this.executor = executor;
+      this.name = name;
+    }
+
+    /**
+     * Runs the specified task once all the tasks given before it have run.
+     */
+    public synchronized void execute(Runnable task) {
+      tasks.addElement(task);
+      if (!isRunning) {
+        isRunning = true;
+        executor.execute(name, runner);
+      }
+    }
+
+    /**
+     * Runs the waiting tasks until there are none left. An exception thrown by a task is printed,
+     * and doesn't prevent the tasks following it from running.
+     */
+    private void runTasks() {
+      while (true) {
+        Runnable task;
+        synchronized (this) {
+          if (tasks.isEmpty()) {
+            isRunning = false;
+            return;
+          }
+          task = (Runnable) tasks.elementAt(0);
+          tasks.removeElementAt(0);
+        }
+
+        try {
+          task.run();
+        } catch (RuntimeException e) {
+          e.printStackTrace();
+        }
+      }
+    }
+  }
+}
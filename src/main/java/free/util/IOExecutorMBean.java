@@ -0,0 +1,88 @@
+/**
+ * The utillib library. More information is available at http://www.jinchess.com/. Copyright (C)
+ * 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * The utillib library is free software; you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * The utillib library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with utillib
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+package free.util;
+
+/**
+ * The JMX management interface of {@link IOExecutor}. Times are in nanoseconds.
+ */
+public interface IOExecutorMBean {
+
+  /**
+   * Returns whether tasks run in virtual threads, rather than in a pool of threads.
+   */
+  boolean isUsingVirtualThreads();
+
+  /**
+   * Returns the maximum amount of threads in the pool, or 0 if tasks run in virtual threads.
+   */
+  int getMaxPoolSize();
+
+  /**
+   * Returns the amount of tasks submitted.
+   */
+  long getSubmittedCount();
+
+  /**
+   * Returns the amount of tasks which finished running.
+   */
+  long getCompletedCount();
+
+  /**
+   * Returns the amount of tasks which threw an exception.
+   */
+  long getFailedCount();
+
+  /**
+   * Returns the amount of tasks currently running.
+   */
+  int getActiveCount();
+
+  /**
+   * Returns the largest amount of tasks which ran at the same time.
+   */
+  int getMaxActiveCount();
+
+  /**
+   * Returns the amount of tasks submitted, but not yet running.
+   */
+  long getQueuedCount();
+
+  /**
+   * Returns the average time tasks waited to start running.
+   */
+  long getAverageQueueWaitTime();
+
+  /**
+   * Returns the longest time a task waited to start running.
+   */
+  long getMaxQueueWaitTime();
+
+  /**
+   * Returns the average time tasks ran for.
+   */
+  long getAverageRunTime();
+
+  /**
+   * Returns the longest time a task ran for.
+   */
+  long getMaxRunTime();
+
+  /**
+   * Returns a textual summary of the statistics.
+   */
+  String getSummary();
+}
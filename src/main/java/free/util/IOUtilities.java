@@ -428,19 +428,15 @@ public class IOUtilities {
   }
 
   /**
-   * Loads data from the specified URLs asynchronously in a background thread. Once all the data is
-   * loaded, it is passed to the specified <code>DataReceiver</code>. <code>id</code> is a
+   * Loads data from the specified URLs asynchronously on the {@link IOExecutor}. Once all the data
+   * is loaded, it is passed to the specified <code>DataReceiver</code>. <code>id</code> is a
    * convenience allowing the receiver to identify the data - it is merely passed back to the
    * receiver.
    */
   public static void loadAsynchronously(
       URL[] urls, Object id, DataReceiver receiver, boolean allowCache) {
-    Thread asyncReader =
-        new Thread(
-            new UrlDataReader(urls.clone(), id, receiver, allowCache),
-            "AsyncThread-" + (++UrlDataReader.threadCount));
-    asyncReader.setDaemon(true);
-    asyncReader.start();
+    IOExecutor.getShared()
+        .execute("UrlDataReader", new UrlDataReader(urls.clone(), id, receiver, allowCache));
   }
 
   /**
@@ -469,11 +465,6 @@ public class IOUtilities {
    */
   private static class UrlDataReader implements Runnable {
 
-    /**
-     * The number of <code>Threads</code> running <code>UrlDataReader</code>s already created.
-     */
-    public static int threadCount = 0;
-
     /**
      * The URLs to load data from.
      */
@@ -0,0 +1,212 @@
+/**
+ * The utillib library. More information is available at http://www.jinchess.com/. Copyright (C)
+ * 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * The utillib library is free software; you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * The utillib library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with utillib
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+package free.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations, in nanoseconds, cheap enough to record into on every message. Like
+ * HdrHistogram, it splits each power of two into a fixed amount of equally sized buckets, so that
+ * any recorded value is known to within about 6% regardless of its magnitude, and recording a value
+ * is a few shifts and an atomic increment, without any locking. Values above about 18 minutes are
+ * counted as 18 minutes.
+ * <P>
+ * <B>NOTE:</B> This class is thread safe. The values returned while values are being recorded
+ * concurrently may not all reflect exactly the same set of values.
+ */
+public class LatencyHistogram {
+
+  /**
+   * The log2 of the amount of buckets each power of two is split into.
+   */
+  private static final int SUB_BUCKET_BITS = 4;
+
+  /**
+   * The amount of buckets each power of two is split into.
+   */
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+  /**
+   * The log2 of the largest value we distinguish; larger values are counted as this value.
+   */
+  private static final int MAX_VALUE_BITS = 40;
+
+  /**
+   * The largest value we distinguish.
+   */
+  private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+
+  /**
+   * The amount of buckets.
+   */
+  private static final int BUCKET_COUNT = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+  /**
+   * The amount of values recorded into each bucket.
+   */
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+  /**
+   * The amount of values recorded.
+   */
+  private final LongAdder count = new LongAdder();
+
+  /**
+   * The sum of the values recorded.
+   */
+  private final LongAdder total = new LongAdder();
+
+  /**
+   * The largest value recorded.
+   */
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Records the specified value, in nanoseconds. Negative values are counted as 0.
+   */
+  public void record(long nanos) {
+    if (nanos < 0) nanos = 0;
+
+    buckets.incrementAndGet(bucketIndex(Math.min(nanos, MAX_VALUE)));
+    count.increment();
+    total.add(nanos);
+
+    long currentMax;
+    while (nanos > (currentMax = max.get())) if (max.compareAndSet(currentMax, nanos)) break;
+  }
+
+  /**
+   * Returns the index of the bucket the specified value, which must be between 0 and
+   * <code>MAX_VALUE</code>, is counted in.
+   */
+  private static int bucketIndex(long value) {
+    int magnitude = 64 - Long.numberOfLeadingZeros(value); // The amount of significant bits
+    if (magnitude <= SUB_BUCKET_BITS) return (int) value;
+
+    int shift = magnitude - SUB_BUCKET_BITS - 1;
+    int subBucket = (int) (value >>> shift) & (SUB_BUCKET_COUNT - 1);
+    return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  /**
+   * Returns the largest value counted in the bucket with the specified index.
+   */
+  private static long bucketValue(int index) {
+    int shift = index / SUB_BUCKET_COUNT - 1;
+    int subBucket = index % SUB_BUCKET_COUNT;
+    if (shift < 0) return subBucket;
+
+    return (((long) (SUB_BUCKET_COUNT | subBucket) + 1) << shift) - 1;
+  }
+
+  /**
+   * Adds all the values recorded into the specified histogram to this one.
+   */
+  public void add(LatencyHistogram histogram) {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      long bucketCount = histogram.buckets.get(i);
+      if (bucketCount != 0) buckets.addAndGet(i, bucketCount);
+    }
+    count.add(histogram.getCount());
+    total.add(histogram.getTotal());
+
+    long otherMax = histogram.getMax();
+    long currentMax;
+    while (otherMax > (currentMax = max.get())) if (max.compareAndSet(currentMax, otherMax)) break;
+  }
+
+  /**
+   * Forgets all the values recorded so far.
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) buckets.set(i, 0);
+    count.reset();
+    total.reset();
+    max.set(0);
+  }
+
+  /**
+   * Returns the amount of values recorded.
+   */
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * Returns the sum of the values recorded, in nanoseconds.
+   */
+  public long getTotal() {
+    return total.sum();
+  }
+
+  /**
+   * Returns the average of the values recorded, in nanoseconds, or 0 if none.
+   */
+  public long getMean() {
+    long count = getCount();
+    return count == 0 ? 0 : getTotal() / count;
+  }
+
+  /**
+   * Returns the largest value recorded, in nanoseconds.
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Returns the value, in nanoseconds, below which the specified percentage of the recorded values
+   * lie, or 0 if no values have been recorded. The returned value is never larger than the largest
+   * recorded value.
+   */
+  public long getPercentile(double percentile) {
+    long[] counts = new long[BUCKET_COUNT];
+    long count = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) count += (counts[i] = buckets.get(i));
+    if (count == 0) return 0;
+
+    long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += counts[i];
+      if (seen >= rank) return Math.min(bucketValue(i), getMax());
+    }
+
+    return getMax();
+  }
+
+  /**
+   * Returns a textual summary of the histogram: the count, and the average, median, 99th
+   * percentile and maximum values in microseconds.
+   */
+  @Override
+  public String toString() {
+    return "n="
+        + getCount()
+        + " avg="
+        + (getMean() / 1000)
+        + "us p50="
+        + (getPercentile(50) / 1000)
+        + "us p99="
+        + (getPercentile(99) / 1000)
+        + "us max="
+        + (getMax() / 1000)
+        + "us";
+  }
+}
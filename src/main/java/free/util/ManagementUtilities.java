@@ -0,0 +1,88 @@
+/**
+ * The utillib library. More information is available at http://www.jinchess.com/. Copyright (C)
+ * 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * The utillib library is free software; you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * The utillib library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with utillib
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+package free.util;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Utilities for exposing objects through JMX, on the platform MBean server. Failing to register an
+ * object is not considered an error - the object is simply not exposed. This happens, for example,
+ * when running in a sandbox which doesn't allow it.
+ */
+public class ManagementUtilities {
+
+  /**
+   * The domain of the names we register objects under.
+   */
+  private static final String DOMAIN = "free.util";
+
+  /**
+   * Registers the specified MBean under a name made of the specified type and name (which may be
+   * <code>null</code>) and returns that name, or <code>null</code> if the MBean couldn't be
+   * registered.
+   */
+  public static ObjectName register(Object mbean, String type, String name) {
+    return register(mbean, DOMAIN, type, name);
+  }
+
+  /**
+   * Registers the specified MBean under a name made of the specified domain, type and name (which
+   * may be <code>null</code>) and returns that name, or <code>null</code> if the MBean couldn't be
+   * registered.
+   */
+  public static ObjectName register(Object mbean, String domain, String type, String name) {
+    try {
+      String objectName = domain + ":type=" + type;
+      if (name != null) objectName += ",name=" + ObjectName.quote(name);
+
+      ObjectName mbeanName = new ObjectName(objectName);
+      getServer().registerMBean(mbean, mbeanName);
+      return mbeanName;
+    } catch (JMException e) {
+      e.printStackTrace();
+      return null;
+    } catch (SecurityException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Unregisters the MBean registered under the specified name, as returned by
+   * {@link #register(Object, String, String)}. A <code>null</code> name is ignored.
+   */
+  public static void unregister(ObjectName mbeanName) {
+    if (mbeanName == null) return;
+
+    try {
+      getServer().unregisterMBean(mbeanName);
+    } catch (JMException e) {
+      e.printStackTrace();
+    } catch (SecurityException e) {
+    }
+  }
+
+  /**
+   * Returns the platform MBean server.
+   */
+  private static MBeanServer getServer() {
+    return ManagementFactory.getPlatformMBeanServer();
+  }
+}
@@ -0,0 +1,426 @@
+/**
+ * The utillib library. More information is available at http://www.jinchess.com/. Copyright (C)
+ * 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * The utillib library is free software; you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * The utillib library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with utillib
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+package free.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * An asynchronous log of the traffic between a connection and the server. Logging a message merely
+ * puts a reference to it into a fixed size ring buffer - formatting it and writing it out is done
+ * by a dedicated writer thread, so the threads doing the logging (typically, the AWT event
+ * dispatching thread) never block on I/O. If the writer thread can't keep up and the buffer fills,
+ * messages are dropped rather than stalling the logging thread, and the amount of dropped messages
+ * is logged instead.
+ * <P>
+ * The log has one of three levels:
+ * <UL>
+ * <LI>{@link #OFF} - nothing is logged. Callers are expected to check {@link #isEnabled()} before
+ * logging, so a disabled log costs nothing but the check.
+ * <LI>{@link #SUMMARY} - a short, one line summary of each message is logged.
+ * <LI>{@link #FULL} - messages are logged in their entirety.
+ * </UL>
+ * The log is written either to a stream or to a file, which is rotated once it grows beyond a
+ * specified size: <code>name</code> is renamed to <code>name.1</code>, <code>name.1</code> to
+ * <code>name.2</code> and so on, with the oldest file deleted.
+ * <P>
+ * Messages may be arbitrary objects, which are formatted with <code>toString()</code>, unless they
+ * implement {@link ProtocolLog.Loggable}. Since messages are formatted by the writer thread, they
+ * must not be modified after they've been logged.
+ */
+public class ProtocolLog implements Runnable {
+
+  /**
+   * The level at which nothing is logged.
+   */
+  public static final int OFF = 0;
+
+  /**
+   * The level at which a short summary of each message is logged.
+   */
+  public static final int SUMMARY = 1;
+
+  /**
+   * The level at which messages are logged in their entirety.
+   */
+  public static final int FULL = 2;
+
+  /**
+   * The default amount of messages the ring buffer can hold.
+   */
+  public static final int DEFAULT_CAPACITY = 8192;
+
+  /**
+   * The maximum amount of characters of a line of text logged at the {@link #SUMMARY} level.
+   */
+  private static final int SUMMARY_LENGTH = 80;
+
+  /**
+   * The current level.
+   */
+  private volatile int level;
+
+  /**
+   * The logged messages, a ring buffer.
+   */
+  private final Object[] messages;
+
+  /**
+   * The times, in milliseconds since the epoch, when the messages were logged.
+   */
+  private final long[] times;
+
+  /**
+   * Whether the messages were sent to the server (as opposed to received from it).
+   */
+  private final boolean[] outbound;
+
+  /**
+   * The levels at which the messages were logged.
+   */
+  private final byte[] levels;
+
+  /**
+   * The index of the oldest message in the ring buffer.
+   */
+  private int head = 0;
+
+  /**
+   * The amount of messages in the ring buffer.
+   */
+  private int count = 0;
+
+  /**
+   * The amount of messages dropped since the writer thread last took messages out of the buffer.
+   */
+  private int droppedCount = 0;
+
+  /**
+   * Whether we've been closed.
+   */
+  private boolean isClosed = false;
+
+  /**
+   * The file we write to; <code>null</code> if we write to a stream.
+   */
+  private final File file;
+
+  /**
+   * The size, in bytes, beyond which the file is rotated.
+   */
+  private final long maxFileSize;
+
+  /**
+   * The amount of files kept, including the current one.
+   */
+  private final int fileCount;
+
+  /**
+   * The stream we write to. Accessed only by the writer thread once it's started.
+   */
+  private OutputStream out;
+
+  /**
+   * The amount of bytes written to the current file so far. Accessed only by the writer thread.
+   */
+  private long fileSize;
+
+  /**
+   * The buffer messages are formatted into. Accessed only by the writer thread.
+   */
+  private final StringBuffer buf = new StringBuffer();
+
+  /**
+   * The buffer formatted messages are encoded into. Accessed only by the writer thread.
+   */
+  private byte[] bytes = new byte[1024];
+
+  /**
+   * The format of the timestamps. Accessed only by the writer thread.
+   */
+  private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss.SSS");
+
+  /**
+   * The writer thread.
+   */
+  private final Thread thread;
+
+  /**
+   * Creates a new <code>ProtocolLog</code> with the specified level, which writes to the specified
+   * stream.
+   */
+  public ProtocolLog(int level, OutputStream out) {
+    this(level, out, null, 0, 0, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates a new <code>ProtocolLog</code> with the specified level, which appends to the
+   * specified file, rotating it once it grows beyond <code>maxFileSize</code> bytes and keeping
+   * <code>fileCount</code> files altogether.
+   *
+   * @throws IOException if the file can't be opened.
+   */
+  public ProtocolLog(int level, File file, long maxFileSize, int fileCount) throws IOException {
+    this(
+        level,
+        new BufferedOutputStream(new FileOutputStream(file.getPath(), true)),
+        file,
+        maxFileSize,
+        fileCount,
+        DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates a new <code>ProtocolLog</code> with the specified arguments.
+   */
+  private ProtocolLog(
+      int level, OutputStream out, File file, long maxFileSize, int fileCount, int capacity) {
+    if ((level < OFF) || (level > FULL)) throw new IllegalArgumentException("Bad level: " + level);
+    if ((file != null) && ((maxFileSize <= 0) || (fileCount < 1)))
+      throw new IllegalArgumentException("Bad rotation parameters");
+
+    this.level = level;
+    this.out = out;
+    this.file = file;
+    this.maxFileSize = maxFileSize;
+    this.fileCount = fileCount;
+    this.fileSize = file == null ? 0 : file.length();
+    this.messages = new Object[capacity];
+    this.times = new long[capacity];
+    this.outbound = new boolean[capacity];
+    this.levels = new byte[capacity];
+
+    this.thread = new Thread(this, "ProtocolLog");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Returns the current level.
+   */
+  public int getLevel() {
+    return level;
+  }
+
+  /**
+   * Sets the level.
+   */
+  public void setLevel(int level) {
+    if ((level < OFF) || (level > FULL)) throw new IllegalArgumentException("Bad level: " + level);
+
+    this.level = level;
+  }
+
+  /**
+   * Returns whether anything is logged at all, that is, whether the level isn't {@link #OFF}.
+   */
+  public boolean isEnabled() {
+    return level != OFF;
+  }
+
+  /**
+   * Parses the specified level name ("off", "summary" or "full", case insensitively).
+   *
+   * @throws IllegalArgumentException if the name is not one of the above.
+   */
+  public static int parseLevel(String name) {
+    if ("off".equalsIgnoreCase(name)) return OFF;
+    else if ("summary".equalsIgnoreCase(name)) return SUMMARY;
+    else if ("full".equalsIgnoreCase(name)) return FULL;
+    else throw new IllegalArgumentException("Bad level name: " + name);
+  }
+
+  /**
+   * Logs the specified message, received from the server.
+   */
+  public void received(Object message) {
+    int level = this.level;
+    if (level != OFF) add(message, false, level);
+  }
+
+  /**
+   * Logs the specified command, sent to the server.
+   */
+  public void sent(String command) {
+    int level = this.level;
+    if (level != OFF) add(command, true, level);
+  }
+
+  /**
+   * Adds the specified message, logged at the specified level, to the ring buffer, or drops it if
+   * the buffer is full.
+   */
+  private synchronized void add(Object message, boolean isOutbound, int level) {
+    if (isClosed) return;
+
+    if (count == messages.length) {
+      droppedCount++;
+      return;
+    }
+
+    int index = (head + count) % messages.length;
+    messages[index] = message;
+    times[index] = System.currentTimeMillis();
+    outbound[index] = isOutbound;
+    levels[index] = (byte) level;
+    if (count++ == 0) notify();
+  }
+
+  /**
+   * Closes the log, waiting (but not too long) for the messages already logged to be written.
+   */
+  public void close() {
+    synchronized (this) {
+      isClosed = true;
+      notify();
+    }
+
+    if (Thread.currentThread() != thread) {
+      try {
+        thread.join(1000);
+      } catch (InterruptedException e) {
+      }
+    }
+  }
+
+  /**
+   * The writer thread loop.
+   */
+  @Override
+  public void run() {
+    Object[] batch = new Object[messages.length];
+    long[] batchTimes = new long[messages.length];
+    boolean[] batchOutbound = new boolean[messages.length];
+    byte[] batchLevels = new byte[messages.length];
+    try {
+      while (true) {
+        int batchSize;
+        int dropped;
+        synchronized (this) {
+          while ((count == 0) && (droppedCount == 0) && !isClosed) wait();
+
+          if ((count == 0) && (droppedCount == 0)) break;
+
+          batchSize = count;
+          for (int i = 0; i < batchSize; i++) {
+            int index = (head + i) % messages.length;
+            batch[i] = messages[index];
+            batchTimes[i] = times[index];
+            batchOutbound[i] = outbound[index];
+            batchLevels[i] = levels[index];
+            messages[index] = null;
+          }
+          head = (head + batchSize) % messages.length;
+          count = 0;
+          dropped = droppedCount;
+          droppedCount = 0;
+        }
+
+        for (int i = 0; i < batchSize; i++) {
+          write(batch[i], batchTimes[i], batchOutbound[i], batchLevels[i]);
+          batch[i] = null;
+        }
+        if (dropped != 0)
+          write(dropped + " messages dropped", System.currentTimeMillis(), false, FULL);
+
+        out.flush();
+      }
+    } catch (InterruptedException e) {
+    } catch (IOException e) {
+      e.printStackTrace();
+    } finally {
+      try {
+        if (file != null) out.close();
+        else out.flush();
+      } catch (IOException e) {
+      }
+    }
+  }
+
+  /**
+   * Formats and writes the specified message, rotating the file if it grows too big.
+   */
+  private void write(Object message, long time, boolean isOutbound, int level)
+      throws IOException {
+    buf.setLength(0);
+    buf.append(timeFormat.format(new Date(time)));
+    buf.append(isOutbound ? " > " : " < ");
+
+    if (message instanceof Loggable) ((Loggable) message).appendTo(buf, level == FULL);
+    else {
+      String text = String.valueOf(message);
+      if ((level == FULL) || (text.length() <= SUMMARY_LENGTH)) buf.append(text);
+      else {
+        buf.append(text, 0, SUMMARY_LENGTH);
+        buf.append("... (").append(text.length()).append(" chars)");
+      }
+    }
+    buf.append('\n');
+
+    // Encode as ISO-8859-1, which is how the server's bytes were decoded in the first place
+    int length = buf.length();
+    if (bytes.length < length) bytes = new byte[Math.max(length, bytes.length * 2)];
+    for (int i = 0; i < length; i++) {
+      char c = buf.charAt(i);
+      bytes[i] = c < 256 ? (byte) c : (byte) '?';
+    }
+
+    out.write(bytes, 0, length);
+
+    if (file != null) {
+      fileSize += length;
+      if (fileSize >= maxFileSize) rotate();
+    }
+  }
+
+  /**
+   * Closes the current file, renames it and the older files, deleting the oldest one, and opens a
+   * new file.
+   */
+  private void rotate() throws IOException {
+    out.close();
+
+    String path = file.getPath();
+    new File(path + "." + (fileCount - 1)).delete();
+    for (int i = fileCount - 2; i >= 1; i--)
+      new File(path + "." + i).renameTo(new File(path + "." + (i + 1)));
+    if (fileCount > 1) file.renameTo(new File(path + ".1"));
+    else file.delete();
+
+    out = new BufferedOutputStream(new FileOutputStream(path));
+    fileSize = 0;
+  }
+
+  /**
+   * The interface implemented by messages which know how to format themselves for the log more
+   * efficiently (or more concisely) than with <code>toString()</code>.
+   */
+  public static interface Loggable {
+
+    /**
+     * Appends the message, formatted on a single line, to the specified buffer; in its entirety if
+     * <code>full</code> is <code>true</code>, or just a short summary of it otherwise. Invoked in
+     * the log's writer thread.
+     */
+    void appendTo(StringBuffer buf, boolean full);
+  }
+}
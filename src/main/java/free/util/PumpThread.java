@@ -21,9 +21,12 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 /**
- * A thread which pumps information read from a given input stream into the given output stream.
+ * Pumps information read from a given input stream into the given output stream. Despite its name,
+ * it doesn't necessarily have a thread of its own - once started, the pumping is done on the {@link
+ * IOExecutor}, as an open-ended task, but it can be started, checked and waited on the same way a
+ * thread can.
  */
-public class PumpThread extends Thread {
+public class PumpThread implements Runnable {
 
   /**
    * The InputStream.
@@ -45,6 +48,16 @@ public class PumpThread extends Thread {
    */
   private IOException exception;
 
+  /**
+   * Whether we've been started.
+   */
+  private boolean isStarted = false;
+
+  /**
+   * Whether we've been started and haven't finished pumping yet.
+   */
+  private boolean isAlive = false;
+
   /**
    * Creates a new PumpThread which will pump information from the given InputStream into the given
    * OutputStream.
@@ -71,6 +84,34 @@ public class PumpThread extends Thread {
     this.buffer = buffer;
   }
 
+  /**
+   * Starts pumping on the shared <code>IOExecutor</code>. Since pumping lasts until the input
+   * stream ends, it runs as an open-ended task, never waiting for the pool.
+   *
+   * @throws IllegalThreadStateException if already started.
+   */
+  public synchronized void start() {
+    if (isStarted) throw new IllegalThreadStateException("Already started");
+
+    isStarted = true;
+    isAlive = true;
+    IOExecutor.getShared().executeOpenEnded("PumpThread", this);
+  }
+
+  /**
+   * Returns whether we've been started and haven't finished pumping yet.
+   */
+  public synchronized boolean isAlive() {
+    return isAlive;
+  }
+
+  /**
+   * Waits until we finish pumping.
+   */
+  public synchronized void join() throws InterruptedException {
+    while (isAlive) wait();
+  }
+
   /**
    * Does the actual pumping.
    */
@@ -84,6 +125,11 @@ public class PumpThread extends Thread {
       }
     } catch (IOException e) {
       exception = e;
+    } finally {
+      synchronized (this) {
+        isAlive = false;
+        notifyAll();
+      }
     }
   }
 
@@ -91,10 +137,10 @@ public class PumpThread extends Thread {
    * Returns the exception thrown while reading or writing, or <code>null</code> if it finished
    * normally, without throwing an exception (read returned -1).
    *
-   * @throws IllegalStateException if the thread is still alive.
+   * @throws IllegalStateException if still pumping.
    */
-  public IOException getException() {
-    if (isAlive()) throw new IllegalStateException("The thread is still alive");
+  public synchronized IOException getException() {
+    if (isAlive) throw new IllegalStateException("Still pumping");
 
     return exception;
   }
@@ -76,28 +76,27 @@ public class RawTelnet {
   }
 
   /**
-   * A thread which waits for the given thread to die and then calls System.exit(0);
+   * A thread which waits for the given pump to finish and then calls System.exit(0). It isn't a
+   * daemon thread, as the pumps run in daemon threads and it's what keeps the process alive.
    */
   private static class ProcessKillerThread extends Thread {
 
     /**
-     * The thread we're to wait on.
+     * The pump we're to wait on.
      */
-    private final Thread target;
+    private final PumpThread target;
 
     /**
-     * Creates a new ProcessKillerThread with the given Thread to wait on.
+     * Creates a new ProcessKillerThread with the given PumpThread to wait on.
      */
-    public ProcessKillerThread(Thread target) {
-      super("ProcessKillerThread(" + target.getName() + ")");
+    public ProcessKillerThread(PumpThread target) {
+      super("ProcessKillerThread");
 
       this.target = target;
-
-      setDaemon(true);
     }
 
     /**
-     * Waits for the target thread to die, prints a message and calls <code>System.exit(0)</code>
+     * Waits for the target pump to finish, prints a message and calls <code>System.exit(0)</code>
      */
     @Override
     public void run() {
@@ -0,0 +1,262 @@
+/**
+ * The utillib library. More information is available at http://www.jinchess.com/. Copyright (C)
+ * 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * The utillib library is free software; you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * The utillib library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with utillib
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+package free.util;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * A <code>Socket</code> which isn't connected anywhere, but instead plays back a session recorded
+ * by a {@link SessionRecorder}. The data read from the server during the session is returned from
+ * the socket's input stream at the times it was originally read, or faster, while everything
+ * written to the socket is discarded. Reading the data as fast as possible allows measuring the
+ * throughput of the whole client pipeline on a recorded session.
+ */
+public class ReplaySocket extends Socket {
+
+  /**
+   * The replay speed which makes the recorded data available as fast as it can be read.
+   */
+  public static final double AS_FAST_AS_POSSIBLE = 0;
+
+  /**
+   * The input stream.
+   */
+  private final ReplayInputStream in;
+
+  /**
+   * The output stream, which discards everything written to it.
+   */
+  private final OutputStream out =
+      new OutputStream() {
+        @Override
+        public void write(int b) {}
+
+        @Override
+        public void write(byte[] b, int off, int len) {}
+      };
+
+  /**
+   * Creates a new <code>ReplaySocket</code> which plays back the recording read from the specified
+   * <code>InputStream</code> at the specified speed - 1 for the original speed, 2 for twice as
+   * fast etc., or {@link #AS_FAST_AS_POSSIBLE}.
+   *
+   * @throws IOException if the recording can't be read, or isn't a session recording.
+   */
+  public ReplaySocket(InputStream recording, double speed) throws IOException {
+    if (speed < 0) throw new IllegalArgumentException("Bad speed: " + speed);
+
+    this.in = new ReplayInputStream(new BufferedInputStream(recording, 16384), speed);
+  }
+
+  /**
+   * Returns the stream the recorded data read from the server is played back from.
+   */
+  @Override
+  public InputStream getInputStream() {
+    return in;
+  }
+
+  /**
+   * Returns a stream which discards everything written to it.
+   */
+  @Override
+  public OutputStream getOutputStream() {
+    return out;
+  }
+
+  /**
+   * Closes the socket and the recording.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    super.close();
+    in.close();
+  }
+
+  /**
+   * Plays back the recorded data read from the server.
+   */
+  private static class ReplayInputStream extends InputStream {
+
+    /**
+     * The recording.
+     */
+    private final InputStream recording;
+
+    /**
+     * The replay speed.
+     */
+    private final double speed;
+
+    /**
+     * The time, in nanoseconds, the replay started at, or -1 if it hasn't started yet.
+     */
+    private long startTime = -1;
+
+    /**
+     * The time, in nanoseconds since the beginning of the recording, of the last record read.
+     */
+    private long recordTime = 0;
+
+    /**
+     * The amount of bytes of the current record which haven't been read yet.
+     */
+    private int remaining = 0;
+
+    /**
+     * Whether the stream has been closed.
+     */
+    private volatile boolean isClosed = false;
+
+    /**
+     * Creates a new <code>ReplayInputStream</code> which plays back the specified recording at the
+     * specified speed.
+     */
+    public ReplayInputStream(InputStream recording, double speed) throws IOException {
+      this.recording = recording;
+      this.speed = speed;
+
+      for (int i = 0; i < SessionRecorder.MAGIC.length; i++)
+        if (recording.read() != SessionRecorder.MAGIC[i])
+          throw new IOException("Not a session recording");
+
+      int version = recording.read();
+      if (version != SessionRecorder.VERSION)
+        throw new IOException("Unsupported session recording version: " + version);
+    }
+
+    /**
+     * Advances to the next record of data read from the server, waiting until it's time to play
+     * it back. Returns <code>false</code> if the end of the recording has been reached.
+     */
+    private boolean nextRecord() throws IOException {
+      while (remaining == 0) {
+        int type = recording.read();
+        if (type == -1) return false;
+
+        recordTime += readVarint() * 1000;
+        int length = (int) readVarint();
+        if (type != SessionRecorder.INBOUND) {
+          skipFully(length);
+          continue;
+        }
+        remaining = length;
+      }
+
+      if (speed != AS_FAST_AS_POSSIBLE) {
+        // The first record is played back right away, and the rest relatively to it
+        if (startTime == -1) startTime = System.nanoTime() - (long) (recordTime / speed);
+
+        long delay = startTime + (long) (recordTime / speed) - System.nanoTime();
+        if (delay > 0) {
+          try {
+            Thread.sleep(delay / 1000000, (int) (delay % 1000000));
+          } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+          }
+        }
+      }
+
+      if (isClosed) throw new IOException("Stream closed");
+
+      return true;
+    }
+
+    /**
+     * Reads a variable length integer from the recording.
+     */
+    private long readVarint() throws IOException {
+      long value = 0;
+      for (int shift = 0; ; shift += 7) {
+        int b = recording.read();
+        if (b == -1) throw new EOFException("EOF in a session recording record");
+
+        value |= (long) (b & 0x7f) << shift;
+        if ((b & 0x80) == 0) return value;
+      }
+    }
+
+    /**
+     * Skips the specified amount of bytes of the recording.
+     */
+    private void skipFully(int count) throws IOException {
+      while (count > 0) {
+        long skipped = recording.skip(count);
+        if (skipped <= 0) {
+          if (recording.read() == -1) throw new EOFException("EOF in a session recording record");
+          skipped = 1;
+        }
+        count -= skipped;
+      }
+    }
+
+    /**
+     * Reads a single byte.
+     */
+    @Override
+    public int read() throws IOException {
+      if (isClosed) throw new IOException("Stream closed");
+      if (!nextRecord()) return -1;
+
+      int b = recording.read();
+      if (b == -1) throw new EOFException("EOF in a session recording record");
+
+      remaining--;
+      return b;
+    }
+
+    /**
+     * Reads bytes from the current record, waiting for the next one if the current one has been
+     * read completely.
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (isClosed) throw new IOException("Stream closed");
+      if (len == 0) return 0;
+      if (!nextRecord()) return -1;
+
+      int count = recording.read(b, off, Math.min(len, remaining));
+      if (count == -1) throw new EOFException("EOF in a session recording record");
+
+      remaining -= count;
+      return count;
+    }
+
+    /**
+     * Returns the amount of bytes of the current record which haven't been read yet.
+     */
+    @Override
+    public int available() {
+      return remaining;
+    }
+
+    /**
+     * Closes the recording.
+     */
+    @Override
+    public void close() throws IOException {
+      isClosed = true;
+      recording.close();
+    }
+  }
+}
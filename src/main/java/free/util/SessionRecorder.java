@@ -0,0 +1,192 @@
+/**
+ * The utillib library. More information is available at http://www.jinchess.com/. Copyright (C)
+ * 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * The utillib library is free software; you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * The utillib library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with utillib
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+package free.util;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Records the raw data exchanged with the server during a session, so that the session can later
+ * be replayed with a {@link ReplaySocket}. Each chunk of data read from the server and each batch
+ * of commands written to it is recorded, together with the time it was read or written at.
+ * <P>
+ * A recording starts with {@link #MAGIC}, followed by a version byte. Each record then consists of
+ * a type byte ({@link #INBOUND} or {@link #OUTBOUND}), the time since the previous record, in
+ * microseconds, the length of the data and the data itself. The time and the length are written
+ * as variable length integers - 7 bits per byte, least significant first, with the high bit set on
+ * all bytes but the last.
+ * <P>
+ * Recording never interferes with the session - if writing the recording fails, the error is
+ * printed and recording stops.
+ */
+public class SessionRecorder {
+
+  /**
+   * The bytes a recording starts with.
+   */
+  static final byte[] MAGIC = {'J', 'R', 'E', 'C'};
+
+  /**
+   * The version of the recording format.
+   */
+  static final int VERSION = 1;
+
+  /**
+   * The type of a record of data read from the server.
+   */
+  static final int INBOUND = 0;
+
+  /**
+   * The type of a record of data written to the server.
+   */
+  static final int OUTBOUND = 1;
+
+  /**
+   * The stream we write the recording to, or <code>null</code> if we've been closed.
+   */
+  private OutputStream out;
+
+  /**
+   * The time, in nanoseconds, of the last record; the time of each record is written relative to
+   * the one before it.
+   */
+  private long lastRecordTime;
+
+  /**
+   * Creates a new <code>SessionRecorder</code> which writes the recording to the specified
+   * <code>OutputStream</code>. The stream is closed when the recorder is closed.
+   */
+  public SessionRecorder(OutputStream out) throws IOException {
+    this.out = new BufferedOutputStream(out, 16384);
+    this.lastRecordTime = System.nanoTime();
+
+    this.out.write(MAGIC);
+    this.out.write(VERSION);
+  }
+
+  /**
+   * Returns an <code>InputStream</code> which reads from the specified stream and records
+   * everything it reads as data read from the server.
+   */
+  public InputStream wrap(InputStream in) {
+    return new FilterInputStream(in) {
+      @Override
+      public int read() throws IOException {
+        int b = in.read();
+        if (b != -1) recordInbound(new byte[] {(byte) b}, 0, 1);
+        return b;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        int count = in.read(b, off, len);
+        if (count > 0) recordInbound(b, off, count);
+        return count;
+      }
+
+      @Override
+      public long skip(long n) throws IOException {
+        byte[] buf = new byte[(int) Math.min(n, 8192)];
+        int count = read(buf, 0, buf.length);
+        return count == -1 ? 0 : count;
+      }
+
+      @Override
+      public boolean markSupported() {
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Records the specified data as read from the server.
+   */
+  public void recordInbound(byte[] data, int offset, int length) {
+    record(INBOUND, data, offset, length);
+  }
+
+  /**
+   * Records the specified data as written to the server.
+   */
+  public void recordOutbound(byte[] data, int offset, int length) {
+    record(OUTBOUND, data, offset, length);
+  }
+
+  /**
+   * Writes a single record.
+   */
+  private synchronized void record(int type, byte[] data, int offset, int length) {
+    if (out == null) return;
+
+    long time = System.nanoTime();
+    try {
+      out.write(type);
+      writeVarint(out, (time - lastRecordTime) / 1000);
+      writeVarint(out, length);
+      out.write(data, offset, length);
+    } catch (IOException e) {
+      e.printStackTrace();
+      close();
+    }
+
+    // Keep the remainder, so that rounding errors don't accumulate
+    lastRecordTime = time - (time - lastRecordTime) % 1000;
+  }
+
+  /**
+   * Writes out any buffered records.
+   */
+  public synchronized void flush() {
+    if (out == null) return;
+
+    try {
+      out.flush();
+    } catch (IOException e) {
+      e.printStackTrace();
+      close();
+    }
+  }
+
+  /**
+   * Writes out any buffered records and closes the recording. Any data recorded afterwards is
+   * ignored.
+   */
+  public synchronized void close() {
+    if (out == null) return;
+
+    try {
+      out.close();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    out = null;
+  }
+
+  /**
+   * Writes the specified non-negative number as a variable length integer.
+   */
+  static void writeVarint(OutputStream out, long value) throws IOException {
+    while ((value & ~0x7fL) != 0) {
+      out.write((int) ((value & 0x7f) | 0x80));
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+}
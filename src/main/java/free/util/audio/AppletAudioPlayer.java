@@ -18,30 +18,25 @@ package free.util.audio;
 
 import java.util.Hashtable;
 
-import free.util.BlockingQueue;
+import free.util.IOExecutor;
 import free.util.PlatformUtils;
 
 /**
  * This is an AudioPlayer implementation which uses the Applet.newAudioClip(URL) API introduced in
- * JDK1.2
+ * JDK1.2. The clips are played one at a time, on the {@link IOExecutor}.
  */
-public class AppletAudioPlayer implements AudioPlayer, Runnable {
+public class AppletAudioPlayer implements AudioPlayer {
 
   /**
-   * The current thread playing the sound.
+   * Plays the queued clips, one at a time.
    */
-  private Thread playerThread = null;
+  private final IOExecutor.Serial player = new IOExecutor.Serial("AppletAudioPlayer");
 
   /**
    * Maps free.util.audio.AudioClip instances to java.applet.AudioClip instances.
    */
   private final Hashtable audioClips = new Hashtable();
 
-  /**
-   * A BlockingQueue of AudioClips queued for playing.
-   */
-  private final BlockingQueue clipQueue = new BlockingQueue();
-
   /**
    * Returns true if we're running under Java 1.2 or later.
    */
@@ -54,37 +49,26 @@ public class AppletAudioPlayer implements AudioPlayer, Runnable {
    * Plays the given AudioClip.
    */
   @Override
-  public void play(AudioClip clip) {
-    if (playerThread == null) {
-      playerThread = new Thread(this, "AppletAudioPlayer");
-      playerThread.setDaemon(true);
-      playerThread.start();
-    }
-
-    clipQueue.push(clip);
+  public void play(final AudioClip clip) {
+    player.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            playClip(clip);
+          }
+        });
   }
 
   /**
-   * An infinite loop playing clips pushed to the clip queue.
+   * Plays the specified clip. Invoked for each clip in turn, on the <code>IOExecutor</code>.
    */
-  @Override
-  public void run() {
-    while (true) {
-      AudioClip audioClip;
-      try {
-        audioClip = (AudioClip) clipQueue.pop();
-      } catch (InterruptedException e) {
-        e.printStackTrace();
-        return;
-      }
-
-      java.applet.AudioClip newAudioClip = (java.applet.AudioClip) audioClips.get(audioClip);
-      if (newAudioClip == null) {
-        newAudioClip = java.applet.Applet.newAudioClip(audioClip.getURL());
-        audioClips.put(audioClip, newAudioClip);
-      }
-
-      newAudioClip.play();
+  private void playClip(AudioClip audioClip) {
+    java.applet.AudioClip newAudioClip = (java.applet.AudioClip) audioClips.get(audioClip);
+    if (newAudioClip == null) {
+      newAudioClip = java.applet.Applet.newAudioClip(audioClip.getURL());
+      audioClips.put(audioClip, newAudioClip);
     }
+
+    newAudioClip.play();
   }
 }
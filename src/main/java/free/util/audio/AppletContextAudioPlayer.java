@@ -18,13 +18,14 @@ package free.util.audio;
 
 import java.applet.AppletContext;
 
-import free.util.BlockingQueue;
+import free.util.IOExecutor;
 
 /**
  * An <code>AudioPlayer</code> which uses an <code>AppletContext</code> (given to it by external
- * code, obviously) to play audio clips.
+ * code, obviously) to play audio clips. The clips are played one at a time, on the {@link
+ * IOExecutor}.
  */
-public class AppletContextAudioPlayer implements AudioPlayer, Runnable {
+public class AppletContextAudioPlayer implements AudioPlayer {
 
   /**
    * The <code>AppletContext</code>.
@@ -32,14 +33,9 @@ public class AppletContextAudioPlayer implements AudioPlayer, Runnable {
   private static AppletContext appletContext = null;
 
   /**
-   * Our clip playing thread.
+   * Plays the queued clips, one at a time.
    */
-  private Thread playerThread = null;
-
-  /**
-   * A BlockingQueue of AudioClips queued for playing.
-   */
-  private final BlockingQueue clipQueue = new BlockingQueue();
+  private final IOExecutor.Serial player = new IOExecutor.Serial("AppletContextAudioPlayer");
 
   /**
    * Returns <code>true</code> if our applet context has been set.
@@ -70,30 +66,13 @@ public class AppletContextAudioPlayer implements AudioPlayer, Runnable {
    * Plays the specified <code>AudioClip</code>.
    */
   @Override
-  public synchronized void play(AudioClip clip) {
-    // Lazily initialize the player thread.
-    if (playerThread == null) {
-      playerThread = new Thread(this, "AppletContextAudioPlayer");
-      playerThread.setDaemon(true);
-      playerThread.start();
-    }
-
-    clipQueue.push(clip);
-  }
-
-  /**
-   * Runs in an infinite loop, fetching audio clips from the queue and plays them.
-   */
-  @Override
-  public void run() {
-    while (true) {
-      try {
-        AudioClip audioClip = (AudioClip) clipQueue.pop();
-        getAppletContext().getAudioClip(audioClip.getURL()).play();
-      } catch (InterruptedException e) {
-        e.printStackTrace();
-        return;
-      }
-    }
+  public void play(final AudioClip clip) {
+    player.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            getAppletContext().getAudioClip(clip.getURL()).play();
+          }
+        });
   }
 }
@@ -24,7 +24,7 @@ package free.util.audio;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.InputStream;
-import free.util.BlockingQueue;
+import free.util.IOExecutor;
 import free.util.IOUtilities;
 
 
@@ -33,26 +33,27 @@ import free.util.IOUtilities;
  * to play audio. The player attempts to use a script named "play", which is
  * run from the current directory without any arguments. The script is expected
  * to read audio data from stdin, play it, and then terminate when its stdin is
- * closed. 
+ * closed. The clips are played one at a time, on the {@link IOExecutor}.
  */
 
-public class ExternalAppAudioPlayer implements Runnable, AudioPlayer{
+public class ExternalAppAudioPlayer implements AudioPlayer{
 
   
 
   /**
-   * The current thread playing the sound.
+   * Plays the queued clips, one at a time.
    */
 
-  private Thread playerThread = null;
+  private final IOExecutor.Serial player = new IOExecutor.Serial("ExternalAppAudioPlayer");
   
   
   
   /**
-   * A BlockingQueue of queued AudioClips.
+   * The process which will play the next clip, started in advance, so that
+   * the clip doesn't have to wait for it to start; <code>null</code> if none.
    */
 
-  private final BlockingQueue clipQueue = new BlockingQueue();
+  private Process nextPlayer = null;
   
 
 
@@ -83,15 +84,12 @@ public class ExternalAppAudioPlayer implements Runnable, AudioPlayer{
    * Plays the given AudioClip.
    */
 
-  public synchronized void play(AudioClip clip) throws java.io.IOException{
-    // Lazily initialize player thread.
-    if (playerThread == null){
-      playerThread = new Thread(this, "ExternalAppAudioPlayer");
-      playerThread.setDaemon(true);
-      playerThread.start();
-    }
-
-    clipQueue.push(clip);
+  public void play(final AudioClip clip) throws java.io.IOException{
+    player.execute(new Runnable(){
+      public void run(){
+        playClip(clip);
+      }
+    });
   }
   
   
@@ -107,40 +105,33 @@ public class ExternalAppAudioPlayer implements Runnable, AudioPlayer{
 
 
   /**
-   * <code>Runnable</code> implementation. Plays the queued clips.
+   * Plays the specified clip and starts the process which will play the next
+   * one. Invoked for each clip in turn, on the <code>IOExecutor</code>.
    */
 
-  public void run(){
-    while (true){
-      InputStream err = null;
-      try{
-        Process player = createPlayer();
-        err = player.getErrorStream();
-        OutputStream out = player.getOutputStream();
-      
-        AudioClip clip;
+  private void playClip(AudioClip clip){
+    InputStream err = null;
+    try{
+      Process player = nextPlayer;
+      nextPlayer = null;
+      if (player == null)
+        player = createPlayer();
+      err = player.getErrorStream();
+      OutputStream out = player.getOutputStream();
+
+      byte [] data = clip.getData();
+      out.write(data);
+      out.flush();
+      out.close();
+
+      nextPlayer = createPlayer();
+    } catch (IOException e){
         try{
-          clip = (AudioClip)clipQueue.pop();
-        } catch (InterruptedException e){
-            e.printStackTrace();
-            return;
-          }
-
-        byte [] data = clip.getData();
-        out.write(data);
-        out.flush();
-        out.close();
-      } catch (IOException e){
-          try{
+          if (err != null)
             IOUtilities.pump(err, System.out);
-          } catch (IOException ex){}
-          e.printStackTrace();
-          synchronized(this){
-            playerThread = null;
-            return;
-          }
-        }
-    }
+        } catch (IOException ex){}
+        e.printStackTrace();
+      }
   }
 
 
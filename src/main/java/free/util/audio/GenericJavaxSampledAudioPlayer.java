@@ -30,48 +30,51 @@ public class GenericJavaxSampledAudioPlayer extends JavaxSampledAudioPlayer{
   
   
   /**
-   * <code>Runnable</code> implementation. Plays the queued clips, closing the
-   * data line if no new AudioClips are fetched within a certain (short) period
-   * of time.
+   * The data line we play the clips through, created when first needed.
    */
 
-  public void run(){
-    SourceDataLine dataLine = null;
-    while (true){
-      try{
-        AudioClip audioClip = (AudioClip)clipQueue.pop();
-        byte [] data = audioClip.getData();
-        AudioFormat format = getFormatForPlaying(data);
-        data = convertAudioData(data, format);
-        
-        if (dataLine == null){
-          DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
-          dataLine = (SourceDataLine)AudioSystem.getLine(info);
-        }
-        
-        if (!dataLine.isOpen())
-          dataLine.open(format);
-        
-        if (!format.matches(dataLine.getFormat())){
-          dataLine.close();
-          dataLine.open(format);
-        }
-        
-        if (!dataLine.isRunning())
-          dataLine.start();
-        
-        dataLine.write(data, 0, data.length);
-      } catch (IOException e){
-        e.printStackTrace();
-      } catch (UnsupportedAudioFileException e){
-        e.printStackTrace();
-      } catch (LineUnavailableException e){
-        e.printStackTrace();
-      } catch (IllegalArgumentException e){
-        e.printStackTrace();
-      } catch (Throwable t){
-        t.printStackTrace();
+  private SourceDataLine dataLine = null;
+
+
+
+  /**
+   * Plays the specified clip through the data line, keeping it open for the
+   * next clip.
+   */
+
+  protected void playClip(AudioClip audioClip){
+    try{
+      byte [] data = audioClip.getData();
+      AudioFormat format = getFormatForPlaying(data);
+      data = convertAudioData(data, format);
+      
+      if (dataLine == null){
+        DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
+        dataLine = (SourceDataLine)AudioSystem.getLine(info);
+      }
+      
+      if (!dataLine.isOpen())
+        dataLine.open(format);
+      
+      if (!format.matches(dataLine.getFormat())){
+        dataLine.close();
+        dataLine.open(format);
       }
+      
+      if (!dataLine.isRunning())
+        dataLine.start();
+      
+      dataLine.write(data, 0, data.length);
+    } catch (IOException e){
+      e.printStackTrace();
+    } catch (UnsupportedAudioFileException e){
+      e.printStackTrace();
+    } catch (LineUnavailableException e){
+      e.printStackTrace();
+    } catch (IllegalArgumentException e){
+      e.printStackTrace();
+    } catch (Throwable t){
+      t.printStackTrace();
     }
   }
   
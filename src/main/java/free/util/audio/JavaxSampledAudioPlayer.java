@@ -25,7 +25,7 @@ import javax.sound.sampled.*;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import free.util.BlockingQueue;
+import free.util.IOExecutor;
 import free.util.PlatformUtils;
 import free.util.IOUtilities;
 
@@ -33,28 +33,28 @@ import free.util.IOUtilities;
 /**
  * An abstract AudioPlayer implementation which uses the javax.sound.sampled API
  * to play sounds. This API is only available since JDK1.3.
- * Runnable.run is left to be implemented by the concrete subclass. Its function
- * is to loop forever, obtaining <code>free.util.AudiClip</code> instances from
- * the <code>clipQueue</code> and playing them. 
+ * The clips are played one at a time, in the order they were given in, on the
+ * {@link IOExecutor}; <code>playClip</code> is left to be implemented by the
+ * concrete subclass.
  */
 
-public abstract class JavaxSampledAudioPlayer implements Runnable, AudioPlayer{
+public abstract class JavaxSampledAudioPlayer implements AudioPlayer{
 
 
 
   /**
-   * The current thread playing the sound.
+   * Plays the queued clips, one at a time.
    */
 
-  private Thread playerThread = null;
+  private final IOExecutor.Serial player = new IOExecutor.Serial("JavaxSampledAudioPlayer");
   
   
   
   /**
-   * A BlockingQueue of AudioClips queued for playing.
+   * The amount of clips queued for playing, but not being played yet.
    */
 
-  protected final BlockingQueue clipQueue = new BlockingQueue();
+  private int queuedClipCount = 0;
 
 
 
@@ -72,20 +72,44 @@ public abstract class JavaxSampledAudioPlayer implements Runnable, AudioPlayer{
    * Plays the given AudioClip.
    */
 
-  public synchronized void play(AudioClip clip) throws java.io.IOException{
-    // Lazily initialize player thread.
-    if (playerThread == null){
-      playerThread = new Thread(this, "JavaxSampledAudioPlayer");
-      playerThread.setDaemon(true);
-      playerThread.setPriority(Thread.MAX_PRIORITY);
-      playerThread.start();
+  public void play(final AudioClip clip) throws java.io.IOException{
+    synchronized(this){
+      queuedClipCount++;
     }
 
-    clipQueue.push(clip);
+    player.execute(new Runnable(){
+      public void run(){
+        synchronized(JavaxSampledAudioPlayer.this){
+          queuedClipCount--;
+        }
+        playClip(clip);
+      }
+    });
   }
 
 
 
+  /**
+   * Returns whether there are clips queued for playing after the one currently
+   * being played.
+   */
+
+  protected synchronized boolean hasQueuedClips(){
+    return queuedClipCount > 0;
+  }
+
+
+
+  /**
+   * Plays the specified clip, returning once it has been handed off to the
+   * audio system. Invoked for each clip in turn, in the order they were given
+   * in.
+   */
+
+  protected abstract void playClip(AudioClip clip);
+
+
+
 
   /**
    * Finds and returns the AudioFormat appropriate for playing the specified
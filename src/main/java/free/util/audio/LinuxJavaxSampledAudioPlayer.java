@@ -47,59 +47,58 @@ public class LinuxJavaxSampledAudioPlayer extends JavaxSampledAudioPlayer{
   
   
   /**
-   * <code>Runnable</code> implementation. Plays the queued clips, closing the
-   * data line if no new AudioClips are fetched within a certain (short) period
-   * of time.
+   * The data line we play the clips through, created when first needed.
    */
 
-  public void run(){
-    SourceDataLine dataLine = null;
-    while (true){
-      try{
-        AudioClip audioClip;
-        try{
-          if ((dataLine != null) && dataLine.isOpen())
-            audioClip = (AudioClip)clipQueue.pop(500);
-          else
-            audioClip = (AudioClip)clipQueue.pop();
-        } catch (InterruptedException e){
-            if (dataLine.isOpen() && !dataLine.isActive())
-              dataLine.close();
-            continue;
-        }
-        
-        byte [] data = audioClip.getData();
-        AudioFormat format = getFormatForPlaying(data);
-        data = convertAudioData(data, format);
-        
-        if (dataLine == null){
-          DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
-          dataLine = (SourceDataLine)AudioSystem.getLine(info);
-        }
-        
-        if (!dataLine.isOpen())
-          dataLine.open(format);
-        
-        if (!format.matches(dataLine.getFormat())){
+  private SourceDataLine dataLine = null;
+  
+  
+  
+  /**
+   * Plays the specified clip through the data line. Unless more clips are
+   * already queued, waits for the clip to finish playing and closes the data
+   * line, rather than keeping it open while no sounds are played.
+   */
+
+  protected void playClip(AudioClip audioClip){
+    try{
+      byte [] data = audioClip.getData();
+      AudioFormat format = getFormatForPlaying(data);
+      data = convertAudioData(data, format);
+      
+      if (dataLine == null){
+        DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
+        dataLine = (SourceDataLine)AudioSystem.getLine(info);
+      }
+      
+      if (!dataLine.isOpen())
+        dataLine.open(format);
+      
+      if (!format.matches(dataLine.getFormat())){
+        dataLine.close();
+        dataLine.open(format);
+      }
+      
+      if (!dataLine.isRunning())
+        dataLine.start();
+      
+      dataLine.write(data, 0, data.length);
+
+      if (!hasQueuedClips()){
+        dataLine.drain();
+        if (!hasQueuedClips())
           dataLine.close();
-          dataLine.open(format);
-        }
-        
-        if (!dataLine.isRunning())
-          dataLine.start();
-        
-        dataLine.write(data, 0, data.length);
-      } catch (IOException e){
-        e.printStackTrace();
-      } catch (UnsupportedAudioFileException e){
-        e.printStackTrace();
-      } catch (LineUnavailableException e){
-        e.printStackTrace();
-      } catch (IllegalArgumentException e){
-        e.printStackTrace();
-      } catch (Throwable t){
-        t.printStackTrace();
       }
+    } catch (IOException e){
+      e.printStackTrace();
+    } catch (UnsupportedAudioFileException e){
+      e.printStackTrace();
+    } catch (LineUnavailableException e){
+      e.printStackTrace();
+    } catch (IllegalArgumentException e){
+      e.printStackTrace();
+    } catch (Throwable t){
+      t.printStackTrace();
     }
   }
   
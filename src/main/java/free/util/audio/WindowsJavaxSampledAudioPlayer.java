@@ -47,42 +47,38 @@ public class WindowsJavaxSampledAudioPlayer extends JavaxSampledAudioPlayer{
 
 
   /**
-   * <code>Runnable</code> implementation. Plays the queued clips.
+   * Plays the specified clip through a clip line of its own, which is closed
+   * once the clip stops playing.
    */
 
-  public void run(){
-    while (true){
-      try{
-        AudioClip audioClip = (AudioClip)clipQueue.pop();
-        
-        byte [] data = audioClip.getData();
-        AudioFormat format = getFormatForPlaying(data);
-        data = convertAudioData(data, format);
-        
-        DataLine.Info info = new DataLine.Info(Clip.class, format);
-        
-        Clip clipLine = (Clip)AudioSystem.getLine(info);
-        clipLine.open(format, data, 0, data.length);
-        clipLine.addLineListener(new LineListener(){
-          public void update(LineEvent evt){
-            if (evt.getType() == LineEvent.Type.STOP)
-              evt.getLine().close();
-          }
-        });
-        clipLine.loop(0);
-      } catch (IOException e){
-        e.printStackTrace();
-      } catch (UnsupportedAudioFileException e){
-        e.printStackTrace();
-      } catch (LineUnavailableException e){
-        e.printStackTrace();
-      } catch (IllegalArgumentException e){
-        e.printStackTrace();
-      } catch (Throwable t){
-        t.printStackTrace();
-      }
+  protected void playClip(AudioClip audioClip){
+    try{
+      byte [] data = audioClip.getData();
+      AudioFormat format = getFormatForPlaying(data);
+      data = convertAudioData(data, format);
+      
+      DataLine.Info info = new DataLine.Info(Clip.class, format);
+      
+      Clip clipLine = (Clip)AudioSystem.getLine(info);
+      clipLine.open(format, data, 0, data.length);
+      clipLine.addLineListener(new LineListener(){
+        public void update(LineEvent evt){
+          if (evt.getType() == LineEvent.Type.STOP)
+            evt.getLine().close();
+        }
+      });
+      clipLine.loop(0);
+    } catch (IOException e){
+      e.printStackTrace();
+    } catch (UnsupportedAudioFileException e){
+      e.printStackTrace();
+    } catch (LineUnavailableException e){
+      e.printStackTrace();
+    } catch (IllegalArgumentException e){
+      e.printStackTrace();
+    } catch (Throwable t){
+      t.printStackTrace();
     }
-    
   }
   
   
@@ -0,0 +1,172 @@
+/**
+ * The chess framework library. More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * The chess framework library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2 of the License, or (at your option) any later version.
+ *
+ * The chess framework library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the chess
+ * framework library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite
+ * 330, Boston, MA 02111-1307 USA
+ */
+package free.chess;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import free.chess.variants.NoCastlingVariant;
+import free.chess.variants.atomic.Atomic;
+import free.chess.variants.fischerrandom.FischerRandom;
+import free.chess.variants.giveaway.Giveaway;
+import free.chess.variants.shatranj.Shatranj;
+import free.chess.variants.shuffleboth.ShuffleBoth;
+import free.chess.variants.suicide.Suicide;
+
+/**
+ * Checks the leaf node counts of the tree of legal moves ("perft") of each variant implementing
+ * {@link LegalMoveGenerator} against published reference values, at depths shallow enough for the
+ * tests to run quickly. The deeper counts, and their rate, are measured by the
+ * <code>free.chess.Perft</code> harness and <code>PerftBenchmark</code> in <code>src/jmh</code>.
+ */
+public class PerftTest {
+
+  /**
+   * The "Kiwipete" position, which has castling, en-passant and promotions close to the root.
+   */
+  private static final String KIWIPETE =
+      "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+
+  /**
+   * A rook endgame, with en-passant captures which would expose the king.
+   */
+  private static final String ENDGAME = "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1";
+
+  @Test
+  public void chessInitial() {
+    assertPerft(
+        Chess.getInstance(), Chess.INITIAL_POSITION_FEN, new long[] {20, 400, 8902, 197281});
+  }
+
+  @Test
+  public void chessKiwipete() {
+    assertPerft(Chess.getInstance(), KIWIPETE, new long[] {48, 2039, 97862});
+  }
+
+  @Test
+  public void chessEndgame() {
+    assertPerft(Chess.getInstance(), ENDGAME, new long[] {14, 191, 2812, 43238});
+  }
+
+  @Test
+  public void chessPromotions() {
+    assertPerft(
+        Chess.getInstance(),
+        "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+        new long[] {6, 264, 9467});
+  }
+
+  @Test
+  public void chessDiscoveredChecks() {
+    assertPerft(
+        Chess.getInstance(),
+        "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+        new long[] {44, 1486, 62379});
+  }
+
+  @Test
+  public void noCastlingEndgame() {
+    assertPerft(
+        new NoCastlingVariant(Chess.INITIAL_POSITION_FEN, "No castling"),
+        ENDGAME,
+        new long[] {14, 191, 2812, 43238});
+  }
+
+  @Test
+  public void fischerRandom() {
+    FischerRandom variant = FischerRandom.getInstance();
+    assertPerft(
+        variant,
+        "bqnb1rkr/pp3ppp/3ppn2/2p5/5P2/P2P4/NPP1P1PP/BQ1BNRKR w HFhf - 2 9",
+        new long[] {21, 528, 12189});
+    assertPerft(
+        variant,
+        "2nnrbkr/p1qppppp/8/1ppb4/6PP/3PP3/PPP2P2/BQNNRBKR w HEhe - 1 9",
+        new long[] {21, 807, 18002});
+    assertPerft(
+        variant,
+        "b1q1rrkb/pppppppp/3nn3/8/P7/1PPP4/4PPPP/BQNNRKRB w GE - 1 9",
+        new long[] {20, 479, 10471});
+    assertPerft(
+        variant,
+        "qbbnnrkr/2pp2pp/p7/1p2pp2/8/P3PP2/1PPP1KPP/QBBNNR1R w hf - 0 9",
+        new long[] {22, 593, 13440});
+  }
+
+  @Test
+  public void shuffleBothKiwipete() {
+    assertPerft(ShuffleBoth.getInstance(), KIWIPETE, new long[] {48, 2039, 97862});
+  }
+
+  @Test
+  public void suicideInitial() {
+    assertPerft(
+        Suicide.getInstance(), Chess.INITIAL_POSITION_FEN, new long[] {20, 400, 8067, 153299});
+  }
+
+  @Test
+  public void giveawayInitial() {
+    assertPerft(
+        Giveaway.getInstance(), Chess.INITIAL_POSITION_FEN, new long[] {20, 400, 8067, 153299});
+  }
+
+  @Test
+  public void atomicInitial() {
+    assertPerft(Atomic.getInstance(), Chess.INITIAL_POSITION_FEN, new long[] {20, 400, 8902});
+  }
+
+  @Test
+  public void shatranjInitial() {
+    assertPerft(
+        Shatranj.getInstance(),
+        Shatranj.SHATRANJ_INITIAL_POSITION_FEN,
+        new long[] {16, 256, 4176, 68122});
+  }
+
+  /**
+   * Asserts that the leaf node counts of the specified position, in the specified variant, are the
+   * specified ones, starting at depth 1.
+   */
+  private static void assertPerft(WildVariant variant, String fen, long[] counts) {
+    Position pos = new Position(variant);
+    pos.setFEN(fen);
+    for (int depth = 1; depth <= counts.length; depth++)
+      assertEquals(counts[depth - 1], perft(pos, depth), fen + " at depth " + depth);
+  }
+
+  /**
+   * Returns the amount of leaf nodes at the specified depth (which must be at least 1) of the tree
+   * of legal moves from the specified position. The moves are made and unmade on the position
+   * itself.
+   */
+  private static long perft(Position pos, int depth) {
+    LegalMoveGenerator generator = (LegalMoveGenerator) pos.getVariant();
+    MoveBuffer moves = new MoveBuffer();
+    int count = generator.generateLegalMoves(pos, moves);
+    if (depth == 1) return count;
+
+    long nodes = 0;
+    for (int i = 0; i < count; i++) {
+      Position.Undo undo = pos.makeMove(generator.createMove(pos, moves.get(i)));
+      nodes += perft(pos, depth - 1);
+      pos.unmakeMove(undo);
+    }
+
+    return nodes;
+  }
+}
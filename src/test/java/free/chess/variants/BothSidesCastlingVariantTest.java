@@ -0,0 +1,101 @@
+/**
+ * The chess framework library. More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * The chess framework library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software Foundation;
+ * either version 2 of the License, or (at your option) any later version.
+ *
+ * The chess framework library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the chess
+ * framework library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite
+ * 330, Boston, MA 02111-1307 USA
+ */
+package free.chess.variants;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import free.chess.Bitboards;
+import free.chess.Chess;
+import free.chess.ChessMove;
+import free.chess.MoveBuffer;
+import free.chess.Position;
+import free.chess.Square;
+import free.chess.WildVariant;
+
+/**
+ * Checks that the <code>KQkq</code> castling rights of a FEN string refer to the rooks a king on
+ * the d file castles short and long with in {@link BothSidesCastlingVariant} (wild/0 and wild/1 on
+ * FICS), with only one of the rights left, and that the resulting castling move is legal.
+ */
+public class BothSidesCastlingVariantTest {
+
+  /**
+   * The wild/0 variant.
+   */
+  private static final WildVariant WILD0 =
+      new BothSidesCastlingVariant(Chess.INITIAL_POSITION_FEN, "wild/0");
+
+  @Test
+  public void dFileKingShortCastlingRight() {
+    Position pos = createPosition(WILD0, "r2k3r/pppppppp/8/8/8/8/PPPPPPPP/R3K2R b k - 0 1");
+
+    assertEquals(Bitboards.bit(0, 7), pos.getCastlingRooks(), "castling rooks");
+    assertCastling(pos, "b8", true);
+  }
+
+  @Test
+  public void dFileKingLongCastlingRight() {
+    Position pos = createPosition(WILD0, "r2k3r/pppppppp/8/8/8/8/PPPPPPPP/R3K2R b q - 0 1");
+
+    assertEquals(Bitboards.bit(7, 7), pos.getCastlingRooks(), "castling rooks");
+    assertCastling(pos, "f8", false);
+  }
+
+  @Test
+  public void eFileKingShortCastlingRight() {
+    Position pos = createPosition(WILD0, "r2k3r/pppppppp/8/8/8/8/PPPPPPPP/R3K2R w K - 0 1");
+
+    assertEquals(Bitboards.bit(7, 0), pos.getCastlingRooks(), "castling rooks");
+    assertCastling(pos, "g1", true);
+  }
+
+  /**
+   * Creates a position of the specified variant, from the specified FEN string.
+   */
+  private static Position createPosition(WildVariant variant, String fen) {
+    Position pos = new Position(variant);
+    pos.setFEN(fen);
+    return pos;
+  }
+
+  /**
+   * Asserts that the only legal castling move in the specified position takes the king to the
+   * specified square, and is short or long castling, as specified.
+   */
+  private static void assertCastling(Position pos, String kingDestination, boolean isShort) {
+    BothSidesCastlingVariant variant = (BothSidesCastlingVariant) pos.getVariant();
+    MoveBuffer moves = new MoveBuffer();
+    int count = variant.generateLegalMoves(pos, moves);
+
+    ChessMove castling = null;
+    for (int i = 0; i < count; i++) {
+      ChessMove move = (ChessMove) variant.createMove(pos, moves.get(i));
+      if (move.isCastling()) {
+        assertEquals(null, castling, "castling moves");
+        castling = move;
+      }
+    }
+
+    assertTrue(castling != null, "no castling move");
+    assertEquals(Square.parseSquare(kingDestination), castling.getEndingSquare(), "destination");
+    assertEquals(isShort, castling.isShortCastling(), "short castling");
+    assertTrue(variant.isLegal(pos, castling), "castling is illegal");
+  }
+}
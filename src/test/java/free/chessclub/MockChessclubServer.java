@@ -0,0 +1,276 @@
+/**
+ * The chessclub.com connection library. More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002-2003 Alexander Maryanovsky. All rights reserved.
+ *
+ * The chessclub.com connection library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * The chessclub.com connection library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the
+ * chessclub.com connection library; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package free.chessclub;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.BitSet;
+import java.util.StringTokenizer;
+
+import free.chessclub.level2.Datagram;
+import free.util.MockServer;
+
+/**
+ * A stand-in for the chessclub.com server, which speaks enough of its level1 and level2 protocol to
+ * log a client in and then keep it busy with the traffic of the feeds created by the static
+ * methods of this class: observed games (DG_STARTED_OBSERVING, DG_POSITION_BEGIN and
+ * DG_SEND_MOVES), channel tells (DG_CHANNEL_TELL) and seeks (DG_SEEK and DG_SEEK_REMOVED). The
+ * server keeps track of the datagrams the client turns on and off, replying with DG_SET2, and
+ * answers tagged commands with level1 packets.
+ */
+public class MockChessclubServer extends MockServer {
+
+  /**
+   * The prompt.
+   */
+  private static final String PROMPT = "aics% ";
+
+  /**
+   * The moves of the (legal) cycle of knight moves played in the observed games, in algebraic
+   * notation.
+   */
+  private static final String[] ALGEBRAIC_MOVES = {"Nf3", "Nf6", "Ng1", "Ng8"};
+
+  /**
+   * The moves of the cycle, in Warren Smith's notation.
+   */
+  private static final String[] SMITH_MOVES = {"g1f3", "g8f6", "f3g1", "f6g8"};
+
+  /**
+   * The datagrams the client has turned on.
+   */
+  private final BitSet level2Settings = new BitSet();
+
+  /**
+   * The name the client is logged in under.
+   */
+  private String username;
+
+  /**
+   * Creates a new <code>MockChessclubServer</code>.
+   */
+  public MockChessclubServer() throws IOException {}
+
+  /**
+   * Reads the level1 and level2 settings and the login line, and logs the client in under the name
+   * it specified.
+   */
+  @Override
+  protected void login(InputStream in) throws IOException {
+    String line;
+    while ((line = readCommand(in)) != null) {
+      if (line.startsWith("level1=")) continue;
+      else if (line.startsWith("level2settings=")) {
+        String settings = line.substring("level2settings=".length());
+        synchronized (level2Settings) {
+          for (int i = 0; i < settings.length(); i++)
+            if (settings.charAt(i) == '1') level2Settings.set(i);
+        }
+      } else break;
+    }
+    if (line == null) throw new IOException("Disconnected during login");
+
+    int spaceIndex = line.indexOf(' '); // The password follows the username
+    username = spaceIndex == -1 ? line : line.substring(0, spaceIndex);
+
+    send(datagram(Datagram.DG_WILD_KEY + " 0 {Chess}"));
+    send(datagram(Datagram.DG_RATING_TYPE_KEY + " 1 {Blitz}"));
+    send(datagram(Datagram.DG_WHO_AM_I + " " + username + " {}"));
+    send(PROMPT);
+    flush();
+  }
+
+  /**
+   * Keeps track of the datagrams turned on and off with "set-2", and answers tagged commands with
+   * a level1 packet.
+   */
+  @Override
+  protected void handleCommand(String command) throws IOException {
+    String tag = null;
+    if (command.startsWith("`")) {
+      int tagEnd = command.indexOf('`', 1);
+      tag = command.substring(1, tagEnd);
+      command = command.substring(tagEnd + 1);
+    }
+
+    // "multi" runs several commands separated by semicolons
+    if (command.startsWith("multi ")) command = command.substring("multi ".length());
+
+    StringBuffer response = new StringBuffer();
+    StringTokenizer commands = new StringTokenizer(command, ";");
+    while (commands.hasMoreTokens()) {
+      String subCommand = commands.nextToken().trim();
+      if (subCommand.startsWith("set-2 ")) {
+        StringTokenizer tokenizer =
+            new StringTokenizer(subCommand.substring("set-2 ".length()), " ");
+        int dg = Integer.parseInt(tokenizer.nextToken());
+        boolean state = tokenizer.nextToken().equals("1");
+        synchronized (level2Settings) {
+          if (state) level2Settings.set(dg);
+          else level2Settings.clear(dg);
+        }
+        response.append(datagram(Datagram.DG_SET2 + " " + dg + " " + (state ? "1" : "0")));
+
+        // Setting DG_DUMMY_RESPONSE on again is how clients ask for a dummy response
+        if (state && (dg == Datagram.DG_DUMMY_RESPONSE))
+          response.append(datagram(String.valueOf(Datagram.DG_DUMMY_RESPONSE)));
+      }
+    }
+
+    if (tag != null) {
+      if (response.length() == 0)
+        response.append(datagram(String.valueOf(Datagram.DG_DUMMY_RESPONSE)));
+      send("\u0019[0 " + username + " " + tag + "\n" + response + "\u0019]");
+    } else send(response.toString());
+
+    send(PROMPT);
+    flush();
+  }
+
+  /**
+   * Returns whether the client has turned on the specified datagram.
+   */
+  private boolean isDGOn(int dg) {
+    synchronized (level2Settings) {
+      return level2Settings.get(dg);
+    }
+  }
+
+  /**
+   * Returns the specified datagram contents (the id and the fields) wrapped in datagram delimiters.
+   */
+  private static String datagram(String contents) {
+    return "\u0019(" + contents + "\u0019)";
+  }
+
+  /**
+   * Returns a feed of the moves of the specified amount of observed games, numbered starting with
+   * the specified number. Each message is a move in one of the games, in turn.
+   */
+  public static Feed observedGames(final int firstGameNumber, final int gameCount) {
+    return new Feed() {
+      private final int[] plies = new int[gameCount];
+      private int nextGame = 0;
+
+      @Override
+      public void start(MockServer server) throws IOException {
+        MockChessclubServer icc = (MockChessclubServer) server;
+        for (int i = 0; i < gameCount; i++) {
+          int gameNumber = firstGameNumber + i;
+          icc.send(
+              datagram(
+                  Datagram.DG_STARTED_OBSERVING
+                      + " "
+                      + gameNumber
+                      + " White"
+                      + gameNumber
+                      + " Black"
+                      + gameNumber
+                      + " 0 Blitz 1 3 0 3 0 1 {} 1650 1720 "
+                      + (1000000 + gameNumber)
+                      + " {} {} 0 0 0 {}"));
+          // The server tells whether the board should be flipped before sending the position
+          if (icc.isDGOn(Datagram.DG_FLIP))
+            icc.send(datagram(Datagram.DG_FLIP + " " + gameNumber + " 0"));
+          icc.send(datagram(Datagram.DG_POSITION_BEGIN + " " + gameNumber + " {} 0"));
+        }
+      }
+
+      @Override
+      public void next(MockServer server) throws IOException {
+        MockChessclubServer icc = (MockChessclubServer) server;
+        int ply = plies[nextGame]++;
+        int clock = Math.max(0, 180 - ply);
+        icc.send(
+            datagram(
+                Datagram.DG_SEND_MOVES
+                    + " "
+                    + (firstGameNumber + nextGame)
+                    + " "
+                    + ALGEBRAIC_MOVES[ply % 4]
+                    + " "
+                    + SMITH_MOVES[ply % 4]
+                    + (icc.isDGOn(Datagram.DG_MOVE_TIME) ? " 1" : "")
+                    + (icc.isDGOn(Datagram.DG_MOVE_CLOCK) ? " " + clock : "")
+                    + " "
+                    + ChessclubConstants.PLAYED_MOVE));
+        nextGame = (nextGame + 1) % gameCount;
+      }
+    };
+  }
+
+  /**
+   * Returns a feed of tells in the specified channel.
+   */
+  public static Feed channelTells(final int channel) {
+    return new Feed() {
+      private long count = 0;
+
+      @Override
+      public void start(MockServer server) {}
+
+      @Override
+      public void next(MockServer server) throws IOException {
+        count++;
+        server.send(
+            datagram(
+                Datagram.DG_CHANNEL_TELL
+                    + " "
+                    + channel
+                    + " Chatter"
+                    + (count % 37)
+                    + " {} {message number "
+                    + count
+                    + " to the channel} "
+                    + ChessclubConstants.REGULAR_CHANNEL_TELL));
+      }
+    };
+  }
+
+  /**
+   * Returns a feed of seeks, which keeps the specified amount of seeks on the seek list: each
+   * message is a new seek, and once the list is full, each new seek is preceded by the removal of
+   * the oldest one.
+   */
+  public static Feed seeks(final int maxSeekCount) {
+    return new Feed() {
+      private int nextIndex = 1;
+
+      @Override
+      public void start(MockServer server) {}
+
+      @Override
+      public void next(MockServer server) throws IOException {
+        int index = nextIndex++;
+        if (index > maxSeekCount)
+          server.send(datagram(Datagram.DG_SEEK_REMOVED + " " + (index - maxSeekCount) + " 0"));
+        server.send(
+            datagram(
+                Datagram.DG_SEEK
+                    + " "
+                    + index
+                    + " Seeker"
+                    + (index % 53)
+                    + " {} "
+                    + (1200 + index % 800)
+                    + " 0 0 {Blitz} "
+                    + (1 + index % 5)
+                    + " 0 1 -1 0 9999 1 0 {}"));
+      }
+    };
+  }
+}
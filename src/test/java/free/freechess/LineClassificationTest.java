@@ -0,0 +1,219 @@
+/**
+ * The freechess.org connection library. More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002, 2003 Alexander Maryanovsky. All rights reserved.
+ *
+ * The freechess.org connection library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * The freechess.org connection library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the
+ * freechess.org connection library; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package free.freechess;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that {@link FreechessConnection#parseLine(String)} classifies lines the same way as trying
+ * every known type of line in turn, the way <code>FreechessConnection</code> used to (and the way
+ * <code>LineClassificationBenchmark</code> still does, to compare the two). The lines are those of
+ * the sessions the benchmarks replay, in <code>src/jmh/resources</code>.
+ */
+public class LineClassificationTest {
+
+  @Test
+  public void session() throws IOException {
+    assertSameClassification("fics-session.txt");
+  }
+
+  @Test
+  public void traffic() throws IOException {
+    assertSameClassification("fics-traffic.txt");
+  }
+
+  /**
+   * Asserts that every line of the specified resource is classified as the same type, with the same
+   * groups matched in it, by both <code>parseLine</code> and the cascade.
+   */
+  private static void assertSameClassification(String resourceName) throws IOException {
+    BufferedReader reader =
+        new BufferedReader(
+            new InputStreamReader(
+                LineClassificationTest.class.getResourceAsStream(resourceName), "ISO-8859-1"));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        FreechessConnection.ParsedLine parsedLine = FreechessConnection.parseLine(line);
+        Object[] expected = classifyByCascade(line);
+
+        assertEquals(expected[0], typeName(parsedLine.type), line);
+        if (expected[1] instanceof MatchResult)
+          assertEquals(
+              groups((MatchResult) expected[1]), groups((MatchResult) parsedLine.data), line);
+        else if (expected[1] instanceof Integer) assertEquals(expected[1], parsedLine.data, line);
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Classifies the specified line by trying every known type of line in turn. Returns the name of
+   * the type of the line and the data parsed out of it, if it's a match or an offer number. The
+   * structs are parsed out of the tag lines by the same code either way, so they aren't returned.
+   */
+  private static Object[] classifyByCascade(String line) {
+    Matcher matcher;
+
+    if (line.startsWith("<g1> ")) return result("game-info", null);
+    if (line.startsWith("<12> ")) return result("style12", null);
+    if (line.startsWith("<d1> ")) return result("delta-board", null);
+    if (line.equals("<sc>")) return result("seeks-cleared", null);
+    if (line.startsWith("<s> ") || line.startsWith("<sn> ")) return result("seek-added", null);
+    if (line.startsWith("<sr> ")) return result("seeks-removed", null);
+    if (line.startsWith("<b1> ")) return result("bughouse-holdings", null);
+    if (line.startsWith("{Game ") && (matcher = matcher("GAME_END_REGEX", line)).matches())
+      return result("game-end", matcher);
+    if (line.startsWith("Removing game ")
+        && (matcher = matcher("STOPPED_OBSERVING_REGEX", line)).matches())
+      return result("stopped-observing", matcher);
+    if (line.startsWith("You are no longer examining game ")
+        && (matcher = matcher("STOPPED_EXAMINING_REGEX", line)).matches())
+      return result("stopped-examining", matcher);
+    if (line.equals("Entering setup mode.")) return result("entered-bsetup", null);
+    if (line.equals("Game is validated - entering examine mode."))
+      return result("exited-bsetup", null);
+    if (line.startsWith("Illegal move ")
+        && (matcher = matcher("ILLEGAL_MOVE_REGEX", line)).matches())
+      return result("illegal-move", matcher);
+    if (line.equals("It is not your move.")) return result("not-your-turn", null);
+    if (line.equals("The clock is paused, use \"unpause\" to resume."))
+      return result("moved-when-game-paused", null);
+    if ((line.indexOf("): ") != -1) && (matcher = matcher("CHANNEL_TELL_REGEX", line)).matches())
+      return result("channel-tell", matcher);
+    if ((matcher = matcher("LOGIN_REGEX", line)).matches()) return result("login", matcher);
+    if ((matcher = matcher("WRONG_PASSWORD_REGEX", line)).matches())
+      return result("wrong-password", matcher);
+    if ((line.indexOf("set") != -1) && (matcher = matcher("IVAR_SET_REGEX", line)).matches()) {
+      // Otherwise it's a notification that something has been set, but not a known ivar
+      if (Ivar.getByName(matcher.group(1)) != null) return result("ivar-state-changed", matcher);
+    }
+    if ((line.indexOf("tells you: ") != -1)
+        && (matcher = matcher("PERSONAL_TELL_REGEX", line)).matches())
+      return result("personal-tell", matcher);
+    if ((line.indexOf("says: ") != -1) && (matcher = matcher("SAY_REGEX", line)).matches())
+      return result("say-tell", matcher);
+    if ((line.indexOf("(your partner) tells you: ") != -1)
+        && (matcher = matcher("PTELL_REGEX", line)).matches()) return result("ptell", matcher);
+    if ((line.indexOf("shouts: ") != -1) && (matcher = matcher("SHOUT_REGEX", line)).matches())
+      return result("shout", matcher);
+    if (line.startsWith("--> ") && (matcher = matcher("ISHOUT_REGEX", line)).matches())
+      return result("ishout", matcher);
+    if ((line.indexOf("t-shouts: ") != -1) && (matcher = matcher("TSHOUT_REGEX", line)).matches())
+      return result("tshout", matcher);
+    if ((line.indexOf("c-shouts: ") != -1) && (matcher = matcher("CSHOUT_REGEX", line)).matches())
+      return result("cshout", matcher);
+    if (line.startsWith("    **ANNOUNCEMENT** from ")
+        && (matcher = matcher("ANNOUNCEMENT_REGEX", line)).matches())
+      return result("announcement", matcher);
+    if ((line.indexOf("kibitzes: ") != -1) && (matcher = matcher("KIBITZ_REGEX", line)).matches())
+      return result("kibitz", matcher);
+    if ((line.indexOf("whispers: ") != -1)
+        && (matcher = matcher("WHISPER_REGEX", line)).matches()) return result("whisper", matcher);
+    if (line.startsWith(":") && (matcher = matcher("QTELL_REGEX", line)).matches())
+      return result("qtell", matcher);
+    if ((line.startsWith("<pt> ") || line.startsWith("<pf> "))
+        && (matcher = matcher("OFFER_REGEX", line)).matches()) return result("offer", matcher);
+    if (line.startsWith("<pr> "))
+      return result("offer-removed", Integer.valueOf(line.substring("<pr> ".length())));
+
+    if (line.startsWith("Game ")) {
+      if ((matcher = matcher("PLAYER_OFFERED_DRAW_REGEX", line)).matches())
+        return result("player-offered-draw", matcher);
+      if ((matcher = matcher("PLAYER_OFFERED_ADJOURN_REGEX", line)).matches())
+        return result("player-offered-adjourn", matcher);
+      if ((matcher = matcher("PLAYER_OFFERED_ABORT_REGEX", line)).matches())
+        return result("player-offered-abort", matcher);
+      if ((matcher = matcher("PLAYER_OFFERED_TAKEBACK_REGEX", line)).matches())
+        return result("player-offered-takeback", matcher);
+      if ((line.indexOf("declines the ") != -1)
+          && (matcher = matcher("PLAYER_DECLINED_REGEX", line)).matches())
+        return result("player-declined", matcher);
+      if ((line.indexOf("withdraws the ") != -1)
+          && (matcher = matcher("PLAYER_WITHDREW_REGEX", line)).matches())
+        return result("player-withdrew", matcher);
+      if ((line.indexOf("proposes a different number ") != -1)
+          && (matcher = matcher("PLAYER_COUNTER_TAKEBACK_OFFER_REGEX", line)).matches())
+        return result("player-countered-takeback", matcher);
+    }
+
+    if (line.startsWith("You are now at ")
+        && (matcher = matcher("AT_BOARD_REGEX", line)).matches())
+      return result("simul-board-changed", matcher);
+    if (line.startsWith("Your primary game is now game ")
+        && (matcher = matcher("PRIMARY_GAME_CHANGED_REGEX", line)).matches())
+      return result("primary-game-changed", matcher);
+
+    return result("plain", null);
+  }
+
+  /**
+   * Returns the result of {@link #classifyByCascade(String)} with the specified type name and data.
+   */
+  private static Object[] result(String typeName, Object data) {
+    return new Object[] {typeName, data};
+  }
+
+  /**
+   * Returns a matcher of the <code>Pattern</code> constant with the specified name in
+   * <code>FreechessConnection</code> for the specified line.
+   */
+  private static Matcher matcher(String patternName, String line) {
+    return ((Pattern) constant(patternName)).matcher(line);
+  }
+
+  /**
+   * Returns the name of the specified type of line.
+   */
+  private static String typeName(int type) {
+    return ((String[]) constant("LINE_TYPE_NAMES"))[type];
+  }
+
+  /**
+   * Returns the value of the private constant with the specified name in
+   * <code>FreechessConnection</code>.
+   */
+  private static Object constant(String name) {
+    try {
+      Field field = FreechessConnection.class.getDeclaredField(name);
+      field.setAccessible(true);
+      return field.get(null);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException(e.toString());
+    }
+  }
+
+  /**
+   * Returns the groups matched in the specified match, each followed by a newline.
+   */
+  private static String groups(MatchResult match) {
+    StringBuffer buf = new StringBuffer();
+    for (int i = 0; i <= match.groupCount(); i++) buf.append(match.group(i)).append('\n');
+    return buf.toString();
+  }
+}
@@ -0,0 +1,288 @@
+/**
+ * The freechess.org connection library. More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002, 2003 Alexander Maryanovsky. All rights reserved.
+ *
+ * The freechess.org connection library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * The freechess.org connection library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the
+ * freechess.org connection library; if not, write to the Free Software Foundation, Inc., 59 Temple
+ * Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package free.freechess;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.StringTokenizer;
+
+import free.util.MockServer;
+
+/**
+ * A stand-in for the freechess.org server, which speaks enough of its line protocol to log a
+ * client in and then keep it busy with the traffic of the feeds created by the static methods of
+ * this class: observed games (<code>&lt;g1&gt;</code> and style 12 lines, or delta-board lines if
+ * the client sets the compressmove ivar), channel tells, seeks
+ * (<code>&lt;s&gt;</code> and <code>&lt;sr&gt;</code> lines) and offers (<code>&lt;pt&gt;</code>,
+ * <code>&lt;pf&gt;</code> and <code>&lt;pr&gt;</code> lines).
+ */
+public class MockFreechessServer extends MockServer {
+
+  /**
+   * The line terminator used by the server.
+   */
+  private static final String EOL = "\n\r";
+
+  /**
+   * The prompt.
+   */
+  private static final String PROMPT = "fics% ";
+
+  /**
+   * The boards of the (legal) cycle of knight moves played in the observed games, from white's
+   * 8th rank down to the 1st.
+   */
+  private static final String[] BOARDS = {
+    "rnbqkbnr pppppppp -------- -------- -------- -------- PPPPPPPP RNBQKBNR",
+    "rnbqkbnr pppppppp -------- -------- -------- -----N-- PPPPPPPP RNBQKB-R",
+    "rnbqkb-r pppppppp -----n-- -------- -------- -----N-- PPPPPPPP RNBQKB-R",
+    "rnbqkb-r pppppppp -----n-- -------- -------- -------- PPPPPPPP RNBQKBNR"
+  };
+
+  /**
+   * The moves of the cycle, in verbose notation; move <code>i</code> leads to
+   * <code>BOARDS[(i + 1) % 4]</code>.
+   */
+  private static final String[] VERBOSE_MOVES = {"N/g1-f3", "N/g8-f6", "N/f3-g1", "N/f6-g8"};
+
+  /**
+   * The moves of the cycle, in short algebraic notation.
+   */
+  private static final String[] PRETTY_MOVES = {"Nf3", "Nf6", "Ng1", "Ng8"};
+
+  /**
+   * The moves of the cycle, in Smith-Warren notation.
+   */
+  private static final String[] SMITH_MOVES = {"g1f3", "g8f6", "f3g1", "f6g8"};
+
+  /**
+   * Whether the client has set the compressmove ivar on the login line.
+   */
+  private volatile boolean isCompressMove = false;
+
+  /**
+   * Creates a new <code>MockFreechessServer</code>.
+   */
+  public MockFreechessServer() throws IOException {}
+
+  /**
+   * Sends the login prompt and waits for the client to send its username (after the optional
+   * ivars line), then logs it in under that name.
+   */
+  @Override
+  protected void login(InputStream in) throws IOException {
+    send("login: ");
+    flush();
+
+    String username;
+    while ((username = readCommand(in)) != null) {
+      if (username.startsWith("%b")) {
+        isCompressMove = (username.length() > 2) && (username.charAt(2) == '1');
+        send("#Ivars set." + EOL);
+      } else break;
+    }
+    if (username == null) throw new IOException("Disconnected during login");
+
+    send("**** Starting FICS session as " + username + " ****" + EOL + PROMPT);
+    flush();
+  }
+
+  /**
+   * Acknowledges setting ivars, and sends a prompt in reply to every command, as the server does.
+   */
+  @Override
+  protected void handleCommand(String command) throws IOException {
+    while (command.startsWith("$")) command = command.substring(1);
+
+    if (command.startsWith("iset ")) {
+      StringTokenizer tokenizer = new StringTokenizer(command.substring("iset ".length()), " ");
+      String ivar = tokenizer.nextToken();
+      boolean state = tokenizer.hasMoreTokens() && tokenizer.nextToken().equals("1");
+      sendLine(ivar + (state ? " set." : " unset."));
+    }
+
+    send(PROMPT);
+    flush();
+  }
+
+  /**
+   * Sends the specified line, followed by a line terminator.
+   */
+  private void sendLine(String line) throws IOException {
+    send(line);
+    send(EOL);
+  }
+
+  /**
+   * Returns a feed of the moves of the specified amount of observed games, numbered starting with
+   * the specified number. Each message is a move in one of the games, in turn.
+   */
+  public static Feed observedGames(final int firstGameNumber, final int gameCount) {
+    return new Feed() {
+      private final int[] plies = new int[gameCount];
+      private int nextGame = 0;
+
+      @Override
+      public void start(MockServer server) throws IOException {
+        MockFreechessServer fics = (MockFreechessServer) server;
+        for (int i = 0; i < gameCount; i++) {
+          int gameNumber = firstGameNumber + i;
+          fics.sendLine(
+              "<g1> "
+                  + gameNumber
+                  + " p=0 t=blitz r=1 u=1,1 it=180,0 i=180,0 pt=0 rt=1650,1720 ts=1,1");
+          fics.sendLine(style12(gameNumber, 0));
+        }
+      }
+
+      @Override
+      public void next(MockServer server) throws IOException {
+        MockFreechessServer fics = (MockFreechessServer) server;
+        int ply = ++plies[nextGame];
+        int gameNumber = firstGameNumber + nextGame;
+        fics.sendLine(fics.isCompressMove ? deltaBoard(gameNumber, ply) : style12(gameNumber, ply));
+        nextGame = (nextGame + 1) % gameCount;
+      }
+    };
+  }
+
+  /**
+   * Returns the delta-board line of the specified ply of the specified game.
+   */
+  private static String deltaBoard(int gameNumber, int ply) {
+    return "<d1> "
+        + gameNumber
+        + " "
+        + ply
+        + " "
+        + PRETTY_MOVES[(ply - 1) % 4]
+        + " "
+        + SMITH_MOVES[(ply - 1) % 4]
+        + " 1000 "
+        + Math.max(0, 180 - ply);
+  }
+
+  /**
+   * Returns the style 12 line of the specified game after the specified amount of plies.
+   */
+  private static String style12(int gameNumber, int ply) {
+    boolean isWhiteToMove = ply % 2 == 0;
+    String lastMove = ply == 0 ? "none" : VERBOSE_MOVES[(ply - 1) % 4];
+    String lastPrettyMove = ply == 0 ? "none" : PRETTY_MOVES[(ply - 1) % 4];
+    int clock = Math.max(0, 180 - ply);
+    return "<12> "
+        + BOARDS[ply % 4]
+        + (isWhiteToMove ? " W" : " B")
+        + " -1 1 1 1 1 "
+        + ply
+        + " "
+        + gameNumber
+        + " White"
+        + gameNumber
+        + " Black"
+        + gameNumber
+        + " 0 3 0 39 39 "
+        + clock
+        + " "
+        + clock
+        + " "
+        + (ply / 2 + 1)
+        + " "
+        + lastMove
+        + " (0:01.000) "
+        + lastPrettyMove
+        + " 0 1 0";
+  }
+
+  /**
+   * Returns a feed of tells in the specified channel.
+   */
+  public static Feed channelTells(final int channel) {
+    return new Feed() {
+      private long count = 0;
+
+      @Override
+      public void start(MockServer server) {}
+
+      @Override
+      public void next(MockServer server) throws IOException {
+        count++;
+        // FICS usernames consist of letters only
+        ((MockFreechessServer) server)
+            .sendLine(
+                "Chatter"
+                    + (char) ('a' + count % 26)
+                    + "("
+                    + channel
+                    + "): message number "
+                    + count
+                    + " to the channel");
+      }
+    };
+  }
+
+  /**
+   * Returns a feed of seeks, which keeps the specified amount of seeks on the seek list: each
+   * message is a new seek, and once the list is full, each new seek is preceded by the removal of
+   * the oldest one.
+   */
+  public static Feed seeks(final int maxSeekCount) {
+    return new Feed() {
+      private int nextIndex = 1;
+
+      @Override
+      public void start(MockServer server) {}
+
+      @Override
+      public void next(MockServer server) throws IOException {
+        MockFreechessServer fics = (MockFreechessServer) server;
+        int index = nextIndex++;
+        if (index > maxSeekCount) fics.sendLine("<sr> " + (index - maxSeekCount));
+        fics.sendLine(
+            "<s> "
+                + index
+                + " w=Seeker"
+                + (index % 53)
+                + " ti=00 rt="
+                + (1200 + index % 800)
+                + "  t="
+                + (1 + index % 5)
+                + " i=0 r=r tp=blitz c=? rr=0-9999 a=t f=f");
+      }
+    };
+  }
+
+  /**
+   * Returns a feed of draw offers, each withdrawn by the next message.
+   */
+  public static Feed offers() {
+    return new Feed() {
+      private int nextIndex = 1;
+
+      @Override
+      public void start(MockServer server) {}
+
+      @Override
+      public void next(MockServer server) throws IOException {
+        MockFreechessServer fics = (MockFreechessServer) server;
+        int index = nextIndex++;
+        if (index % 2 == 0) fics.sendLine("<pr> " + (index - 1));
+        else fics.sendLine("<pt> " + index + " w=Offerer t=draw p=#");
+      }
+    };
+  }
+}
@@ -0,0 +1,244 @@
+/**
+ * Jin - a chess client for internet chess servers. More information is available at
+ * http://www.jinchess.com/. Copyright (C) 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if
+ * not, write to the Free Software Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA
+ * 02111-1307, USA.
+ */
+package free.jin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import org.junit.jupiter.api.Test;
+
+import free.chessclub.MockChessclubServer;
+import free.freechess.MockFreechessServer;
+import free.jin.chessclub.JinChessclubConnection;
+import free.jin.event.ChatEvent;
+import free.jin.event.ChatListener;
+import free.jin.event.ConnectionListener;
+import free.jin.event.GameAdapter;
+import free.jin.event.GameStartEvent;
+import free.jin.event.MoveMadeEvent;
+import free.jin.event.SeekEvent;
+import free.jin.event.SeekListener;
+import free.jin.freechess.JinFreechessConnection;
+import free.util.ChannelSocket;
+import free.util.MockServer;
+
+/**
+ * Drives the whole client pipeline (reading, parsing, dispatching and handling server messages)
+ * against the mock servers, and checks the events the connections fire: the login, the start of
+ * observed games and the moves made in them, channel tells and seeks.
+ */
+public class ClientSessionTest {
+
+  /**
+   * The time, in milliseconds, we wait for the expected events to arrive.
+   */
+  private static final int TIMEOUT = 10000;
+
+  @Test
+  public void freechess() throws Exception {
+    MockServer server = new MockFreechessServer();
+    server.addFeed(MockFreechessServer.observedGames(1, 2), 100);
+    server.addFeed(MockFreechessServer.channelTells(50), 100);
+    server.addFeed(MockFreechessServer.seeks(200), 100);
+
+    JinFreechessConnection conn =
+        new JinFreechessConnection("Tester", null) {
+          @Override
+          protected Socket connectImpl(String hostname, int port) throws IOException {
+            // The mock server doesn't speak timeseal
+            return new ChannelSocket(hostname, port);
+          }
+        };
+    EventRecorder recorder = new EventRecorder();
+    conn.getListenerManager().addConnectionListener(recorder);
+    conn.getListenerManager().addGameListener(recorder);
+    conn.getListenerManager().addChatListener(recorder);
+    conn.getSeekListenerManager().addSeekListener(recorder);
+
+    runSession(server, conn, recorder);
+  }
+
+  @Test
+  public void chessclub() throws Exception {
+    MockServer server = new MockChessclubServer();
+    server.addFeed(MockChessclubServer.observedGames(1, 2), 100);
+    server.addFeed(MockChessclubServer.channelTells(50), 100);
+    server.addFeed(MockChessclubServer.seeks(200), 100);
+
+    JinChessclubConnection conn =
+        new JinChessclubConnection("Tester", null) {
+          @Override
+          protected Socket connectImpl(String hostname, int port) throws IOException {
+            return new ChannelSocket(hostname, port);
+          }
+        };
+    EventRecorder recorder = new EventRecorder();
+    conn.getListenerManager().addConnectionListener(recorder);
+    conn.getListenerManager().addGameListener(recorder);
+    conn.getListenerManager().addChatListener(recorder);
+    conn.getSeekListenerManager().addSeekListener(recorder);
+
+    runSession(server, conn, recorder);
+  }
+
+  /**
+   * Connects the specified connection, which the specified recorder listens to, to the specified
+   * server, which feeds it two observed games, tells in channel 50 and seeks, and checks the events
+   * the connection fires.
+   */
+  private static void runSession(MockServer server, Connection conn, EventRecorder recorder)
+      throws InterruptedException, IOException {
+    server.start();
+    try {
+      conn.initiateConnectAndLogin("localhost", server.getPort());
+
+      recorder.waitFor(Connection.class, 1);
+      assertEquals("Tester", conn.getUser().getName());
+
+      Vector gameStarts = recorder.waitFor(GameStartEvent.class, 2);
+      for (int i = 0; i < 2; i++) {
+        Game game = ((GameStartEvent) gameStarts.elementAt(i)).getGame();
+        assertEquals(Game.OBSERVED_GAME, game.getGameType());
+        assertEquals("White" + game.getID(), game.getWhiteName());
+        assertEquals("Black" + game.getID(), game.getBlackName());
+      }
+
+      // Both games cycle through the same four knight moves
+      String[] targetSquares = {"f3", "f6", "g1", "g8"};
+      Hashtable plies = new Hashtable();
+      Vector moves = recorder.waitFor(MoveMadeEvent.class, 8);
+      for (int i = 0; i < moves.size(); i++) {
+        MoveMadeEvent evt = (MoveMadeEvent) moves.elementAt(i);
+        Object gameID = evt.getGame().getID();
+        Integer ply = (Integer) plies.get(gameID);
+        int plyCount = ply == null ? 0 : ply.intValue();
+        assertEquals(
+            targetSquares[plyCount % 4], evt.getMove().getEndingSquare().toString(), "move " + i);
+        plies.put(gameID, new Integer(plyCount + 1));
+      }
+
+      Vector tells = recorder.waitFor(ChatEvent.class, 3);
+      for (int i = 0; i < tells.size(); i++) {
+        ChatEvent evt = (ChatEvent) tells.elementAt(i);
+        assertEquals("channel-tell", evt.getType());
+        assertEquals(new Integer(50), evt.getForum());
+        assertEquals("message number " + (i + 1) + " to the channel", evt.getMessage());
+      }
+
+      Vector seeks = recorder.waitFor(SeekEvent.class, 3);
+      for (int i = 0; i < seeks.size(); i++) {
+        Seek seek = ((SeekEvent) seeks.elementAt(i)).getSeek();
+        assertEquals("Seeker" + (i + 1), seek.getSeekerName());
+      }
+    } finally {
+      conn.close();
+      server.stop();
+    }
+  }
+
+  /**
+   * Records the events fired by a connection. Logging in is recorded as the connection itself.
+   */
+  private static class EventRecorder extends GameAdapter
+      implements ConnectionListener, ChatListener, SeekListener {
+
+    /**
+     * The recorded events, in the order they were fired in.
+     */
+    private final Vector events = new Vector();
+
+    /**
+     * Records the specified event.
+     */
+    private synchronized void record(Object evt) {
+      events.addElement(evt);
+      notifyAll();
+    }
+
+    /**
+     * Waits until at least the specified amount of events of the specified type have been
+     * recorded, and returns them, failing if they don't arrive in time.
+     */
+    public synchronized Vector waitFor(Class type, int count) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + TIMEOUT;
+      while (true) {
+        Vector matching = new Vector();
+        for (int i = 0; i < events.size(); i++)
+          if (type.isInstance(events.elementAt(i))) matching.addElement(events.elementAt(i));
+
+        long remaining = deadline - System.currentTimeMillis();
+        if ((matching.size() >= count) || (remaining <= 0)) {
+          assertTrue(
+              matching.size() >= count,
+              "Expected " + count + " " + type.getName() + " events, got " + matching.size());
+          return matching;
+        }
+        wait(remaining);
+      }
+    }
+
+    @Override
+    public void gameStarted(GameStartEvent evt) {
+      record(evt);
+    }
+
+    @Override
+    public void moveMade(MoveMadeEvent evt) {
+      record(evt);
+    }
+
+    @Override
+    public void chatMessageReceived(ChatEvent evt) {
+      record(evt);
+    }
+
+    @Override
+    public void seekAdded(SeekEvent evt) {
+      record(evt);
+    }
+
+    @Override
+    public void seekRemoved(SeekEvent evt) {
+      record(evt);
+    }
+
+    @Override
+    public void connectionAttempted(Connection conn, String hostname, int port) {}
+
+    @Override
+    public void connectionEstablished(Connection conn) {}
+
+    @Override
+    public void connectingFailed(Connection conn, String reason) {}
+
+    @Override
+    public void loginSucceeded(Connection conn) {
+      record(conn);
+    }
+
+    @Override
+    public void loginFailed(Connection conn, String reason) {}
+
+    @Override
+    public void connectionLost(Connection conn) {}
+  }
+}
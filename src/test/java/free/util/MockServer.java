@@ -0,0 +1,321 @@
+/**
+ * The utillib library. More information is available at http://www.jinchess.com/. Copyright (C)
+ * 2002 Alexander Maryanovsky. All rights reserved.
+ *
+ * The utillib library is free software; you can redistribute it and/or modify it under the terms of
+ * the GNU Lesser General Public License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * The utillib library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with utillib
+ * library; if not, write to the Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+package free.util;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Vector;
+
+/**
+ * A base class for in-process stand-ins for chess servers, used to test and load test the client
+ * without a live server. The server listens on a local port and serves a single session at a time: it lets
+ * the subclass carry out the login procedure and then sends the client the messages generated by
+ * its feeds, each at its configured rate, while passing the commands the client sends to
+ * {@link #handleCommand(String)}.
+ */
+public abstract class MockServer {
+
+  /**
+   * The server socket.
+   */
+  private final ServerSocket serverSocket;
+
+  /**
+   * The feeds, as <code>ScheduledFeed</code> objects.
+   */
+  private final Vector feeds = new Vector();
+
+  /**
+   * The stream the current session writes to the client.
+   */
+  private OutputStream out;
+
+  /**
+   * Whether the server has been stopped.
+   */
+  private volatile boolean isStopped = false;
+
+  /**
+   * The amount of messages sent by the feeds.
+   */
+  private volatile long messageCount = 0;
+
+  /**
+   * The amount of bytes sent to the client.
+   */
+  private volatile long byteCount = 0;
+
+  /**
+   * The amount of commands received from the client.
+   */
+  private volatile long commandCount = 0;
+
+  /**
+   * Creates a new <code>MockServer</code> listening on an arbitrary free port of the loopback
+   * interface.
+   */
+  public MockServer() throws IOException {
+    this.serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+  }
+
+  /**
+   * Returns the port the server listens on.
+   */
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  /**
+   * Adds a feed which sends messages at the specified rate, in messages per second. May only be
+   * invoked before starting the server.
+   */
+  public void addFeed(Feed feed, double rate) {
+    if (rate <= 0) throw new IllegalArgumentException("Bad rate: " + rate);
+
+    feeds.addElement(new ScheduledFeed(feed, rate));
+  }
+
+  /**
+   * Starts serving sessions in a new thread.
+   */
+  public void start() {
+    Thread thread =
+        new Thread("MockServer") {
+          @Override
+          public void run() {
+            try {
+              while (!isStopped) serve(serverSocket.accept());
+            } catch (IOException e) {
+              if (!isStopped) e.printStackTrace();
+            }
+          }
+        };
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Stops the server, closing the current session, if any.
+   */
+  public synchronized void stop() {
+    isStopped = true;
+    try {
+      serverSocket.close();
+      if (out != null) out.close();
+    } catch (IOException e) {
+    }
+  }
+
+  /**
+   * Returns the amount of messages sent by the feeds so far.
+   */
+  public long getMessageCount() {
+    return messageCount;
+  }
+
+  /**
+   * Returns the amount of bytes sent to the client so far.
+   */
+  public long getByteCount() {
+    return byteCount;
+  }
+
+  /**
+   * Returns the amount of commands received from the client so far.
+   */
+  public long getCommandCount() {
+    return commandCount;
+  }
+
+  /**
+   * Serves a single session.
+   */
+  private void serve(Socket socket) {
+    try {
+      socket.setTcpNoDelay(true);
+      final InputStream in = socket.getInputStream();
+      synchronized (this) {
+        out = new BufferedOutputStream(socket.getOutputStream(), 16384);
+      }
+
+      login(in);
+
+      Thread commandReader =
+          new Thread("MockServerCommandReader") {
+            @Override
+            public void run() {
+              try {
+                String command;
+                while ((command = readCommand(in)) != null) handleCommand(command);
+              } catch (IOException e) {
+                // The session is over
+              }
+            }
+          };
+      commandReader.setDaemon(true);
+      commandReader.start();
+
+      runFeeds();
+    } catch (IOException e) {
+      // The session is over
+    } finally {
+      try {
+        socket.close();
+      } catch (IOException e) {
+      }
+    }
+  }
+
+  /**
+   * Sends the messages of the feeds, each at its rate, until the session is over.
+   */
+  private void runFeeds() throws IOException {
+    if (feeds.isEmpty()) return;
+
+    long startTime = System.nanoTime();
+    for (int i = 0; i < feeds.size(); i++) {
+      ScheduledFeed feed = (ScheduledFeed) feeds.elementAt(i);
+      feed.nextTime = startTime;
+      feed.feed.start(this);
+    }
+    flush();
+
+    while (!isStopped) {
+      // Send whatever is due, then flush once and sleep until the next message is due
+      long now = System.nanoTime();
+      long nextTime = Long.MAX_VALUE;
+      for (int i = 0; i < feeds.size(); i++) {
+        ScheduledFeed feed = (ScheduledFeed) feeds.elementAt(i);
+        while (feed.nextTime <= now) {
+          feed.feed.next(this);
+          messageCount++;
+          feed.nextTime += feed.interval;
+        }
+        nextTime = Math.min(nextTime, feed.nextTime);
+      }
+      flush();
+
+      long delay = nextTime - System.nanoTime();
+      if (delay > 0) {
+        try {
+          Thread.sleep(delay / 1000000, (int) (delay % 1000000));
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Carries out the login procedure of a new session, reading the client's commands from the
+   * specified stream and replying via {@link #send(String)}. Returns once the client is logged in.
+   */
+  protected abstract void login(InputStream in) throws IOException;
+
+  /**
+   * Invoked, in a dedicated thread, with each command the client sends after logging in. The
+   * default implementation does nothing.
+   */
+  protected void handleCommand(String command) throws IOException {}
+
+  /**
+   * Reads a single command (line) sent by the client, without the line terminator. Returns
+   * <code>null</code> if the client disconnected.
+   */
+  protected final String readCommand(InputStream in) throws IOException {
+    StringBuffer buf = new StringBuffer();
+    int b;
+    while ((b = in.read()) != '\n') {
+      if (b == -1) return null;
+      if (b != '\r') buf.append((char) b);
+    }
+
+    commandCount++;
+    return buf.toString();
+  }
+
+  /**
+   * Sends the specified text to the client. The text is buffered until {@link #flush()} is
+   * invoked.
+   */
+  public final synchronized void send(String text) throws IOException {
+    if (out == null) throw new IOException("No session");
+
+    int length = text.length();
+    for (int i = 0; i < length; i++) out.write(text.charAt(i));
+    byteCount += length;
+  }
+
+  /**
+   * Sends any buffered text to the client.
+   */
+  public final synchronized void flush() throws IOException {
+    if (out != null) out.flush();
+  }
+
+  /**
+   * A source of messages sent to the client at a certain rate.
+   */
+  public interface Feed {
+
+    /**
+     * Invoked when the session starts, to send any messages the feed needs to send up front (the
+     * initial position of observed games, for example).
+     */
+    void start(MockServer server) throws IOException;
+
+    /**
+     * Sends the feed's next message.
+     */
+    void next(MockServer server) throws IOException;
+  }
+
+  /**
+   * A feed, together with its schedule.
+   */
+  private static class ScheduledFeed {
+
+    /**
+     * The feed.
+     */
+    public final Feed feed;
+
+    /**
+     * The interval between the feed's messages, in nanoseconds.
+     */
+    public final long interval;
+
+    /**
+     * The time, in nanoseconds, the next message is due at.
+     */
+    public long nextTime;
+
+    /**
+     * Creates a new <code>ScheduledFeed</code> for the specified feed with the specified rate, in
+     * messages per second.
+     */
+    public ScheduledFeed(Feed feed, double rate) {
+      this.feed = feed;
+      this.interval = (long) (1000000000L / rate);
+    }
+  }
+}